@@ -225,13 +225,8 @@ public class FrameController implements IImageController, IViewListener {
         return;
       }
 
-      // Apply downscale to all layers
-      int oldCurrent = this.model.getCurrent();
-      for (int i = 0; i < this.model.getLayers().size(); i++) {
-        this.model.setCurrent(i);
-        this.model.transform(new DownscaleTransformation(x, y));
-      }
-      this.model.setCurrent(oldCurrent);
+      // Apply downscale to all layers at once, which share the sampling tables of their size
+      this.model.transformAll(new DownscaleTransformation(x, y));
       this.view.renderApp();
     } catch (IllegalArgumentException e) {
       this.view.renderMessage("Failed to perform transformation: " + e.getMessage());
@@ -257,4 +252,18 @@ public class FrameController implements IImageController, IViewListener {
       this.view.renderMessage("Failed to perform transformation: " + e.getMessage());
     }
   }
+
+  @Override
+  public void handleHistoryEvent(boolean undo) {
+    try {
+      if (undo) {
+        this.model.undo();
+      } else {
+        this.model.redo();
+      }
+    } catch (IllegalArgumentException e) {
+      this.view.renderMessage("Failed to " + (undo ? "undo" : "redo") + ": " + e.getMessage());
+    }
+    this.view.renderApp();
+  }
 }
@@ -1,12 +1,15 @@
 package controller.command;
 
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Locale;
 import java.util.Map;
 import model.ImageModelImpl;
 import model.ImageUtil;
+import model.StreamedImageModel;
 import model.format.IImageFormatUtil;
 import model.layered.ILayerImageModel;
+import model.transformation.FusedTransformation;
 import model.transformation.ITransformation;
 import model.transformation.color.GreyTransformation;
 import model.transformation.color.SepiaTransformation;
@@ -23,6 +26,8 @@ public class LayerImageCommands {
 
   private final ILayerImageModel model;
   private final IImageView view;
+  // whether images loaded from now on defer their transformations
+  private boolean deferred;
 
   /**
    * Instantiate this set of {@link ICommand}s to use the provided model and view.
@@ -45,6 +50,7 @@ public class LayerImageCommands {
     Map<String, ICommand> map = new HashMap<>();
     map.putIfAbsent("create", new CreateLayer());
     map.putIfAbsent("transform", new TransformImage());
+    map.putIfAbsent("transformregion", new TransformRegion());
     map.putIfAbsent("export", new ExportImage());
     map.putIfAbsent("exportall", new ExportAll());
     map.putIfAbsent("load", new LoadImage());
@@ -53,9 +59,36 @@ public class LayerImageCommands {
     map.putIfAbsent("transparent", new SetTransparent(true));
     map.putIfAbsent("opaque", new SetTransparent(false));
     map.putIfAbsent("move", new MoveLayer());
+    map.putIfAbsent("process", new ProcessFile());
+    map.putIfAbsent("undo", new Undo());
+    map.putIfAbsent("redo", new Redo());
+    map.putIfAbsent("defer", new Defer());
     return map;
   }
 
+  /**
+   * Creates the transformation with the given name.
+   *
+   * @param name the name of the transformation.
+   * @return the transformation.
+   * @throws IllegalArgumentException if there is no transformation with the given name.
+   */
+  private static ITransformation fromName(String name) throws IllegalArgumentException {
+    switch (name.toLowerCase(Locale.ROOT)) {
+      case "blur":
+        return new BlurTransformation();
+      case "sharpen":
+        return new SharpTransformation();
+      case "greyscale":
+        return new GreyTransformation();
+      case "sepia":
+        return new SepiaTransformation();
+      default:
+        throw new IllegalArgumentException(name
+            + " is not a valid transformation! Must be one of: blur, sharpen, greyscale, sepia");
+    }
+  }
+
   /**
    * Creates a new, empty, transparent layer. This command takes no arguments.
    */
@@ -68,9 +101,61 @@ public class LayerImageCommands {
   }
 
   /**
-   * Performs an image transformation (blur, sharpen, greyscale, sepia) on the current layer.
+   * Reverts the last operation that changed the layers or their images. This command takes no
+   * arguments.
+   */
+  public class Undo implements ICommand {
+
+    @Override
+    public void apply(String[] args) throws IllegalArgumentException {
+      model.undo();
+      view.renderMessage("Undid the last operation.\n");
+    }
+  }
+
+  /**
+   * Repeats the last operation that was undone. This command takes no arguments.
+   */
+  public class Redo implements ICommand {
+
+    @Override
+    public void apply(String[] args) throws IllegalArgumentException {
+      model.redo();
+      view.renderMessage("Redid the last undone operation.\n");
+    }
+  }
+
+  /**
+   * Sets whether images loaded from now on defer their transformations until their pixels are
+   * needed, so that all transformations of a layer up to an export are applied together (see
+   * {@link ImageModelImpl#setDeferred(boolean)}). Images that are already loaded keep their
+   * setting.
+   *
+   * <p>Requires one argument: on or off.
+   */
+  public class Defer implements ICommand {
+
+    @Override
+    public void apply(String[] args) throws IllegalArgumentException {
+      if (args.length < 2 || !(args[1].equalsIgnoreCase("on")
+          || args[1].equalsIgnoreCase("off"))) {
+        throw new IllegalArgumentException("Must specify on or off!");
+      }
+      deferred = args[1].equalsIgnoreCase("on");
+      view.renderMessage("Transformations of images loaded from now on are "
+          + (deferred ? "deferred until their pixels are needed" : "applied immediately")
+          + ".\n");
+    }
+  }
+
+  /**
+   * Performs an image transformation (blur, sharpen, greyscale, sepia) on the current layer. If
+   * several transformations are given, they are applied in order as one {@link
+   * FusedTransformation}, so consecutive color transformations take a single pass over the layer.
    *
    * <p>Requires one argument: the transformation type.
+   *
+   * <p>Optional arguments: further transformation types to apply afterwards.
    */
   public class TransformImage implements ICommand {
 
@@ -80,29 +165,57 @@ public class LayerImageCommands {
         throw new IllegalArgumentException("Must specify transformation type!");
       }
 
-      ITransformation transformation;
-
-      switch (args[1].toLowerCase(Locale.ROOT)) {
-        case "blur":
-          transformation = new BlurTransformation();
-          break;
-        case "sharpen":
-          transformation = new SharpTransformation();
-          break;
-        case "greyscale":
-          transformation = new GreyTransformation();
-          break;
-        case "sepia":
-          transformation = new SepiaTransformation();
-          break;
-        default:
-          throw new IllegalArgumentException(args[1]
-              + " is not a valid transformation! Must be one of: blur, sharpen, greyscale, sepia");
+      ITransformation[] transformations = new ITransformation[args.length - 1];
+      for (int i = 1; i < args.length; i++) {
+        transformations[i - 1] = fromName(args[i]);
       }
-      model.transform(transformation);
-      view.renderMessage(
-          "Applied " + args[1].toLowerCase(Locale.ROOT) + " transformation to layer " + (model
-              .getCurrent() + 1) + ".\n");
+      model.transform(transformations.length == 1 ? transformations[0]
+          : new FusedTransformation(transformations));
+      String names = String.join(", ", Arrays.copyOfRange(args, 1, args.length))
+          .toLowerCase(Locale.ROOT);
+      view.renderMessage("Applied " + names + " transformation"
+          + (transformations.length == 1 ? "" : "s") + " to layer " + (model.getCurrent() + 1)
+          + ".\n");
+    }
+  }
+
+  /**
+   * Performs image transformations (blur, sharpen, greyscale, sepia) on a rectangle of the current
+   * layer only, leaving the rest of the layer untouched. Several transformations are applied in
+   * order, like in {@link TransformImage}.
+   *
+   * <p>Requires five arguments: the x- and y-coordinates of the top left corner of the rectangle,
+   * its width and height, and the transformation type.
+   *
+   * <p>Optional arguments: further transformation types to apply afterwards.
+   */
+  public class TransformRegion implements ICommand {
+
+    @Override
+    public void apply(String[] args) throws IllegalArgumentException {
+      if (args.length < 6) {
+        throw new IllegalArgumentException("Must specify the region and transformation type!");
+      }
+      int[] region = new int[4];
+      try {
+        for (int i = 0; i < region.length; i++) {
+          region[i] = Integer.parseInt(args[i + 1]);
+        }
+      } catch (NumberFormatException e) {
+        throw new IllegalArgumentException("Invalid region provided!");
+      }
+      ITransformation[] transformations = new ITransformation[args.length - 5];
+      for (int i = 5; i < args.length; i++) {
+        transformations[i - 5] = fromName(args[i]);
+      }
+      ITransformation transformation = transformations.length == 1 ? transformations[0]
+          : new FusedTransformation(transformations);
+      model.transform(transformation, region[0], region[1], region[2], region[3]);
+      String names = String.join(", ", Arrays.copyOfRange(args, 5, args.length))
+          .toLowerCase(Locale.ROOT);
+      view.renderMessage("Applied " + names + " transformation"
+          + (transformations.length == 1 ? "" : "s") + " to a " + region[2] + "x" + region[3]
+          + " region of layer " + (model.getCurrent() + 1) + ".\n");
     }
   }
 
@@ -187,7 +300,9 @@ public class LayerImageCommands {
         formatString = fileName[fileName.length - 1].toLowerCase(Locale.ROOT);
       }
       IImageFormatUtil format = ImageUtil.formatFromString(formatString);
-      model.loadImage(new ImageModelImpl(args[1], format));
+      ImageModelImpl image = new ImageModelImpl(args[1], format);
+      image.setDeferred(deferred);
+      model.loadImage(image);
       view.renderMessage(
           "Loaded image " + args[1] + " as format " + formatString + " to layer " + (
               model.getCurrent() + 1) + ".\n");
@@ -304,4 +419,43 @@ public class LayerImageCommands {
       }
     }
   }
+
+  /**
+   * Transforms an image file into another file without loading it, streaming it through the
+   * transformations one strip of rows at a time (see {@link StreamedImageModel}). The layers are
+   * left untouched. The formats of both files are determined using their extensions.
+   *
+   * <p>Requires two arguments: the file to read and the file to write.
+   *
+   * <p>Optional arguments: the transformation types (blur, sharpen, greyscale, sepia) to apply, in
+   * order.
+   */
+  public class ProcessFile implements ICommand {
+
+    @Override
+    public void apply(String[] args) throws IllegalArgumentException {
+      if (args.length < 3 || args[1].length() == 0 || args[2].length() == 0) {
+        throw new IllegalArgumentException("Must specify the files to read and write!");
+      }
+      String[] inName = args[1].split("\\.");
+      String[] outName = args[2].split("\\.");
+      IImageFormatUtil inFormat = ImageUtil.formatFromString(
+          inName[inName.length - 1].toLowerCase(Locale.ROOT));
+      IImageFormatUtil outFormat = ImageUtil.formatFromString(
+          outName[outName.length - 1].toLowerCase(Locale.ROOT));
+      ITransformation[] transformations = new ITransformation[args.length - 3];
+      for (int i = 3; i < args.length; i++) {
+        transformations[i - 3] = fromName(args[i]);
+      }
+      try (StreamedImageModel image = new StreamedImageModel(args[1], inFormat,
+          transformations)) {
+        outFormat.exportImage(args[2], image);
+      }
+      String names = String.join(", ", Arrays.copyOfRange(args, 3, args.length))
+          .toLowerCase(Locale.ROOT);
+      view.renderMessage("Processed " + args[1] + " into " + args[2]
+          + (transformations.length == 0 ? "" : " with " + names + " transformation"
+          + (transformations.length == 1 ? "" : "s")) + ".\n");
+    }
+  }
 }
@@ -0,0 +1,89 @@
+package model;
+
+import java.awt.Rectangle;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Iterator;
+
+/**
+ * Records which rectangles of an image were changed by its most recent edits, so that anything
+ * derived from the image (a rendered copy, a redrawn window, a cache) can update only what
+ * changed since it last looked. Every edit increments the version of the image; a consumer keeps
+ * the version it has seen and later asks for the region changed since then.
+ */
+final class ChangeLog {
+
+  // the number of edits remembered; asking about older versions gives the whole image
+  private static final int KEPT_CHANGES = 64;
+
+  // stands for the whole image in the log, whatever its size was at the time
+  private static final Rectangle WHOLE_IMAGE = new Rectangle();
+
+  // the rectangle changed by each remembered edit, oldest first
+  private final Deque<Rectangle> changes = new ArrayDeque<>();
+  private long version;
+
+  /**
+   * Gets the current version of the image, which is the number of edits made to it.
+   *
+   * @return the current version.
+   */
+  long getVersion() {
+    return this.version;
+  }
+
+  /**
+   * Records an edit that changed the pixels inside the given rectangle.
+   *
+   * @param changed the changed rectangle.
+   */
+  void mark(Rectangle changed) {
+    this.changes.addLast(new Rectangle(changed));
+    this.advance();
+  }
+
+  /**
+   * Records an edit that may have changed every pixel of the image, or its size.
+   */
+  void markAll() {
+    this.changes.addLast(WHOLE_IMAGE);
+    this.advance();
+  }
+
+  /**
+   * Gets the smallest rectangle containing every pixel changed since the given version.
+   *
+   * @param since  a version of the image, as returned by {@link #getVersion()}.
+   * @param width  the current width of the image.
+   * @param height the current height of the image.
+   * @return the changed rectangle, or null if nothing changed since the given version.
+   */
+  Rectangle changedSince(long since, int width, int height) {
+    Rectangle whole = new Rectangle(0, 0, width, height);
+    if (since >= this.version) {
+      return null;
+    } else if (since < 0 || this.version - since > this.changes.size()) {
+      return whole;
+    }
+    Rectangle changed = null;
+    Iterator<Rectangle> newestFirst = this.changes.descendingIterator();
+    for (long v = this.version; v > since; v--) {
+      Rectangle edit = newestFirst.next();
+      if (edit == WHOLE_IMAGE) {
+        return whole;
+      }
+      changed = changed == null ? new Rectangle(edit) : changed.union(edit);
+    }
+    return changed.intersection(whole);
+  }
+
+  /**
+   * Moves to the next version, forgetting the oldest edit if too many are remembered.
+   */
+  private void advance() {
+    this.version++;
+    if (this.changes.size() > KEPT_CHANGES) {
+      this.changes.removeFirst();
+    }
+  }
+}
@@ -1,6 +1,7 @@
 package model;
 
 import java.awt.Color;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 
 /**
  * Represents a color with red, green, and blue values. This class differs from {@link
@@ -10,6 +11,12 @@ public class CustomColor {
 
   private static final int MAX_COLOR_INT = 256;
 
+  // Direct-mapped cache of canonical 8-bit colors: bounded, lazily filled and safe to share
+  // between threads since colors are immutable. A slot holds the last color that mapped to it.
+  private static final int CACHE_BITS = 14;
+  private static final AtomicReferenceArray<CustomColor> CACHE =
+      new AtomicReferenceArray<>(1 << CACHE_BITS);
+
   private final int red;
   private final int green;
   private final int blue;
@@ -37,6 +44,42 @@ public class CustomColor {
     this(source.getRed(), source.getGreen(), source.getBlue());
   }
 
+  /**
+   * Returns a color with the given red, green and blue values. Colors whose values are all within
+   * 0-255 are shared through a bounded cache, so images with many repeated colors (e.g. greyscale
+   * or mosaic images) reuse the same instances; other values always create a new color.
+   *
+   * @param red   the red value of the color.
+   * @param green the green value of the color.
+   * @param blue  the blue value of the color.
+   * @return a color with the given values, possibly a cached instance.
+   */
+  public static CustomColor of(int red, int green, int blue) {
+    if (((red | green | blue) & ~0xFF) != 0) {
+      return new CustomColor(red, green, blue);
+    }
+    int rgb = (red << 16) | (green << 8) | blue;
+    int slot = (rgb * 0x9E3779B1) >>> (Integer.SIZE - CACHE_BITS);
+    CustomColor cached = CACHE.get(slot);
+    if (cached != null && cached.red == red && cached.green == green && cached.blue == blue) {
+      return cached;
+    }
+    CustomColor color = new CustomColor(red, green, blue);
+    CACHE.set(slot, color);
+    return color;
+  }
+
+  /**
+   * Returns a color from a 24-bit RGB integer (0xRRGGBB, as used by {@link
+   * java.awt.image.BufferedImage#getRGB}). Any bits above the lowest 24 are ignored.
+   *
+   * @param rgb the packed red, green and blue values of the color.
+   * @return a color with the given values, possibly a cached instance.
+   */
+  public static CustomColor fromRGB(int rgb) {
+    return of((rgb >> 16) & 0xFF, (rgb >> 8) & 0xFF, rgb & 0xFF);
+  }
+
   /**
    * Gets the red value of this color.
    *
@@ -1,5 +1,6 @@
 package model;
 
+import java.awt.Rectangle;
 import model.transformation.ITransformation;
 
 /**
@@ -20,4 +21,46 @@ public interface IImageModel extends IViewImageModel {
    *                                  (non-null, rectangular, at least 1x1).
    */
   public IImageModel transform(ITransformation transformation) throws IllegalArgumentException;
+
+  /**
+   * Transforms only the pixels of this image model inside the given rectangle. Pixels outside
+   * the rectangle are left untouched, but those within the neighborhood of the transformation
+   * (see {@link ITransformation#getNeighborhoodRadius()}) are read as context, so every pixel in
+   * the rectangle becomes what transforming the whole image would have made it. Transformations
+   * without a bounded neighborhood are applied to the rectangle as if it were an image of its
+   * own. Either way, the work done is proportional to the rectangle, not the image.
+   *
+   * <p>Effect: modifies the pixels inside the rectangle based on the provided transformation.
+   *
+   * @param transformation the transformation to apply.
+   * @param x              the x-coordinate of the top left corner of the rectangle.
+   * @param y              the y-coordinate of the top left corner of the rectangle.
+   * @param width          the width of the rectangle.
+   * @param height         the height of the rectangle.
+   * @return a reference to this image model, to allow method chaining.
+   * @throws IllegalArgumentException if the transformation is null, the rectangle is empty or
+   *                                  not inside the image, or the transformation does not keep the
+   *                                  size of the rectangle.
+   */
+  public IImageModel transform(ITransformation transformation, int x, int y, int width,
+      int height) throws IllegalArgumentException;
+
+  /**
+   * Gets the current version of this image model, which changes every time its pixels are
+   * changed. Used together with {@link #getChangedRegion(long)}.
+   *
+   * @return the current version.
+   */
+  public long getVersion();
+
+  /**
+   * Gets the smallest rectangle containing every pixel changed since this image model had the
+   * given version, so that copies, views and caches of the image can update only that rectangle.
+   * If the version is too old to be remembered, or the image was transformed as a whole since,
+   * the whole image is returned.
+   *
+   * @param version a version of this image model, as returned by {@link #getVersion()}.
+   * @return the changed rectangle, or null if nothing changed since the given version.
+   */
+  public Rectangle getChangedRegion(long version);
 }
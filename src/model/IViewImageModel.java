@@ -2,6 +2,7 @@ package model;
 
 import java.awt.Image;
 import model.format.IImageFormatUtil;
+import model.raster.IViewRaster;
 
 /**
  * Observing (non-mutating) methods of an Image model. To be used by a view implementation, to avoid
@@ -63,6 +64,15 @@ public interface IViewImageModel {
    */
   CustomColor[][] asArray();
 
+  /**
+   * Returns the pixel buffer backing this image, without copying it. Unlike {@link #asArray()}
+   * this does not create any {@link CustomColor} objects, so it should be preferred when reading
+   * large images.
+   *
+   * @return a read-only view of the pixels of this image.
+   */
+  IViewRaster getRaster();
+
   /**
    * Similar method to equals that accounts for slight variations in color value due to JPG lossy
    * compression.
@@ -74,7 +84,8 @@ public interface IViewImageModel {
 
   /**
    * Creates a new image from the pixel data stored in this model. This can be used to create GUIs,
-   * for example, using {@link java.awt.image.BufferedImage}.
+   * for example, using {@link java.awt.image.BufferedImage}. The returned image may share its
+   * pixels with this model, so it must not be drawn on.
    *
    * @return the {@link java.awt} representation of this image.
    * @throws IllegalArgumentException if the layer cannot be rendered.
@@ -1,21 +1,62 @@
 package model;
 
-import java.awt.Color;
 import java.awt.Image;
+import java.awt.Rectangle;
 import java.awt.image.BufferedImage;
-import java.util.Arrays;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Objects;
 import model.format.IImageFormatUtil;
+import model.raster.HeapRasterFactory;
+import model.raster.IRaster;
+import model.raster.IRasterFactory;
+import model.raster.ITileSource;
+import model.raster.IViewRaster;
+import model.raster.PackedRaster;
+import model.raster.RasterUtil;
+import model.raster.SharedRaster;
+import model.transformation.FusedTransformation;
 import model.transformation.ITransformation;
+import model.transformation.RowBandExecutor;
+import model.transformation.TileExecutor;
 
 /**
- * Represents a 2D RGB image with 8-bit colors.
+ * Represents a 2D RGB image with 8-bit colors. Pixels are kept in an {@link IRaster} (by default
+ * a {@link model.raster.PackedRaster}); {@link CustomColor} is only used to pass colors in and out
+ * of this model. Where the raster is stored is decided by an {@link IRasterFactory}, which also
+ * stores the results of transformations of the image.
+ *
+ * <p>Copies of an image share its raster copy-on-write (see {@link SharedRaster}), so copying is
+ * cheap no matter how large the image is. Results of transformations of images on the heap are
+ * kept in the default {@link TransformationCache}, and reused when the same transformation is
+ * applied to an image with the same pixels.
+ *
+ * <p>Images can defer their transformations (see {@link #setDeferred(boolean)}): transforming
+ * such an image only records the transformation, and the recorded transformations are applied
+ * together, as one {@link FusedTransformation}, once the pixels or the size of the image are
+ * needed. Transformations of an image that is never looked at again are never applied.
+ *
+ * <p>Images stored off-heap should be closed once they are no longer needed.
  */
-public class ImageModelImpl implements IImageModel {
+public class ImageModelImpl implements IImageModel, AutoCloseable {
 
-  private CustomColor[][] pixels;
+  // applies small neighborhood filters to large images in cache-sized tiles
+  private static final TileExecutor TILES = new TileExecutor();
+
+  private final SharedRaster raster;
   private final int maxColorValue;
+  private final IRasterFactory factory;
+  private final ChangeLog changes = new ChangeLog();
+  // the transformations recorded but not applied yet, shared with copies of this image
+  private Pending pending;
+  private boolean deferred;
+  // the fingerprint of the pixels, and the version it was computed for
+  private long fingerprint;
+  private long fingerprintVersion = -1;
+  // the image last returned by toImage(), the raster it shows and the version it was last synced
+  private BufferedImage image;
+  private IViewRaster imageRaster;
+  private long imageVersion;
 
   /**
    * Constructs a new {@link ImageModelImpl} from a 2D list.
@@ -28,10 +69,30 @@ public class ImageModelImpl implements IImageModel {
    */
   public ImageModelImpl(CustomColor[][] pixels, int maxColorValue)
       throws IllegalArgumentException {
+    this(pixels, maxColorValue, new HeapRasterFactory());
+  }
+
+  /**
+   * Constructs a new {@link ImageModelImpl} from a 2D array, storing its pixels in a raster
+   * created by the given factory.
+   *
+   * <p>Class invariants: images cannot null, and must be at least 1x1 and rectangular.
+   *
+   * @param pixels        The array from which to construct the image.
+   * @param maxColorValue The maximum value of a color channel in the image.
+   * @param factory       The factory deciding where pixels are stored.
+   * @throws IllegalArgumentException if the provided array of pixels is null, empty or not
+   *                                  rectangular, or if the factory cannot store the image.
+   */
+  public ImageModelImpl(CustomColor[][] pixels, int maxColorValue, IRasterFactory factory)
+      throws IllegalArgumentException {
     ImageUtil.validation(pixels, maxColorValue, 0);
-    this.pixels = pixels;
+    if (factory == null) {
+      throw new IllegalArgumentException("The raster factory must not be null!");
+    }
+    this.raster = new SharedRaster(RasterUtil.fromArray(pixels, maxColorValue, factory));
     this.maxColorValue = maxColorValue;
-
+    this.factory = factory;
   }
 
   /**
@@ -46,12 +107,111 @@ public class ImageModelImpl implements IImageModel {
   }
 
   /**
-   * Creates a copy of the given {@link IImageModel} instance.
+   * Constructs an image from a specified file using a given {@link model.format.IImageFormatUtil},
+   * storing its pixels in a raster created by the given factory. The file is read through the
+   * {@link ITileSource} of the format, a strip of rows at a time, so an image stored off-heap
+   * never has to fit on the heap as a whole.
+   *
+   * @param filename the name of the file to import.
+   * @param format   the format to import as.
+   * @param factory  the factory deciding where pixels are stored.
+   * @throws IllegalArgumentException if the import operation fails, or the format or factory is
+   *                                  null.
+   */
+  public ImageModelImpl(String filename, IImageFormatUtil format, IRasterFactory factory)
+      throws IllegalArgumentException {
+    if (format == null || factory == null) {
+      throw new IllegalArgumentException("The format and raster factory must not be null!");
+    }
+    try (ITileSource source = format.openTileSource(filename)) {
+      this.raster = new SharedRaster(RasterUtil.fromTileSource(source, factory,
+          StreamedImageModel.DEFAULT_STRIP_HEIGHT));
+    }
+    this.maxColorValue = 255;
+    this.factory = factory;
+  }
+
+  /**
+   * Creates a copy of the given {@link IImageModel} instance. Copies of an {@link ImageModelImpl}
+   * share the raster of the original until either of them is transformed, and use the same storage
+   * as the original.
    *
    * @param model The model to copy.
    */
   public ImageModelImpl(IImageModel model) {
-    this(model.asArray(), 255);
+    if (model instanceof ImageModelImpl) {
+      ImageModelImpl other = (ImageModelImpl) model;
+      // the raster of another image has already been validated
+      this.raster = other.raster.share();
+      this.factory = other.factory;
+      // the recorded transformations are applied once for the original and all of its copies
+      this.pending = other.pending;
+      this.deferred = other.deferred;
+    } else {
+      CustomColor[][] pixels = model.asArray();
+      ImageUtil.validation(pixels, 255, 0);
+      this.factory = new HeapRasterFactory();
+      this.raster = new SharedRaster(RasterUtil.fromArray(pixels, 255, this.factory));
+    }
+    this.maxColorValue = 255;
+  }
+
+  /**
+   * Constructs an image from a raster that has already been validated.
+   *
+   * @param raster        the pixels of the image.
+   * @param maxColorValue the maximum value of a color channel in the image.
+   * @param factory       the factory deciding where pixels are stored.
+   */
+  private ImageModelImpl(SharedRaster raster, int maxColorValue, IRasterFactory factory) {
+    this.raster = raster;
+    this.maxColorValue = maxColorValue;
+    this.factory = factory;
+  }
+
+  /**
+   * Creates an image that takes over the given raster, without copying it if it is already
+   * stored the way the given factory stores pixels. The raster must no longer be modified by the
+   * caller.
+   *
+   * @param raster        the pixels of the image.
+   * @param maxColorValue the maximum value of a color channel in the image.
+   * @param factory       the factory deciding where pixels are stored.
+   * @return the new image.
+   * @throws IllegalArgumentException if the raster or factory is null, or the raster contains
+   *                                  invalid colors.
+   */
+  public static ImageModelImpl fromRaster(IRaster raster, int maxColorValue,
+      IRasterFactory factory) throws IllegalArgumentException {
+    if (factory == null) {
+      throw new IllegalArgumentException("The raster factory must not be null!");
+    }
+    ImageUtil.rasterValidation(raster, maxColorValue, 0);
+    return new ImageModelImpl(new SharedRaster(factory.adopt(raster, maxColorValue)),
+        maxColorValue, factory);
+  }
+
+  /**
+   * Gets the factory deciding where the pixels of this image, and of the results of its
+   * transformations, are stored.
+   *
+   * @return the raster factory of this image.
+   */
+  public IRasterFactory getRasterFactory() {
+    return this.factory;
+  }
+
+  /**
+   * Releases the pixels of this image. This is required to free the memory of images stored
+   * off-heap, which happens once every copy sharing them has been closed or transformed;
+   * afterwards, the image can no longer be used.
+   */
+  @Override
+  public void close() {
+    this.pending = null;
+    this.image = null;
+    this.imageRaster = null;
+    this.raster.close();
   }
 
 
@@ -67,17 +227,18 @@ public class ImageModelImpl implements IImageModel {
 
   @Override
   public CustomColor getColorAt(int x, int y) {
-    return this.pixels[y][x];
+    IViewRaster pixels = this.pixels();
+    return CustomColor.of(pixels.getRed(x, y), pixels.getGreen(x, y), pixels.getBlue(x, y));
   }
 
   @Override
   public int getHeight() {
-    return this.pixels.length;
+    return this.pixels().getHeight();
   }
 
   @Override
   public int getWidth() {
-    return this.pixels[0].length;
+    return this.pixels().getWidth();
   }
 
   @Override
@@ -92,22 +253,261 @@ public class ImageModelImpl implements IImageModel {
 
   @Override
   public CustomColor[][] asArray() {
-    CustomColor[][] colors = new CustomColor[pixels.length][];
-    for (int i = 0; i < pixels.length; i++) {
-      colors[i] = pixels[i].clone();
+    return RasterUtil.toArray(this.pixels());
+  }
+
+  @Override
+  public IViewRaster getRaster() {
+    return this.pixels();
+  }
+
+  /**
+   * Gets the raster this image holds now, without applying the transformations that are recorded
+   * but not applied yet. It is the raster returned by {@link #getRaster()} if there are none.
+   *
+   * @return the raster currently held by this image.
+   */
+  public IViewRaster peekRaster() {
+    return this.raster.get();
+  }
+
+  /**
+   * Sets whether this image defers its transformations. A deferred transformation is only
+   * recorded, and the recorded transformations are applied all at once when the pixels or the
+   * size of this image are needed, fused into a single pass over the image where possible and
+   * looked up in the {@link TransformationCache} as a whole. Errors of deferred transformations
+   * are thrown by the method that needs the pixels. Turning deferring off applies the recorded
+   * transformations right away. Transformations that cannot be cached, such as random ones, are
+   * never deferred. Copies of this image inherit the setting and the recorded transformations,
+   * which are applied once for the original and all of its copies.
+   *
+   * @param deferred whether to defer transformations.
+   * @throws IllegalArgumentException if turning deferring off applies an invalid transformation.
+   */
+  public void setDeferred(boolean deferred) throws IllegalArgumentException {
+    this.deferred = deferred;
+    if (!deferred) {
+      this.evaluate();
+    }
+  }
+
+  /**
+   * Checks whether this image defers its transformations.
+   *
+   * @return true if transformations are recorded rather than applied.
+   */
+  public boolean isDeferred() {
+    return this.deferred;
+  }
+
+  /**
+   * Checks whether transformations of this image are recorded but not applied yet. Only images
+   * that defer their transformations have any.
+   *
+   * @return true if there are transformations that have not been applied yet.
+   */
+  public boolean hasPendingTransformations() {
+    return this.pending != null && this.pending.result == null;
+  }
+
+  /**
+   * Gets the pixels of this image, applying the transformations that are recorded first.
+   *
+   * @return the raster of this image.
+   * @throws IllegalArgumentException if a recorded transformation produces an invalid image.
+   */
+  private IViewRaster pixels() throws IllegalArgumentException {
+    this.evaluate();
+    return this.raster.get();
+  }
+
+  /**
+   * Applies the transformations that are recorded, as one chain, unless a copy of this image has
+   * already applied them. They are forgotten even if the chain fails, leaving the pixels as they
+   * were before it.
+   *
+   * @throws IllegalArgumentException if a recorded transformation produces an invalid image.
+   */
+  private void evaluate() throws IllegalArgumentException {
+    Pending node = this.pending;
+    if (node == null) {
+      return;
+    }
+    this.pending = null;
+    // the version was advanced when the transformations were recorded, so it does not tell
+    // whether the fingerprint is still that of the pixels
+    this.fingerprintVersion = -1;
+    if (node.result != null) {
+      this.raster.set(node.result);
+      if (node.failure != null) {
+        throw node.failure;
+      }
+      return;
+    }
+    // collect the transformations back to the pixels they start from
+    List<ITransformation> steps = new ArrayList<>();
+    Pending first = node;
+    steps.add(first.transformation);
+    while (first.parent != null && first.parent.result == null) {
+      first = first.parent;
+      steps.add(0, first.transformation);
+    }
+    this.raster.set(first.parent == null ? first.source : first.parent.result);
+    ITransformation chain = steps.size() == 1 ? steps.get(0)
+        : new FusedTransformation(steps.toArray(new ITransformation[0]));
+    try {
+      this.apply(chain);
+    } catch (IllegalArgumentException e) {
+      node.failure = e;
+      throw e;
+    } finally {
+      node.finish(this.raster.share());
+      this.fingerprintVersion = -1;
     }
-    return colors;
   }
 
+  /**
+   * Transforms this image model with the given transformation. If the result of the same
+   * transformation of the same pixels is cached, it is swapped in instead; otherwise the result
+   * is computed and cached, if the transformation can be cached. If this image defers its
+   * transformations, the transformation is only recorded (see {@link #setDeferred(boolean)}).
+   *
+   * @param transformation represents the type of the transformation that will be applied to this
+   *                       image model.
+   * @return a reference to this image model, to allow method chaining.
+   * @throws IllegalArgumentException if the transformed image does not satisfy the invariants
+   *                                  (non-null, rectangular, at least 1x1), or the transformation
+   *                                  is null.
+   */
   @Override
   public IImageModel transform(ITransformation transformation) throws IllegalArgumentException {
-    CustomColor[][] newPixels = transformation
-        .apply(this.pixels, this.maxColorValue(), this.minColorValue());
-    ImageUtil.validation(newPixels, this.maxColorValue(), this.minColorValue());
-    this.pixels = newPixels;
+    if (transformation == null) {
+      throw new IllegalArgumentException("The transformation must not be null!");
+    }
+    if (this.deferred && transformation.getCacheKey() != null) {
+      this.pending = new Pending(this.pending,
+          this.pending == null ? this.raster.share() : null, transformation);
+    } else {
+      // a transformation that cannot be cached may give a different result each time it is
+      // applied, so it is applied once, before the image is copied
+      this.evaluate();
+      this.apply(transformation);
+    }
+    this.changes.markAll();
+    return this;
+  }
+
+  /**
+   * Applies a transformation to the pixels of this image, or swaps in its cached result.
+   *
+   * @param transformation the transformation to apply.
+   * @throws IllegalArgumentException if the transformed image does not satisfy the invariants.
+   */
+  private void apply(ITransformation transformation) throws IllegalArgumentException {
+    String key = this.cacheKey(transformation);
+    if (key != null && TransformationCache.getDefault().restore(key, this.raster)) {
+      return;
+    }
+    IRaster newRaster = TILES.apply(transformation, this.raster.get(), this.maxColorValue(),
+        this.minColorValue(), RowBandExecutor.getDefault(), this.factory);
+    if (!transformation.producesValidRasters()) {
+      try {
+        ImageUtil.rasterValidation(newRaster, this.maxColorValue(), this.minColorValue());
+      } catch (IllegalArgumentException e) {
+        newRaster.close();
+        throw e;
+      }
+    }
+    this.raster.set(newRaster);
+    if (key != null) {
+      TransformationCache.getDefault().store(key, this.raster);
+    }
+  }
+
+  /**
+   * Gets the key under which the result of a transformation of this image is cached, made of the
+   * description of the transformation, the fingerprint of the pixels and the color range. The
+   * fingerprint is computed once per version of the image. Only images stored on the heap are
+   * cached, as images are stored off the heap when they are too large to keep copies of.
+   *
+   * @param transformation the transformation to apply.
+   * @return the key, or null if the result is not to be cached.
+   */
+  private String cacheKey(ITransformation transformation) {
+    String description = transformation.getCacheKey();
+    if (description == null || !(this.factory instanceof HeapRasterFactory)
+        || TransformationCache.getDefault().getMemoryBudget() == 0) {
+      return null;
+    }
+    if (this.fingerprintVersion != this.changes.getVersion()) {
+      this.fingerprint = RasterUtil.fingerprint(this.raster.get());
+      this.fingerprintVersion = this.changes.getVersion();
+    }
+    return description + "@" + Long.toHexString(this.fingerprint) + "/" + this.maxColorValue;
+  }
+
+  /**
+   * Transforms only the pixels inside the given rectangle. The rectangle is copied out together
+   * with a border as wide as the neighborhood of the transformation, which is cut off at the edges
+   * of the image, transformed like a whole image, and its inner part copied back. The rectangle
+   * is stored the way the image is while it is transformed. If the raster is shared with copies of
+   * this image, it is copied first.
+   *
+   * @param transformation the transformation to apply.
+   * @param x              the x-coordinate of the top left corner of the rectangle.
+   * @param y              the y-coordinate of the top left corner of the rectangle.
+   * @param width          the width of the rectangle.
+   * @param height         the height of the rectangle.
+   * @return a reference to this image model, to allow method chaining.
+   * @throws IllegalArgumentException if the transformation is null, the rectangle is empty or
+   *                                  not inside the image, or the transformation does not keep the
+   *                                  size of the rectangle.
+   */
+  @Override
+  public IImageModel transform(ITransformation transformation, int x, int y, int width,
+      int height) throws IllegalArgumentException {
+    IViewRaster pixels = this.pixels();
+    ImageUtil.regionValidation(transformation, x, y, width, height, pixels);
+    int radius = Math.max(0, transformation.getNeighborhoodRadius());
+    int left = Math.max(0, x - radius);
+    int top = Math.max(0, y - radius);
+    int contextWidth = Math.min(pixels.getWidth(), x + width + radius) - left;
+    int contextHeight = Math.min(pixels.getHeight(), y + height + radius) - top;
+    IRaster context = this.factory.create(contextWidth, contextHeight, this.maxColorValue());
+    IRaster out = null;
+    try {
+      RasterUtil.copyRegion(pixels, left, top, context, 0, 0, contextWidth, contextHeight);
+      out = TILES.apply(transformation, context, this.maxColorValue(), this.minColorValue(),
+          RowBandExecutor.getDefault(), this.factory);
+      if (out.getWidth() != contextWidth || out.getHeight() != contextHeight) {
+        throw new IllegalArgumentException(
+            "Only transformations that keep the image size can be applied to a region!");
+      }
+      if (!transformation.producesValidRasters()) {
+        ImageUtil.rasterValidation(out, this.maxColorValue(), this.minColorValue());
+      }
+      RasterUtil.copyRegion(out, x - left, y - top, this.raster.getWritable(), x, y, width,
+          height);
+    } finally {
+      context.close();
+      if (out != null) {
+        out.close();
+      }
+    }
+    this.changes.mark(new Rectangle(x, y, width, height));
     return this;
   }
 
+  @Override
+  public long getVersion() {
+    return this.changes.getVersion();
+  }
+
+  @Override
+  public Rectangle getChangedRegion(long version) {
+    return this.changes.changedSince(version, this.getWidth(), this.getHeight());
+  }
+
   @Override
   public boolean equals(Object o) {
     if (this == o) {
@@ -117,7 +517,8 @@ public class ImageModelImpl implements IImageModel {
       return false;
     }
     ImageModelImpl that = (ImageModelImpl) o;
-    return maxColorValue == that.maxColorValue && Arrays.deepEquals(pixels, that.pixels);
+    return maxColorValue == that.maxColorValue
+        && RasterUtil.sameContent(this.pixels(), that.pixels());
   }
 
   @Override
@@ -151,23 +552,83 @@ public class ImageModelImpl implements IImageModel {
     return true;
   }
 
+  /**
+   * Gets this image as a {@link BufferedImage}. Images stored on the heap are wrapped without
+   * copying any pixels; other images are copied once and cached until the image is transformed.
+   * After a transformation of a region (see {@link #transform(ITransformation, int, int, int,
+   * int)}), only the changed region of the cached copy is updated. The returned image shares its
+   * pixels with this model and must not be drawn on.
+   *
+   * @return the {@link java.awt} representation of this image.
+   */
   @Override
   public Image toImage() {
-    BufferedImage im = new BufferedImage(this.getWidth(), this.getHeight(),
-        BufferedImage.TYPE_INT_RGB);
-    for (int y = 0; y < this.getHeight(); y++) {
-      for (int x = 0; x < this.getWidth(); x++) {
-        CustomColor c = this.getColorAt(x, y);
-        im.setRGB(x, y, new Color(c.getRed(), c.getGreen(), c.getBlue()).getRGB());
+    IViewRaster pixels = this.pixels();
+    if (this.image == null || this.imageRaster != pixels) {
+      this.image = RasterUtil.toImage(pixels);
+      this.imageRaster = pixels;
+    } else if (!(pixels instanceof PackedRaster)) {
+      Rectangle changed = this.getChangedRegion(this.imageVersion);
+      if (changed != null) {
+        int[] row = new int[changed.width];
+        for (int y = changed.y; y < changed.y + changed.height; y++) {
+          for (int i = 0; i < row.length; i++) {
+            row[i] = pixels.getRGB(changed.x + i, y);
+          }
+          this.image.setRGB(changed.x, y, row.length, 1, row, 0, row.length);
+        }
       }
     }
-    return im;
+    this.imageVersion = this.changes.getVersion();
+    return this.image;
   }
 
   @Override
   public int hashCode() {
     int result = Objects.hash(maxColorValue);
-    result = 31 * result + Arrays.hashCode(pixels);
+    result = 31 * result + RasterUtil.contentHash(this.pixels());
     return result;
   }
+
+  /**
+   * Represents a transformation recorded by an image that defers its transformations. It starts
+   * from the pixels of the image when it was recorded, or from the result of the transformation
+   * recorded before it. Copies of the image share it, and the first of them that needs its pixels
+   * applies the transformation, together with the ones before it that were not applied yet, and
+   * leaves the result for the others.
+   */
+  private static final class Pending {
+
+    private Pending parent;
+    private SharedRaster source;
+    private ITransformation transformation;
+    // the pixels after the transformation, once it has been applied
+    private SharedRaster result;
+    private IllegalArgumentException failure;
+
+    /**
+     * Records a transformation.
+     *
+     * @param parent         the transformation recorded before it, or null if there is none.
+     * @param source         the pixels it starts from if there is no transformation before it.
+     * @param transformation the transformation.
+     */
+    private Pending(Pending parent, SharedRaster source, ITransformation transformation) {
+      this.parent = parent;
+      this.source = source;
+      this.transformation = transformation;
+    }
+
+    /**
+     * Keeps the result of the transformation, and lets go of everything needed to compute it.
+     *
+     * @param result the pixels after the transformation.
+     */
+    private void finish(SharedRaster result) {
+      this.result = result;
+      this.parent = null;
+      this.source = null;
+      this.transformation = null;
+    }
+  }
 }
@@ -8,6 +8,10 @@ import model.format.IImageFormatUtil;
 import model.format.JPGFormat;
 import model.format.PNGFormat;
 import model.format.PPMFormat;
+import model.raster.DirectRaster;
+import model.raster.IViewRaster;
+import model.raster.PackedRaster;
+import model.transformation.ITransformation;
 
 
 /**
@@ -55,7 +59,7 @@ public class ImageUtil {
 
     for (int i = 0; i < height; i++) {
       for (int j = 0; j < width; j++) {
-        pixels[i][j] = new CustomColor(sc.nextInt(), sc.nextInt(), sc.nextInt());
+        pixels[i][j] = CustomColor.of(sc.nextInt(), sc.nextInt(), sc.nextInt());
       }
     }
 
@@ -135,6 +139,68 @@ public class ImageUtil {
     }
   }
 
+  /**
+   * Throws an IllegalArgumentException if maximum color value is less than the minimum, if the
+   * raster is null, or if any of its pixels have a color value greater than the maximum.
+   *
+   * @param raster        represents all pixels in an image
+   * @param maxColorValue represents the maximum value each component of RGB can take
+   * @param minColorValue represents the minimum value each component of RGB can take
+   * @throws IllegalArgumentException if maximum color value is less minimum, if the raster is null
+   *                                  or if any of the pixels have invalid color values.
+   */
+  public static void rasterValidation(IViewRaster raster, int maxColorValue, int minColorValue)
+      throws IllegalArgumentException {
+    if (maxColorValue < minColorValue) {
+      throw new IllegalArgumentException(
+          "The maximum color value must be greater than the minimum color value.");
+    } else if (raster == null) {
+      throw new IllegalArgumentException("The given raster must not be null!");
+    } else if ((raster instanceof PackedRaster || raster instanceof DirectRaster)
+        && maxColorValue >= 255) {
+      // packed channels cannot exceed 255
+      return;
+    }
+    for (int y = 0; y < raster.getHeight(); y++) {
+      for (int x = 0; x < raster.getWidth(); x++) {
+        if (raster.getRed(x, y) > maxColorValue || raster.getGreen(x, y) > maxColorValue
+            || raster.getBlue(x, y) > maxColorValue) {
+          throw new IllegalArgumentException(
+              "The given raster must not contain any values greater than the max color value of "
+                  + maxColorValue + ".");
+        }
+      }
+    }
+  }
+
+  /**
+   * Throws an IllegalArgumentException if a transformation cannot be applied to the given
+   * rectangle of an image, because the transformation is null or the rectangle is empty or not
+   * inside the image.
+   *
+   * @param transformation the transformation to apply.
+   * @param x              the x-coordinate of the top left corner of the rectangle.
+   * @param y              the y-coordinate of the top left corner of the rectangle.
+   * @param width          the width of the rectangle.
+   * @param height         the height of the rectangle.
+   * @param raster         represents all pixels in the image
+   * @throws IllegalArgumentException if the transformation is null, or the rectangle is empty or
+   *                                  not inside the image.
+   */
+  public static void regionValidation(ITransformation transformation, int x, int y, int width,
+      int height, IViewRaster raster) throws IllegalArgumentException {
+    if (transformation == null) {
+      throw new IllegalArgumentException("The transformation must not be null!");
+    } else if (width < 1 || height < 1) {
+      throw new IllegalArgumentException("The region must be at least 1x1!");
+    } else if (x < 0 || y < 0 || x > raster.getWidth() - width
+        || y > raster.getHeight() - height) {
+      throw new IllegalArgumentException("The region " + width + "x" + height + " at (" + x
+          + ", " + y + ") is not inside the " + raster.getWidth() + "x" + raster.getHeight()
+          + " image!");
+    }
+  }
+
   /**
    * Determines the format referenced by a string.
    *
@@ -0,0 +1,301 @@
+package model;
+
+import java.awt.Image;
+import model.format.IImageFormatUtil;
+import model.raster.IRaster;
+import model.raster.ITileSource;
+import model.raster.IViewRaster;
+import model.raster.PackedRaster;
+import model.raster.RasterUtil;
+import model.transformation.FusedTransformation;
+import model.transformation.ITransformation;
+
+/**
+ * Represents a 2D RGB image with 8-bit colors that is read from a file and transformed one strip
+ * of rows at a time, as its rows are read, so that an image can be converted from one file to
+ * another without ever being held in memory. Exporting a streamed image with a format that writes
+ * rows in order (PPM, PNG) pipes every strip from the source file through the transformations and
+ * straight into the encoder.
+ *
+ * <p>Every strip is transformed together with as many rows above and below it as the chain of
+ * transformations reaches (see {@link ITransformation#getNeighborhoodRadius()}), which are then
+ * cut off again, so the result is the same as transforming the whole image at once. The rows a
+ * strip shares with the next one are kept rather than read again, so reading the image in order
+ * reads every row of the file once. Only the current strip, its border and its transformed pixels
+ * are held in memory. Streamed images should be closed once they are no longer needed, which
+ * closes the file.
+ */
+public class StreamedImageModel implements IViewImageModel, AutoCloseable {
+
+  public static final int DEFAULT_STRIP_HEIGHT = 64;
+
+  private static final int MAX_COLOR_VALUE = 255;
+
+  private final ITileSource source;
+  private final ITransformation transformation;
+  private final int radius;
+  private final int stripHeight;
+  private final IViewRaster raster;
+
+  // the rows of the file around the current strip
+  private int[] window;
+  private int windowTop;
+  private int windowBottom;
+
+  // the transformed window, of which rows stripTop to stripBottom - 1 belong to the strip
+  private IRaster strip;
+  private int stripTop;
+  private int stripBottom;
+
+  /**
+   * Opens an image from a specified file using a given {@link IImageFormatUtil}, to be streamed
+   * through the given transformations in strips of the default height.
+   *
+   * @param filename        the name of the file to import.
+   * @param format          the format to import as.
+   * @param transformations the transformations to apply, in order. May be empty.
+   * @throws IllegalArgumentException if the file cannot be opened, or any of the transformations
+   *                                  is null or does not have a bounded neighborhood.
+   */
+  public StreamedImageModel(String filename, IImageFormatUtil format,
+      ITransformation... transformations) throws IllegalArgumentException {
+    this(filename, format, DEFAULT_STRIP_HEIGHT, transformations);
+  }
+
+  /**
+   * Opens an image from a specified file using a given {@link IImageFormatUtil}, to be streamed
+   * through the given transformations in strips of the given height.
+   *
+   * @param filename        the name of the file to import.
+   * @param format          the format to import as.
+   * @param stripHeight     the number of rows transformed at a time, without the border.
+   * @param transformations the transformations to apply, in order. May be empty.
+   * @throws IllegalArgumentException if the file cannot be opened, the strip height is not
+   *                                  positive, or any of the transformations is null or does not
+   *                                  have a bounded neighborhood.
+   */
+  public StreamedImageModel(String filename, IImageFormatUtil format, int stripHeight,
+      ITransformation... transformations) throws IllegalArgumentException {
+    if (filename == null || format == null || transformations == null) {
+      throw new IllegalArgumentException(
+          "The filename, format and transformations must not be null!");
+    }
+    if (stripHeight < 1) {
+      throw new IllegalArgumentException("The strip height must be positive!");
+    }
+    for (ITransformation transformation : transformations) {
+      if (transformation == null) {
+        throw new IllegalArgumentException("The transformations must not be null!");
+      }
+    }
+    this.transformation = transformations.length == 0 ? null
+        : transformations.length == 1 ? transformations[0]
+            : new FusedTransformation(transformations);
+    this.radius = this.transformation == null ? 0
+        : this.transformation.getNeighborhoodRadius();
+    if (this.radius < 0) {
+      throw new IllegalArgumentException(
+          "Only transformations with a bounded neighborhood can be streamed!");
+    }
+    this.stripHeight = stripHeight;
+    this.source = format.openTileSource(filename);
+    this.raster = new StripRaster();
+  }
+
+  /**
+   * Closes the file this image is read from. Afterwards, the image can no longer be used.
+   */
+  @Override
+  public void close() {
+    this.source.close();
+    this.window = null;
+    this.strip = null;
+  }
+
+  @Override
+  public void exportToFile(String filename, IImageFormatUtil format) {
+    try {
+      format.exportImage(filename, this);
+    } catch (IllegalArgumentException e) {
+      System.out.println("An error occurred.");
+      e.printStackTrace();
+    }
+  }
+
+  @Override
+  public CustomColor getColorAt(int x, int y) {
+    return CustomColor.fromRGB(this.raster.getRGB(x, y));
+  }
+
+  @Override
+  public int getWidth() {
+    return this.source.getWidth();
+  }
+
+  @Override
+  public int getHeight() {
+    return this.source.getHeight();
+  }
+
+  @Override
+  public int minColorValue() {
+    return 0;
+  }
+
+  @Override
+  public int maxColorValue() {
+    return MAX_COLOR_VALUE;
+  }
+
+  @Override
+  public CustomColor[][] asArray() {
+    return RasterUtil.toArray(this.raster);
+  }
+
+  /**
+   * Returns a view of the transformed pixels of this image. Rows are transformed as they are
+   * read, so the view is fastest when read row by row from the top.
+   *
+   * @return a read-only view of the pixels of this image.
+   */
+  @Override
+  public IViewRaster getRaster() {
+    return this.raster;
+  }
+
+  /**
+   * Checks whether the given object is an image of the same size whose colors differ from the
+   * colors of this image by at most 2 per channel.
+   *
+   * @param o the object to compare to.
+   * @return true if the given object is an image that is almost equal to this one.
+   */
+  @Override
+  public boolean almostEquals(Object o) {
+    if (this == o) {
+      return true;
+    }
+    if (!(o instanceof IViewImageModel)) {
+      return false;
+    }
+    IViewImageModel that = (IViewImageModel) o;
+    if (that.maxColorValue() != MAX_COLOR_VALUE || that.getWidth() != this.getWidth()
+        || that.getHeight() != this.getHeight()) {
+      return false;
+    }
+    IViewRaster other = that.getRaster();
+    int delta = 2;
+    for (int y = 0; y < getHeight(); y++) {
+      for (int x = 0; x < getWidth(); x++) {
+        if (Math.abs(this.raster.getRed(x, y) - other.getRed(x, y)) > delta
+            || Math.abs(this.raster.getGreen(x, y) - other.getGreen(x, y)) > delta
+            || Math.abs(this.raster.getBlue(x, y) - other.getBlue(x, y)) > delta) {
+          return false;
+        }
+      }
+    }
+    return true;
+  }
+
+  @Override
+  public Image toImage() throws IllegalArgumentException {
+    return RasterUtil.toImage(this.raster);
+  }
+
+  /**
+   * Makes the strip containing the given row the current strip, transforming it if it is not
+   * already.
+   *
+   * @param y the row to read.
+   * @throws IllegalArgumentException if the row is out of bounds, the file cannot be read, or the
+   *                                  transformations produce an invalid strip.
+   */
+  private void load(int y) throws IllegalArgumentException {
+    if (y >= this.stripTop && y < this.stripBottom && this.strip != null) {
+      return;
+    }
+    int width = this.getWidth();
+    int height = this.getHeight();
+    if (y < 0 || y >= height) {
+      throw new IllegalArgumentException("Row " + y + " is out of bounds!");
+    }
+    int top = y / this.stripHeight * this.stripHeight;
+    int bottom = Math.min(height, top + this.stripHeight);
+    int from = Math.max(0, top - this.radius);
+    int to = Math.min(height, bottom + this.radius);
+
+    int[] window = new int[(to - from) * width];
+    int read = from;
+    if (this.window != null && from >= this.windowTop && from < this.windowBottom) {
+      // the border of the last strip is the top of this one
+      int kept = Math.min(this.windowBottom, to) - from;
+      System.arraycopy(this.window, (from - this.windowTop) * width, window, 0, kept * width);
+      read += kept;
+    }
+    if (read == from) {
+      this.source.readRegion(0, from, width, to - from, window);
+    } else if (read < to) {
+      int[] rows = new int[(to - read) * width];
+      this.source.readRegion(0, read, width, to - read, rows);
+      System.arraycopy(rows, 0, window, (read - from) * width, rows.length);
+    }
+    this.window = window;
+    this.windowTop = from;
+    this.windowBottom = to;
+
+    IRaster pixels = new PackedRaster(width, to - from, window);
+    if (this.transformation != null) {
+      pixels = this.transformation.apply(pixels, MAX_COLOR_VALUE, 0);
+      if (pixels.getWidth() != width || pixels.getHeight() != to - from) {
+        throw new IllegalArgumentException(
+            "A transformation with a bounded neighborhood must keep the image size!");
+      }
+      if (!this.transformation.producesValidRasters()) {
+        ImageUtil.rasterValidation(pixels, MAX_COLOR_VALUE, 0);
+      }
+    }
+    this.strip = pixels;
+    this.stripTop = top;
+    this.stripBottom = bottom;
+  }
+
+  /**
+   * A view of the transformed image that transforms the strip of every row it is asked for.
+   */
+  private class StripRaster implements IViewRaster {
+
+    @Override
+    public int getWidth() {
+      return StreamedImageModel.this.getWidth();
+    }
+
+    @Override
+    public int getHeight() {
+      return StreamedImageModel.this.getHeight();
+    }
+
+    @Override
+    public int getRed(int x, int y) {
+      return (this.getRGB(x, y) >> 16) & 0xFF;
+    }
+
+    @Override
+    public int getGreen(int x, int y) {
+      return (this.getRGB(x, y) >> 8) & 0xFF;
+    }
+
+    @Override
+    public int getBlue(int x, int y) {
+      return this.getRGB(x, y) & 0xFF;
+    }
+
+    @Override
+    public int getRGB(int x, int y) throws IllegalArgumentException {
+      if (x < 0 || x >= this.getWidth()) {
+        throw new IllegalArgumentException("Column " + x + " is out of bounds!");
+      }
+      load(y);
+      return strip.getRGB(x, y - windowTop);
+    }
+  }
+}
@@ -0,0 +1,409 @@
+package model;
+
+import java.awt.Image;
+import java.awt.Rectangle;
+import model.format.IImageFormatUtil;
+import model.raster.IRaster;
+import model.raster.ITileSource;
+import model.raster.IViewRaster;
+import model.raster.PackedRaster;
+import model.raster.RasterUtil;
+import model.raster.TiledRaster;
+import model.transformation.ITransformation;
+
+/**
+ * Represents a 2D RGB image with 8-bit colors that is loaded lazily, for images that do not fit
+ * in memory. Pixels are kept in a {@link TiledRaster}: tiles are decoded from the file on first
+ * access, evicted when the memory budget is exceeded, and spilled to a scratch file if they were
+ * modified.
+ *
+ * <p>Transformations with a bounded neighborhood (see {@link
+ * ITransformation#getNeighborhoodRadius()}) are applied one tile at a time, so blurring and
+ * exporting an image only ever needs a few rows of tiles in memory. Other transformations need
+ * the whole image in memory. Tiled images should be closed once they are no longer needed, which
+ * closes the file and deletes the scratch file.
+ */
+public class TiledImageModel implements IImageModel, AutoCloseable {
+
+  public static final long DEFAULT_MEMORY_BUDGET = 64L << 20;
+
+  private static final int MAX_COLOR_VALUE = 255;
+
+  private final int tileSize;
+  private final long memoryBudget;
+  private final ChangeLog changes = new ChangeLog();
+  private ITileSource source;
+  private TiledRaster raster;
+
+  /**
+   * Opens an image from a specified file using a given {@link IImageFormatUtil}, with the default
+   * tile size and memory budget.
+   *
+   * @param filename the name of the file to import.
+   * @param format   the format to import as.
+   * @throws IllegalArgumentException if the file cannot be opened.
+   */
+  public TiledImageModel(String filename, IImageFormatUtil format)
+      throws IllegalArgumentException {
+    this(filename, format, DEFAULT_MEMORY_BUDGET);
+  }
+
+  /**
+   * Opens an image from a specified file using a given {@link IImageFormatUtil}, with the default
+   * tile size.
+   *
+   * @param filename     the name of the file to import.
+   * @param format       the format to import as.
+   * @param memoryBudget the maximum number of bytes of tiles to keep in memory.
+   * @throws IllegalArgumentException if the file cannot be opened.
+   */
+  public TiledImageModel(String filename, IImageFormatUtil format, long memoryBudget)
+      throws IllegalArgumentException {
+    this(filename, format, TiledRaster.DEFAULT_TILE_SIZE, memoryBudget);
+  }
+
+  /**
+   * Opens an image from a specified file using a given {@link IImageFormatUtil}.
+   *
+   * @param filename     the name of the file to import.
+   * @param format       the format to import as.
+   * @param tileSize     the width and height of a tile.
+   * @param memoryBudget the maximum number of bytes of tiles to keep in memory.
+   * @throws IllegalArgumentException if the file cannot be opened or the tile size is invalid.
+   */
+  public TiledImageModel(String filename, IImageFormatUtil format, int tileSize,
+      long memoryBudget) throws IllegalArgumentException {
+    this(open(filename, format), tileSize, memoryBudget);
+  }
+
+  /**
+   * Creates an image whose tiles are read on demand from the given source, which is closed
+   * together with the image.
+   *
+   * @param source       the source of the pixels of the image.
+   * @param tileSize     the width and height of a tile.
+   * @param memoryBudget the maximum number of bytes of tiles to keep in memory.
+   * @throws IllegalArgumentException if the source is null or the tile size is invalid.
+   */
+  public TiledImageModel(ITileSource source, int tileSize, long memoryBudget)
+      throws IllegalArgumentException {
+    if (source == null) {
+      throw new IllegalArgumentException("The tile source must not be null!");
+    }
+    this.source = source;
+    try {
+      this.raster = new TiledRaster(this.source.getWidth(), this.source.getHeight(), tileSize,
+          memoryBudget, this.source);
+    } catch (IllegalArgumentException e) {
+      this.source.close();
+      throw e;
+    }
+    this.tileSize = tileSize;
+    this.memoryBudget = memoryBudget;
+  }
+
+  /**
+   * Opens a file so that its tiles can be read on demand.
+   *
+   * @param filename the name of the file to import.
+   * @param format   the format to import as.
+   * @return the source of the pixels of the file.
+   * @throws IllegalArgumentException if the file cannot be opened, or the filename or format is
+   *                                  null.
+   */
+  private static ITileSource open(String filename, IImageFormatUtil format)
+      throws IllegalArgumentException {
+    if (filename == null || format == null) {
+      throw new IllegalArgumentException("The filename and format must not be null!");
+    }
+    return format.openTileSource(filename);
+  }
+
+  /**
+   * Gets the width and height of the tiles of this image.
+   *
+   * @return the tile size.
+   */
+  public int getTileSize() {
+    return this.tileSize;
+  }
+
+  /**
+   * Gets the maximum number of bytes of tiles this image keeps in memory.
+   *
+   * @return the memory budget.
+   */
+  public long getMemoryBudget() {
+    return this.memoryBudget;
+  }
+
+  /**
+   * Releases the tiles of this image, closes its file and deletes its scratch file. Afterwards,
+   * the image can no longer be used.
+   */
+  @Override
+  public void close() {
+    this.raster.close();
+    if (this.source != null) {
+      this.source.close();
+      this.source = null;
+    }
+  }
+
+  @Override
+  public void exportToFile(String filename, IImageFormatUtil format) {
+    try {
+      format.exportImage(filename, this);
+    } catch (IllegalArgumentException e) {
+      System.out.println("An error occurred.");
+      e.printStackTrace();
+    }
+  }
+
+  @Override
+  public CustomColor getColorAt(int x, int y) {
+    return CustomColor.fromRGB(this.raster.getRGB(x, y));
+  }
+
+  @Override
+  public int getWidth() {
+    return this.raster.getWidth();
+  }
+
+  @Override
+  public int getHeight() {
+    return this.raster.getHeight();
+  }
+
+  @Override
+  public int minColorValue() {
+    return 0;
+  }
+
+  @Override
+  public int maxColorValue() {
+    return MAX_COLOR_VALUE;
+  }
+
+  @Override
+  public CustomColor[][] asArray() {
+    return RasterUtil.toArray(this.raster);
+  }
+
+  @Override
+  public IViewRaster getRaster() {
+    return this.raster;
+  }
+
+  @Override
+  public IImageModel transform(ITransformation transformation) throws IllegalArgumentException {
+    if (transformation == null) {
+      throw new IllegalArgumentException("The transformation must not be null!");
+    }
+    int radius = transformation.getNeighborhoodRadius();
+    TiledRaster newRaster = radius < 0 ? this.transformWhole(transformation)
+        : this.transformTiles(transformation, radius);
+    this.close();
+    this.raster = newRaster;
+    this.changes.markAll();
+    return this;
+  }
+
+  /**
+   * Transforms only the pixels inside the given rectangle, which is read together with a border
+   * as wide as the neighborhood of the transformation. Only the tiles overlapping the rectangle
+   * and its border are loaded, but the rectangle itself must fit in memory.
+   *
+   * @param transformation the transformation to apply.
+   * @param x              the x-coordinate of the top left corner of the rectangle.
+   * @param y              the y-coordinate of the top left corner of the rectangle.
+   * @param width          the width of the rectangle.
+   * @param height         the height of the rectangle.
+   * @return a reference to this image model, to allow method chaining.
+   * @throws IllegalArgumentException if the transformation is null, the rectangle is empty or
+   *                                  not inside the image, or the transformation does not keep the
+   *                                  size of the rectangle.
+   */
+  @Override
+  public IImageModel transform(ITransformation transformation, int x, int y, int width,
+      int height) throws IllegalArgumentException {
+    ImageUtil.regionValidation(transformation, x, y, width, height, this.raster);
+    int radius = Math.max(0, transformation.getNeighborhoodRadius());
+    int left = Math.max(0, x - radius);
+    int top = Math.max(0, y - radius);
+    int contextWidth = Math.min(this.getWidth(), x + width + radius) - left;
+    int contextHeight = Math.min(this.getHeight(), y + height + radius) - top;
+    int[] context = new int[contextWidth * contextHeight];
+    this.raster.getRegion(left, top, contextWidth, contextHeight, context);
+    IRaster out = transformation.apply(new PackedRaster(contextWidth, contextHeight, context),
+        MAX_COLOR_VALUE, 0);
+    if (out.getWidth() != contextWidth || out.getHeight() != contextHeight) {
+      throw new IllegalArgumentException(
+          "Only transformations that keep the image size can be applied to a region!");
+    }
+    if (!transformation.producesValidRasters()) {
+      ImageUtil.rasterValidation(out, MAX_COLOR_VALUE, 0);
+    }
+    int[] changed = new int[width * height];
+    for (int j = 0; j < height; j++) {
+      for (int i = 0; i < width; i++) {
+        changed[j * width + i] = out.getRGB(x - left + i, y - top + j);
+      }
+    }
+    this.raster.setRegion(x, y, width, height, changed);
+    this.changes.mark(new Rectangle(x, y, width, height));
+    return this;
+  }
+
+  @Override
+  public long getVersion() {
+    return this.changes.getVersion();
+  }
+
+  @Override
+  public Rectangle getChangedRegion(long version) {
+    return this.changes.changedSince(version, this.getWidth(), this.getHeight());
+  }
+
+  /**
+   * Applies a transformation with a bounded neighborhood one tile at a time. Every tile is
+   * transformed together with a border of the given radius, which is then cut off again, so the
+   * result is the same as transforming the whole image at once.
+   *
+   * @param transformation the transformation to apply.
+   * @param radius         the neighborhood radius of the transformation.
+   * @return the transformed image.
+   * @throws IllegalArgumentException if the transformation produces an invalid tile.
+   */
+  private TiledRaster transformTiles(ITransformation transformation, int radius)
+      throws IllegalArgumentException {
+    int width = this.getWidth();
+    int height = this.getHeight();
+    TiledRaster result = new TiledRaster(width, height, this.tileSize, this.memoryBudget, null);
+    try {
+      int[] tile = new int[this.tileSize * this.tileSize];
+      for (int y = 0; y < height; y += this.tileSize) {
+        int tileHeight = Math.min(this.tileSize, height - y);
+        int top = Math.max(0, y - radius);
+        int bottom = Math.min(height, y + tileHeight + radius);
+        for (int x = 0; x < width; x += this.tileSize) {
+          int tileWidth = Math.min(this.tileSize, width - x);
+          int left = Math.max(0, x - radius);
+          int right = Math.min(width, x + tileWidth + radius);
+          int[] region = new int[(right - left) * (bottom - top)];
+          this.raster.getRegion(left, top, right - left, bottom - top, region);
+          IRaster out = transformation.apply(
+              new PackedRaster(right - left, bottom - top, region), MAX_COLOR_VALUE, 0);
+          if (!transformation.producesValidRasters()) {
+            ImageUtil.rasterValidation(out, MAX_COLOR_VALUE, 0);
+          }
+          if (out.getWidth() != right - left || out.getHeight() != bottom - top) {
+            throw new IllegalArgumentException(
+                "A transformation with a bounded neighborhood must keep the image size!");
+          }
+          for (int j = 0; j < tileHeight; j++) {
+            for (int i = 0; i < tileWidth; i++) {
+              tile[j * tileWidth + i] = out.getRGB(x - left + i, y - top + j);
+            }
+          }
+          result.setRegion(x, y, tileWidth, tileHeight, tile);
+        }
+      }
+    } catch (RuntimeException e) {
+      result.close();
+      throw e;
+    }
+    return result;
+  }
+
+  /**
+   * Applies a transformation that needs the whole image, by loading the image into memory.
+   *
+   * @param transformation the transformation to apply.
+   * @return the transformed image.
+   * @throws IllegalArgumentException if the image is too large to be held in memory, or the
+   *                                  transformation produces an invalid image.
+   */
+  private TiledRaster transformWhole(ITransformation transformation)
+      throws IllegalArgumentException {
+    int width = this.getWidth();
+    int height = this.getHeight();
+    if ((long) width * height > Integer.MAX_VALUE - 8) {
+      throw new IllegalArgumentException("This transformation needs the whole image in memory, "
+          + "but a " + width + "x" + height + " image is too large!");
+    }
+    int[] pixels = new int[width * height];
+    this.raster.getRegion(0, 0, width, height, pixels);
+    IRaster out = transformation.apply(new PackedRaster(width, height, pixels),
+        MAX_COLOR_VALUE, 0);
+    if (!transformation.producesValidRasters()) {
+      ImageUtil.rasterValidation(out, MAX_COLOR_VALUE, 0);
+    }
+    TiledRaster result = new TiledRaster(out.getWidth(), out.getHeight(), this.tileSize,
+        this.memoryBudget, null);
+    int[] row = new int[out.getWidth()];
+    for (int y = 0; y < out.getHeight(); y++) {
+      for (int x = 0; x < row.length; x++) {
+        row[x] = out.getRGB(x, y);
+      }
+      result.setRegion(0, y, row.length, 1, row);
+    }
+    return result;
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    if (this == o) {
+      return true;
+    }
+    if (o == null || getClass() != o.getClass()) {
+      return false;
+    }
+    return RasterUtil.sameContent(this.raster, ((TiledImageModel) o).raster);
+  }
+
+  /**
+   * Checks whether the given object is an image of the same size whose colors differ from the
+   * colors of this image by at most 2 per channel. Unlike {@link #equals(Object)}, the other
+   * image can be of any {@link IViewImageModel} type.
+   *
+   * @param o the object to compare to.
+   * @return true if the given object is an image that is almost equal to this one.
+   */
+  @Override
+  public boolean almostEquals(Object o) {
+    if (this == o) {
+      return true;
+    }
+    if (!(o instanceof IViewImageModel)) {
+      return false;
+    }
+    IViewImageModel that = (IViewImageModel) o;
+    if (that.maxColorValue() != MAX_COLOR_VALUE || that.getWidth() != this.getWidth()
+        || that.getHeight() != this.getHeight()) {
+      return false;
+    }
+    IViewRaster other = that.getRaster();
+    int delta = 2;
+    for (int y = 0; y < getHeight(); y++) {
+      for (int x = 0; x < getWidth(); x++) {
+        if (Math.abs(this.raster.getRed(x, y) - other.getRed(x, y)) > delta
+            || Math.abs(this.raster.getGreen(x, y) - other.getGreen(x, y)) > delta
+            || Math.abs(this.raster.getBlue(x, y) - other.getBlue(x, y)) > delta) {
+          return false;
+        }
+      }
+    }
+    return true;
+  }
+
+  @Override
+  public Image toImage() {
+    return RasterUtil.toImage(this.raster);
+  }
+
+  @Override
+  public int hashCode() {
+    return RasterUtil.contentHash(this.raster);
+  }
+}
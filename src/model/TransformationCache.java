@@ -0,0 +1,184 @@
+package model;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import model.raster.IViewRaster;
+import model.raster.PackedRaster;
+import model.raster.SharedRaster;
+
+/**
+ * A cache of the results of transformations, so that applying the same transformation to an
+ * image with the same pixels again, for example when a batch script is run a second time, swaps
+ * in the earlier result instead of computing it. Results are kept under a key made of the {@link
+ * model.transformation.ITransformation#getCacheKey() description} of the transformation and the
+ * {@link model.raster.RasterUtil#fingerprint fingerprint} of the image it was applied to.
+ *
+ * <p>Results are shared with the images they are swapped into, copy-on-write (see {@link
+ * SharedRaster}), so a hit costs no copy. The least recently used results are evicted once the
+ * pixels kept exceed the memory budget. The cache counts its hits and misses, to tell how well it
+ * works for a workflow.
+ */
+public final class TransformationCache {
+
+  public static final long DEFAULT_MEMORY_BUDGET = 128L << 20;
+
+  private static final TransformationCache DEFAULT =
+      new TransformationCache(DEFAULT_MEMORY_BUDGET);
+
+  // least recently used first
+  private final Map<String, SharedRaster> results = new LinkedHashMap<>(16, 0.75f, true);
+  private long memoryBudget;
+  private long size;
+  private long hits;
+  private long misses;
+
+  /**
+   * Creates an empty cache that keeps results up to the given number of bytes.
+   *
+   * @param memoryBudget the maximum number of bytes of pixels to keep, 0 to keep none.
+   * @throws IllegalArgumentException if the memory budget is negative.
+   */
+  public TransformationCache(long memoryBudget) throws IllegalArgumentException {
+    this.setMemoryBudget(memoryBudget);
+  }
+
+  /**
+   * Gets the cache shared by all images in memory.
+   *
+   * @return the default cache.
+   */
+  public static TransformationCache getDefault() {
+    return DEFAULT;
+  }
+
+  /**
+   * Makes the given handle refer to the result cached under the given key, if there is one.
+   *
+   * @param key    the key of the result.
+   * @param raster the handle to make refer to the result.
+   * @return true if the result was cached (a hit), false otherwise (a miss).
+   */
+  public synchronized boolean restore(String key, SharedRaster raster) {
+    SharedRaster result = this.results.get(key);
+    if (result == null) {
+      this.misses++;
+      return false;
+    }
+    this.hits++;
+    raster.set(result);
+    return true;
+  }
+
+  /**
+   * Caches the raster of the given handle under the given key, evicting the least recently used
+   * results if the memory budget is exceeded. Results larger than the whole budget are not
+   * cached.
+   *
+   * @param key    the key of the result.
+   * @param raster the handle referring to the result, which is shared, not copied.
+   */
+  public synchronized void store(String key, SharedRaster raster) {
+    long bytes = sizeOf(raster.get());
+    if (bytes > this.memoryBudget) {
+      return;
+    }
+    SharedRaster old = this.results.put(key, raster.share());
+    if (old != null) {
+      this.size -= sizeOf(old.get());
+      old.close();
+    }
+    this.size += bytes;
+    this.evict();
+  }
+
+  /**
+   * Sets how many bytes of pixels this cache may keep, evicting results if it keeps more.
+   *
+   * @param memoryBudget the maximum number of bytes of pixels to keep, 0 to keep none.
+   * @throws IllegalArgumentException if the memory budget is negative.
+   */
+  public synchronized void setMemoryBudget(long memoryBudget) throws IllegalArgumentException {
+    if (memoryBudget < 0) {
+      throw new IllegalArgumentException("The memory budget must not be negative!");
+    }
+    this.memoryBudget = memoryBudget;
+    this.evict();
+  }
+
+  /**
+   * Gets how many bytes of pixels this cache may keep.
+   *
+   * @return the memory budget, 0 if the cache is disabled.
+   */
+  public synchronized long getMemoryBudget() {
+    return this.memoryBudget;
+  }
+
+  /**
+   * Evicts every result and resets the hit and miss counters.
+   */
+  public synchronized void clear() {
+    for (SharedRaster result : this.results.values()) {
+      result.close();
+    }
+    this.results.clear();
+    this.size = 0;
+    this.hits = 0;
+    this.misses = 0;
+  }
+
+  /**
+   * Gets the number of lookups that found a cached result since this cache was created or
+   * cleared.
+   *
+   * @return the number of hits.
+   */
+  public synchronized long getHits() {
+    return this.hits;
+  }
+
+  /**
+   * Gets the number of lookups that found no cached result since this cache was created or
+   * cleared.
+   *
+   * @return the number of misses.
+   */
+  public synchronized long getMisses() {
+    return this.misses;
+  }
+
+  /**
+   * Gets the number of results kept.
+   *
+   * @return the number of cached results.
+   */
+  public synchronized int getSize() {
+    return this.results.size();
+  }
+
+  /**
+   * Evicts the least recently used results until the memory budget is met.
+   */
+  private void evict() {
+    Iterator<SharedRaster> eldest = this.results.values().iterator();
+    while (this.size > this.memoryBudget && eldest.hasNext()) {
+      SharedRaster result = eldest.next();
+      eldest.remove();
+      this.size -= sizeOf(result.get());
+      result.close();
+    }
+  }
+
+  /**
+   * Estimates the number of bytes taken by the pixels of a raster.
+   *
+   * @param raster the raster.
+   * @return the number of bytes of its pixels.
+   */
+  private static long sizeOf(IViewRaster raster) {
+    long pixels = (long) raster.getWidth() * raster.getHeight();
+    // other rasters keep an int per channel
+    return raster instanceof PackedRaster ? Integer.BYTES * pixels : 3 * Integer.BYTES * pixels;
+  }
+}
@@ -2,6 +2,9 @@ package model.format;
 
 import model.CustomColor;
 import model.IViewImageModel;
+import model.raster.ITileSource;
+import model.raster.RasterTileSource;
+import model.raster.RasterUtil;
 
 /**
  * Utility interface that provides methods for importing and exporting a particular file format.
@@ -26,4 +29,17 @@ public interface IImageFormatUtil {
    * @throws IllegalArgumentException if the file reading operation fails.
    */
   CustomColor[][] importImage(String filename) throws IllegalArgumentException;
+
+  /**
+   * Opens a file so that regions of it can be read on demand, for images that are too large to
+   * be imported at once. By default, the whole image is imported and served from memory; formats
+   * that can decode parts of a file should override this.
+   *
+   * @param filename the location to read the file from.
+   * @return a source of the pixels of the file, which must be closed after use.
+   * @throws IllegalArgumentException if the file cannot be opened.
+   */
+  default ITileSource openTileSource(String filename) throws IllegalArgumentException {
+    return new RasterTileSource(RasterUtil.fromArray(this.importImage(filename), 255));
+  }
 }
@@ -1,11 +1,13 @@
 package model.format;
 
-import java.awt.Color;
 import java.awt.image.BufferedImage;
+import java.awt.image.RenderedImage;
 import java.io.File;
 import java.io.IOException;
 import model.CustomColor;
 import model.IViewImageModel;
+import model.raster.ITileSource;
+import model.raster.IViewRaster;
 
 /**
  * An abstract class that uses Java's built in {@link javax.imageio.ImageIO} class to import and
@@ -24,7 +26,7 @@ public abstract class ImageIOFormat implements IImageFormatUtil {
       CustomColor[][] pixels = new CustomColor[im.getHeight()][im.getWidth()];
       for (int y = 0; y < pixels.length; y++) {
         for (int x = 0; x < pixels[y].length; x++) {
-          pixels[y][x] = new CustomColor(new Color(im.getRGB(x, y)));
+          pixels[y][x] = CustomColor.fromRGB(im.getRGB(x, y));
         }
       }
       return pixels;
@@ -34,16 +36,14 @@ public abstract class ImageIOFormat implements IImageFormatUtil {
     }
   }
 
+  @Override
+  public ITileSource openTileSource(String filename) throws IllegalArgumentException {
+    return new ImageIOTileSource(filename);
+  }
+
   @Override
   public void exportImage(String filename, IViewImageModel image) throws IllegalArgumentException {
-    BufferedImage im = new BufferedImage(image.getWidth(), image.getHeight(),
-        BufferedImage.TYPE_INT_RGB);
-    for (int y = 0; y < image.getHeight(); y++) {
-      for (int x = 0; x < image.getWidth(); x++) {
-        CustomColor c = image.getColorAt(x, y);
-        im.setRGB(x, y, new Color(c.getRed(), c.getGreen(), c.getBlue()).getRGB());
-      }
-    }
+    RenderedImage im = this.createExportImage(image.getRaster());
     try {
       javax.imageio.ImageIO.write(im, this.getFormatString(), new File(filename));
     } catch (IOException e) {
@@ -51,5 +51,25 @@ public abstract class ImageIOFormat implements IImageFormatUtil {
     }
   }
 
+  /**
+   * Creates the image handed to {@link javax.imageio.ImageIO} when exporting. By default, the
+   * raster is copied into a {@link BufferedImage}; formats whose writer only reads a few rows at a
+   * time can return a view of the raster instead.
+   *
+   * @param raster the pixels of the image to export.
+   * @return an 8-bit RGB image with the contents of the raster.
+   * @throws IllegalArgumentException if a channel of the raster is not between 0 and 255.
+   */
+  protected RenderedImage createExportImage(IViewRaster raster) throws IllegalArgumentException {
+    BufferedImage im = new BufferedImage(raster.getWidth(), raster.getHeight(),
+        BufferedImage.TYPE_INT_RGB);
+    for (int y = 0; y < raster.getHeight(); y++) {
+      for (int x = 0; x < raster.getWidth(); x++) {
+        im.setRGB(x, y, raster.getRGB(x, y));
+      }
+    }
+    return im;
+  }
+
   protected abstract String getFormatString();
 }
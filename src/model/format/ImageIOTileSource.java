@@ -0,0 +1,100 @@
+package model.format;
+
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.util.Iterator;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+import model.raster.ITileSource;
+
+/**
+ * An {@link ITileSource} that decodes regions of a file with an {@link ImageReader}, so only the
+ * requested region is ever held in memory. How much of the file has to be decoded to reach a
+ * region depends on the reader; PNG and JPEG files are decoded up to the last requested row.
+ */
+class ImageIOTileSource implements ITileSource {
+
+  private final String filename;
+  private final ImageInputStream stream;
+  private final ImageReader reader;
+  private final int width;
+  private final int height;
+
+  /**
+   * Opens an image file and reads its size.
+   *
+   * @param filename the file to open.
+   * @throws IllegalArgumentException if the file cannot be read or no reader supports it.
+   */
+  ImageIOTileSource(String filename) throws IllegalArgumentException {
+    this.filename = filename;
+    try {
+      this.stream = ImageIO.createImageInputStream(new File(filename));
+      if (this.stream == null) {
+        throw new IOException("Can't open the file");
+      }
+    } catch (IOException e) {
+      throw new IllegalArgumentException(
+          "Failed to read the given file " + filename + ": " + e.getMessage());
+    }
+    Iterator<ImageReader> readers = ImageIO.getImageReaders(this.stream);
+    if (!readers.hasNext()) {
+      this.close();
+      throw new IllegalArgumentException(
+          "Failed to read the given file " + filename + ": Invalid file format!");
+    }
+    this.reader = readers.next();
+    this.reader.setInput(this.stream, false, true);
+    try {
+      this.width = this.reader.getWidth(0);
+      this.height = this.reader.getHeight(0);
+    } catch (IOException e) {
+      this.close();
+      throw new IllegalArgumentException(
+          "Failed to read the given file " + filename + ": " + e.getMessage());
+    }
+  }
+
+  @Override
+  public int getWidth() {
+    return this.width;
+  }
+
+  @Override
+  public int getHeight() {
+    return this.height;
+  }
+
+  @Override
+  public synchronized void readRegion(int x, int y, int width, int height, int[] rgb)
+      throws IllegalArgumentException {
+    ImageReadParam param = this.reader.getDefaultReadParam();
+    param.setSourceRegion(new Rectangle(x, y, width, height));
+    try {
+      BufferedImage region = this.reader.read(0, param);
+      region.getRGB(0, 0, width, height, rgb, 0, width);
+    } catch (IOException e) {
+      throw new IllegalArgumentException(
+          "Failed to read the given file " + this.filename + ": " + e.getMessage());
+    }
+    for (int i = 0; i < width * height; i++) {
+      rgb[i] &= 0xFFFFFF;
+    }
+  }
+
+  @Override
+  public void close() {
+    if (this.reader != null) {
+      this.reader.dispose();
+    }
+    try {
+      this.stream.close();
+    } catch (IOException e) {
+      // nothing left to release
+    }
+  }
+}
@@ -1,5 +1,8 @@
 package model.format;
 
+import java.awt.image.RenderedImage;
+import model.raster.IViewRaster;
+
 /**
  * Represents PNG image format. Extends from the {@link ImageIOFormat} class to provide the PNG
  * format string so {@link javax.imageio.ImageIO} knows what format to import as.
@@ -10,4 +13,13 @@ public class PNGFormat extends ImageIOFormat {
   protected String getFormatString() {
     return "png";
   }
+
+  /**
+   * Exports a view of the raster, since the PNG writer encodes the image a row at a time and so
+   * never needs a copy of the whole image.
+   */
+  @Override
+  protected RenderedImage createExportImage(IViewRaster raster) {
+    return new RasterRenderedImage(raster);
+  }
 }
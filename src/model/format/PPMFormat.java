@@ -1,10 +1,14 @@
 package model.format;
 
+import java.io.BufferedWriter;
 import java.io.FileWriter;
 import java.io.IOException;
+import java.io.Writer;
 import model.CustomColor;
 import model.IViewImageModel;
 import model.ImageUtil;
+import model.raster.ITileSource;
+import model.raster.IViewRaster;
 
 /**
  * Utility class that provides method for importing and exporting PPM files.
@@ -13,19 +17,17 @@ public class PPMFormat implements IImageFormatUtil {
 
   @Override
   public void exportImage(String filename, IViewImageModel image) throws IllegalArgumentException {
-    try {
-      FileWriter myImage = new FileWriter(filename);
+    IViewRaster raster = image.getRaster();
+    try (Writer myImage = new BufferedWriter(new FileWriter(filename))) {
       myImage.write("P3\n");
       myImage.write(image.getWidth() + " " + image.getHeight() + "\n");
       myImage.write(image.maxColorValue() + "\n");
       for (int i = 0; i < image.getHeight(); i++) {
         for (int j = 0; j < image.getWidth(); j++) {
-          CustomColor pix = image.getColorAt(j, i);
-          myImage.write(pix.getRed() + "\n" + pix.getGreen()
-              + "\n" + pix.getBlue() + "\n");
+          myImage.write(raster.getRed(j, i) + "\n" + raster.getGreen(j, i)
+              + "\n" + raster.getBlue(j, i) + "\n");
         }
       }
-      myImage.close();
     } catch (IOException e) {
       throw new IllegalArgumentException("Failed to export image!");
     }
@@ -35,4 +37,9 @@ public class PPMFormat implements IImageFormatUtil {
   public CustomColor[][] importImage(String filename) throws IllegalArgumentException {
     return ImageUtil.readPPM(filename);
   }
+
+  @Override
+  public ITileSource openTileSource(String filename) throws IllegalArgumentException {
+    return new PPMTileSource(filename);
+  }
 }
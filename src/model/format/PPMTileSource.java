@@ -0,0 +1,261 @@
+package model.format;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import model.raster.ITileSource;
+
+/**
+ * An {@link ITileSource} reading regions of a plain (P3) PPM file without decoding the whole
+ * image. Opening the source scans the file once to remember where every row starts; a region is
+ * then read by seeking to the start of each of its rows. Like {@link model.ImageUtil#readPPM},
+ * lines starting with '#' are treated as comments.
+ */
+class PPMTileSource implements ITileSource {
+
+  private final String filename;
+  private final RandomAccessFile file;
+  private final int width;
+  private final int height;
+  private final long[] rowOffsets;
+
+  /**
+   * A whitespace-separated token reader over a file channel that keeps track of its byte
+   * position.
+   */
+  private static class Tokenizer {
+
+    private final ReadableByteChannel in;
+    private final ByteBuffer buffer;
+    private long position;
+    private boolean lineStart;
+
+    /**
+     * Creates a tokenizer reading from the given channel.
+     *
+     * @param in       the channel to read from.
+     * @param position the position of the channel in the file.
+     */
+    Tokenizer(ReadableByteChannel in, long position) {
+      this.in = in;
+      this.buffer = ByteBuffer.allocate(1 << 16);
+      this.buffer.flip();
+      this.position = position;
+      this.lineStart = true;
+    }
+
+    /**
+     * Gets the next byte without consuming it.
+     *
+     * @return the next byte, or -1 at the end of the file.
+     * @throws IOException if the file cannot be read.
+     */
+    private int peek() throws IOException {
+      while (!this.buffer.hasRemaining()) {
+        this.buffer.clear();
+        int read = this.in.read(this.buffer);
+        this.buffer.flip();
+        if (read < 0) {
+          return -1;
+        }
+      }
+      return this.buffer.get(this.buffer.position()) & 0xFF;
+    }
+
+    /**
+     * Consumes the byte returned by the last call to {@link #peek()}.
+     */
+    private void advance() {
+      this.buffer.position(this.buffer.position() + 1);
+      this.position++;
+    }
+
+    /**
+     * Skips whitespace and comment lines, stopping before the first byte of the next token.
+     *
+     * @return the first byte of the next token, or -1 at the end of the file.
+     * @throws IOException if the file cannot be read.
+     */
+    int skipToToken() throws IOException {
+      while (true) {
+        int c = this.peek();
+        if (c < 0) {
+          return -1;
+        } else if (c == '#' && this.lineStart) {
+          while (c >= 0 && c != '\n') {
+            this.advance();
+            c = this.peek();
+          }
+        } else if (Character.isWhitespace(c)) {
+          this.advance();
+          this.lineStart = c == '\n' || c == '\r';
+        } else {
+          return c;
+        }
+      }
+    }
+
+    /**
+     * Reads the next token as a string.
+     *
+     * @return the next token.
+     * @throws IOException if the file cannot be read or has ended.
+     */
+    String next() throws IOException {
+      int c = this.skipToToken();
+      if (c < 0) {
+        throw new IOException("Unexpected end of file");
+      }
+      StringBuilder token = new StringBuilder();
+      while (c >= 0 && !Character.isWhitespace(c)) {
+        token.append((char) c);
+        this.advance();
+        c = this.peek();
+      }
+      this.lineStart = false;
+      return token.toString();
+    }
+
+    /**
+     * Skips the next token.
+     *
+     * @throws IOException if the file cannot be read or has ended.
+     */
+    void skip() throws IOException {
+      int c = this.skipToToken();
+      if (c < 0) {
+        throw new IOException("Unexpected end of file");
+      }
+      while (c >= 0 && !Character.isWhitespace(c)) {
+        this.advance();
+        c = this.peek();
+      }
+      this.lineStart = false;
+    }
+
+    /**
+     * Reads the next token as a non-negative integer, without allocating a string for it.
+     *
+     * @return the value of the next token.
+     * @throws IOException if the file cannot be read, has ended or the token is not a number.
+     */
+    int nextInt() throws IOException {
+      int c = this.skipToToken();
+      if (c < 0) {
+        throw new IOException("Unexpected end of file");
+      }
+      int value = 0;
+      int digits = 0;
+      while (c >= 0 && !Character.isWhitespace(c)) {
+        if (c < '0' || c > '9' || digits >= 9) {
+          throw new IOException("Invalid number at byte " + this.position);
+        }
+        value = value * 10 + (c - '0');
+        digits++;
+        this.advance();
+        c = this.peek();
+      }
+      this.lineStart = false;
+      return value;
+    }
+  }
+
+  /**
+   * Opens a PPM file and indexes the start of every row.
+   *
+   * @param filename the file to open.
+   * @throws IllegalArgumentException if the file does not exist or is not a valid P3 PPM file.
+   */
+  PPMTileSource(String filename) throws IllegalArgumentException {
+    this.filename = filename;
+    try {
+      this.file = new RandomAccessFile(filename, "r");
+    } catch (IOException e) {
+      throw new IllegalArgumentException("The provided file " + filename + " doesn't exist!");
+    }
+    try {
+      Tokenizer tokens = this.tokenizer(0);
+      if (!tokens.next().equals("P3")) {
+        throw new IOException("plain RAW file should begin with P3");
+      }
+      this.width = tokens.nextInt();
+      this.height = tokens.nextInt();
+      tokens.nextInt();
+      if (this.width < 1 || this.height < 1) {
+        throw new IOException("the image must be at least 1x1");
+      }
+      this.rowOffsets = new long[this.height];
+      for (int y = 0; y < this.height; y++) {
+        tokens.skipToToken();
+        this.rowOffsets[y] = tokens.position;
+        for (long i = 0; i < this.width * 3L; i++) {
+          tokens.skip();
+        }
+      }
+    } catch (IOException e) {
+      this.close();
+      throw new IllegalArgumentException("Invalid PPM file " + filename + ": " + e.getMessage());
+    }
+  }
+
+  /**
+   * Creates a buffered tokenizer starting at the given position of the file.
+   *
+   * @param position the byte offset to start reading from.
+   * @return a tokenizer reading from the file.
+   * @throws IOException if the file cannot be read.
+   */
+  private Tokenizer tokenizer(long position) throws IOException {
+    this.file.getChannel().position(position);
+    return new Tokenizer(this.file.getChannel(), position);
+  }
+
+  @Override
+  public int getWidth() {
+    return this.width;
+  }
+
+  @Override
+  public int getHeight() {
+    return this.height;
+  }
+
+  @Override
+  public synchronized void readRegion(int x, int y, int width, int height, int[] rgb)
+      throws IllegalArgumentException {
+    try {
+      Tokenizer tokens = null;
+      for (int row = 0; row < height; row++) {
+        // a region ending at the right edge continues right at the start of the next row
+        if (tokens == null || x + width != this.width) {
+          tokens = this.tokenizer(this.rowOffsets[y + row]);
+        }
+        for (long i = 0; i < x * 3L; i++) {
+          tokens.skip();
+        }
+        for (int col = 0; col < width; col++) {
+          int red = tokens.nextInt();
+          int green = tokens.nextInt();
+          int blue = tokens.nextInt();
+          if (red > 255 || green > 255 || blue > 255) {
+            throw new IOException("color values must not be greater than 255");
+          }
+          rgb[row * width + col] = (red << 16) | (green << 8) | blue;
+        }
+      }
+    } catch (IOException e) {
+      throw new IllegalArgumentException(
+          "Failed to read the given file " + this.filename + ": " + e.getMessage());
+    }
+  }
+
+  @Override
+  public void close() {
+    try {
+      this.file.close();
+    } catch (IOException e) {
+      // nothing left to release
+    }
+  }
+}
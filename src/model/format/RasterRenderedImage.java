@@ -0,0 +1,192 @@
+package model.format;
+
+import java.awt.Image;
+import java.awt.Point;
+import java.awt.Rectangle;
+import java.awt.image.ColorModel;
+import java.awt.image.DataBuffer;
+import java.awt.image.DataBufferInt;
+import java.awt.image.DirectColorModel;
+import java.awt.image.Raster;
+import java.awt.image.RenderedImage;
+import java.awt.image.SampleModel;
+import java.awt.image.WritableRaster;
+import java.util.Vector;
+import model.raster.IViewRaster;
+import model.raster.TiledRaster;
+
+/**
+ * A {@link RenderedImage} view of an {@link IViewRaster} in the layout of a {@link
+ * java.awt.image.BufferedImage#TYPE_INT_RGB} image. Pixels are only converted when a region of
+ * the image is requested, so writers that encode an image a few rows at a time (such as the PNG
+ * writer) never need a copy of the whole image.
+ */
+class RasterRenderedImage implements RenderedImage {
+
+  private static final int[] MASKS = {0xFF0000, 0xFF00, 0xFF};
+
+  private final IViewRaster raster;
+  private final ColorModel colorModel;
+
+  /**
+   * Creates a view of the given raster. The raster is not copied.
+   *
+   * @param raster the raster to view.
+   */
+  RasterRenderedImage(IViewRaster raster) {
+    this.raster = raster;
+    this.colorModel = new DirectColorModel(24, MASKS[0], MASKS[1], MASKS[2]);
+  }
+
+  @Override
+  public Vector<RenderedImage> getSources() {
+    return null;
+  }
+
+  @Override
+  public Object getProperty(String name) {
+    return Image.UndefinedProperty;
+  }
+
+  @Override
+  public String[] getPropertyNames() {
+    return null;
+  }
+
+  @Override
+  public ColorModel getColorModel() {
+    return this.colorModel;
+  }
+
+  @Override
+  public SampleModel getSampleModel() {
+    return this.colorModel.createCompatibleSampleModel(this.getWidth(), this.getHeight());
+  }
+
+  @Override
+  public int getWidth() {
+    return this.raster.getWidth();
+  }
+
+  @Override
+  public int getHeight() {
+    return this.raster.getHeight();
+  }
+
+  @Override
+  public int getMinX() {
+    return 0;
+  }
+
+  @Override
+  public int getMinY() {
+    return 0;
+  }
+
+  @Override
+  public int getNumXTiles() {
+    return 1;
+  }
+
+  @Override
+  public int getNumYTiles() {
+    return 1;
+  }
+
+  @Override
+  public int getMinTileX() {
+    return 0;
+  }
+
+  @Override
+  public int getMinTileY() {
+    return 0;
+  }
+
+  @Override
+  public int getTileWidth() {
+    return this.getWidth();
+  }
+
+  @Override
+  public int getTileHeight() {
+    return this.getHeight();
+  }
+
+  @Override
+  public int getTileGridXOffset() {
+    return 0;
+  }
+
+  @Override
+  public int getTileGridYOffset() {
+    return 0;
+  }
+
+  @Override
+  public Raster getTile(int tileX, int tileY) {
+    return this.getData();
+  }
+
+  @Override
+  public Raster getData() {
+    return this.getData(new Rectangle(0, 0, this.getWidth(), this.getHeight()));
+  }
+
+  @Override
+  public Raster getData(Rectangle rect) {
+    WritableRaster result = Raster.createPackedRaster(DataBuffer.TYPE_INT, rect.width,
+        rect.height, MASKS, new Point(rect.x, rect.y));
+    this.fill(result, rect.x, rect.y, rect.width, rect.height);
+    return result;
+  }
+
+  @Override
+  public WritableRaster copyData(WritableRaster raster) {
+    if (raster == null) {
+      return (WritableRaster) this.getData();
+    }
+    Rectangle rect = raster.getBounds().intersection(
+        new Rectangle(0, 0, this.getWidth(), this.getHeight()));
+    if (!rect.isEmpty()) {
+      int[] rgb = new int[rect.width * rect.height];
+      this.read(rect.x, rect.y, rect.width, rect.height, rgb);
+      raster.setDataElements(rect.x, rect.y, rect.width, rect.height, rgb);
+    }
+    return raster;
+  }
+
+  /**
+   * Fills a freshly created packed raster with a region of the image.
+   *
+   * @param result the raster to fill, whose bounds are the given region.
+   * @param x      the x-coordinate of the top left corner of the region.
+   * @param y      the y-coordinate of the top left corner of the region.
+   * @param width  the width of the region.
+   * @param height the height of the region.
+   */
+  private void fill(WritableRaster result, int x, int y, int width, int height) {
+    this.read(x, y, width, height, ((DataBufferInt) result.getDataBuffer()).getData());
+  }
+
+  /**
+   * Reads a region of the image as packed 0xRRGGBB pixels.
+   *
+   * @param x      the x-coordinate of the top left corner of the region.
+   * @param y      the y-coordinate of the top left corner of the region.
+   * @param width  the width of the region.
+   * @param height the height of the region.
+   * @param rgb    the array to write to, row-major with a stride of width.
+   */
+  private void read(int x, int y, int width, int height, int[] rgb) {
+    if (this.raster instanceof TiledRaster) {
+      ((TiledRaster) this.raster).getRegion(x, y, width, height, rgb);
+      return;
+    }
+    for (int j = 0; j < height; j++) {
+      for (int i = 0; i < width; i++) {
+        rgb[j * width + i] = this.raster.getRGB(x + i, y + j);
+      }
+    }
+  }
+}
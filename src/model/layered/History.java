@@ -0,0 +1,706 @@
+package model.layered;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+import model.IImageModel;
+import model.ImageModelImpl;
+import model.TiledImageModel;
+import model.raster.DirectRasterFactory;
+import model.raster.IRaster;
+import model.raster.IRasterFactory;
+import model.raster.IViewRaster;
+import model.raster.RasterTileSource;
+import model.raster.RasterUtil;
+
+/**
+ * The undo and redo history of a {@link LayerImageModel}: a list of the states (frames) the
+ * model went through, and a cursor at the frame the model is in.
+ *
+ * <p>A frame records the layers and the current layer, but not full copies of the images.
+ * Images that did not change between frames are shared by them. Images of the frame the model is
+ * in and of the frames right before and after it are kept as copies sharing their pixels with
+ * the images they were taken from (see {@link model.raster.SharedRaster}), so undoing and
+ * redoing a single step swaps rasters and costs nothing. Images of frames further away are
+ * compressed: each is stored as the deflated XOR of its pixels and those of a kept image of the
+ * same layer, cut down to the rectangle in which they differ. A transformation of a region is
+ * stored in a few bytes, and even a blur of the whole image compresses well, as the XOR of
+ * similar colors is mostly 0 bits. Images that no kept image can be compared to are deflated as
+ * they are.
+ *
+ * <p>Once the stored frames take more than the memory budget, the oldest are dropped. A raster
+ * kept by several states is counted once, and not at all if the model still shows it. States of
+ * images whose transformations are deferred are not compressed, but keep the raster the
+ * transformations start from, which is counted like any other.
+ */
+final class History {
+
+  public static final long DEFAULT_MEMORY_BUDGET = 256L << 20;
+
+  private static final int MAX_COLOR_VALUE = 255;
+  // the number of pixels compressed or restored at a time
+  private static final int STRIP_PIXELS = 1 << 20;
+
+  private final List<Frame> frames = new ArrayList<>();
+  private int cursor = -1;
+  private long memoryBudget = DEFAULT_MEMORY_BUDGET;
+
+  /**
+   * Records the state the model is in after an operation, dropping the frames that could have
+   * been redone.
+   *
+   * @param layers  the layers of the model.
+   * @param current the index of the current layer.
+   */
+  void record(List<ILayer> layers, int current) {
+    Frame frame = this.capture(layers, current);
+    this.frames.subList(this.cursor + 1, this.frames.size()).clear();
+    this.frames.add(frame);
+    this.cursor++;
+    this.compact();
+  }
+
+  /**
+   * Checks whether there is a frame before the one the model is in.
+   *
+   * @return true if a step can be undone.
+   */
+  boolean canUndo() {
+    return this.cursor > 0;
+  }
+
+  /**
+   * Checks whether there is a frame after the one the model is in.
+   *
+   * @return true if a step can be redone.
+   */
+  boolean canRedo() {
+    return this.cursor < this.frames.size() - 1;
+  }
+
+  /**
+   * Moves to the frame before the one the model is in.
+   *
+   * @return the frame to restore the model to.
+   * @throws IllegalArgumentException if there is nothing to undo.
+   */
+  Frame undo() throws IllegalArgumentException {
+    if (!this.canUndo()) {
+      throw new IllegalArgumentException("There is nothing to undo!");
+    }
+    return this.moveTo(this.cursor - 1);
+  }
+
+  /**
+   * Moves to the frame after the one the model is in.
+   *
+   * @return the frame to restore the model to.
+   * @throws IllegalArgumentException if there is nothing to redo.
+   */
+  Frame redo() throws IllegalArgumentException {
+    if (!this.canRedo()) {
+      throw new IllegalArgumentException("There is nothing to redo!");
+    }
+    return this.moveTo(this.cursor + 1);
+  }
+
+  /**
+   * Sets how many bytes the frames other than the one the model is in may take, dropping the
+   * oldest frames if they take more.
+   *
+   * @param memoryBudget the maximum number of bytes.
+   * @throws IllegalArgumentException if the memory budget is negative.
+   */
+  void setMemoryBudget(long memoryBudget) throws IllegalArgumentException {
+    if (memoryBudget < 0) {
+      throw new IllegalArgumentException("The memory budget must not be negative!");
+    }
+    this.memoryBudget = memoryBudget;
+    this.compact();
+  }
+
+  /**
+   * Gets the number of bytes the frames other than the one the model is in take.
+   *
+   * @return the memory used by the history.
+   */
+  long getMemoryUsed() {
+    // states and rasters already counted, or shared with the model and not counted at all
+    Map<Object, Boolean> counted = new IdentityHashMap<>();
+    for (ImageState state : this.frames.get(this.cursor).images) {
+      counted.put(state, false);
+      if (state != null && state.snapshot != null) {
+        counted.put(state.kept(), false);
+      }
+    }
+    long bytes = 0;
+    for (Frame frame : this.frames) {
+      for (ImageState state : frame.images) {
+        // bases of compressed images are kept even once their frame is dropped
+        for (ImageState s = state; s != null && !counted.containsKey(s); s = s.base) {
+          counted.put(s, true);
+          bytes += s.size(counted);
+        }
+      }
+    }
+    return bytes;
+  }
+
+  /**
+   * Moves the cursor to another frame and makes the images of that frame the live images of the
+   * model.
+   *
+   * @param index the index of the frame.
+   * @return the frame.
+   */
+  private Frame moveTo(int index) {
+    this.cursor = index;
+    Frame frame = this.frames.get(index);
+    for (ImageState state : frame.images) {
+      if (state != null) {
+        state.revive();
+      }
+    }
+    this.compact();
+    return frame;
+  }
+
+  /**
+   * Records the layers of the model in a frame. Images that did not change since the frame the
+   * model was in are shared with that frame.
+   *
+   * @param layers  the layers of the model.
+   * @param current the index of the current layer.
+   * @return the new frame.
+   */
+  private Frame capture(List<ILayer> layers, int current) {
+    List<ImageState> last = this.cursor < 0 ? new ArrayList<>()
+        : this.frames.get(this.cursor).images;
+    List<ImageState> images = new ArrayList<>();
+    boolean[] transparent = new boolean[layers.size()];
+    for (int i = 0; i < layers.size(); i++) {
+      ILayer layer = layers.get(i);
+      transparent[i] = layer.isTransparent();
+      if (!layer.isLoaded()) {
+        images.add(null);
+        continue;
+      }
+      IImageModel image = layer.getImage();
+      ImageState state = null;
+      for (ImageState old : last) {
+        if (old != null && old.live == image) {
+          state = old.version == image.getVersion() ? old : new ImageState(image, old.lineage);
+          break;
+        }
+      }
+      images.add(state == null ? new ImageState(image, new Object()) : state);
+    }
+    return new Frame(images, transparent, current);
+  }
+
+  /**
+   * Compresses the images of frames that are more than one step away from the model, and drops
+   * the oldest frames (or, if there are none, the newest) while the history takes more than its
+   * memory budget.
+   */
+  private void compact() {
+    Map<ImageState, Boolean> near = new IdentityHashMap<>();
+    for (int i = Math.max(0, this.cursor - 1); i <= Math.min(this.frames.size() - 1,
+        this.cursor + 1); i++) {
+      for (ImageState state : this.frames.get(i).images) {
+        near.put(state, true);
+      }
+    }
+    for (int i = 0; i < this.frames.size(); i++) {
+      for (ImageState state : this.frames.get(i).images) {
+        if (state != null && state.snapshot != null && !state.isDeferred()
+            && !near.containsKey(state)) {
+          state.compress(this.findBase(state, i));
+        }
+      }
+    }
+    while (this.frames.size() > 1 && this.getMemoryUsed() > this.memoryBudget) {
+      if (this.cursor > 0) {
+        this.frames.remove(0);
+        this.cursor--;
+      } else {
+        this.frames.remove(this.frames.size() - 1);
+      }
+    }
+  }
+
+  /**
+   * Finds an uncompressed image of the same layer as the given image, of the same size and with
+   * all its transformations applied, in the frames between the given one and the frame the model
+   * is in, the nearest first.
+   *
+   * @param state the image to compress.
+   * @param index the index of a frame containing the image.
+   * @return the image to store the given image as a difference to, or null if there is none.
+   */
+  private ImageState findBase(ImageState state, int index) {
+    int step = index < this.cursor ? 1 : -1;
+    for (int i = index + step; i >= 0 && i < this.frames.size(); i += step) {
+      for (ImageState other : this.frames.get(i).images) {
+        if (other != null && other != state && other.lineage == state.lineage
+            && other.snapshot != null && !other.isDeferred()
+            && other.snapshot.getWidth() == state.snapshot.getWidth()
+            && other.snapshot.getHeight() == state.snapshot.getHeight()) {
+          return other;
+        }
+      }
+      if (i == this.cursor) {
+        break;
+      }
+    }
+    return null;
+  }
+
+  /**
+   * A state of the model: its layers, with the images they showed, and its current layer.
+   */
+  static final class Frame {
+
+    private final List<ImageState> images;
+    private final boolean[] transparent;
+    private final int current;
+
+    /**
+     * Creates a frame.
+     *
+     * @param images      the image of every layer, or null for an empty layer.
+     * @param transparent the transparency of every layer.
+     * @param current     the index of the current layer.
+     */
+    private Frame(List<ImageState> images, boolean[] transparent, int current) {
+      this.images = images;
+      this.transparent = transparent;
+      this.current = current;
+    }
+
+    /**
+     * Creates the layers of this frame, with new images restored from the history. The images
+     * become the live images of the model.
+     *
+     * @return the layers.
+     */
+    List<ILayer> toLayers() {
+      List<ILayer> layers = new ArrayList<>();
+      for (int i = 0; i < this.images.size(); i++) {
+        ImageState state = this.images.get(i);
+        layers.add(state == null ? new EmptyLayer()
+            : new LayerImpl(state.restore(), this.transparent[i]));
+      }
+      return layers;
+    }
+
+    /**
+     * Gets the index of the current layer in this frame.
+     *
+     * @return the index of the current layer.
+     */
+    int getCurrent() {
+      return this.current;
+    }
+  }
+
+  /**
+   * The pixels of an image at one point of the history, either as a copy sharing the pixels of
+   * the image, or compressed. Pixels are compressed and restored a strip of rows at a time, and
+   * restored into the storage the image was kept in, so images stored off-heap or in tiles are
+   * never held on the heap as a whole.
+   */
+  private static final class ImageState {
+
+    // shared by all states of the image of one layer, which can be stored as differences
+    private final Object lineage;
+    // where the pixels of the image are stored, and whether it defers its transformations
+    private final IRasterFactory factory;
+    private final boolean defers;
+    // the tile size and memory budget of a tiled image, 0 for other images
+    private final int tileSize;
+    private final long tileBudget;
+    // the size of the compressed pixels
+    private int width;
+    private int height;
+
+    // the image of the model showing these pixels, and its version when it showed them
+    private IImageModel live;
+    private long version;
+
+    // either a copy of the pixels, or compressed pixels
+    private ImageModelImpl snapshot;
+    private byte[] deflated;
+    // the image the compressed pixels are the XOR with, null if they are the pixels themselves
+    private ImageState base;
+    // the rectangle of the compressed pixels
+    private int left;
+    private int top;
+    private int right;
+    private int bottom;
+
+    /**
+     * Records the pixels an image shows now. The pixels of an {@link ImageModelImpl} are shared
+     * with it. Tiled images change in place, so their pixels are copied, off the heap.
+     *
+     * @param image   the image.
+     * @param lineage the lineage of the layer showing the image.
+     */
+    ImageState(IImageModel image, Object lineage) {
+      this.lineage = lineage;
+      this.live = image;
+      this.version = image.getVersion();
+      if (image instanceof TiledImageModel) {
+        TiledImageModel tiled = (TiledImageModel) image;
+        this.factory = new DirectRasterFactory();
+        this.tileSize = tiled.getTileSize();
+        this.tileBudget = tiled.getMemoryBudget();
+        IRaster copy = RasterUtil.fromTileSource(new RasterTileSource(tiled.getRaster()),
+            this.factory, stripHeight(tiled.getWidth(), tiled.getHeight()));
+        this.snapshot = ImageModelImpl.fromRaster(copy, MAX_COLOR_VALUE, this.factory);
+      } else {
+        this.snapshot = new ImageModelImpl(image);
+        this.factory = this.snapshot.getRasterFactory();
+        this.tileSize = 0;
+        this.tileBudget = 0;
+      }
+      this.defers = this.snapshot.isDeferred();
+    }
+
+    /**
+     * Gets the raster an uncompressed state keeps. A state whose transformations are deferred
+     * keeps the raster they start from.
+     *
+     * @return the raster of the snapshot.
+     */
+    IViewRaster kept() {
+      return this.snapshot.hasPendingTransformations() ? this.snapshot.peekRaster()
+          : this.snapshot.getRaster();
+    }
+
+    /**
+     * Estimates the number of bytes taken by this state. A raster kept by several states is
+     * counted for the first of them only.
+     *
+     * @param counted the rasters counted so far, to which the raster of this state is added.
+     * @return the number of bytes.
+     */
+    long size(Map<Object, Boolean> counted) {
+      if (this.snapshot == null) {
+        return this.deflated.length;
+      }
+      IViewRaster raster = this.kept();
+      if (counted.put(raster, true) != null) {
+        return 0;
+      }
+      return (long) Integer.BYTES * raster.getWidth() * raster.getHeight();
+    }
+
+    /**
+     * Checks whether this state is a copy of an image whose transformations are deferred and not
+     * applied yet (see {@link ImageModelImpl#setDeferred(boolean)}). Such states are not
+     * compressed, as that would apply the transformations.
+     *
+     * @return true if this state has transformations that have not been applied.
+     */
+    boolean isDeferred() {
+      return this.snapshot != null && this.snapshot.hasPendingTransformations();
+    }
+
+    /**
+     * Compresses the pixels of this state, as the XOR with the pixels of the given state if
+     * there is one. Images with more than 8 bits per channel are kept uncompressed.
+     *
+     * @param base an uncompressed state of the same size, or null.
+     */
+    void compress(ImageState base) {
+      if (this.snapshot.maxColorValue() != MAX_COLOR_VALUE) {
+        return;
+      }
+      IViewRaster raster = this.snapshot.getRaster();
+      IViewRaster other = base == null ? null : base.snapshot.getRaster();
+      this.width = raster.getWidth();
+      this.height = raster.getHeight();
+      this.left = 0;
+      this.top = 0;
+      this.right = this.width;
+      this.bottom = this.height;
+      if (other != null) {
+        this.boundDifference(raster, other);
+      }
+      this.deflated = deflate(raster, other, this.left, this.top, this.right, this.bottom);
+      this.base = base;
+      this.snapshot.close();
+      this.snapshot = null;
+      // images no longer in the model would keep their pixels alive
+      this.live = null;
+    }
+
+    /**
+     * Cuts the rectangle of the compressed pixels down to the rectangle in which two rasters of
+     * the same size differ, which is empty if they do not differ at all.
+     *
+     * @param raster the pixels of this state.
+     * @param other  the pixels of its base.
+     */
+    private void boundDifference(IViewRaster raster, IViewRaster other) {
+      this.left = this.width;
+      this.top = this.height;
+      this.right = 0;
+      this.bottom = 0;
+      int rows = stripHeight(this.width, this.height);
+      int[] strip = new int[this.width * rows];
+      int[] otherStrip = new int[this.width * rows];
+      for (int y = 0; y < this.height; y += rows) {
+        int count = Math.min(rows, this.height - y);
+        RasterUtil.getRows(raster, y, count, strip);
+        RasterUtil.getRows(other, y, count, otherStrip);
+        for (int j = 0; j < count; j++) {
+          for (int x = 0; x < this.width; x++) {
+            if (strip[j * this.width + x] != otherStrip[j * this.width + x]) {
+              this.left = Math.min(this.left, x);
+              this.top = Math.min(this.top, y + j);
+              this.right = Math.max(this.right, x + 1);
+              this.bottom = Math.max(this.bottom, y + j + 1);
+            }
+          }
+        }
+      }
+      if (this.right == 0) {
+        // no difference at all
+        this.left = 0;
+        this.top = 0;
+      }
+    }
+
+    /**
+     * Makes sure the pixels of this state are uncompressed, so that it can be restored at once
+     * and other states can be stored as differences to it. The pixels are restored into a raster
+     * of the factory the image was stored by.
+     *
+     * @throws IllegalStateException if the compressed pixels are corrupted.
+     */
+    void revive() throws IllegalStateException {
+      if (this.snapshot == null) {
+        IRaster raster = this.factory.create(this.width, this.height, MAX_COLOR_VALUE);
+        try {
+          this.decompress(raster);
+        } catch (IllegalStateException e) {
+          raster.close();
+          throw e;
+        }
+        this.snapshot = ImageModelImpl.fromRaster(raster, MAX_COLOR_VALUE, this.factory);
+        this.snapshot.setDeferred(this.defers);
+        this.deflated = null;
+        this.base = null;
+      }
+    }
+
+    /**
+     * Creates an image with the pixels of this state, which becomes the live image of this
+     * state. The image shares its pixels with this state. Tiled images are restored as tiled
+     * images reading their tiles from the pixels of this state.
+     *
+     * @return the new image.
+     */
+    IImageModel restore() {
+      this.revive();
+      if (this.tileSize > 0) {
+        ImageModelImpl pixels = new ImageModelImpl(this.snapshot);
+        this.live = new TiledImageModel(new RasterTileSource(pixels.getRaster()) {
+          @Override
+          public void close() {
+            pixels.close();
+          }
+        }, this.tileSize, this.tileBudget);
+      } else {
+        this.live = new ImageModelImpl(this.snapshot);
+      }
+      this.version = this.live.getVersion();
+      return this.live;
+    }
+
+    /**
+     * Computes the pixels of this state from the compressed differences along its chain of
+     * bases, starting from the first uncompressed one, a strip of rows at a time.
+     *
+     * @param target the raster to write the pixels to.
+     * @throws IllegalStateException if the compressed pixels are corrupted.
+     */
+    private void decompress(IRaster target) throws IllegalStateException {
+      List<ImageState> chain = new ArrayList<>();
+      ImageState root = this;
+      while (root.snapshot == null && root.base != null) {
+        chain.add(root);
+        root = root.base;
+      }
+      IViewRaster rootRaster = root.snapshot == null ? null : root.snapshot.getRaster();
+      List<RowInflater> inflaters = new ArrayList<>();
+      if (rootRaster == null) {
+        // compressed pixels that are not a difference
+        inflaters.add(new RowInflater(root, false));
+      }
+      for (int i = chain.size() - 1; i >= 0; i--) {
+        inflaters.add(new RowInflater(chain.get(i), true));
+      }
+      int rows = stripHeight(this.width, this.height);
+      int[] strip = new int[this.width * rows];
+      try {
+        for (int y = 0; y < this.height; y += rows) {
+          int count = Math.min(rows, this.height - y);
+          if (rootRaster != null) {
+            RasterUtil.getRows(rootRaster, y, count, strip);
+          }
+          for (RowInflater inflater : inflaters) {
+            inflater.inflateInto(strip, y, count);
+          }
+          RasterUtil.setRows(target, y, count, strip);
+        }
+      } finally {
+        for (RowInflater inflater : inflaters) {
+          inflater.end();
+        }
+      }
+    }
+
+    /**
+     * Deflates a rectangle of pixels, three bytes per pixel, reading a strip of rows at a time.
+     *
+     * @param raster the pixels of the whole image.
+     * @param other  the pixels to XOR them with, or null to deflate them as they are.
+     * @param left   the left edge of the rectangle.
+     * @param top    the top edge of the rectangle.
+     * @param right  the right edge of the rectangle, exclusive.
+     * @param bottom the bottom edge of the rectangle, exclusive.
+     * @return the compressed bytes.
+     */
+    private static byte[] deflate(IViewRaster raster, IViewRaster other, int left, int top,
+        int right, int bottom) {
+      int width = raster.getWidth();
+      int rows = stripHeight(width, Math.max(1, bottom - top));
+      int[] strip = new int[width * rows];
+      int[] otherStrip = other == null ? null : new int[width * rows];
+      Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+      byte[] row = new byte[3 * Math.max(0, right - left)];
+      byte[] out = new byte[64];
+      int length = 0;
+      for (int y = top; y < bottom; y += rows) {
+        int count = Math.min(rows, bottom - y);
+        RasterUtil.getRows(raster, y, count, strip);
+        if (other != null) {
+          RasterUtil.getRows(other, y, count, otherStrip);
+        }
+        for (int j = 0; j < count; j++) {
+          for (int x = left; x < right; x++) {
+            int i = j * width + x;
+            int rgb = other == null ? strip[i] : strip[i] ^ otherStrip[i];
+            int k = 3 * (x - left);
+            row[k] = (byte) (rgb >> 16);
+            row[k + 1] = (byte) (rgb >> 8);
+            row[k + 2] = (byte) rgb;
+          }
+          deflater.setInput(row);
+          while (!deflater.needsInput()) {
+            if (length == out.length) {
+              out = Arrays.copyOf(out, 2 * out.length);
+            }
+            length += deflater.deflate(out, length, out.length - length);
+          }
+        }
+      }
+      deflater.finish();
+      while (!deflater.finished()) {
+        if (length == out.length) {
+          out = Arrays.copyOf(out, 2 * out.length);
+        }
+        length += deflater.deflate(out, length, out.length - length);
+      }
+      deflater.end();
+      return Arrays.copyOf(out, length);
+    }
+  }
+
+  /**
+   * Inflates the compressed pixels of a state one row after the other, into the strips of rows
+   * of the whole image they are restored in.
+   */
+  private static final class RowInflater {
+
+    private final ImageState state;
+    private final boolean xor;
+    private final Inflater inflater = new Inflater();
+    private final byte[] row;
+
+    /**
+     * Starts inflating the pixels of a state from its first row.
+     *
+     * @param state the compressed state.
+     * @param xor   whether to XOR the inflated pixels with the given ones, rather than replace
+     *              them.
+     */
+    private RowInflater(ImageState state, boolean xor) {
+      this.state = state;
+      this.xor = xor;
+      this.inflater.setInput(state.deflated);
+      this.row = new byte[3 * (state.right - state.left)];
+    }
+
+    /**
+     * Inflates the rows of the compressed rectangle that lie in a strip of the image. Strips must
+     * be given from the top of the image down.
+     *
+     * @param strip the pixels of the rows of the strip.
+     * @param y     the first row of the strip.
+     * @param rows  the number of rows in the strip.
+     * @throws IllegalStateException if the compressed pixels are corrupted.
+     */
+    void inflateInto(int[] strip, int y, int rows) throws IllegalStateException {
+      int width = this.state.width;
+      try {
+        for (int r = Math.max(y, this.state.top); r < Math.min(y + rows, this.state.bottom);
+            r++) {
+          for (int n = 0; n < this.row.length; ) {
+            int inflated = this.inflater.inflate(this.row, n, this.row.length - n);
+            if (inflated == 0 && (this.inflater.needsInput() || this.inflater.finished())) {
+              throw new DataFormatException("unexpected end of data");
+            }
+            n += inflated;
+          }
+          for (int x = this.state.left; x < this.state.right; x++) {
+            int j = 3 * (x - this.state.left);
+            int rgb = ((this.row[j] & 0xFF) << 16) | ((this.row[j + 1] & 0xFF) << 8)
+                | (this.row[j + 2] & 0xFF);
+            int i = (r - y) * width + x;
+            strip[i] = this.xor ? strip[i] ^ rgb : rgb;
+          }
+        }
+      } catch (DataFormatException e) {
+        throw new IllegalStateException("The history is corrupted: " + e.getMessage());
+      }
+    }
+
+    /**
+     * Releases the inflater.
+     */
+    void end() {
+      this.inflater.end();
+    }
+  }
+
+  /**
+   * Gets the number of rows of an image that are compressed or restored at a time, so that a
+   * strip holds about {@link #STRIP_PIXELS} pixels, and at least one row.
+   *
+   * @param width  the width of the image.
+   * @param height the height of the image.
+   * @return the number of rows in a strip.
+   */
+  private static int stripHeight(int width, int height) {
+    return Math.max(1, Math.min(height, STRIP_PIXELS / width));
+  }
+}
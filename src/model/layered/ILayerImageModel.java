@@ -2,6 +2,7 @@ package model.layered;
 
 import java.util.List;
 import model.IImageModel;
+import model.transformation.ITransformation;
 
 /**
  * Represents the additional operations of an image model that supports multiple layers. Can also be
@@ -81,4 +82,46 @@ public interface ILayerImageModel extends IImageModel, IViewLayerImageModel {
    * @param layers that will replace all the existing layers.
    */
   public void setLayers(List<ILayer> layers);
+
+  /**
+   * Applies a transformation to the image of every layer that has one, as a single operation
+   * that is undone at once. Transformations that change the size of an image keep all layers the
+   * same size this way.
+   *
+   * @param transformation the transformation to apply.
+   * @throws IllegalArgumentException if the layers are null, or the transformation fails for any
+   *                                  of the layers. Layers transformed before the failure stay
+   *                                  transformed, and can be restored by undoing.
+   */
+  public void transformAll(ITransformation transformation) throws IllegalArgumentException;
+
+  /**
+   * Reverts the last operation that changed the layers of this model or their images, restoring
+   * the layers and the currently selected layer as they were before it.
+   *
+   * @throws IllegalArgumentException if there is nothing to undo.
+   */
+  public void undo() throws IllegalArgumentException;
+
+  /**
+   * Repeats the last operation that was undone, as long as no other operation has changed this
+   * model since.
+   *
+   * @throws IllegalArgumentException if there is nothing to redo.
+   */
+  public void redo() throws IllegalArgumentException;
+
+  /**
+   * Checks whether an operation of this model can be undone.
+   *
+   * @return true if {@link #undo()} can be called.
+   */
+  public boolean canUndo();
+
+  /**
+   * Checks whether an operation of this model can be redone.
+   *
+   * @return true if {@link #redo()} can be called.
+   */
+  public boolean canRedo();
 }
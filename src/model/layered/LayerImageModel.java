@@ -1,6 +1,7 @@
 package model.layered;
 
 import java.awt.Image;
+import java.awt.Rectangle;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
@@ -15,6 +16,9 @@ import model.IViewImageModel;
 import model.ImageModelImpl;
 import model.format.IImageFormatUtil;
 import model.format.PNGFormat;
+import model.raster.HeapRasterFactory;
+import model.raster.IRasterFactory;
+import model.raster.IViewRaster;
 import model.transformation.ITransformation;
 
 /**
@@ -27,6 +31,11 @@ import model.transformation.ITransformation;
  *
  * <p>Exporting this model as an image will export the first visible (i.e. non-transparent, loaded)
  * layer.
+ *
+ * <p>Every operation that changes the layers or their images can be undone and redone. The
+ * history keeps the states of the images as copies sharing their pixels, or compressed as the
+ * difference to a neighboring state, and forgets the oldest states once it takes more memory than
+ * its budget (see {@link #setHistoryMemoryBudget(long)}).
  */
 public class LayerImageModel implements ILayerImageModel {
 
@@ -34,6 +43,7 @@ public class LayerImageModel implements ILayerImageModel {
   private static final IImageFormatUtil MULTI_LAYER_FORMAT = new PNGFormat();
   private static final String MULTI_LAYER_FORMAT_EXT = "png";
 
+  private final History history = new History();
   private List<ILayer> layers;
   private int current;
 
@@ -45,6 +55,7 @@ public class LayerImageModel implements ILayerImageModel {
    */
   public LayerImageModel(List<ILayer> layers) {
     this.layers = layers;
+    this.record();
   }
 
   /**
@@ -58,7 +69,8 @@ public class LayerImageModel implements ILayerImageModel {
 
   /**
    * Convenience constructor to clone another {@link LayerImageModel}. This constructor will create
-   * a deep copy of the provided model.
+   * a deep copy of the provided model, whose images share their pixels with the original until
+   * they are transformed.
    *
    * @param model the model to clone from.
    */
@@ -78,6 +90,20 @@ public class LayerImageModel implements ILayerImageModel {
    * @throws IllegalArgumentException if the directory contents cannot be read.
    */
   public LayerImageModel(String dirname) throws IllegalArgumentException {
+    this(dirname, new HeapRasterFactory());
+  }
+
+  /**
+   * Constructor to create this model from a given directory, previously exported using the
+   * exportAllLayers() method, storing the pixels of every layer in rasters created by the given
+   * factory (for example off-heap, using a {@link model.raster.DirectRasterFactory}).
+   *
+   * @param dirname the directory to load the export from.
+   * @param factory the factory deciding where the pixels of the layers are stored.
+   * @throws IllegalArgumentException if the directory contents cannot be read.
+   */
+  public LayerImageModel(String dirname, IRasterFactory factory)
+      throws IllegalArgumentException {
     Scanner sc;
     try {
       sc = new Scanner(new FileInputStream(dirname + "/layers.txt"));
@@ -104,16 +130,78 @@ public class LayerImageModel implements ILayerImageModel {
         }
         boolean transparent = s[0].equals("t");
         multiLayers.add(
-            new LayerImpl(new ImageModelImpl(dirname + "/" + s[1], MULTI_LAYER_FORMAT),
+            new LayerImpl(new ImageModelImpl(dirname + "/" + s[1], MULTI_LAYER_FORMAT, factory),
                 transparent));
       }
     }
     this.layers = multiLayers;
+    this.record();
   }
 
   @Override
   public void setLayers(List<ILayer> layers) {
     this.layers = layers;
+    this.record();
+  }
+
+  @Override
+  public void undo() throws IllegalArgumentException {
+    this.restore(this.history.undo());
+  }
+
+  @Override
+  public void redo() throws IllegalArgumentException {
+    this.restore(this.history.redo());
+  }
+
+  @Override
+  public boolean canUndo() {
+    return this.history.canUndo();
+  }
+
+  @Override
+  public boolean canRedo() {
+    return this.history.canRedo();
+  }
+
+  /**
+   * Sets how many bytes the undo and redo history of this model may take, not counting the
+   * current state. The oldest states are forgotten once the history takes more.
+   *
+   * @param memoryBudget the maximum number of bytes, 0 to keep no history.
+   * @throws IllegalArgumentException if the memory budget is negative.
+   */
+  public void setHistoryMemoryBudget(long memoryBudget) throws IllegalArgumentException {
+    this.history.setMemoryBudget(memoryBudget);
+  }
+
+  /**
+   * Gets the number of bytes taken by the undo and redo history of this model, not counting the
+   * current state.
+   *
+   * @return the memory used by the history.
+   */
+  public long getHistoryMemoryUsed() {
+    return this.history.getMemoryUsed();
+  }
+
+  /**
+   * Records the current state of this model in its history, after an operation changed it.
+   */
+  private void record() {
+    if (this.layers != null) {
+      this.history.record(this.layers, this.current);
+    }
+  }
+
+  /**
+   * Replaces the layers of this model with those of a state from its history.
+   *
+   * @param frame the state to restore.
+   */
+  private void restore(History.Frame frame) {
+    this.layers = frame.toLayers();
+    this.current = frame.getCurrent();
   }
 
   /**
@@ -142,7 +230,43 @@ public class LayerImageModel implements ILayerImageModel {
 
   @Override
   public IImageModel transform(ITransformation transformation) throws IllegalArgumentException {
-    return this.getCurrentImage().transform(transformation);
+    IImageModel result = this.getCurrentImage().transform(transformation);
+    this.record();
+    return result;
+  }
+
+  @Override
+  public IImageModel transform(ITransformation transformation, int x, int y, int width,
+      int height) throws IllegalArgumentException {
+    IImageModel result = this.getCurrentImage().transform(transformation, x, y, width, height);
+    this.record();
+    return result;
+  }
+
+  @Override
+  public void transformAll(ITransformation transformation) throws IllegalArgumentException {
+    if (this.layers == null) {
+      throw new IllegalArgumentException("The layers are null.");
+    }
+    try {
+      for (ILayer layer : this.layers) {
+        if (layer.isLoaded()) {
+          layer.getImage().transform(transformation);
+        }
+      }
+    } finally {
+      this.record();
+    }
+  }
+
+  @Override
+  public long getVersion() throws IllegalArgumentException {
+    return this.getCurrentImage().getVersion();
+  }
+
+  @Override
+  public Rectangle getChangedRegion(long version) throws IllegalArgumentException {
+    return this.getCurrentImage().getChangedRegion(version);
   }
 
   private IImageModel getFirstVisibleImage() throws IllegalArgumentException {
@@ -218,6 +342,11 @@ public class LayerImageModel implements ILayerImageModel {
     return this.getCurrentImage().asArray();
   }
 
+  @Override
+  public IViewRaster getRaster() throws IllegalArgumentException {
+    return this.getCurrentImage().getRaster();
+  }
+
   @Override
   public boolean almostEquals(Object o) {
     return this.getCurrentImage().almostEquals(o);
@@ -234,6 +363,7 @@ public class LayerImageModel implements ILayerImageModel {
       throw new IllegalArgumentException("The layers are null.");
     }
     this.layers.add(0, new EmptyLayer());
+    this.record();
   }
 
   @Override
@@ -256,6 +386,7 @@ public class LayerImageModel implements ILayerImageModel {
     } catch (IndexOutOfBoundsException e) {
       throw new IllegalArgumentException("The layer at index " + this.current + " does not exist!");
     }
+    this.record();
   }
 
   @Override
@@ -270,6 +401,7 @@ public class LayerImageModel implements ILayerImageModel {
     if (this.current != 0 && this.current >= index) {
       this.current--;
     }
+    this.record();
   }
 
   @Override
@@ -310,6 +442,7 @@ public class LayerImageModel implements ILayerImageModel {
       throw new IllegalArgumentException(
           "The layer at index " + index + " does not have an image loaded!");
     }
+    this.record();
   }
 
   @Override
@@ -320,6 +453,7 @@ public class LayerImageModel implements ILayerImageModel {
       throw new IllegalArgumentException(
           "Could not move layer since either previous index or new index was out of bounds.");
     }
+    this.record();
   }
 
 }
@@ -0,0 +1,187 @@
+package model.raster;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+
+/**
+ * An {@link IRaster} for 8-bit images that keeps its pixels outside of the Java heap, in direct
+ * buffers, so that huge images neither count towards the heap size nor slow down garbage
+ * collection. Pixels are stored as packed 0xRRGGBB integers and addressed with a long index, split
+ * over as many buffers as needed, so the number of pixels is not limited to 2^31.
+ *
+ * <p>Call {@link #close()} once the raster is no longer needed. This releases the buffers, after
+ * which any access to the raster throws an {@link IllegalStateException}. The memory itself is
+ * returned to the operating system when the buffers are reclaimed.
+ */
+public class DirectRaster implements IRaster {
+
+  // 2^28 pixels (1 GiB) per buffer
+  private static final int CHUNK_BITS = 28;
+  private static final long CHUNK_MASK = (1L << CHUNK_BITS) - 1;
+  private static final int MAX_CHANNEL = 255;
+
+  private final int width;
+  private final int height;
+  private IntBuffer[] chunks;
+
+  /**
+   * Creates a new, black off-heap raster of the given size.
+   *
+   * @param width  the width of the raster.
+   * @param height the height of the raster.
+   * @throws IllegalArgumentException if the raster is smaller than 1x1.
+   */
+  public DirectRaster(int width, int height) throws IllegalArgumentException {
+    if (width < 1 || height < 1) {
+      throw new IllegalArgumentException("A raster must be at least 1x1!");
+    }
+    this.width = width;
+    this.height = height;
+    long pixels = this.getPixelCount();
+    this.chunks = new IntBuffer[(int) ((pixels + CHUNK_MASK) >>> CHUNK_BITS)];
+    for (int i = 0; i < this.chunks.length; i++) {
+      long chunkPixels = Math.min(1L << CHUNK_BITS, pixels - ((long) i << CHUNK_BITS));
+      this.chunks[i] = ByteBuffer.allocateDirect((int) chunkPixels * Integer.BYTES)
+          .order(ByteOrder.nativeOrder()).asIntBuffer();
+    }
+  }
+
+  /**
+   * Gets the number of pixels in this raster, which may exceed the range of an int.
+   *
+   * @return width * height.
+   */
+  public long getPixelCount() {
+    return (long) this.width * this.height;
+  }
+
+  /**
+   * Determines whether this raster has been closed.
+   *
+   * @return true if {@link #close()} has been called.
+   */
+  public boolean isClosed() {
+    return this.chunks == null;
+  }
+
+  /**
+   * Gets the buffer holding the pixel with the given index.
+   *
+   * @param index the row-major index of the pixel.
+   * @return the buffer containing the pixel.
+   * @throws IllegalStateException if this raster has been closed.
+   */
+  private IntBuffer chunk(long index) throws IllegalStateException {
+    if (this.chunks == null) {
+      throw new IllegalStateException("This raster has been closed!");
+    }
+    return this.chunks[(int) (index >>> CHUNK_BITS)];
+  }
+
+  @Override
+  public int getWidth() {
+    return this.width;
+  }
+
+  @Override
+  public int getHeight() {
+    return this.height;
+  }
+
+  @Override
+  public int getRed(int x, int y) {
+    return (this.getRGB(x, y) >> 16) & 0xFF;
+  }
+
+  @Override
+  public int getGreen(int x, int y) {
+    return (this.getRGB(x, y) >> 8) & 0xFF;
+  }
+
+  @Override
+  public int getBlue(int x, int y) {
+    return this.getRGB(x, y) & 0xFF;
+  }
+
+  @Override
+  public int getRGB(int x, int y) {
+    long index = (long) y * this.width + x;
+    return this.chunk(index).get((int) (index & CHUNK_MASK));
+  }
+
+  @Override
+  public void setPixel(int x, int y, int red, int green, int blue)
+      throws IllegalArgumentException {
+    if ((red | green | blue) < 0 || red > MAX_CHANNEL || green > MAX_CHANNEL
+        || blue > MAX_CHANNEL) {
+      throw new IllegalArgumentException(
+          "An off-heap raster can only hold channel values between 0 and " + MAX_CHANNEL + "!");
+    }
+    long index = (long) y * this.width + x;
+    this.chunk(index).put((int) (index & CHUNK_MASK), (red << 16) | (green << 8) | blue);
+  }
+
+  /**
+   * Reads whole rows of this raster as packed 0xRRGGBB pixels in one bulk copy per buffer.
+   *
+   * @param y    the first row to read.
+   * @param rows the number of rows to read.
+   * @param rgb  the array to write the rows to, with a stride of the width of this raster.
+   * @throws IllegalStateException if this raster has been closed.
+   */
+  public void getRows(int y, int rows, int[] rgb) throws IllegalStateException {
+    long index = (long) y * this.width;
+    long end = index + (long) rows * this.width;
+    int offset = 0;
+    while (index < end) {
+      IntBuffer chunk = this.chunk(index).duplicate();
+      int start = (int) (index & CHUNK_MASK);
+      int length = (int) Math.min(end - index, chunk.capacity() - start);
+      chunk.position(start);
+      chunk.get(rgb, offset, length);
+      index += length;
+      offset += length;
+    }
+  }
+
+  /**
+   * Writes whole rows of this raster from packed 0xRRGGBB pixels in one bulk copy per buffer.
+   * The pixels are not checked, so they must not have bits set above the 24 bits of a color.
+   *
+   * @param y    the first row to write.
+   * @param rows the number of rows to write.
+   * @param rgb  the array to read the rows from, with a stride of the width of this raster.
+   * @throws IllegalStateException if this raster has been closed.
+   */
+  public void setRows(int y, int rows, int[] rgb) throws IllegalStateException {
+    long index = (long) y * this.width;
+    long end = index + (long) rows * this.width;
+    int offset = 0;
+    while (index < end) {
+      IntBuffer chunk = this.chunk(index).duplicate();
+      int start = (int) (index & CHUNK_MASK);
+      int length = (int) Math.min(end - index, chunk.capacity() - start);
+      chunk.position(start);
+      chunk.put(rgb, offset, length);
+      index += length;
+      offset += length;
+    }
+  }
+
+  @Override
+  public IRaster copy() {
+    DirectRaster result = new DirectRaster(this.width, this.height);
+    for (int i = 0; i < result.chunks.length; i++) {
+      IntBuffer source = this.chunk((long) i << CHUNK_BITS).duplicate();
+      source.rewind();
+      result.chunks[i].duplicate().put(source);
+    }
+    return result;
+  }
+
+  @Override
+  public void close() {
+    this.chunks = null;
+  }
+}
@@ -0,0 +1,26 @@
+package model.raster;
+
+/**
+ * An {@link IRasterFactory} that stores pixels off-heap in {@link DirectRaster}s. Only 8-bit
+ * images (maximum color value of at most 255) are supported.
+ */
+public class DirectRasterFactory implements IRasterFactory {
+
+  @Override
+  public IRaster create(int width, int height, int maxColorValue)
+      throws IllegalArgumentException {
+    if (maxColorValue > 255) {
+      throw new IllegalArgumentException("Off-heap rasters only support 8-bit images!");
+    }
+    return new DirectRaster(width, height);
+  }
+
+  @Override
+  public IRaster adopt(IRaster raster, int maxColorValue) throws IllegalArgumentException {
+    if (raster instanceof DirectRaster) {
+      return raster;
+    }
+    return RasterUtil.copy(raster, this.create(raster.getWidth(), raster.getHeight(),
+        maxColorValue));
+  }
+}
@@ -0,0 +1,23 @@
+package model.raster;
+
+/**
+ * The default {@link IRasterFactory}, which keeps pixels in Java arrays on the heap: a {@link
+ * PackedRaster} for 8-bit images and an {@link InterleavedRaster} otherwise.
+ */
+public class HeapRasterFactory implements IRasterFactory {
+
+  @Override
+  public IRaster create(int width, int height, int maxColorValue)
+      throws IllegalArgumentException {
+    return RasterUtil.create(width, height, maxColorValue);
+  }
+
+  @Override
+  public IRaster adopt(IRaster raster, int maxColorValue) {
+    if (raster instanceof DirectRaster) {
+      return RasterUtil.copy(raster, RasterUtil.create(raster.getWidth(), raster.getHeight(),
+          maxColorValue));
+    }
+    return raster;
+  }
+}
@@ -0,0 +1,36 @@
+package model.raster;
+
+/**
+ * A mutable pixel buffer. Rasters that are owned by an image model should be treated as read-only
+ * by everyone else; use {@link #copy()} to obtain a buffer that can be written to.
+ */
+public interface IRaster extends IViewRaster, AutoCloseable {
+
+  /**
+   * Sets the channels of the pixel at the given location.
+   *
+   * @param x     the x-coordinate of the pixel.
+   * @param y     the y-coordinate of the pixel.
+   * @param red   the new red value of the pixel.
+   * @param green the new green value of the pixel.
+   * @param blue  the new blue value of the pixel.
+   * @throws IllegalArgumentException if a channel cannot be represented by this raster.
+   */
+  void setPixel(int x, int y, int red, int green, int blue) throws IllegalArgumentException;
+
+  /**
+   * Creates an independent copy of this raster using the same storage layout.
+   *
+   * @return a deep copy of this raster.
+   */
+  IRaster copy();
+
+  /**
+   * Releases any resources held by this raster that are not managed by the garbage collector.
+   * Rasters stored on the heap have nothing to release, so by default this does nothing.
+   */
+  @Override
+  default void close() {
+    // nothing to release
+  }
+}
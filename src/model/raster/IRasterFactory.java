@@ -0,0 +1,33 @@
+package model.raster;
+
+/**
+ * Strategy that decides where the pixels of an image are stored. An {@link IRasterFactory} can be
+ * passed to an {@link model.ImageModelImpl} (or a {@link model.layered.LayerImageModel} loaded from
+ * a directory) to choose between on-heap and off-heap storage.
+ */
+public interface IRasterFactory {
+
+  /**
+   * Creates an empty raster of the given size that can hold channel values between 0 and the
+   * given maximum color value.
+   *
+   * @param width         the width of the raster.
+   * @param height        the height of the raster.
+   * @param maxColorValue the maximum value of a channel in the raster.
+   * @return a new, black raster.
+   * @throws IllegalArgumentException if a raster of that size or range cannot be created.
+   */
+  IRaster create(int width, int height, int maxColorValue) throws IllegalArgumentException;
+
+  /**
+   * Moves the given raster into the storage of this factory. If the raster is already stored the
+   * way this factory would store it, it is returned as-is; otherwise it is copied and the given
+   * raster is left untouched.
+   *
+   * @param raster        the raster to adopt.
+   * @param maxColorValue the maximum value of a channel in the raster.
+   * @return a raster with the same content, stored by this factory.
+   * @throws IllegalArgumentException if the content cannot be stored by this factory.
+   */
+  IRaster adopt(IRaster raster, int maxColorValue) throws IllegalArgumentException;
+}
@@ -0,0 +1,42 @@
+package model.raster;
+
+/**
+ * A source of pixels that can be read one rectangular region at a time, for example an image file
+ * that is too large to be decoded into memory at once. Used by {@link TiledRaster} to load tiles
+ * on demand.
+ */
+public interface ITileSource extends AutoCloseable {
+
+  /**
+   * Gets the width of the image provided by this source.
+   *
+   * @return the width of the image.
+   */
+  int getWidth();
+
+  /**
+   * Gets the height of the image provided by this source.
+   *
+   * @return the height of the image.
+   */
+  int getHeight();
+
+  /**
+   * Reads a rectangular region of the image as packed 0xRRGGBB pixels.
+   *
+   * @param x      the x-coordinate of the top left corner of the region.
+   * @param y      the y-coordinate of the top left corner of the region.
+   * @param width  the width of the region.
+   * @param height the height of the region.
+   * @param rgb    the array to write the region to, row-major with a stride of width.
+   * @throws IllegalArgumentException if the region cannot be read.
+   */
+  void readRegion(int x, int y, int width, int height, int[] rgb)
+      throws IllegalArgumentException;
+
+  /**
+   * Releases any file handles held by this source.
+   */
+  @Override
+  void close();
+}
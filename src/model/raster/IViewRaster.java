@@ -0,0 +1,61 @@
+package model.raster;
+
+/**
+ * Observing (non-mutating) methods of a pixel buffer. A raster is a rectangular grid of pixels,
+ * each made of a red, green and blue channel, stored in whatever primitive layout the
+ * implementation chooses. Pixels are addressed by their x- (column) and y- (row) coordinate.
+ */
+public interface IViewRaster {
+
+  /**
+   * Gets the width of this raster.
+   *
+   * @return the number of columns in this raster.
+   */
+  int getWidth();
+
+  /**
+   * Gets the height of this raster.
+   *
+   * @return the number of rows in this raster.
+   */
+  int getHeight();
+
+  /**
+   * Gets the red channel of the pixel at the given location.
+   *
+   * @param x the x-coordinate of the pixel.
+   * @param y the y-coordinate of the pixel.
+   * @return the red value of the pixel.
+   */
+  int getRed(int x, int y);
+
+  /**
+   * Gets the green channel of the pixel at the given location.
+   *
+   * @param x the x-coordinate of the pixel.
+   * @param y the y-coordinate of the pixel.
+   * @return the green value of the pixel.
+   */
+  int getGreen(int x, int y);
+
+  /**
+   * Gets the blue channel of the pixel at the given location.
+   *
+   * @param x the x-coordinate of the pixel.
+   * @param y the y-coordinate of the pixel.
+   * @return the blue value of the pixel.
+   */
+  int getBlue(int x, int y);
+
+  /**
+   * Gets the pixel at the given location packed as a 24-bit RGB integer (0xRRGGBB), the layout
+   * used by {@link java.awt.image.BufferedImage#TYPE_INT_RGB}.
+   *
+   * @param x the x-coordinate of the pixel.
+   * @param y the y-coordinate of the pixel.
+   * @return the packed RGB value of the pixel.
+   * @throws IllegalArgumentException if a channel of the pixel is outside of 0-255.
+   */
+  int getRGB(int x, int y) throws IllegalArgumentException;
+}
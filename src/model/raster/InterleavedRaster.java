@@ -0,0 +1,99 @@
+package model.raster;
+
+import java.util.Arrays;
+
+/**
+ * An {@link IRaster} that stores the red, green and blue channels of every pixel next to each
+ * other in one flat, row-major int array. Unlike {@link PackedRaster} this supports any integer
+ * channel value, so it is used for images with a maximum color value above 255 (or with values
+ * outside of the usual range).
+ */
+public class InterleavedRaster implements IRaster {
+
+  private static final int CHANNELS = 3;
+
+  private final int width;
+  private final int height;
+  private final int[] data;
+
+  /**
+   * Creates a new, black raster of the given size.
+   *
+   * @param width  the width of the raster.
+   * @param height the height of the raster.
+   * @throws IllegalArgumentException if the raster is smaller than 1x1 or too large to be stored
+   *                                  in a single array.
+   */
+  public InterleavedRaster(int width, int height) throws IllegalArgumentException {
+    int size = PackedRaster.checkedSize(width, height);
+    if (size > (Integer.MAX_VALUE - 8) / CHANNELS) {
+      throw new IllegalArgumentException(
+          "A " + width + "x" + height + " raster is too large to be stored in an array!");
+    }
+    this.width = width;
+    this.height = height;
+    this.data = new int[size * CHANNELS];
+  }
+
+  /**
+   * Copy constructor used by {@link #copy()}.
+   *
+   * @param other the raster to copy from.
+   */
+  private InterleavedRaster(InterleavedRaster other) {
+    this.width = other.width;
+    this.height = other.height;
+    this.data = Arrays.copyOf(other.data, other.data.length);
+  }
+
+  @Override
+  public int getWidth() {
+    return this.width;
+  }
+
+  @Override
+  public int getHeight() {
+    return this.height;
+  }
+
+  @Override
+  public int getRed(int x, int y) {
+    return this.data[(y * this.width + x) * CHANNELS];
+  }
+
+  @Override
+  public int getGreen(int x, int y) {
+    return this.data[(y * this.width + x) * CHANNELS + 1];
+  }
+
+  @Override
+  public int getBlue(int x, int y) {
+    return this.data[(y * this.width + x) * CHANNELS + 2];
+  }
+
+  @Override
+  public int getRGB(int x, int y) throws IllegalArgumentException {
+    int i = (y * this.width + x) * CHANNELS;
+    int red = this.data[i];
+    int green = this.data[i + 1];
+    int blue = this.data[i + 2];
+    if (((red | green | blue) & ~0xFF) != 0) {
+      throw new IllegalArgumentException("The pixel at (" + x + ", " + y
+          + ") cannot be represented as 8-bit RGB!");
+    }
+    return (red << 16) | (green << 8) | blue;
+  }
+
+  @Override
+  public void setPixel(int x, int y, int red, int green, int blue) {
+    int i = (y * this.width + x) * CHANNELS;
+    this.data[i] = red;
+    this.data[i + 1] = green;
+    this.data[i + 2] = blue;
+  }
+
+  @Override
+  public IRaster copy() {
+    return new InterleavedRaster(this);
+  }
+}
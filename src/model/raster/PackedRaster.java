@@ -0,0 +1,122 @@
+package model.raster;
+
+import java.util.Arrays;
+
+/**
+ * An {@link IRaster} for 8-bit images that stores every pixel as a single packed 0xRRGGBB integer
+ * in one flat, row-major array. This costs four bytes per pixel and no per-pixel objects, so it is
+ * the default storage for images whose channels are within 0-255.
+ */
+public class PackedRaster implements IRaster {
+
+  private static final int MAX_CHANNEL = 255;
+
+  private final int width;
+  private final int height;
+  private final int[] data;
+
+  /**
+   * Creates a new, black raster of the given size.
+   *
+   * @param width  the width of the raster.
+   * @param height the height of the raster.
+   * @throws IllegalArgumentException if the raster is smaller than 1x1 or too large to be stored
+   *                                  in a single array.
+   */
+  public PackedRaster(int width, int height) throws IllegalArgumentException {
+    this(width, height, new int[checkedSize(width, height)]);
+  }
+
+  /**
+   * Wraps an existing array of packed pixels. The array is used directly, not copied.
+   *
+   * @param width  the width of the raster.
+   * @param height the height of the raster.
+   * @param data   row-major array of 0xRRGGBB pixels, of length width * height.
+   * @throws IllegalArgumentException if the array does not match the given dimensions.
+   */
+  public PackedRaster(int width, int height, int[] data) throws IllegalArgumentException {
+    if (data == null || data.length != checkedSize(width, height)) {
+      throw new IllegalArgumentException("The pixel data does not match a " + width + "x"
+          + height + " raster!");
+    }
+    this.width = width;
+    this.height = height;
+    this.data = data;
+  }
+
+  /**
+   * Computes the number of pixels in a raster of the given size, ensuring it fits in an array.
+   *
+   * @param width  the width of the raster.
+   * @param height the height of the raster.
+   * @return width * height.
+   * @throws IllegalArgumentException if the raster is smaller than 1x1 or too large.
+   */
+  static int checkedSize(int width, int height) throws IllegalArgumentException {
+    if (width < 1 || height < 1) {
+      throw new IllegalArgumentException("A raster must be at least 1x1!");
+    }
+    long size = (long) width * height;
+    if (size > Integer.MAX_VALUE - 8) {
+      throw new IllegalArgumentException(
+          "A " + width + "x" + height + " raster is too large to be stored in an array!");
+    }
+    return (int) size;
+  }
+
+  /**
+   * Gets the backing array of this raster. Writing to the returned array writes to this raster.
+   *
+   * @return the row-major array of 0xRRGGBB pixels.
+   */
+  public int[] getData() {
+    return this.data;
+  }
+
+  @Override
+  public int getWidth() {
+    return this.width;
+  }
+
+  @Override
+  public int getHeight() {
+    return this.height;
+  }
+
+  @Override
+  public int getRed(int x, int y) {
+    return (this.getRGB(x, y) >> 16) & 0xFF;
+  }
+
+  @Override
+  public int getGreen(int x, int y) {
+    return (this.getRGB(x, y) >> 8) & 0xFF;
+  }
+
+  @Override
+  public int getBlue(int x, int y) {
+    return this.getRGB(x, y) & 0xFF;
+  }
+
+  @Override
+  public int getRGB(int x, int y) {
+    return this.data[y * this.width + x];
+  }
+
+  @Override
+  public void setPixel(int x, int y, int red, int green, int blue)
+      throws IllegalArgumentException {
+    if ((red | green | blue) < 0 || red > MAX_CHANNEL || green > MAX_CHANNEL
+        || blue > MAX_CHANNEL) {
+      throw new IllegalArgumentException(
+          "A packed raster can only hold channel values between 0 and " + MAX_CHANNEL + "!");
+    }
+    this.data[y * this.width + x] = (red << 16) | (green << 8) | blue;
+  }
+
+  @Override
+  public IRaster copy() {
+    return new PackedRaster(this.width, this.height, Arrays.copyOf(this.data, this.data.length));
+  }
+}
@@ -0,0 +1,178 @@
+package model.raster;
+
+/**
+ * An {@link IRaster} that stores each channel in its own plane (one row-major int array per
+ * channel). Channels are unbounded, so this layout is used for the intermediate, unclamped results
+ * of transformations: loops over a single plane are simple enough for the JIT to vectorize, and a
+ * chain of operations can stay in this format until it is narrowed once with {@link #clamp}.
+ */
+public class PlanarRaster implements IRaster {
+
+  private final int width;
+  private final int height;
+  private final int[] red;
+  private final int[] green;
+  private final int[] blue;
+
+  /**
+   * Creates a new, black raster of the given size.
+   *
+   * @param width  the width of the raster.
+   * @param height the height of the raster.
+   * @throws IllegalArgumentException if the raster is smaller than 1x1 or too large to be stored
+   *                                  in a single array.
+   */
+  public PlanarRaster(int width, int height) throws IllegalArgumentException {
+    int size = PackedRaster.checkedSize(width, height);
+    this.width = width;
+    this.height = height;
+    this.red = new int[size];
+    this.green = new int[size];
+    this.blue = new int[size];
+  }
+
+  /**
+   * Creates a planar copy of the given raster. This is the way to bring any raster into the
+   * layout expected by the channel-wise loops of the transformations.
+   *
+   * @param source the raster to copy.
+   * @return the source itself if it already is a {@link PlanarRaster}, a planar copy otherwise.
+   */
+  public static PlanarRaster of(IViewRaster source) {
+    if (source instanceof PlanarRaster) {
+      return (PlanarRaster) source;
+    }
+    PlanarRaster result = new PlanarRaster(source.getWidth(), source.getHeight());
+    if (source instanceof PackedRaster) {
+      int[] data = ((PackedRaster) source).getData();
+      for (int i = 0; i < data.length; i++) {
+        result.red[i] = (data[i] >> 16) & 0xFF;
+        result.green[i] = (data[i] >> 8) & 0xFF;
+        result.blue[i] = data[i] & 0xFF;
+      }
+    } else {
+      int i = 0;
+      for (int y = 0; y < result.height; y++) {
+        for (int x = 0; x < result.width; x++) {
+          result.red[i] = source.getRed(x, y);
+          result.green[i] = source.getGreen(x, y);
+          result.blue[i] = source.getBlue(x, y);
+          i++;
+        }
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Gets the red plane of this raster. Writing to the returned array writes to this raster.
+   *
+   * @return the row-major array of red values.
+   */
+  public int[] getRedPlane() {
+    return this.red;
+  }
+
+  /**
+   * Gets the green plane of this raster. Writing to the returned array writes to this raster.
+   *
+   * @return the row-major array of green values.
+   */
+  public int[] getGreenPlane() {
+    return this.green;
+  }
+
+  /**
+   * Gets the blue plane of this raster. Writing to the returned array writes to this raster.
+   *
+   * @return the row-major array of blue values.
+   */
+  public int[] getBluePlane() {
+    return this.blue;
+  }
+
+  /**
+   * Narrows this raster to the given range of channel values, clamping every channel that lies
+   * outside of it.
+   *
+   * @param maxColorValue the maximum allowed channel value.
+   * @param minColorValue the minimum allowed channel value.
+   * @return a new raster in the most compact layout able to hold the given range.
+   */
+  public IRaster clamp(int maxColorValue, int minColorValue) {
+    int size = this.red.length;
+    if (minColorValue >= 0 && maxColorValue <= 255) {
+      int[] packed = new int[size];
+      for (int i = 0; i < size; i++) {
+        int r = Math.min(maxColorValue, Math.max(minColorValue, this.red[i]));
+        int g = Math.min(maxColorValue, Math.max(minColorValue, this.green[i]));
+        int b = Math.min(maxColorValue, Math.max(minColorValue, this.blue[i]));
+        packed[i] = (r << 16) | (g << 8) | b;
+      }
+      return new PackedRaster(this.width, this.height, packed);
+    }
+    IRaster result = new InterleavedRaster(this.width, this.height);
+    int i = 0;
+    for (int y = 0; y < this.height; y++) {
+      for (int x = 0; x < this.width; x++) {
+        result.setPixel(x, y, Math.min(maxColorValue, Math.max(minColorValue, this.red[i])),
+            Math.min(maxColorValue, Math.max(minColorValue, this.green[i])),
+            Math.min(maxColorValue, Math.max(minColorValue, this.blue[i])));
+        i++;
+      }
+    }
+    return result;
+  }
+
+  @Override
+  public int getWidth() {
+    return this.width;
+  }
+
+  @Override
+  public int getHeight() {
+    return this.height;
+  }
+
+  @Override
+  public int getRed(int x, int y) {
+    return this.red[y * this.width + x];
+  }
+
+  @Override
+  public int getGreen(int x, int y) {
+    return this.green[y * this.width + x];
+  }
+
+  @Override
+  public int getBlue(int x, int y) {
+    return this.blue[y * this.width + x];
+  }
+
+  @Override
+  public int getRGB(int x, int y) throws IllegalArgumentException {
+    int i = y * this.width + x;
+    if (((this.red[i] | this.green[i] | this.blue[i]) & ~0xFF) != 0) {
+      throw new IllegalArgumentException("The pixel at (" + x + ", " + y
+          + ") cannot be represented as 8-bit RGB!");
+    }
+    return (this.red[i] << 16) | (this.green[i] << 8) | this.blue[i];
+  }
+
+  @Override
+  public void setPixel(int x, int y, int red, int green, int blue) {
+    int i = y * this.width + x;
+    this.red[i] = red;
+    this.green[i] = green;
+    this.blue[i] = blue;
+  }
+
+  @Override
+  public IRaster copy() {
+    PlanarRaster result = new PlanarRaster(this.width, this.height);
+    System.arraycopy(this.red, 0, result.red, 0, this.red.length);
+    System.arraycopy(this.green, 0, result.green, 0, this.green.length);
+    System.arraycopy(this.blue, 0, result.blue, 0, this.blue.length);
+    return result;
+  }
+}
@@ -0,0 +1,47 @@
+package model.raster;
+
+/**
+ * An {@link ITileSource} that serves regions of a raster which is already in memory.
+ */
+public class RasterTileSource implements ITileSource {
+
+  private final IViewRaster raster;
+
+  /**
+   * Creates a tile source reading from the given raster. The raster is not copied.
+   *
+   * @param raster the raster to read from.
+   */
+  public RasterTileSource(IViewRaster raster) {
+    this.raster = raster;
+  }
+
+  @Override
+  public int getWidth() {
+    return this.raster.getWidth();
+  }
+
+  @Override
+  public int getHeight() {
+    return this.raster.getHeight();
+  }
+
+  @Override
+  public void readRegion(int x, int y, int width, int height, int[] rgb)
+      throws IllegalArgumentException {
+    if (x == 0 && width == this.raster.getWidth()) {
+      RasterUtil.getRows(this.raster, y, height, rgb);
+      return;
+    }
+    for (int j = 0; j < height; j++) {
+      for (int i = 0; i < width; i++) {
+        rgb[j * width + i] = this.raster.getRGB(x + i, y + j);
+      }
+    }
+  }
+
+  @Override
+  public void close() {
+    // nothing to release
+  }
+}
@@ -0,0 +1,368 @@
+package model.raster;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.awt.image.DirectColorModel;
+import java.awt.image.Raster;
+import java.awt.image.WritableRaster;
+import model.CustomColor;
+
+/**
+ * Utility methods for creating {@link IRaster}s and converting them to and from the {@link
+ * CustomColor} arrays used at the boundaries of the model.
+ */
+public class RasterUtil {
+
+  private static final int MAX_PACKED_VALUE = 255;
+
+  /**
+   * Creates an empty raster of the given size that can hold channel values between 0 and the
+   * given maximum color value.
+   *
+   * @param width         the width of the raster.
+   * @param height        the height of the raster.
+   * @param maxColorValue the maximum value of a channel in the raster.
+   * @return a packed raster for 8-bit images, an interleaved raster otherwise.
+   * @throws IllegalArgumentException if the raster is smaller than 1x1.
+   */
+  public static IRaster create(int width, int height, int maxColorValue)
+      throws IllegalArgumentException {
+    if (maxColorValue <= MAX_PACKED_VALUE) {
+      return new PackedRaster(width, height);
+    }
+    return new InterleavedRaster(width, height);
+  }
+
+  /**
+   * Converts a 2D array of colors (indexed [y][x]) to a raster. The array is expected to be
+   * validated already (see {@link model.ImageUtil#validation}).
+   *
+   * @param pixels        the colors to store in the raster.
+   * @param maxColorValue the maximum value of a channel in the image.
+   * @return a raster containing the same colors as the given array.
+   */
+  public static IRaster fromArray(CustomColor[][] pixels, int maxColorValue) {
+    return fromArray(pixels, maxColorValue, new HeapRasterFactory());
+  }
+
+  /**
+   * Converts a 2D array of colors (indexed [y][x]) to a raster created by the given factory. The
+   * array is expected to be validated already (see {@link model.ImageUtil#validation}). Colors
+   * with values below zero can only be stored on the heap, so they always produce an {@link
+   * InterleavedRaster}.
+   *
+   * @param pixels        the colors to store in the raster.
+   * @param maxColorValue the maximum value of a channel in the image.
+   * @param factory       the factory used to allocate the raster.
+   * @return a raster containing the same colors as the given array.
+   * @throws IllegalArgumentException if the factory cannot create a raster for this image.
+   */
+  public static IRaster fromArray(CustomColor[][] pixels, int maxColorValue,
+      IRasterFactory factory) throws IllegalArgumentException {
+    int height = pixels.length;
+    int width = pixels[0].length;
+    IRaster raster = fitsPacked(pixels) ? factory.create(width, height, maxColorValue)
+        : new InterleavedRaster(width, height);
+    for (int y = 0; y < height; y++) {
+      for (int x = 0; x < width; x++) {
+        CustomColor c = pixels[y][x];
+        raster.setPixel(x, y, c.getRed(), c.getGreen(), c.getBlue());
+      }
+    }
+    return raster;
+  }
+
+  /**
+   * Reads the whole image provided by a tile source into a raster created by the given factory,
+   * a strip of rows at a time, so that no more than one strip of the image is held on the heap
+   * however large the raster is.
+   *
+   * @param source      the source of the pixels, which is not closed.
+   * @param factory     the factory used to allocate the raster.
+   * @param stripHeight the number of rows read at a time.
+   * @return a raster containing the image of the source.
+   * @throws IllegalArgumentException if the source cannot be read, the strip height is not
+   *                                  positive or the factory cannot create a raster for it.
+   */
+  public static IRaster fromTileSource(ITileSource source, IRasterFactory factory,
+      int stripHeight) throws IllegalArgumentException {
+    if (stripHeight < 1) {
+      throw new IllegalArgumentException("The strip height must be positive!");
+    }
+    int width = source.getWidth();
+    int height = source.getHeight();
+    IRaster raster = factory.create(width, height, MAX_PACKED_VALUE);
+    int rows = Math.min(stripHeight, height);
+    try {
+      int[] strip = new int[PackedRaster.checkedSize(width, rows)];
+      for (int top = 0; top < height; top += rows) {
+        int count = Math.min(rows, height - top);
+        source.readRegion(0, top, width, count, strip);
+        setRows(raster, top, count, strip);
+      }
+    } catch (IllegalArgumentException e) {
+      raster.close();
+      throw e;
+    }
+    return raster;
+  }
+
+  /**
+   * Reads whole rows of a raster as packed 0xRRGGBB pixels, in bulk where the raster supports it.
+   *
+   * @param raster the raster to read from.
+   * @param y      the first row to read.
+   * @param rows   the number of rows to read.
+   * @param rgb    the array to write the rows to, with a stride of the width of the raster.
+   * @throws IllegalArgumentException if a channel of the raster is not between 0 and 255.
+   */
+  public static void getRows(IViewRaster raster, int y, int rows, int[] rgb)
+      throws IllegalArgumentException {
+    int width = raster.getWidth();
+    if (raster instanceof PackedRaster) {
+      System.arraycopy(((PackedRaster) raster).getData(), y * width, rgb, 0, rows * width);
+    } else if (raster instanceof DirectRaster) {
+      ((DirectRaster) raster).getRows(y, rows, rgb);
+    } else if (raster instanceof TiledRaster) {
+      ((TiledRaster) raster).getRegion(0, y, width, rows, rgb);
+    } else {
+      for (int j = 0; j < rows; j++) {
+        for (int x = 0; x < width; x++) {
+          rgb[j * width + x] = raster.getRGB(x, y + j);
+        }
+      }
+    }
+  }
+
+  /**
+   * Writes whole rows of a raster from packed 0xRRGGBB pixels, in bulk where the raster supports
+   * it.
+   *
+   * @param raster the raster to write to.
+   * @param y      the first row to write.
+   * @param rows   the number of rows to write.
+   * @param rgb    the array to read the rows from, with a stride of the width of the raster.
+   */
+  public static void setRows(IRaster raster, int y, int rows, int[] rgb) {
+    int width = raster.getWidth();
+    if (raster instanceof PackedRaster) {
+      System.arraycopy(rgb, 0, ((PackedRaster) raster).getData(), y * width, rows * width);
+    } else if (raster instanceof DirectRaster) {
+      ((DirectRaster) raster).setRows(y, rows, rgb);
+    } else if (raster instanceof TiledRaster) {
+      ((TiledRaster) raster).setRegion(0, y, width, rows, rgb);
+    } else {
+      for (int j = 0; j < rows; j++) {
+        for (int x = 0; x < width; x++) {
+          int pixel = rgb[j * width + x];
+          raster.setPixel(x, y + j, pixel >> 16 & 0xFF, pixel >> 8 & 0xFF, pixel & 0xFF);
+        }
+      }
+    }
+  }
+
+  /**
+   * Determines whether every channel of the given colors fits in a {@link PackedRaster}.
+   *
+   * @param pixels the colors to check.
+   * @return true if all channels are within 0-255.
+   */
+  private static boolean fitsPacked(CustomColor[][] pixels) {
+    for (CustomColor[] row : pixels) {
+      for (CustomColor c : row) {
+        if ((c.getRed() | c.getGreen() | c.getBlue()) < 0 || c.getRed() > MAX_PACKED_VALUE
+            || c.getGreen() > MAX_PACKED_VALUE || c.getBlue() > MAX_PACKED_VALUE) {
+          return false;
+        }
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Copies every pixel of the source raster into the destination raster.
+   *
+   * @param source      the raster to copy from.
+   * @param destination the raster to copy to, of the same size as the source.
+   * @return the destination raster.
+   * @throws IllegalArgumentException if the rasters differ in size or the destination cannot hold
+   *                                  the source's values.
+   */
+  public static IRaster copy(IViewRaster source, IRaster destination)
+      throws IllegalArgumentException {
+    if (source.getWidth() != destination.getWidth()
+        || source.getHeight() != destination.getHeight()) {
+      throw new IllegalArgumentException("Cannot copy between rasters of different sizes!");
+    }
+    for (int y = 0; y < source.getHeight(); y++) {
+      for (int x = 0; x < source.getWidth(); x++) {
+        destination.setPixel(x, y, source.getRed(x, y), source.getGreen(x, y),
+            source.getBlue(x, y));
+      }
+    }
+    return destination;
+  }
+
+  /**
+   * Copies a rectangle of pixels from one raster to a position in another. Rows are copied as a
+   * whole between packed rasters.
+   *
+   * @param source      the raster to copy from.
+   * @param sourceX     the x-coordinate of the top left corner of the rectangle in the source.
+   * @param sourceY     the y-coordinate of the top left corner of the rectangle in the source.
+   * @param destination the raster to copy to.
+   * @param x           the x-coordinate to copy the top left corner of the rectangle to.
+   * @param y           the y-coordinate to copy the top left corner of the rectangle to.
+   * @param width       the width of the rectangle.
+   * @param height      the height of the rectangle.
+   * @throws IllegalArgumentException if the rectangle does not fit in either raster, or the
+   *                                  destination cannot hold the source's values.
+   */
+  public static void copyRegion(IViewRaster source, int sourceX, int sourceY,
+      IRaster destination, int x, int y, int width, int height) throws IllegalArgumentException {
+    if (sourceX < 0 || sourceY < 0 || x < 0 || y < 0 || width < 0 || height < 0
+        || sourceX + width > source.getWidth() || sourceY + height > source.getHeight()
+        || x + width > destination.getWidth() || y + height > destination.getHeight()) {
+      throw new IllegalArgumentException("The region does not fit in the rasters!");
+    }
+    if (source instanceof PackedRaster && destination instanceof PackedRaster) {
+      int[] from = ((PackedRaster) source).getData();
+      int[] to = ((PackedRaster) destination).getData();
+      for (int j = 0; j < height; j++) {
+        System.arraycopy(from, (sourceY + j) * source.getWidth() + sourceX, to,
+            (y + j) * destination.getWidth() + x, width);
+      }
+      return;
+    }
+    for (int j = 0; j < height; j++) {
+      for (int i = 0; i < width; i++) {
+        destination.setPixel(x + i, y + j, source.getRed(sourceX + i, sourceY + j),
+            source.getGreen(sourceX + i, sourceY + j), source.getBlue(sourceX + i, sourceY + j));
+      }
+    }
+  }
+
+  /**
+   * Converts a raster to a newly allocated 2D array of colors, indexed [y][x].
+   *
+   * @param raster the raster to convert.
+   * @return the colors of the raster.
+   */
+  public static CustomColor[][] toArray(IViewRaster raster) {
+    CustomColor[][] pixels = new CustomColor[raster.getHeight()][raster.getWidth()];
+    for (int y = 0; y < pixels.length; y++) {
+      for (int x = 0; x < pixels[y].length; x++) {
+        pixels[y][x] = CustomColor.of(raster.getRed(x, y), raster.getGreen(x, y),
+            raster.getBlue(x, y));
+      }
+    }
+    return pixels;
+  }
+
+  /**
+   * Determines whether two rasters have the same dimensions and the same channel values, no
+   * matter how they are stored.
+   *
+   * @param a the first raster.
+   * @param b the second raster.
+   * @return true if both rasters contain the same pixels.
+   */
+  public static boolean sameContent(IViewRaster a, IViewRaster b) {
+    if (a == b) {
+      return true;
+    } else if (a.getWidth() != b.getWidth() || a.getHeight() != b.getHeight()) {
+      return false;
+    }
+    for (int y = 0; y < a.getHeight(); y++) {
+      for (int x = 0; x < a.getWidth(); x++) {
+        if (a.getRed(x, y) != b.getRed(x, y) || a.getGreen(x, y) != b.getGreen(x, y)
+            || a.getBlue(x, y) != b.getBlue(x, y)) {
+          return false;
+        }
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Computes a hash code of the content of a raster, consistent with {@link #sameContent}.
+   *
+   * @param raster the raster to hash.
+   * @return the hash code of the raster's pixels.
+   */
+  public static int contentHash(IViewRaster raster) {
+    int result = 31 * raster.getWidth() + raster.getHeight();
+    for (int y = 0; y < raster.getHeight(); y++) {
+      for (int x = 0; x < raster.getWidth(); x++) {
+        result = 31 * result + raster.getRed(x, y);
+        result = 31 * result + raster.getGreen(x, y);
+        result = 31 * result + raster.getBlue(x, y);
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Computes a 64-bit hash of the content of a raster, mixing every pixel so thoroughly that two
+   * rasters of different content are practically never given the same fingerprint. Unlike
+   * {@link #contentHash}, this can identify a raster, for example as the key of a cache. Rasters
+   * of the same size and content have the same fingerprint, whatever their kind; the pixels of a
+   * packed raster are hashed straight from its array.
+   *
+   * @param raster the raster to fingerprint.
+   * @return the fingerprint of the raster's size and pixels.
+   */
+  public static long fingerprint(IViewRaster raster) {
+    int width = raster.getWidth();
+    int height = raster.getHeight();
+    long hash = ((long) width << 32) ^ height;
+    if (raster instanceof PackedRaster) {
+      for (int rgb : ((PackedRaster) raster).getData()) {
+        hash = (Long.rotateLeft(hash, 23) ^ rgb) * 0x9E3779B97F4A7C15L;
+      }
+    } else {
+      for (int y = 0; y < height; y++) {
+        for (int x = 0; x < width; x++) {
+          int red = raster.getRed(x, y);
+          int green = raster.getGreen(x, y);
+          int blue = raster.getBlue(x, y);
+          // 8-bit pixels as they would be packed, so every kind of raster gives the same hash
+          long rgb = (red | green | blue) <= 0xFF ? (red << 16) | (green << 8) | blue
+              : (1L << 60) | ((long) red << 40) | ((long) green << 20) | blue;
+          hash = (Long.rotateLeft(hash, 23) ^ rgb) * 0x9E3779B97F4A7C15L;
+        }
+      }
+    }
+    // spread the last pixels over all bits
+    hash ^= hash >>> 31;
+    hash *= 0xBF58476D1CE4E5B9L;
+    return hash ^ (hash >>> 29);
+  }
+
+  /**
+   * Creates an 8-bit RGB {@link BufferedImage} with the contents of a raster. The image of a
+   * {@link PackedRaster} wraps the pixel array of the raster without copying it, so the raster
+   * must not be modified while the image is in use, and the image must not be drawn on. Other
+   * rasters are copied in bulk where they support it.
+   *
+   * @param raster the raster to convert.
+   * @return an image of type {@link BufferedImage#TYPE_INT_RGB} showing the raster.
+   * @throws IllegalArgumentException if a channel of the raster is not between 0 and 255.
+   */
+  public static BufferedImage toImage(IViewRaster raster) throws IllegalArgumentException {
+    int width = raster.getWidth();
+    int height = raster.getHeight();
+    int[] data;
+    if (raster instanceof PackedRaster) {
+      data = ((PackedRaster) raster).getData();
+    } else {
+      data = new int[PackedRaster.checkedSize(width, height)];
+      getRows(raster, 0, height, data);
+    }
+    int[] masks = {0xFF0000, 0xFF00, 0xFF};
+    WritableRaster pixels = Raster.createPackedRaster(new DataBufferInt(data, data.length),
+        width, height, width, masks, null);
+    return new BufferedImage(new DirectColorModel(24, masks[0], masks[1], masks[2]), pixels,
+        false, null);
+  }
+}
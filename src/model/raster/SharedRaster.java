@@ -0,0 +1,163 @@
+package model.raster;
+
+/**
+ * A handle to a raster that may be shared with other handles, copy-on-write. Copying an image
+ * only creates a new handle to the same raster; the raster is copied the first time one of the
+ * handles asks to write to it while it is still shared, and closed once the last handle to it is
+ * closed or moved to another raster.
+ */
+public final class SharedRaster {
+
+  /**
+   * A raster together with the number of handles that refer to it.
+   */
+  private static class Shared {
+
+    final IRaster raster;
+    int owners;
+
+    /**
+     * Creates a raster that is referred to by a single handle.
+     *
+     * @param raster the raster.
+     */
+    Shared(IRaster raster) {
+      this.raster = raster;
+      this.owners = 1;
+    }
+  }
+
+  private Shared shared;
+  private boolean closed;
+
+  /**
+   * Creates a handle that is the only owner of the given raster.
+   *
+   * @param raster the raster to own.
+   * @throws IllegalArgumentException if the raster is null.
+   */
+  public SharedRaster(IRaster raster) throws IllegalArgumentException {
+    if (raster == null) {
+      throw new IllegalArgumentException("The raster must not be null!");
+    }
+    this.shared = new Shared(raster);
+  }
+
+  /**
+   * Creates another handle to the same raster as the given handle.
+   *
+   * @param shared the raster to share.
+   */
+  private SharedRaster(Shared shared) {
+    this.shared = shared;
+  }
+
+  /**
+   * Gets the raster for reading. It must not be modified, as it may be shared.
+   *
+   * @return the raster this handle refers to.
+   */
+  public IViewRaster get() {
+    return this.shared.raster;
+  }
+
+  /**
+   * Creates a new handle to the same raster, without copying it.
+   *
+   * @return the new handle.
+   */
+  public SharedRaster share() {
+    synchronized (this.shared) {
+      this.shared.owners++;
+    }
+    return new SharedRaster(this.shared);
+  }
+
+  /**
+   * Checks whether other handles refer to the same raster as this one.
+   *
+   * @return true if the raster is shared.
+   */
+  public boolean isShared() {
+    synchronized (this.shared) {
+      return this.shared.owners > 1;
+    }
+  }
+
+  /**
+   * Gets the raster for writing, copying it first if it is shared, so that other handles do not
+   * see the changes.
+   *
+   * @return a raster that only this handle refers to.
+   */
+  public IRaster getWritable() {
+    synchronized (this.shared) {
+      if (this.shared.owners == 1) {
+        return this.shared.raster;
+      }
+      this.shared.owners--;
+    }
+    this.shared = new Shared(this.shared.raster.copy());
+    return this.shared.raster;
+  }
+
+  /**
+   * Makes this handle refer to a different raster, releasing the current one.
+   *
+   * @param raster the raster this handle becomes the only owner of.
+   * @throws IllegalArgumentException if the raster is null.
+   */
+  public void set(IRaster raster) throws IllegalArgumentException {
+    if (raster == null) {
+      throw new IllegalArgumentException("The raster must not be null!");
+    } else if (raster == this.shared.raster) {
+      return;
+    }
+    this.release();
+    this.shared = new Shared(raster);
+  }
+
+  /**
+   * Makes this handle refer to the same raster as another handle, without copying it, releasing
+   * the current one.
+   *
+   * @param other the handle whose raster to share.
+   * @throws IllegalArgumentException if the other handle is null.
+   */
+  public void set(SharedRaster other) throws IllegalArgumentException {
+    if (other == null) {
+      throw new IllegalArgumentException("The raster must not be null!");
+    } else if (other.shared == this.shared) {
+      return;
+    }
+    synchronized (other.shared) {
+      other.shared.owners++;
+    }
+    this.release();
+    this.shared = other.shared;
+  }
+
+  /**
+   * Releases the raster of this handle, closing it if no other handle refers to it. Afterwards,
+   * this handle must not be used. Closing a handle more than once has no effect.
+   */
+  public void close() {
+    if (!this.closed) {
+      this.closed = true;
+      this.release();
+    }
+  }
+
+  /**
+   * Drops the reference of this handle to its raster, closing the raster if it was the last one.
+   */
+  private void release() {
+    boolean last;
+    synchronized (this.shared) {
+      last = --this.shared.owners == 0;
+    }
+    if (last) {
+      this.shared.raster.close();
+    }
+  }
+}
@@ -0,0 +1,478 @@
+package model.raster;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.util.BitSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * An {@link IRaster} for 8-bit images that is split into square tiles, of which only a bounded
+ * number are kept in memory. Tiles are loaded on first access from an optional {@link
+ * ITileSource} (one row of tiles at a time), evicted in least-recently-used order once the memory
+ * budget is exceeded, and written to a scratch file if they were modified, so images larger than
+ * the available memory can be read, transformed and written.
+ *
+ * <p>The budget never drops below four rows of tiles. Traversals that also read a border around
+ * every tile (see {@link model.TiledImageModel}) use three rows of tiles at once, and least
+ * recently used order interleaves the oldest two of them, so one more row is kept to avoid
+ * repeatedly reloading the same tiles. Call {@link #close()} to delete the scratch file.
+ */
+public class TiledRaster implements IRaster {
+
+  public static final int DEFAULT_TILE_SIZE = 256;
+
+  private static final int MAX_CHANNEL = 255;
+
+  /**
+   * A single tile of the raster, holding packed 0xRRGGBB pixels.
+   */
+  private static class Tile {
+
+    final int index;
+    final int[] data;
+    boolean dirty;
+
+    /**
+     * Creates a new tile.
+     *
+     * @param index the row-major index of the tile in the raster.
+     * @param data  the pixels of the tile.
+     */
+    Tile(int index, int[] data) {
+      this.index = index;
+      this.data = data;
+    }
+  }
+
+  private final int width;
+  private final int height;
+  private final int tileSize;
+  private final int tilesAcross;
+  private final int tilesDown;
+  private final int maxTiles;
+  private final long memoryBudget;
+  private final ITileSource source;
+  private final BitSet spilled;
+  private final Map<Integer, Tile> cache;
+  private File scratchFile;
+  private RandomAccessFile scratch;
+  private Tile last;
+  private boolean closed;
+
+  /**
+   * Creates a tiled raster with the default tile size.
+   *
+   * @param width        the width of the raster.
+   * @param height       the height of the raster.
+   * @param memoryBudget the maximum number of bytes of tiles to keep in memory.
+   * @param source       the source to load unmodified tiles from, or null for a black raster.
+   * @throws IllegalArgumentException if the raster is smaller than 1x1 or the source is of a
+   *                                  different size.
+   */
+  public TiledRaster(int width, int height, long memoryBudget, ITileSource source)
+      throws IllegalArgumentException {
+    this(width, height, DEFAULT_TILE_SIZE, memoryBudget, source);
+  }
+
+  /**
+   * Creates a tiled raster.
+   *
+   * @param width        the width of the raster.
+   * @param height       the height of the raster.
+   * @param tileSize     the width and height of a tile.
+   * @param memoryBudget the maximum number of bytes of tiles to keep in memory.
+   * @param source       the source to load unmodified tiles from, or null for a black raster.
+   * @throws IllegalArgumentException if the raster is smaller than 1x1, the tile size is not
+   *                                  positive or the source is of a different size.
+   */
+  public TiledRaster(int width, int height, int tileSize, long memoryBudget, ITileSource source)
+      throws IllegalArgumentException {
+    if (width < 1 || height < 1) {
+      throw new IllegalArgumentException("A raster must be at least 1x1!");
+    } else if (tileSize < 1 || tileSize > 4096) {
+      throw new IllegalArgumentException("The tile size must be between 1 and 4096!");
+    } else if (source != null
+        && (source.getWidth() != width || source.getHeight() != height)) {
+      throw new IllegalArgumentException("The tile source does not match the raster size!");
+    }
+    this.width = width;
+    this.height = height;
+    this.tileSize = tileSize;
+    this.tilesAcross = (width + tileSize - 1) / tileSize;
+    this.tilesDown = (height + tileSize - 1) / tileSize;
+    if ((long) this.tilesAcross * this.tilesDown > Integer.MAX_VALUE) {
+      throw new IllegalArgumentException("The tile size is too small for this raster!");
+    }
+    long tileBytes = (long) tileSize * tileSize * Integer.BYTES;
+    this.memoryBudget = memoryBudget;
+    this.maxTiles = (int) Math.max(4L * this.tilesAcross + 2,
+        Math.min(Integer.MAX_VALUE, memoryBudget / tileBytes));
+    this.source = source;
+    this.spilled = new BitSet();
+    this.cache = new LinkedHashMap<Integer, Tile>(16, 0.75f, true) {
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<Integer, Tile> eldest) {
+        if (this.size() <= TiledRaster.this.maxTiles) {
+          return false;
+        }
+        TiledRaster.this.evict(eldest.getValue());
+        return true;
+      }
+    };
+  }
+
+  /**
+   * Gets the width and height of the tiles of this raster.
+   *
+   * @return the tile size in pixels.
+   */
+  public int getTileSize() {
+    return this.tileSize;
+  }
+
+  /**
+   * Gets the memory budget of this raster.
+   *
+   * @return the maximum number of bytes of tiles this raster tries to keep in memory.
+   */
+  public long getMemoryBudget() {
+    return this.memoryBudget;
+  }
+
+  /**
+   * Gets the number of tiles currently held in memory.
+   *
+   * @return the number of loaded tiles.
+   */
+  public synchronized int getLoadedTileCount() {
+    return this.cache.size();
+  }
+
+  @Override
+  public int getWidth() {
+    return this.width;
+  }
+
+  @Override
+  public int getHeight() {
+    return this.height;
+  }
+
+  @Override
+  public int getRed(int x, int y) {
+    return (this.getRGB(x, y) >> 16) & 0xFF;
+  }
+
+  @Override
+  public int getGreen(int x, int y) {
+    return (this.getRGB(x, y) >> 8) & 0xFF;
+  }
+
+  @Override
+  public int getBlue(int x, int y) {
+    return this.getRGB(x, y) & 0xFF;
+  }
+
+  @Override
+  public synchronized int getRGB(int x, int y) {
+    this.checkBounds(x, y, 1, 1);
+    Tile tile = this.tile(x / this.tileSize, y / this.tileSize);
+    return tile.data[(y % this.tileSize) * this.tileWidth(x / this.tileSize)
+        + x % this.tileSize];
+  }
+
+  @Override
+  public synchronized void setPixel(int x, int y, int red, int green, int blue)
+      throws IllegalArgumentException {
+    if ((red | green | blue) < 0 || red > MAX_CHANNEL || green > MAX_CHANNEL
+        || blue > MAX_CHANNEL) {
+      throw new IllegalArgumentException(
+          "A tiled raster can only hold channel values between 0 and " + MAX_CHANNEL + "!");
+    }
+    this.checkBounds(x, y, 1, 1);
+    Tile tile = this.tile(x / this.tileSize, y / this.tileSize);
+    tile.data[(y % this.tileSize) * this.tileWidth(x / this.tileSize) + x % this.tileSize] =
+        (red << 16) | (green << 8) | blue;
+    tile.dirty = true;
+  }
+
+  /**
+   * Reads a rectangular region of this raster as packed 0xRRGGBB pixels, visiting every tile
+   * that overlaps the region only once.
+   *
+   * @param x      the x-coordinate of the top left corner of the region.
+   * @param y      the y-coordinate of the top left corner of the region.
+   * @param width  the width of the region.
+   * @param height the height of the region.
+   * @param rgb    the array to write the region to, row-major with a stride of width.
+   */
+  public synchronized void getRegion(int x, int y, int width, int height, int[] rgb) {
+    this.checkBounds(x, y, width, height);
+    for (int ty = y / this.tileSize; ty <= (y + height - 1) / this.tileSize; ty++) {
+      for (int tx = x / this.tileSize; tx <= (x + width - 1) / this.tileSize; tx++) {
+        Tile tile = this.tile(tx, ty);
+        int tileWidth = this.tileWidth(tx);
+        int x0 = Math.max(x, tx * this.tileSize);
+        int x1 = Math.min(x + width, tx * this.tileSize + tileWidth);
+        int y0 = Math.max(y, ty * this.tileSize);
+        int y1 = Math.min(y + height, ty * this.tileSize + this.tileHeight(ty));
+        for (int row = y0; row < y1; row++) {
+          System.arraycopy(tile.data,
+              (row - ty * this.tileSize) * tileWidth + x0 - tx * this.tileSize,
+              rgb, (row - y) * width + x0 - x, x1 - x0);
+        }
+      }
+    }
+  }
+
+  /**
+   * Writes a rectangular region of packed 0xRRGGBB pixels to this raster, visiting every tile
+   * that overlaps the region only once.
+   *
+   * @param x      the x-coordinate of the top left corner of the region.
+   * @param y      the y-coordinate of the top left corner of the region.
+   * @param width  the width of the region.
+   * @param height the height of the region.
+   * @param rgb    the pixels to write, row-major with a stride of width. Only the lowest 24 bits
+   *               of every pixel are used.
+   */
+  public synchronized void setRegion(int x, int y, int width, int height, int[] rgb) {
+    this.checkBounds(x, y, width, height);
+    for (int ty = y / this.tileSize; ty <= (y + height - 1) / this.tileSize; ty++) {
+      for (int tx = x / this.tileSize; tx <= (x + width - 1) / this.tileSize; tx++) {
+        Tile tile = this.tile(tx, ty);
+        int tileWidth = this.tileWidth(tx);
+        int x0 = Math.max(x, tx * this.tileSize);
+        int x1 = Math.min(x + width, tx * this.tileSize + tileWidth);
+        int y0 = Math.max(y, ty * this.tileSize);
+        int y1 = Math.min(y + height, ty * this.tileSize + this.tileHeight(ty));
+        for (int row = y0; row < y1; row++) {
+          int from = (row - y) * width + x0 - x;
+          int to = (row - ty * this.tileSize) * tileWidth + x0 - tx * this.tileSize;
+          for (int i = 0; i < x1 - x0; i++) {
+            tile.data[to + i] = rgb[from + i] & 0xFFFFFF;
+          }
+        }
+        tile.dirty = true;
+      }
+    }
+  }
+
+  @Override
+  public synchronized IRaster copy() {
+    TiledRaster result = new TiledRaster(this.width, this.height, this.tileSize,
+        this.memoryBudget, null);
+    int[] buffer = new int[this.tileSize * this.tileSize];
+    for (int ty = 0; ty < this.tilesDown; ty++) {
+      for (int tx = 0; tx < this.tilesAcross; tx++) {
+        int[] data = this.tile(tx, ty).data;
+        System.arraycopy(data, 0, buffer, 0, data.length);
+        result.setRegion(tx * this.tileSize, ty * this.tileSize, this.tileWidth(tx),
+            this.tileHeight(ty), buffer);
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Releases all tiles and deletes the scratch file. The tile source, if any, is not closed.
+   * Afterwards, any access to this raster throws an {@link IllegalStateException}.
+   */
+  @Override
+  public synchronized void close() {
+    this.closed = true;
+    this.cache.clear();
+    this.last = null;
+    try {
+      if (this.scratch != null) {
+        this.scratch.close();
+      }
+    } catch (IOException e) {
+      // the scratch file is deleted below either way
+    }
+    if (this.scratchFile != null && !this.scratchFile.delete()) {
+      this.scratchFile.deleteOnExit();
+    }
+  }
+
+  /**
+   * Ensures the given region lies within this raster.
+   *
+   * @param x      the x-coordinate of the top left corner of the region.
+   * @param y      the y-coordinate of the top left corner of the region.
+   * @param width  the width of the region.
+   * @param height the height of the region.
+   * @throws IndexOutOfBoundsException if the region is not within this raster.
+   */
+  private void checkBounds(int x, int y, int width, int height) {
+    if (x < 0 || y < 0 || width < 1 || height < 1 || x > this.width - width
+        || y > this.height - height) {
+      throw new IndexOutOfBoundsException("The region (" + x + ", " + y + ", " + width + "x"
+          + height + ") is outside of this " + this.width + "x" + this.height + " raster!");
+    }
+  }
+
+  /**
+   * Gets the width of the tiles in the given column, which is smaller for the last column.
+   *
+   * @param tx the column of the tile.
+   * @return the width of the tile in pixels.
+   */
+  private int tileWidth(int tx) {
+    return Math.min(this.tileSize, this.width - tx * this.tileSize);
+  }
+
+  /**
+   * Gets the height of the tiles in the given row, which is smaller for the last row.
+   *
+   * @param ty the row of the tile.
+   * @return the height of the tile in pixels.
+   */
+  private int tileHeight(int ty) {
+    return Math.min(this.tileSize, this.height - ty * this.tileSize);
+  }
+
+  /**
+   * Gets a tile, loading it (and, if it comes from the source, the rest of its row) if needed.
+   *
+   * @param tx the column of the tile.
+   * @param ty the row of the tile.
+   * @return the loaded tile.
+   * @throws IllegalStateException if this raster is closed or the tile cannot be loaded.
+   */
+  private Tile tile(int tx, int ty) throws IllegalStateException {
+    if (this.closed) {
+      throw new IllegalStateException("This raster has been closed!");
+    }
+    int index = ty * this.tilesAcross + tx;
+    if (this.last != null && this.last.index == index) {
+      return this.last;
+    }
+    Tile tile = this.cache.get(index);
+    if (tile == null) {
+      if (this.spilled.get(index)) {
+        tile = this.readScratch(index, tx, ty);
+        this.cache.put(index, tile);
+      } else if (this.source != null) {
+        tile = this.loadRow(tx, ty);
+      } else {
+        tile = new Tile(index, new int[this.tileWidth(tx) * this.tileHeight(ty)]);
+        this.cache.put(index, tile);
+      }
+    }
+    this.last = tile;
+    return tile;
+  }
+
+  /**
+   * Decodes a full row of tiles from the source in one read, since sources such as image files
+   * can be read far more efficiently in whole rows. Tiles of the row that are already loaded or
+   * have been modified are kept.
+   *
+   * @param tx the column of the requested tile.
+   * @param ty the row of tiles to load.
+   * @return the requested tile.
+   */
+  private Tile loadRow(int tx, int ty) {
+    int rowHeight = this.tileHeight(ty);
+    int[] band = new int[this.width * rowHeight];
+    this.source.readRegion(0, ty * this.tileSize, this.width, rowHeight, band);
+    Tile requested = null;
+    for (int i = 0; i < this.tilesAcross; i++) {
+      int index = ty * this.tilesAcross + i;
+      if (i != tx && (this.spilled.get(index) || this.cache.containsKey(index))) {
+        continue;
+      }
+      int tileWidth = this.tileWidth(i);
+      int[] data = new int[tileWidth * rowHeight];
+      for (int row = 0; row < rowHeight; row++) {
+        for (int col = 0; col < tileWidth; col++) {
+          data[row * tileWidth + col] = band[row * this.width + i * this.tileSize + col]
+              & 0xFFFFFF;
+        }
+      }
+      Tile tile = new Tile(index, data);
+      if (i == tx) {
+        requested = tile;
+      } else {
+        this.cache.put(index, tile);
+      }
+    }
+    // inserted last so that it is the most recently used tile
+    this.cache.put(requested.index, requested);
+    return requested;
+  }
+
+  /**
+   * Removes a tile from memory, writing it to the scratch file first if it was modified.
+   *
+   * @param tile the tile to evict.
+   * @throws IllegalStateException if the tile cannot be written to the scratch file.
+   */
+  private void evict(Tile tile) throws IllegalStateException {
+    if (this.last == tile) {
+      this.last = null;
+    }
+    if (!tile.dirty) {
+      return;
+    }
+    try {
+      if (this.scratch == null) {
+        this.scratchFile = File.createTempFile("tiles", ".raw");
+        this.scratchFile.deleteOnExit();
+        this.scratch = new RandomAccessFile(this.scratchFile, "rw");
+      }
+      ByteBuffer bytes = ByteBuffer.allocate(tile.data.length * Integer.BYTES);
+      bytes.asIntBuffer().put(tile.data);
+      this.scratch.getChannel().write(bytes, this.scratchOffset(tile.index));
+      this.spilled.set(tile.index);
+    } catch (IOException e) {
+      throw new IllegalStateException("Failed to write a tile to the scratch file: "
+          + e.getMessage());
+    }
+  }
+
+  /**
+   * Reads a previously evicted tile back from the scratch file.
+   *
+   * @param index the index of the tile.
+   * @param tx    the column of the tile.
+   * @param ty    the row of the tile.
+   * @return the tile. It stays in the scratch file, so it only needs to be written back if it is
+   *         modified again.
+   * @throws IllegalStateException if the tile cannot be read.
+   */
+  private Tile readScratch(int index, int tx, int ty) throws IllegalStateException {
+    int[] data = new int[this.tileWidth(tx) * this.tileHeight(ty)];
+    ByteBuffer bytes = ByteBuffer.allocate(data.length * Integer.BYTES);
+    try {
+      long offset = this.scratchOffset(index);
+      while (bytes.hasRemaining()) {
+        if (this.scratch.getChannel().read(bytes, offset + bytes.position()) < 0) {
+          throw new IOException("Unexpected end of file");
+        }
+      }
+    } catch (IOException e) {
+      throw new IllegalStateException("Failed to read a tile from the scratch file: "
+          + e.getMessage());
+    }
+    bytes.flip();
+    IntBuffer ints = bytes.asIntBuffer();
+    ints.get(data);
+    return new Tile(index, data);
+  }
+
+  /**
+   * Gets the position of a tile in the scratch file. Every tile has a fixed slot.
+   *
+   * @param index the index of the tile.
+   * @return the offset of the tile in bytes.
+   */
+  private long scratchOffset(int index) {
+    return (long) index * this.tileSize * this.tileSize * Integer.BYTES;
+  }
+}
@@ -2,45 +2,67 @@ package model.transformation;
 
 import model.CustomColor;
 import model.ImageUtil;
+import model.raster.IRaster;
+import model.raster.IViewRaster;
+import model.raster.PlanarRaster;
+import model.raster.RasterUtil;
 
 /**
  * Represents an abstract class for all transformations (filtering and color) on the image.
+ * Subclasses compute an unclamped result in a {@link PlanarRaster}, which is narrowed to the
+ * valid range of color values once at the end.
  */
 public abstract class ClampTransformation implements ITransformation {
 
   /**
-   * Ensures that all the pixels in the image are within valid boundaries of the color values.
+   * Applies this transformation on the pixels of the image without clamping the result. The
+   * source may itself be an unclamped result of another transformation.
    *
-   * @param pixels        represents a matrix of all pixels in an image
-   * @param maxColorValue represents a maximum color value allowed in the image
-   * @param minColorValue represents a minimum color value allowed in the image
+   * @param pixels represents all pixels in the image.
+   * @return a new planar raster containing the transformed (possibly out of range) image.
    */
-  private void clamping(CustomColor[][] pixels, int maxColorValue, int minColorValue) {
-    for (int i = 0; i < pixels.length; i++) {
-      for (int j = 0; j < pixels[0].length; j++) {
-        pixels[i][j] = new CustomColor(
-            Math.min(maxColorValue, Math.max(minColorValue, pixels[i][j].getRed())),
-            Math.min(maxColorValue, Math.max(minColorValue, pixels[i][j].getGreen())),
-            Math.min(maxColorValue, Math.max(minColorValue, pixels[i][j].getBlue())));
-      }
-    }
-  }
+  protected abstract PlanarRaster applyTransformation(PlanarRaster pixels);
 
   /**
-   * Applies this transformation on the matrix of pixels of the image.
+   * Applies this transformation without clamping the result. This can be used to chain several
+   * transformations in a wide format and narrow only the final result with {@link
+   * PlanarRaster#clamp}. Note that this skips the clamping that {@link #apply(IViewRaster, int,
+   * int)} performs between transformations, so the result of such a chain may differ.
    *
-   * @param pixels represents a matrix of all pixels in the image.
-   * @return transformed matrix of the image.
+   * @param pixels represents all pixels in the image.
+   * @return a new planar raster containing the transformed (possibly out of range) image.
    */
-  protected abstract CustomColor[][] applyTransformation(CustomColor[][] pixels);
+  public PlanarRaster applyUnclamped(IViewRaster pixels) {
+    return this.applyTransformation(PlanarRaster.of(pixels));
+  }
 
+  @Override
+  public IRaster apply(IViewRaster raster, int maxColorValue, int minColorValue) {
+    return this.apply(raster, maxColorValue, minColorValue, RowBandExecutor.getDefault());
+  }
+
+  @Override
+  public IRaster apply(IViewRaster raster, int maxColorValue, int minColorValue,
+      RowBandExecutor executor) {
+    return this.applyUnclamped(raster).clamp(maxColorValue, minColorValue);
+  }
+
+  /**
+   * Clamping transformations always produce valid rasters. Subclasses that override {@link
+   * #apply(IViewRaster, int, int, RowBandExecutor)} must still clamp every channel of the result.
+   *
+   * @return true.
+   */
+  @Override
+  public boolean producesValidRasters() {
+    return true;
+  }
 
   @Override
   public CustomColor[][] apply(CustomColor[][] pixels, int maxColorValue, int minColorValue)
       throws IllegalArgumentException {
     ImageUtil.validation(pixels, maxColorValue, minColorValue);
-    CustomColor[][] newPixels = applyTransformation(pixels);
-    clamping(newPixels, maxColorValue, minColorValue);
-    return newPixels;
+    return RasterUtil.toArray(
+        this.apply(RasterUtil.fromArray(pixels, maxColorValue), maxColorValue, minColorValue));
   }
 }
@@ -1,109 +1,473 @@
 package model.transformation;
 
+import java.util.Arrays;
 import model.CustomColor;
+import model.raster.HeapRasterFactory;
+import model.raster.IRaster;
+import model.raster.IRasterFactory;
+import model.raster.IViewRaster;
+import model.raster.PackedRaster;
+import model.raster.RasterUtil;
 
 /**
  * Represents a transformation to downscale the image to a new width and height inputted by the user
  * with any aspect ratio.
+ *
+ * <p>Where every new pixel samples the old image is worked out once per column and once per row,
+ * and kept for as long as images of the same size are downscaled, such as all layers of an image.
  */
 public class DownscaleTransformation implements ITransformation {
 
+  /**
+   * The ways in which the pixels of the downscaled image can be sampled from the old image.
+   */
+  public enum Sampling {
+    /**
+     * Interpolates between the four old pixels around the position of every new pixel, using the
+     * formulas given by the assignment instructions. Only these pixels are looked at, so shrinking
+     * an image to a fraction of its size skips most of it.
+     */
+    BILINEAR,
+    /**
+     * Averages all old pixels covered by every new pixel, weighted by how much of them it covers.
+     * This avoids the aliasing of {@link #BILINEAR} when shrinking an image by a large ratio.
+     */
+    AREA
+  }
+
   private final int newWidth;
   private final int newHeight;
+  private final Sampling sampling;
+  // the sampling tables of the size of the image last downscaled
+  private Tables tables;
 
   /**
-   * Constructs a new downscale transformation with the given width and height.
+   * Constructs a new downscale transformation with the given width and height, which samples
+   * pixels with {@link Sampling#BILINEAR}.
    *
    * @param newWidth  is a new width of the picture in terms of pixels.
    * @param newHeight is a new height of the picture in terms of pixels.
    */
   public DownscaleTransformation(int newWidth, int newHeight) {
+    this(newWidth, newHeight, Sampling.BILINEAR);
+  }
+
+  /**
+   * Constructs a new downscale transformation with the given width, height and sampling.
+   *
+   * @param newWidth  is a new width of the picture in terms of pixels.
+   * @param newHeight is a new height of the picture in terms of pixels.
+   * @param sampling  how the new pixels are sampled from the old ones.
+   * @throws IllegalArgumentException if the sampling is null.
+   */
+  public DownscaleTransformation(int newWidth, int newHeight, Sampling sampling)
+      throws IllegalArgumentException {
+    if (sampling == null) {
+      throw new IllegalArgumentException("The sampling must not be null!");
+    }
     this.newWidth = newWidth;
     this.newHeight = newHeight;
+    this.sampling = sampling;
+  }
+
+  @Override
+  public CustomColor[][] apply(CustomColor[][] pixels, int maxColorValue, int minColorValue) {
+    return RasterUtil.toArray(
+        this.apply(RasterUtil.fromArray(pixels, maxColorValue), maxColorValue, minColorValue));
+  }
+
+  @Override
+  public IRaster apply(IViewRaster raster, int maxColorValue, int minColorValue)
+      throws IllegalArgumentException {
+    return this.apply(raster, maxColorValue, minColorValue, RowBandExecutor.getDefault());
+  }
+
+  @Override
+  public IRaster apply(IViewRaster raster, int maxColorValue, int minColorValue,
+      RowBandExecutor executor) throws IllegalArgumentException {
+    return this.apply(raster, maxColorValue, minColorValue, executor, new HeapRasterFactory());
   }
 
   /**
-   * Calculates the sample color value from all neighboring pixels using the formulas for
-   * downscaling given by the assignment instructions.
+   * Downscales a pixel buffer, computing bands of rows of the downscaled image with the given
+   * executor. Every band reads the old rows it samples once, all channels together.
    *
-   * @param oldX the location of the old pixel in the new image in terms of x coordinate.
-   * @param oldY the location of the old pixel in the new image in terms of y coordinate.
-   * @param a    top left pixel of the neighboring pixels.
-   * @param b    top right pixel of the neighboring pixels.
-   * @param c    bottom left pixel of the neighboring pixels.
-   * @param d    top right pixel of the neighboring pixels.
-   * @return the sample color value from all for neighboring pixels.
+   * @param raster        the pixels of the image.
+   * @param maxColorValue represents the maximum allowed color value in the image
+   * @param minColorValue represents the minimum allowed color value in the image
+   * @param executor      runs the bands of rows, sequentially or in parallel.
+   * @param factory       the factory deciding where the result is stored.
+   * @return a new raster containing the downscaled image.
+   * @throws IllegalArgumentException if the new size is smaller than 1x1, or a sampled pixel
+   *                                  lies outside of the image.
    */
-  private int samplePixelValues(float oldX, float oldY, int a, int b, int c, int d) {
-    float m;
-    float n;
+  @Override
+  public IRaster apply(IViewRaster raster, int maxColorValue, int minColorValue,
+      RowBandExecutor executor, IRasterFactory factory) throws IllegalArgumentException {
+    Tables tables = this.getTables(raster.getWidth(), raster.getHeight());
+    IRaster downscaled = factory.create(this.newWidth, this.newHeight, maxColorValue);
+    executor.forEachBand(this.newHeight, this.newWidth, (top, bottom) -> {
+      if (this.sampling == Sampling.AREA) {
+        this.averageBand(raster, tables, downscaled, top, bottom, maxColorValue, minColorValue);
+      } else {
+        this.interpolateBand(raster, tables, downscaled, top, bottom);
+      }
+    });
+    return downscaled;
+  }
 
-    if ((int) oldX == oldX) {
-      m = (a + b) / 2;
-      n = (c + d) / 2;
-    } else {
-      m =
-          ((float) b) * (oldX - (float) Math.floor(oldX)) + ((float) a) * ((float) Math.ceil(oldX)
-              - oldX);
-      n =
-          ((float) d) * (oldX - (float) Math.floor(oldX)) + ((float) c) * ((float) Math.ceil(oldX)
-              - oldX);
+  @Override
+  public String getCacheKey() {
+    return this.getClass().getName() + "[" + this.newWidth + "x" + this.newHeight + ", "
+        + this.sampling + "]";
+  }
+
+  /**
+   * Gets the sampling tables for an image of the given size, creating them if the last image
+   * downscaled had another size.
+   *
+   * @param width  the width of the old image.
+   * @param height the height of the old image.
+   * @return the sampling tables.
+   * @throws IllegalArgumentException if the new size is smaller than 1x1, or a sampled pixel
+   *                                  lies outside of the image.
+   */
+  private synchronized Tables getTables(int width, int height) throws IllegalArgumentException {
+    if (this.tables == null || this.tables.width != width || this.tables.height != height) {
+      if (this.newWidth < 1 || this.newHeight < 1) {
+        throw new IllegalArgumentException("New dimensions must be at least 1x1!");
+      }
+      this.tables = new Tables(width, height, this.newWidth, this.newHeight, this.sampling);
+    }
+    return this.tables;
+  }
+
+  /**
+   * Computes the rows from top to bottom of the downscaled image with {@link Sampling#BILINEAR}.
+   * Packed images are sampled in place, others are read a row at a time.
+   *
+   * @param raster     the pixels of the old image.
+   * @param tables     the sampling tables.
+   * @param downscaled the downscaled image.
+   * @param top        the first row to compute.
+   * @param bottom     the row after the last row to compute.
+   */
+  private void interpolateBand(IViewRaster raster, Tables tables, IRaster downscaled, int top,
+      int bottom) {
+    Axis columns = tables.columns;
+    Axis rows = tables.rows;
+    int width = raster.getWidth();
+    int[] data = raster instanceof PackedRaster ? ((PackedRaster) raster).getData() : null;
+    int[] out = downscaled instanceof PackedRaster ? ((PackedRaster) downscaled).getData() : null;
+    int[] upper = new int[data == null ? 3 * width : 0];
+    int[] lower = new int[upper.length];
+    int upperRow = -1;
+    int lowerRow = -1;
+    int[] channels = new int[3];
+    for (int y = top; y < bottom; y++) {
+      if (data == null) {
+        // read the two old rows around the new row, unless the previous row read them already
+        if (rows.low[y] == lowerRow) {
+          int[] swap = upper;
+          upper = lower;
+          lower = swap;
+          upperRow = lowerRow;
+          lowerRow = -1;
+        }
+        if (rows.low[y] != upperRow) {
+          upperRow = rows.low[y];
+          readRow(raster, upperRow, upper);
+        }
+        if (rows.high[y] != lowerRow) {
+          lowerRow = rows.high[y];
+          readRow(raster, lowerRow, lower);
+        }
+      }
+      int upperOffset = rows.low[y] * width;
+      int lowerOffset = rows.high[y] * width;
+      float oldY = rows.position[y];
+      boolean wholeY = (int) oldY == oldY;
+      double belowWeight = oldY - Math.floor(oldY);
+      double aboveWeight = Math.ceil(oldY) - oldY;
+      for (int x = 0; x < this.newWidth; x++) {
+        int left = columns.low[x];
+        int right = columns.high[x];
+        for (int c = 0; c < 3; c++) {
+          int a;
+          int b;
+          int cc;
+          int d;
+          if (data != null) {
+            int shift = 16 - 8 * c;
+            a = (data[upperOffset + left] >> shift) & 0xFF;
+            b = (data[upperOffset + right] >> shift) & 0xFF;
+            cc = (data[lowerOffset + left] >> shift) & 0xFF;
+            d = (data[lowerOffset + right] >> shift) & 0xFF;
+          } else {
+            a = upper[3 * left + c];
+            b = upper[3 * right + c];
+            cc = lower[3 * left + c];
+            d = lower[3 * right + c];
+          }
+          float m;
+          float n;
+          if (columns.whole[x]) {
+            m = (a + b) / 2;
+            n = (cc + d) / 2;
+          } else {
+            m = ((float) b) * columns.highWeight[x] + ((float) a) * columns.lowWeight[x];
+            n = ((float) d) * columns.highWeight[x] + ((float) cc) * columns.lowWeight[x];
+          }
+          if (wholeY) {
+            channels[c] = (int) (Math.round(m + n) / 2.0);
+          } else {
+            channels[c] = (int) Math.round(n * belowWeight + m * aboveWeight);
+          }
+        }
+        if (out != null) {
+          // the values lie between those of 0-255 pixels, so they fit the packed image
+          out[y * this.newWidth + x] = channels[0] << 16 | channels[1] << 8 | channels[2];
+        } else {
+          downscaled.setPixel(x, y, channels[0], channels[1], channels[2]);
+        }
+      }
     }
+  }
+
+  /**
+   * Computes the rows from top to bottom of the downscaled image with {@link Sampling#AREA}.
+   *
+   * @param raster        the pixels of the old image.
+   * @param tables        the sampling tables.
+   * @param downscaled    the downscaled image.
+   * @param top           the first row to compute.
+   * @param bottom        the row after the last row to compute.
+   * @param maxColorValue the maximum allowed color value in the image.
+   * @param minColorValue the minimum allowed color value in the image.
+   */
+  private void averageBand(IViewRaster raster, Tables tables, IRaster downscaled, int top,
+      int bottom, int maxColorValue, int minColorValue) {
+    Coverage columns = tables.columnCoverage;
+    Coverage rows = tables.rowCoverage;
+    int[] row = new int[3 * raster.getWidth()];
+    double[] sums = new double[3 * this.newWidth];
+    for (int y = top; y < bottom; y++) {
+      Arrays.fill(sums, 0);
+      for (int k = rows.start[y]; k < rows.start[y + 1]; k++) {
+        readRow(raster, rows.index[k], row);
+        double rowWeight = rows.weight[k];
+        for (int x = 0; x < this.newWidth; x++) {
+          double red = 0;
+          double green = 0;
+          double blue = 0;
+          for (int j = columns.start[x]; j < columns.start[x + 1]; j++) {
+            int old = 3 * columns.index[j];
+            red += columns.weight[j] * row[old];
+            green += columns.weight[j] * row[old + 1];
+            blue += columns.weight[j] * row[old + 2];
+          }
+          sums[3 * x] += rowWeight * red;
+          sums[3 * x + 1] += rowWeight * green;
+          sums[3 * x + 2] += rowWeight * blue;
+        }
+      }
+      for (int x = 0; x < this.newWidth; x++) {
+        downscaled.setPixel(x, y, clamp(sums[3 * x], maxColorValue, minColorValue),
+            clamp(sums[3 * x + 1], maxColorValue, minColorValue),
+            clamp(sums[3 * x + 2], maxColorValue, minColorValue));
+      }
+    }
+  }
 
-    int color;
+  /**
+   * Rounds an average to the nearest color value allowed in the image.
+   *
+   * @param value         the average.
+   * @param maxColorValue the maximum allowed color value in the image.
+   * @param minColorValue the minimum allowed color value in the image.
+   * @return the color value.
+   */
+  private static int clamp(double value, int maxColorValue, int minColorValue) {
+    return (int) Math.max(minColorValue, Math.min(maxColorValue, Math.round(value)));
+  }
 
-    if ((int) oldY == oldY) {
-      color = (int) (Math.round(m + n) / 2.0);
+  /**
+   * Reads the red, green and blue values of a row of an image.
+   *
+   * @param raster the image.
+   * @param y      the row to read.
+   * @param out    the array to write the values of pixel x to, at 3 * x to 3 * x + 2.
+   */
+  private static void readRow(IViewRaster raster, int y, int[] out) {
+    int width = raster.getWidth();
+    if (raster instanceof PackedRaster) {
+      int[] data = ((PackedRaster) raster).getData();
+      for (int x = 0; x < width; x++) {
+        int rgb = data[y * width + x];
+        out[3 * x] = (rgb >> 16) & 0xFF;
+        out[3 * x + 1] = (rgb >> 8) & 0xFF;
+        out[3 * x + 2] = rgb & 0xFF;
+      }
     } else {
-      color = (int) Math.round(n * (oldY - Math.floor(oldY)) + m * (Math.ceil(oldY) - oldY));
+      for (int x = 0; x < width; x++) {
+        out[3 * x] = raster.getRed(x, y);
+        out[3 * x + 1] = raster.getGreen(x, y);
+        out[3 * x + 2] = raster.getBlue(x, y);
+      }
     }
-    return color;
   }
 
-  @Override
-  public CustomColor[][] apply(CustomColor[][] pixels, int maxColorValue, int minColorValue) {
-    float heightRatio = ((float) pixels.length) / this.newHeight;
-    float widthRatio = ((float) pixels[0].length) / this.newWidth;
-
-    CustomColor[][] downscaled = new CustomColor[newHeight][newWidth];
-
-    for (int y = 0; y < newHeight; y++) {
-      for (int x = 0; x < newWidth; x++) {
-        float oldX = x * widthRatio;
-        float oldY = y * heightRatio;
-
-        try {
-          int red = this.samplePixelValues(oldX, oldY,
-              pixels[(int) Math.floor(oldY)][(int) Math.floor(oldX)].getRed(),
-              pixels[(int) Math.floor(oldY)][(int) Math.ceil(oldX)].getRed(),
-              pixels[(int) Math.ceil(oldY)][(int) Math.floor(oldX)].getRed(),
-              pixels[(int) Math.ceil(oldY)][(int) Math.ceil(oldX)].getRed());
-
-          int green = this.samplePixelValues(oldX, oldY,
-              pixels[(int) Math.floor(oldY)][(int) Math.floor(oldX)].getGreen(),
-              pixels[(int) Math.floor(oldY)][(int) Math.ceil(oldX)].getGreen(),
-              pixels[(int) Math.ceil(oldY)][(int) Math.floor(oldX)].getGreen(),
-              pixels[(int) Math.ceil(oldY)][(int) Math.ceil(oldX)].getGreen());
-
-          int blue = this.samplePixelValues(oldX, oldY,
-              pixels[(int) Math.floor(oldY)][(int) Math.floor(oldX)].getBlue(),
-              pixels[(int) Math.floor(oldY)][(int) Math.ceil(oldX)].getBlue(),
-              pixels[(int) Math.ceil(oldY)][(int) Math.floor(oldX)].getBlue(),
-              pixels[(int) Math.ceil(oldY)][(int) Math.ceil(oldX)].getBlue());
-
-          downscaled[y][x] = new CustomColor(red, green, blue);
-        } catch (ArrayIndexOutOfBoundsException e) {
-          System.out.println("x: " + x);
-          System.out.println("y: " + y);
-          System.out.println("widthRatio: " + widthRatio);
-          System.out.println("heightRatio: " + heightRatio);
-          System.out.println("oldX: " + oldX);
-          System.out.println("oldY: " + oldY);
-          throw e;
+  /**
+   * The sampling tables of the columns and rows for an image of one size.
+   */
+  private static final class Tables {
+
+    private final int width;
+    private final int height;
+    // set for bilinear sampling
+    private final Axis columns;
+    private final Axis rows;
+    // set for area sampling
+    private final Coverage columnCoverage;
+    private final Coverage rowCoverage;
+
+    /**
+     * Computes the sampling tables for downscaling an image of one size to another.
+     *
+     * @param width     the width of the old image.
+     * @param height    the height of the old image.
+     * @param newWidth  the width of the new image.
+     * @param newHeight the height of the new image.
+     * @param sampling  the sampling to compute the tables of.
+     * @throws IllegalArgumentException if a sampled pixel lies outside of the image.
+     */
+    Tables(int width, int height, int newWidth, int newHeight, Sampling sampling)
+        throws IllegalArgumentException {
+      this.width = width;
+      this.height = height;
+      if (sampling == Sampling.AREA) {
+        this.columns = null;
+        this.rows = null;
+        this.columnCoverage = new Coverage(width, newWidth);
+        this.rowCoverage = new Coverage(height, newHeight);
+      } else {
+        this.columns = new Axis(width, newWidth, "column", width, height);
+        this.rows = new Axis(height, newHeight, "row", width, height);
+        this.columnCoverage = null;
+        this.rowCoverage = null;
+      }
+    }
+  }
+
+  /**
+   * Where the new pixels along one axis are sampled with {@link Sampling#BILINEAR}: new pixel i
+   * lies at old position i times the ratio of the sizes, between old pixels low[i] and high[i].
+   */
+  private static final class Axis {
+
+    private final float[] position;
+    private final boolean[] whole;
+    private final int[] low;
+    private final int[] high;
+    private final float[] lowWeight;
+    private final float[] highWeight;
+
+    /**
+     * Computes where the new pixels along an axis are sampled.
+     *
+     * @param size      the old size along the axis.
+     * @param newSize   the new size along the axis.
+     * @param name      the name of a line along the axis, for the error message.
+     * @param width     the width of the old image, for the error message.
+     * @param height    the height of the old image, for the error message.
+     * @throws IllegalArgumentException if a sampled pixel lies outside of the image.
+     */
+    Axis(int size, int newSize, String name, int width, int height)
+        throws IllegalArgumentException {
+      float ratio = ((float) size) / newSize;
+      this.position = new float[newSize];
+      this.whole = new boolean[newSize];
+      this.low = new int[newSize];
+      this.high = new int[newSize];
+      this.lowWeight = new float[newSize];
+      this.highWeight = new float[newSize];
+      for (int i = 0; i < newSize; i++) {
+        float old = i * ratio;
+        this.position[i] = old;
+        this.whole[i] = (int) old == old;
+        this.low[i] = (int) Math.floor(old);
+        this.high[i] = (int) Math.ceil(old);
+        if (this.high[i] >= size) {
+          throw new IllegalArgumentException("Cannot sample " + name + " " + old + " of a "
+              + width + "x" + height + " image!");
         }
+        this.highWeight[i] = old - (float) Math.floor(old);
+        this.lowWeight[i] = (float) Math.ceil(old) - old;
       }
     }
+  }
 
-    return downscaled;
+  /**
+   * Which old pixels along one axis every new pixel covers with {@link Sampling#AREA}: new pixel
+   * i covers old pixels index[k] by the fraction weight[k] of its size, for k from start[i] to
+   * start[i + 1] - 1. The weights of every new pixel add up to 1.
+   */
+  private static final class Coverage {
+
+    private final int[] start;
+    private final int[] index;
+    private final double[] weight;
+
+    /**
+     * Computes which old pixels the new pixels along an axis cover.
+     *
+     * @param size    the old size along the axis.
+     * @param newSize the new size along the axis.
+     */
+    Coverage(int size, int newSize) {
+      double ratio = (double) size / newSize;
+      this.start = new int[newSize + 1];
+      int entries = 0;
+      for (int i = 0; i < newSize; i++) {
+        entries += last(i, ratio, size) - first(i, ratio) + 1;
+      }
+      this.index = new int[entries];
+      this.weight = new double[entries];
+      int k = 0;
+      for (int i = 0; i < newSize; i++) {
+        this.start[i] = k;
+        double from = i * ratio;
+        double to = Math.min(size, (i + 1) * ratio);
+        for (int old = first(i, ratio); old <= last(i, ratio, size); old++) {
+          this.index[k] = old;
+          this.weight[k] = (Math.min(old + 1, to) - Math.max(old, from)) / (to - from);
+          k++;
+        }
+      }
+      this.start[newSize] = k;
+    }
+
+    /**
+     * Finds the first old pixel covered by a new pixel.
+     *
+     * @param i     the new pixel.
+     * @param ratio the old size divided by the new size.
+     * @return the first old pixel.
+     */
+    private static int first(int i, double ratio) {
+      return (int) Math.floor(i * ratio);
+    }
+
+    /**
+     * Finds the last old pixel covered by a new pixel.
+     *
+     * @param i     the new pixel.
+     * @param ratio the old size divided by the new size.
+     * @param size  the old size.
+     * @return the last old pixel.
+     */
+    private static int last(int i, double ratio, int size) {
+      return Math.max(first(i, ratio), Math.min(size, (int) Math.ceil((i + 1) * ratio)) - 1);
+    }
   }
 }
@@ -0,0 +1,171 @@
+package model.transformation;
+
+import java.util.Arrays;
+
+/**
+ * Labels every point of a grid with its nearest seed using an exact Euclidean feature transform
+ * in two separable passes (Felzenszwalb and Huttenlocher): first, every line of the grid that
+ * contains seeds finds the nearest of them for every position along it, then every column finds
+ * the nearest seed as the lower envelope of the parabolas of the lines. This takes time
+ * proportional to the size of the grid, however many seeds there are.
+ *
+ * <p>Points are labeled with a seed at the smallest distance, exactly. Unlike {@link SeedGrid},
+ * of several seeds at the same distance this does not always pick the one with the lowest
+ * index, but one determined by the order of the passes, so points that are equally far from
+ * several seeds can be labeled differently.
+ */
+final class FeatureTransform {
+
+  /**
+   * Prevents instantiation.
+   */
+  private FeatureTransform() {
+  }
+
+  /**
+   * Finds the nearest seed of every point (p, q) with p less than rows and q less than columns.
+   * The lines of the first pass and the columns of the
+   * second are split into bands that the given executor runs, in parallel if it would for an
+   * image of rows x columns pixels.
+   *
+   * @param seedP    the p-coordinates of the seeds, not negative.
+   * @param seedQ    the q-coordinates of the seeds, not negative.
+   * @param rows     the number of values of p to label.
+   * @param columns  the number of values of q to label.
+   * @param executor runs the bands of both passes, sequentially or in parallel.
+   * @return the index of the nearest seed of (p, q) at index p * columns + q.
+   * @throws IllegalArgumentException if there are no seeds.
+   */
+  static int[] nearestSeeds(int[] seedP, int[] seedQ, int rows, int columns,
+      RowBandExecutor executor) throws IllegalArgumentException {
+    int n = seedP.length;
+    if (n == 0) {
+      throw new IllegalArgumentException("A feature transform needs at least one seed!");
+    }
+    RowBandExecutor bands = executor.isParallel((long) rows * columns)
+        ? executor : RowBandExecutor.SEQUENTIAL;
+    // sort the seeds by line, then by position along the line, then by index
+    Integer[] sorted = new Integer[n];
+    for (int i = 0; i < n; i++) {
+      sorted[i] = i;
+    }
+    Arrays.sort(sorted, (a, b) -> seedP[a] != seedP[b] ? Integer.compare(seedP[a], seedP[b])
+        : seedQ[a] != seedQ[b] ? Integer.compare(seedQ[a], seedQ[b]) : Integer.compare(a, b));
+
+    // first pass: the nearest seed within each line that has seeds
+    int lines = 0;
+    for (int k = 0; k < n; k++) {
+      if (k == 0 || seedP[sorted[k]] != seedP[sorted[k - 1]]) {
+        lines++;
+      }
+    }
+    int[] lineP = new int[lines];
+    // the seeds of line l are sorted[lineStart[l]] to sorted[lineStart[l + 1] - 1]
+    int[] lineStart = new int[lines + 1];
+    int line = 0;
+    for (int k = 0; k < n; k++) {
+      if (k == 0 || seedP[sorted[k]] != seedP[sorted[k - 1]]) {
+        lineP[line] = seedP[sorted[k]];
+        lineStart[line++] = k;
+      }
+    }
+    lineStart[lines] = n;
+    int[] nearestInLine = new int[lines * columns];
+    bands.forEachBand(lines, (first, last) -> {
+      for (int l = first; l < last; l++) {
+        labelLine(sorted, lineStart[l], lineStart[l + 1], seedQ, nearestInLine, l * columns,
+            columns);
+      }
+    });
+
+    // second pass: the lower envelope of (p - lineP)^2 + (q - seedQ)^2 over the lines
+    int[] nearest = new int[rows * columns];
+    int lineCount = lines;
+    bands.forEachBand(columns, (first, last) -> {
+      int[] envelope = new int[lineCount];
+      double[] boundary = new double[lineCount + 1];
+      long[] height = new long[lineCount];
+      for (int q = first; q < last; q++) {
+        for (int k = 0; k < lineCount; k++) {
+          long d = seedQ[nearestInLine[k * columns + q]] - q;
+          height[k] = d * d;
+        }
+        int top = 0;
+        envelope[0] = 0;
+        boundary[0] = Double.NEGATIVE_INFINITY;
+        boundary[1] = Double.POSITIVE_INFINITY;
+        for (int k = 1; k < lineCount; k++) {
+          double s = intersection(lineP, height, envelope[top], k);
+          while (s <= boundary[top]) {
+            top--;
+            s = intersection(lineP, height, envelope[top], k);
+          }
+          top++;
+          envelope[top] = k;
+          boundary[top] = s;
+          boundary[top + 1] = Double.POSITIVE_INFINITY;
+        }
+        int k = 0;
+        for (int p = 0; p < rows; p++) {
+          while (boundary[k + 1] < p) {
+            k++;
+          }
+          nearest[p * columns + q] = nearestInLine[envelope[k] * columns + q];
+        }
+      }
+    });
+    return nearest;
+  }
+
+  /**
+   * Finds the nearest seed of every position along a line, from the seeds of the line sorted by
+   * their position. Of two seeds at the same distance, the one with the lower index is chosen.
+   *
+   * @param sorted  the indices of all seeds, sorted by line and position.
+   * @param start   the first seed of the line in the sorted indices.
+   * @param end     the position after the last seed of the line in the sorted indices.
+   * @param seedQ   the positions of the seeds along their lines.
+   * @param out     the array to write the nearest seeds to.
+   * @param offset  the index in the array of the first position.
+   * @param columns the number of positions to label.
+   */
+  private static void labelLine(Integer[] sorted, int start, int end, int[] seedQ, int[] out,
+      int offset, int columns) {
+    int k = start;
+    for (int q = 0; q < columns; q++) {
+      // move on while the next seed with a new position is at least as near
+      while (true) {
+        int next = k + 1;
+        while (next < end && seedQ[sorted[next]] == seedQ[sorted[k]]) {
+          next++;
+        }
+        if (next >= end) {
+          break;
+        }
+        long current = Math.abs((long) seedQ[sorted[k]] - q);
+        long candidate = Math.abs((long) seedQ[sorted[next]] - q);
+        if (candidate < current || (candidate == current && sorted[next] < sorted[k])) {
+          k = next;
+        } else {
+          break;
+        }
+      }
+      out[offset + q] = sorted[k];
+    }
+  }
+
+  /**
+   * Computes where the parabolas of two lines intersect.
+   *
+   * @param lineP  the positions of the lines.
+   * @param height the squared distances to the nearest seeds within the lines.
+   * @param a      the line with the smaller position.
+   * @param b      the line with the larger position.
+   * @return the position at which the parabola of the second line becomes lower.
+   */
+  private static double intersection(int[] lineP, long[] height, int a, int b) {
+    long pa = lineP[a];
+    long pb = lineP[b];
+    return ((double) (height[b] + pb * pb) - (height[a] + pa * pa)) / (2.0 * (pb - pa));
+  }
+}
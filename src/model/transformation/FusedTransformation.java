@@ -0,0 +1,185 @@
+package model.transformation;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import model.CustomColor;
+import model.ImageUtil;
+import model.raster.HeapRasterFactory;
+import model.raster.IRaster;
+import model.raster.IRasterFactory;
+import model.raster.IViewRaster;
+import model.raster.RasterUtil;
+
+/**
+ * Represents a chain of transformations that are applied one after the other, such as greyscale
+ * followed by sepia. Consecutive {@link IPixelTransformation}s are fused: every pixel is read once,
+ * passed through all of them (clamping after each one, as applying them separately would) and
+ * written once, instead of creating an intermediate image per transformation. Other
+ * transformations in the chain are applied to the whole image as usual.
+ *
+ * <p>The result is always the same as applying the transformations separately. Color
+ * transformations are not folded into a single matrix, because every step truncates and clamps
+ * its result, so the product of the matrices would not produce the same colors.
+ */
+public class FusedTransformation implements ITransformation {
+
+  private final List<ITransformation> transformations;
+
+  /**
+   * Creates a chain of the given transformations, applied in the given order. Chains within the
+   * given transformations are flattened.
+   *
+   * @param transformations the transformations to apply.
+   * @throws IllegalArgumentException if no transformations are given, or any of them is null.
+   */
+  public FusedTransformation(ITransformation... transformations)
+      throws IllegalArgumentException {
+    if (transformations == null || transformations.length == 0) {
+      throw new IllegalArgumentException("A chain needs at least one transformation!");
+    }
+    List<ITransformation> list = new ArrayList<>();
+    for (ITransformation transformation : transformations) {
+      if (transformation == null) {
+        throw new IllegalArgumentException("The transformations must not be null!");
+      } else if (transformation instanceof FusedTransformation) {
+        list.addAll(((FusedTransformation) transformation).transformations);
+      } else {
+        list.add(transformation);
+      }
+    }
+    this.transformations = Collections.unmodifiableList(list);
+  }
+
+  /**
+   * Gets the transformations of this chain, in the order they are applied.
+   *
+   * @return an unmodifiable list of the transformations.
+   */
+  public List<ITransformation> getTransformations() {
+    return this.transformations;
+  }
+
+  @Override
+  public IRaster apply(IViewRaster raster, int maxColorValue, int minColorValue)
+      throws IllegalArgumentException {
+    return this.apply(raster, maxColorValue, minColorValue, RowBandExecutor.getDefault());
+  }
+
+  @Override
+  public IRaster apply(IViewRaster raster, int maxColorValue, int minColorValue,
+      RowBandExecutor executor) throws IllegalArgumentException {
+    return this.apply(raster, maxColorValue, minColorValue, executor, new HeapRasterFactory());
+  }
+
+  /**
+   * Applies the chain, storing the result of every step, including the intermediate ones, in a
+   * raster created by the given factory. Intermediate results are closed once the next step is
+   * done with them.
+   *
+   * @param raster        the pixels of the image.
+   * @param maxColorValue represents the maximum allowed color value in the image
+   * @param minColorValue represents the minimum allowed color value in the image
+   * @param executor      runs the bands of rows, sequentially or in parallel.
+   * @param factory       the factory deciding where the results are stored.
+   * @return a new raster containing the transformed image.
+   * @throws IllegalArgumentException if a step produces an invalid image, or the factory cannot
+   *                                  store it.
+   */
+  @Override
+  public IRaster apply(IViewRaster raster, int maxColorValue, int minColorValue,
+      RowBandExecutor executor, IRasterFactory factory) throws IllegalArgumentException {
+    IViewRaster current = raster;
+    int i = 0;
+    while (i < this.transformations.size()) {
+      int end = i;
+      while (end < this.transformations.size()
+          && this.transformations.get(end) instanceof IPixelTransformation) {
+        end++;
+      }
+      IRaster next;
+      if (end > i) {
+        IPixelTransformation[] run = this.transformations.subList(i, end)
+            .toArray(new IPixelTransformation[0]);
+        next = IPixelTransformation.applyAll(current, maxColorValue, minColorValue, executor,
+            factory, run);
+        i = end;
+      } else {
+        ITransformation transformation = this.transformations.get(i);
+        next = transformation.apply(current, maxColorValue, minColorValue, executor, factory);
+        if (!transformation.producesValidRasters()) {
+          ImageUtil.rasterValidation(next, maxColorValue, minColorValue);
+        }
+        i++;
+      }
+      if (current != raster) {
+        ((IRaster) current).close();
+      }
+      current = next;
+    }
+    return (IRaster) current;
+  }
+
+  @Override
+  public CustomColor[][] apply(CustomColor[][] pixels, int maxColorValue, int minColorValue)
+      throws IllegalArgumentException {
+    ImageUtil.validation(pixels, maxColorValue, minColorValue);
+    return RasterUtil.toArray(
+        this.apply(RasterUtil.fromArray(pixels, maxColorValue), maxColorValue, minColorValue));
+  }
+
+  /**
+   * Checks whether the rasters produced by this chain are always valid, which is the case if all
+   * of its transformations produce valid rasters.
+   *
+   * @return true if all transformations of the chain produce valid rasters.
+   */
+  @Override
+  public boolean producesValidRasters() {
+    for (ITransformation transformation : this.transformations) {
+      if (!transformation.producesValidRasters()) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Gets the neighborhood radius of the chain, which is the sum of the radii of its
+   * transformations, as every transformation widens the area an output pixel depends on.
+   *
+   * @return the radius of the neighborhood of each pixel, or -1 if any transformation can depend
+   *         on the whole image.
+   */
+  @Override
+  public int getNeighborhoodRadius() {
+    int radius = 0;
+    for (ITransformation transformation : this.transformations) {
+      int r = transformation.getNeighborhoodRadius();
+      if (r < 0) {
+        return -1;
+      }
+      radius += r;
+    }
+    return radius;
+  }
+
+  /**
+   * Describes this chain by the descriptions of its transformations, in order.
+   *
+   * @return the description of this chain, or null if any of its transformations cannot be
+   *         cached.
+   */
+  @Override
+  public String getCacheKey() {
+    List<String> steps = new ArrayList<>();
+    for (ITransformation transformation : this.transformations) {
+      String step = transformation.getCacheKey();
+      if (step == null) {
+        return null;
+      }
+      steps.add(step);
+    }
+    return this.getClass().getName() + steps;
+  }
+}
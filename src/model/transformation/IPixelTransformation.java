@@ -0,0 +1,163 @@
+package model.transformation;
+
+import model.raster.DirectRaster;
+import model.raster.HeapRasterFactory;
+import model.raster.IRaster;
+import model.raster.IRasterFactory;
+import model.raster.IViewRaster;
+import model.raster.PackedRaster;
+
+/**
+ * Represents a transformation that computes every pixel from the pixel at the same position
+ * only, such as a color transformation. Such transformations can be applied one pixel at a time,
+ * which lets a {@link FusedTransformation} run a chain of them in a single pass over the image.
+ */
+public interface IPixelTransformation extends ITransformation {
+
+  /**
+   * Applies this transformation to a single pixel, producing exactly the channels that {@link
+   * #apply(model.raster.IViewRaster, int, int)} produces for it, including clamping them to the
+   * allowed range.
+   *
+   * @param channels      the red, green and blue channels of the pixel, which are replaced by the
+   *                      transformed channels.
+   * @param maxColorValue represents the maximum allowed color value in the image
+   * @param minColorValue represents the minimum allowed color value in the image
+   */
+  public void applyToPixel(int[] channels, int maxColorValue, int minColorValue);
+
+  /**
+   * Applies this transformation to a row of pixels stored as three planes of equal length. By
+   * default this applies {@link #applyToPixel(int[], int, int)} to every pixel; implementations
+   * that can transform whole planes faster should override it.
+   *
+   * @param in            the red, green and blue planes of the source pixels, not modified.
+   * @param out           the red, green and blue planes to write the transformed pixels to.
+   * @param maxColorValue represents the maximum allowed color value in the image
+   * @param minColorValue represents the minimum allowed color value in the image
+   */
+  public default void applyToRow(int[][] in, int[][] out, int maxColorValue,
+      int minColorValue) {
+    int[] channels = new int[3];
+    for (int i = 0; i < in[0].length; i++) {
+      for (int c = 0; c < 3; c++) {
+        channels[c] = in[c][i];
+      }
+      this.applyToPixel(channels, maxColorValue, minColorValue);
+      for (int c = 0; c < 3; c++) {
+        out[c][i] = channels[c];
+      }
+    }
+  }
+
+  /**
+   * Applies this transformation one row at a time, writing every transformed row straight into a
+   * raster created by the given factory.
+   *
+   * @param raster        the pixels of the image.
+   * @param maxColorValue represents the maximum allowed color value in the image
+   * @param minColorValue represents the minimum allowed color value in the image
+   * @param executor      runs the bands of rows, sequentially or in parallel.
+   * @param factory       the factory deciding where the result is stored.
+   * @return a new raster containing the transformed image.
+   * @throws IllegalArgumentException if the factory cannot store the result.
+   */
+  @Override
+  public default IRaster apply(IViewRaster raster, int maxColorValue, int minColorValue,
+      RowBandExecutor executor, IRasterFactory factory) throws IllegalArgumentException {
+    return applyAll(raster, maxColorValue, minColorValue, executor, factory, this);
+  }
+
+  /**
+   * Applies per-pixel transformations one after the other in a single pass over the image, into
+   * a raster on the heap (see {@link #applyAll(IViewRaster, int, int, RowBandExecutor,
+   * IRasterFactory, IPixelTransformation...)}).
+   *
+   * @param source        the image to transform, which is not modified.
+   * @param maxColorValue represents the maximum allowed color value in the image
+   * @param minColorValue represents the minimum allowed color value in the image
+   * @param executor      runs the bands of rows, sequentially or in parallel.
+   * @param run           the transformations to apply, in order.
+   * @return a new raster containing the transformed image.
+   */
+  public static IRaster applyAll(IViewRaster source, int maxColorValue, int minColorValue,
+      RowBandExecutor executor, IPixelTransformation... run) {
+    return applyAll(source, maxColorValue, minColorValue, executor, new HeapRasterFactory(),
+        run);
+  }
+
+  /**
+   * Applies per-pixel transformations one after the other in a single pass over the image. Every
+   * row is unpacked into two small sets of planes that the transformations read from and write to
+   * in turn, so the intermediate results stay in the processor cache and only the final, clamped
+   * row is written to the result. Bands of rows are independent, so they are run by the given
+   * executor. Rows of off-heap rasters are read and written in bulk.
+   *
+   * @param source        the image to transform, which is not modified.
+   * @param maxColorValue represents the maximum allowed color value in the image
+   * @param minColorValue represents the minimum allowed color value in the image
+   * @param executor      runs the bands of rows, sequentially or in parallel.
+   * @param factory       the factory deciding where the result is stored.
+   * @param run           the transformations to apply, in order.
+   * @return a new raster containing the transformed image.
+   * @throws IllegalArgumentException if the factory cannot store the result.
+   */
+  public static IRaster applyAll(IViewRaster source, int maxColorValue, int minColorValue,
+      RowBandExecutor executor, IRasterFactory factory, IPixelTransformation... run)
+      throws IllegalArgumentException {
+    int width = source.getWidth();
+    IRaster result = factory.create(width, source.getHeight(), maxColorValue);
+    int[] in = source instanceof PackedRaster ? ((PackedRaster) source).getData() : null;
+    int[] out = result instanceof PackedRaster && minColorValue >= 0
+        ? ((PackedRaster) result).getData() : null;
+    DirectRaster directIn = source instanceof DirectRaster ? (DirectRaster) source : null;
+    DirectRaster directOut = result instanceof DirectRaster && minColorValue >= 0
+        ? (DirectRaster) result : null;
+    executor.forEachBand(source.getHeight(), width, (top, bottom) -> {
+      int[][] planes = new int[3][width];
+      int[][] next = new int[3][width];
+      int[] row = directIn != null || directOut != null ? new int[width] : null;
+      for (int y = top; y < bottom; y++) {
+        if (directIn != null) {
+          directIn.getRows(y, 1, row);
+        }
+        for (int x = 0; x < width; x++) {
+          if (in != null || directIn != null) {
+            int rgb = in != null ? in[y * width + x] : row[x];
+            planes[0][x] = rgb >> 16 & 0xFF;
+            planes[1][x] = rgb >> 8 & 0xFF;
+            planes[2][x] = rgb & 0xFF;
+          } else {
+            planes[0][x] = source.getRed(x, y);
+            planes[1][x] = source.getGreen(x, y);
+            planes[2][x] = source.getBlue(x, y);
+          }
+        }
+        for (IPixelTransformation transformation : run) {
+          transformation.applyToRow(planes, next, maxColorValue, minColorValue);
+          int[][] swap = planes;
+          planes = next;
+          next = swap;
+        }
+        for (int x = 0; x < width; x++) {
+          if (out != null) {
+            out[y * width + x] = planes[0][x] << 16 | planes[1][x] << 8 | planes[2][x];
+          } else if (directOut != null) {
+            row[x] = planes[0][x] << 16 | planes[1][x] << 8 | planes[2][x];
+          } else {
+            result.setPixel(x, y, planes[0][x], planes[1][x], planes[2][x]);
+          }
+        }
+        if (directOut != null) {
+          directOut.setRows(y, 1, row);
+        }
+      }
+    });
+    return result;
+  }
+
+  @Override
+  public default int getNeighborhoodRadius() {
+    return 0;
+  }
+}
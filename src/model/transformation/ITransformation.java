@@ -2,6 +2,11 @@ package model.transformation;
 
 import model.CustomColor;
 import model.IImageModel;
+import model.ImageUtil;
+import model.raster.IRaster;
+import model.raster.IRasterFactory;
+import model.raster.IViewRaster;
+import model.raster.RasterUtil;
 
 /**
  * Represents a transformation that can be applied to an {@link IImageModel}.
@@ -18,4 +23,109 @@ public interface ITransformation {
    * @return a reference to the modified pixel matrix of the image, to allow method chaining.
    */
   public CustomColor[][] apply(CustomColor[][] pixels, int maxColorValue, int minColorValue);
+
+  /**
+   * Applies this transformation to a pixel buffer. The given raster is not modified. By default
+   * this converts the raster to a {@link CustomColor} matrix and delegates to {@link
+   * #apply(CustomColor[][], int, int)}; implementations that can work on primitive buffers
+   * directly should override it.
+   *
+   * @param raster        the pixels of the image.
+   * @param maxColorValue represents the maximum allowed color value in the image
+   * @param minColorValue represents the minimum allowed color value in the image
+   * @return a new raster containing the transformed image.
+   * @throws IllegalArgumentException if the transformed image does not satisfy the invariants
+   *                                  (non-null, rectangular, at least 1x1).
+   */
+  public default IRaster apply(IViewRaster raster, int maxColorValue, int minColorValue)
+      throws IllegalArgumentException {
+    CustomColor[][] newPixels = this.apply(RasterUtil.toArray(raster), maxColorValue,
+        minColorValue);
+    ImageUtil.validation(newPixels, maxColorValue, minColorValue);
+    return RasterUtil.fromArray(newPixels, maxColorValue);
+  }
+
+  /**
+   * Applies this transformation to a pixel buffer, splitting the work into bands of rows that
+   * are run by the given executor. The result is the same as that of {@link #apply(IViewRaster,
+   * int, int)}, whatever the executor. By default the executor is ignored; transformations that
+   * can work on bands of rows should override this method and make {@link #apply(IViewRaster,
+   * int, int)} use {@link RowBandExecutor#getDefault()}.
+   *
+   * @param raster        the pixels of the image.
+   * @param maxColorValue represents the maximum allowed color value in the image
+   * @param minColorValue represents the minimum allowed color value in the image
+   * @param executor      runs the bands of rows, sequentially or in parallel.
+   * @return a new raster containing the transformed image.
+   * @throws IllegalArgumentException if the transformed image does not satisfy the invariants
+   *                                  (non-null, rectangular, at least 1x1).
+   */
+  public default IRaster apply(IViewRaster raster, int maxColorValue, int minColorValue,
+      RowBandExecutor executor) throws IllegalArgumentException {
+    return this.apply(raster, maxColorValue, minColorValue);
+  }
+
+  /**
+   * Applies this transformation to a pixel buffer like {@link #apply(IViewRaster, int, int,
+   * RowBandExecutor)}, storing the result in a raster created by the given factory. By default
+   * the result is computed on the heap and then moved into the storage of the factory;
+   * transformations that write their result one pixel or row at a time should override this to
+   * write into a raster of the factory directly, so that images stored off-heap can be
+   * transformed without their result ever being held on the heap.
+   *
+   * @param raster        the pixels of the image.
+   * @param maxColorValue represents the maximum allowed color value in the image
+   * @param minColorValue represents the minimum allowed color value in the image
+   * @param executor      runs the bands of rows, sequentially or in parallel.
+   * @param factory       the factory deciding where the result is stored.
+   * @return a new raster containing the transformed image.
+   * @throws IllegalArgumentException if the transformed image does not satisfy the invariants
+   *                                  (non-null, rectangular, at least 1x1), or cannot be stored
+   *                                  by the factory.
+   */
+  public default IRaster apply(IViewRaster raster, int maxColorValue, int minColorValue,
+      RowBandExecutor executor, IRasterFactory factory) throws IllegalArgumentException {
+    IRaster result = this.apply(raster, maxColorValue, minColorValue, executor);
+    IRaster stored = factory.adopt(result, maxColorValue);
+    if (stored != result) {
+      result.close();
+    }
+    return stored;
+  }
+
+  /**
+   * Gets how far, in pixels, the value of an output pixel can depend on the input pixels around
+   * it. Transformations with a bounded neighborhood can be applied to an image one region at a
+   * time, as long as every region is extended by this many pixels on each side.
+   *
+   * @return the radius of the neighborhood of each pixel, or -1 if an output pixel can depend on
+   *         the whole image (or the size of the image changes).
+   */
+  public default int getNeighborhoodRadius() {
+    return -1;
+  }
+
+  /**
+   * Checks whether the rasters returned by {@link #apply(IViewRaster, int, int)} are guaranteed
+   * to be valid for the given color range, so that callers do not need to validate them again.
+   * Transformations that clamp their results can return true; by default, results are validated.
+   *
+   * @return true if the transformed rasters are always valid.
+   */
+  public default boolean producesValidRasters() {
+    return false;
+  }
+
+  /**
+   * Describes this transformation, its class and every parameter that affects its result, so
+   * that two transformations with the same description always turn the same image into the same
+   * result. Used as part of the key under which results are cached. Transformations whose result
+   * cannot be predicted, such as those drawing from a shared random generator, cannot be cached;
+   * by default, transformations are not.
+   *
+   * @return the description of this transformation, or null if its results must not be cached.
+   */
+  public default String getCacheKey() {
+    return null;
+  }
 }
@@ -1,76 +1,50 @@
 package model.transformation;
 
-import java.util.ArrayList;
-import java.util.List;
+import java.util.Queue;
 import java.util.Random;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import model.CustomColor;
+import model.raster.HeapRasterFactory;
+import model.raster.IRaster;
+import model.raster.IRasterFactory;
+import model.raster.IViewRaster;
+import model.raster.RasterUtil;
 
 /**
  * Represents a transformation to mosaic the image with the number of random seeds given by the
  * user. Also allows passing a random object for ease of testing.
+ *
+ * <p>The nearest seed of every pixel is looked up in a {@link SeedGrid}, which only measures the
+ * distance to the seeds in the cells around the pixel, or found by a {@link FeatureTransform},
+ * whose time does not depend on the number of seeds (see {@link Labeling}).
  */
 public class MosaicTransformation implements ITransformation {
 
   /**
-   * Represents a cluster of pixels and all the operations related to that cluster.
+   * The ways in which pixels can be labeled with their nearest seed.
    */
-  private static class Cluster {
-
-    int x;
-    int y;
-    int sumRed;
-    int sumGreen;
-    int sumBlue;
-    int numOfPixels;
-
-    /**
-     * Constructs a new cluster with the given point at its center.
-     *
-     * @param x coordinate of the cluster centre
-     * @param y coordinate of the cluster centre
-     */
-    public Cluster(int x, int y) {
-      this.x = x;
-      this.y = y;
-    }
-
+  public enum Labeling {
     /**
-     * Calculates the distance between the two given points.
-     *
-     * @param xPos x point in space
-     * @param yPos y point in space
-     * @return distance between the two given points x and y
+     * Looks up every pixel in a {@link SeedGrid}. Of several seeds at the same distance, the one
+     * created first is chosen, as in the original implementation.
      */
-    private double calcDistance(int xPos, int yPos) {
-      return Math.sqrt((x - xPos) * (x - xPos) + (y - yPos) * (y - yPos));
-    }
-
+    GRID,
     /**
-     * Adds the each RGB component of the given color the each totol sum of the RGB components.
-     *
-     * @param c provided custom color.
+     * Labels all pixels with an exact Euclidean {@link FeatureTransform}, in time independent of
+     * the number of seeds. Pixels equally far from several seeds may choose another one than
+     * {@link #GRID}.
      */
-    private void addPixel(CustomColor c) {
-      sumRed += c.getRed();
-      sumGreen += c.getGreen();
-      sumBlue += c.getBlue();
-      numOfPixels++;
-    }
-
-    /**
-     * Calculates the average new color by dividing each of RGB components by the number of pixels
-     * in this cluster.
-     *
-     * @return new color of the cluster.
-     */
-    private CustomColor getCustomColor() {
-      return new CustomColor(sumRed / numOfPixels, sumGreen / numOfPixels,
-          sumBlue / numOfPixels);
-    }
+    FEATURE_TRANSFORM
   }
 
+  // from this many seeds on, mosaics with a random seed use the feature transform
+  public static final int FEATURE_TRANSFORM_SEEDS = 1000;
+
   private final int n;
+  // null for mosaics that start a new generator from their seed every time
   private final Random r;
+  private final long seed;
+  private final Labeling labeling;
 
   /**
    * Constructs a new instance of a mosaic transformation with a given number of seeds and an
@@ -80,47 +54,250 @@ public class MosaicTransformation implements ITransformation {
    * @param r the random object to use for determining seed locations.
    */
   public MosaicTransformation(int n, Random r) {
+    this(n, r, Labeling.GRID);
+  }
+
+  /**
+   * Constructs a new instance of a mosaic transformation with a given number of seeds, an
+   * instance of {@link Random} to place them and a way of labeling pixels with their nearest
+   * seed.
+   *
+   * @param n        the number of seeds to create.
+   * @param r        the random object to use for determining seed locations.
+   * @param labeling how to find the nearest seed of every pixel.
+   * @throws IllegalArgumentException if the random object or labeling is null.
+   */
+  public MosaicTransformation(int n, Random r, Labeling labeling)
+      throws IllegalArgumentException {
+    if (r == null || labeling == null) {
+      throw new IllegalArgumentException("The random object and labeling must not be null!");
+    }
     this.n = n;
     this.r = r;
+    this.seed = 0;
+    this.labeling = labeling;
+  }
+
+  /**
+   * Constructs a new instance of a mosaic transformation with a given number of seeds, placed by
+   * a random generator that is started from the given seed every time the transformation is
+   * applied. Unlike a transformation given a {@link Random} object, it always turns the same image
+   * into the same mosaic, so its results can be cached (see {@link #getCacheKey()}). Pixels are
+   * labeled as with {@link #MosaicTransformation(int)}.
+   *
+   * @param n    the number of seeds to create.
+   * @param seed the seed of the random generator placing them.
+   */
+  public MosaicTransformation(int n, long seed) {
+    this.n = n;
+    this.r = null;
+    this.seed = seed;
+    this.labeling = n >= FEATURE_TRANSFORM_SEEDS ? Labeling.FEATURE_TRANSFORM : Labeling.GRID;
   }
 
   /**
    * Convenience constructor that creates a MosaicTransformation with a randomly generated seed.
+   * As the result is random anyway, mosaics with at least {@link #FEATURE_TRANSFORM_SEEDS} seeds
+   * are labeled with the faster {@link Labeling#FEATURE_TRANSFORM}.
    *
    * @param n the number of seeds to create and randomly place.
    */
   public MosaicTransformation(int n) {
-    this(n, new Random());
+    this(n, new Random(),
+        n >= FEATURE_TRANSFORM_SEEDS ? Labeling.FEATURE_TRANSFORM : Labeling.GRID);
   }
 
 
   @Override
   public CustomColor[][] apply(CustomColor[][] pixels, int maxColorValue, int minColorValue) {
-    List<Cluster> clusters = new ArrayList<>();
-    for (int i = 0; i < n; i++) {
-      clusters.add(new Cluster(this.r.nextInt(pixels[0].length), this.r.nextInt(pixels.length)));
+    return RasterUtil.toArray(
+        this.apply(RasterUtil.fromArray(pixels, maxColorValue), maxColorValue, minColorValue));
+  }
+
+  @Override
+  public IRaster apply(IViewRaster raster, int maxColorValue, int minColorValue)
+      throws IllegalArgumentException {
+    return this.apply(raster, maxColorValue, minColorValue, RowBandExecutor.getDefault());
+  }
+
+  @Override
+  public IRaster apply(IViewRaster raster, int maxColorValue, int minColorValue,
+      RowBandExecutor executor) throws IllegalArgumentException {
+    return this.apply(raster, maxColorValue, minColorValue, executor, new HeapRasterFactory());
+  }
+
+  /**
+   * Mosaics a pixel buffer. Every pixel takes the average color of all pixels sharing its
+   * nearest seed. The seeds are drawn as positions within the image, the row first, so that a
+   * seeded {@link Random} produces the same mosaic of a square image as the original
+   * implementation.
+   *
+   * <p>Labeling, summing and painting are each done in bands of rows with the given executor.
+   * Every band adds its pixels to sums that no other band is using at the same time, and these
+   * are added up once all bands are done, so the result never depends on the executor.
+   *
+   * @param raster        the pixels of the image.
+   * @param maxColorValue represents the maximum allowed color value in the image
+   * @param minColorValue represents the minimum allowed color value in the image
+   * @param executor      runs the bands of rows, sequentially or in parallel.
+   * @param factory       the factory deciding where the result is stored.
+   * @return a new raster containing the mosaicked image.
+   * @throws IllegalArgumentException if the number of seeds is not positive.
+   */
+  @Override
+  public IRaster apply(IViewRaster raster, int maxColorValue, int minColorValue,
+      RowBandExecutor executor, IRasterFactory factory) throws IllegalArgumentException {
+    if (this.n < 1) {
+      throw new IllegalArgumentException("A mosaic needs at least one seed!");
     }
-    int[][] pointsCluster = new int[pixels[0].length][pixels.length];
-
-    for (int x = 0; x < pixels[0].length; x++) {
-      for (int y = 0; y < pixels.length; y++) {
-        int nearest = 0;
-        for (int i = 0; i < clusters.size(); i++) {
-          if (clusters.get(nearest).calcDistance(x, y) > clusters.get(i).calcDistance(x, y)) {
-            nearest = i;
-          }
+    int width = raster.getWidth();
+    int height = raster.getHeight();
+    Random random = this.r == null ? new Random(this.seed) : this.r;
+    int[] seedX = new int[this.n];
+    int[] seedY = new int[this.n];
+    for (int i = 0; i < this.n; i++) {
+      seedY[i] = random.nextInt(height);
+      seedX[i] = random.nextInt(width);
+    }
+    int[] nearest = this.labeling == Labeling.FEATURE_TRANSFORM
+        ? FeatureTransform.nearestSeeds(seedY, seedX, height, width, executor)
+        : nearestInGrid(seedX, seedY, width, height, executor);
+
+    // bands take the sums of a finished band, or new ones if all are in use
+    Queue<Sums> free = new ConcurrentLinkedQueue<>();
+    executor.forEachBand(height, width, (top, bottom) -> {
+      Sums sums = free.poll();
+      if (sums == null) {
+        sums = new Sums(this.n);
+      }
+      for (int y = top; y < bottom; y++) {
+        for (int x = 0; x < width; x++) {
+          sums.add(nearest[y * width + x], raster.getRed(x, y), raster.getGreen(x, y),
+              raster.getBlue(x, y));
+        }
+      }
+      free.add(sums);
+    });
+    Sums total = free.poll();
+    for (Sums sums : free) {
+      total.addAll(sums);
+    }
+
+    int[] average = total.averages();
+    IRaster mosaic = factory.create(width, height, maxColorValue);
+    executor.forEachBand(height, width, (top, bottom) -> {
+      for (int y = top; y < bottom; y++) {
+        for (int x = 0; x < width; x++) {
+          int seed = nearest[y * width + x];
+          mosaic.setPixel(x, y, average[3 * seed], average[3 * seed + 1], average[3 * seed + 2]);
         }
-        pointsCluster[x][y] = nearest;
-        clusters.get(nearest).addPixel(pixels[x][y]);
       }
+    });
+    return mosaic;
+  }
+
+  /**
+   * Describes this mosaic by its number of seeds, labeling and seed. Mosaics placing their seeds
+   * with a given {@link Random} object cannot be cached, as every application draws other seeds.
+   *
+   * @return the description of this mosaic, or null if it was given a {@link Random} object.
+   */
+  @Override
+  public String getCacheKey() {
+    if (this.r != null) {
+      return null;
     }
+    return this.getClass().getName() + "[" + this.n + ", " + this.labeling + ", seed "
+        + this.seed + "]";
+  }
+
+  /**
+   * Labels every pixel with its nearest seed using a {@link SeedGrid}, in bands of rows.
+   *
+   * @param seedX    the x-coordinates of the seeds.
+   * @param seedY    the y-coordinates of the seeds.
+   * @param width    the width of the image.
+   * @param height   the height of the image.
+   * @param executor runs the bands of rows, sequentially or in parallel.
+   * @return the index of the nearest seed of pixel (x, y) at index y * width + x.
+   */
+  private static int[] nearestInGrid(int[] seedX, int[] seedY, int width, int height,
+      RowBandExecutor executor) {
+    SeedGrid grid = new SeedGrid(seedX, seedY);
+    int[] nearest = new int[width * height];
+    executor.forEachBand(height, width, (top, bottom) -> {
+      for (int y = top; y < bottom; y++) {
+        for (int x = 0; x < width; x++) {
+          nearest[y * width + x] = grid.nearest(x, y);
+        }
+      }
+    });
+    return nearest;
+  }
+
+  /**
+   * The color sums and pixel counts of the clusters of all seeds, indexed by seed.
+   */
+  private static final class Sums {
+
+    private final long[] colors;
+    private final int[] counts;
 
-    CustomColor[][] newPicture = new CustomColor[pixels.length][pixels[0].length];
-    for (int x = 0; x < pixels[0].length; x++) {
-      for (int y = 0; y < pixels.length; y++) {
-        newPicture[x][y] = clusters.get(pointsCluster[x][y]).getCustomColor();
+    /**
+     * Creates empty sums for the given number of seeds.
+     *
+     * @param n the number of seeds.
+     */
+    Sums(int n) {
+      this.colors = new long[3 * n];
+      this.counts = new int[n];
+    }
+
+    /**
+     * Adds a pixel to the cluster of a seed.
+     *
+     * @param seed  the nearest seed of the pixel.
+     * @param red   the red value of the pixel.
+     * @param green the green value of the pixel.
+     * @param blue  the blue value of the pixel.
+     */
+    void add(int seed, int red, int green, int blue) {
+      this.colors[3 * seed] += red;
+      this.colors[3 * seed + 1] += green;
+      this.colors[3 * seed + 2] += blue;
+      this.counts[seed]++;
+    }
+
+    /**
+     * Adds other sums to these.
+     *
+     * @param other the sums to add.
+     */
+    void addAll(Sums other) {
+      for (int i = 0; i < this.colors.length; i++) {
+        this.colors[i] += other.colors[i];
+      }
+      for (int i = 0; i < this.counts.length; i++) {
+        this.counts[i] += other.counts[i];
+      }
+    }
+
+    /**
+     * Computes the average color of every cluster, rounded down. Seeds without pixels are
+     * black, as no pixel is painted with them.
+     *
+     * @return the red, green and blue averages of seed i at indices 3 * i to 3 * i + 2.
+     */
+    int[] averages() {
+      int[] average = new int[this.colors.length];
+      for (int seed = 0; seed < this.counts.length; seed++) {
+        if (this.counts[seed] > 0) {
+          for (int c = 0; c < 3; c++) {
+            average[3 * seed + c] = (int) (this.colors[3 * seed + c] / this.counts[seed]);
+          }
+        }
       }
+      return average;
     }
-    return newPicture;
   }
-}
\ No newline at end of file
+}
@@ -0,0 +1,330 @@
+package model.transformation;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import model.CustomColor;
+import model.raster.HeapRasterFactory;
+import model.raster.IRaster;
+import model.raster.IRasterFactory;
+import model.raster.IViewRaster;
+import model.raster.PackedRaster;
+import model.raster.RasterUtil;
+
+/**
+ * Represents a transformation to resize the image to any new width and height, larger or smaller,
+ * with a choice of separable {@link Filter}s. The image is first resized horizontally, then
+ * vertically, both in bands of rows.
+ *
+ * <p>Which old pixels every new pixel is made of, and how much, depends only on the old size, the
+ * new size and the filter along each axis. These weight tables are kept in a cache shared by all
+ * resize transformations, so resizing all layers of an image, or several images of the same size,
+ * computes them once.
+ */
+public class ResizeTransformation implements ITransformation {
+
+  /**
+   * The filters new pixels can be interpolated with. When shrinking, every filter but {@link
+   * #NEAREST} is widened by the ratio of the sizes, so that every old pixel contributes.
+   */
+  public enum Filter {
+    /**
+     * Takes the old pixel nearest to the center of every new pixel.
+     */
+    NEAREST(0.5),
+    /**
+     * Interpolates linearly between the two nearest old pixels along each axis.
+     */
+    BILINEAR(1),
+    /**
+     * Interpolates with the cubic convolution of Keys (a = -0.5) over four old pixels along each
+     * axis.
+     */
+    BICUBIC(2),
+    /**
+     * Interpolates with a three-lobed Lanczos window over six old pixels along each axis, which is
+     * the sharpest of these filters.
+     */
+    LANCZOS3(3);
+
+    private final double radius;
+
+    /**
+     * Creates a filter reaching the given distance from the center of a new pixel.
+     *
+     * @param radius the distance in old pixels beyond which the weight is 0.
+     */
+    Filter(double radius) {
+      this.radius = radius;
+    }
+
+    /**
+     * Computes the weight of an old pixel at a given distance from the center of a new pixel.
+     *
+     * @param x the distance in old pixels, or in new pixels when shrinking.
+     * @return the unnormalized weight.
+     */
+    private double weight(double x) {
+      x = Math.abs(x);
+      switch (this) {
+        case NEAREST:
+          return x < 0.5 ? 1 : 0;
+        case BILINEAR:
+          return x < 1 ? 1 - x : 0;
+        case BICUBIC:
+          if (x < 1) {
+            return (1.5 * x - 2.5) * x * x + 1;
+          }
+          return x < 2 ? ((-0.5 * x + 2.5) * x - 4) * x + 2 : 0;
+        default:
+          if (x == 0) {
+            return 1;
+          } else if (x >= 3) {
+            return 0;
+          }
+          double px = Math.PI * x;
+          return 3 * Math.sin(px) * Math.sin(px / 3) / (px * px);
+      }
+    }
+  }
+
+  // the number of weight tables kept for reuse
+  private static final int CACHED_TABLES = 32;
+
+  private static final Map<String, Weights> CACHE =
+      new LinkedHashMap<String, Weights>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Weights> eldest) {
+          return this.size() > CACHED_TABLES;
+        }
+      };
+
+  private final int newWidth;
+  private final int newHeight;
+  private final Filter filter;
+
+  /**
+   * Constructs a new resize transformation with the given width, height and filter.
+   *
+   * @param newWidth  the new width of the image in pixels.
+   * @param newHeight the new height of the image in pixels.
+   * @param filter    the filter to interpolate new pixels with.
+   * @throws IllegalArgumentException if the new size is smaller than 1x1 or the filter is null.
+   */
+  public ResizeTransformation(int newWidth, int newHeight, Filter filter)
+      throws IllegalArgumentException {
+    if (newWidth < 1 || newHeight < 1) {
+      throw new IllegalArgumentException("New dimensions must be at least 1x1!");
+    }
+    if (filter == null) {
+      throw new IllegalArgumentException("The filter must not be null!");
+    }
+    this.newWidth = newWidth;
+    this.newHeight = newHeight;
+    this.filter = filter;
+  }
+
+  @Override
+  public CustomColor[][] apply(CustomColor[][] pixels, int maxColorValue, int minColorValue) {
+    return RasterUtil.toArray(
+        this.apply(RasterUtil.fromArray(pixels, maxColorValue), maxColorValue, minColorValue));
+  }
+
+  @Override
+  public IRaster apply(IViewRaster raster, int maxColorValue, int minColorValue) {
+    return this.apply(raster, maxColorValue, minColorValue, RowBandExecutor.getDefault());
+  }
+
+  @Override
+  public IRaster apply(IViewRaster raster, int maxColorValue, int minColorValue,
+      RowBandExecutor executor) {
+    return this.apply(raster, maxColorValue, minColorValue, executor, new HeapRasterFactory());
+  }
+
+  /**
+   * Resizes a pixel buffer, first every old row to the new width, then every new column to the
+   * new height, running both passes in bands of rows with the given executor. New values are
+   * rounded and clamped, as filters with negative lobes can overshoot.
+   *
+   * @param raster        the pixels of the image.
+   * @param maxColorValue represents the maximum allowed color value in the image
+   * @param minColorValue represents the minimum allowed color value in the image
+   * @param executor      runs the bands of rows, sequentially or in parallel.
+   * @param factory       the factory deciding where the result is stored.
+   * @return a new raster containing the resized image.
+   */
+  @Override
+  public IRaster apply(IViewRaster raster, int maxColorValue, int minColorValue,
+      RowBandExecutor executor, IRasterFactory factory) throws IllegalArgumentException {
+    int width = raster.getWidth();
+    int height = raster.getHeight();
+    Weights columns = weights(width, this.newWidth, this.filter);
+    Weights rows = weights(height, this.newHeight, this.filter);
+
+    // the old rows resized to the new width, channel by channel
+    float[] resizedRows = new float[3 * this.newWidth * height];
+    int[] data = raster instanceof PackedRaster ? ((PackedRaster) raster).getData() : null;
+    executor.forEachBand(height, this.newWidth, (top, bottom) -> {
+      int[] row = new int[3 * width];
+      for (int y = top; y < bottom; y++) {
+        for (int x = 0; x < width; x++) {
+          if (data != null) {
+            int rgb = data[y * width + x];
+            row[3 * x] = (rgb >> 16) & 0xFF;
+            row[3 * x + 1] = (rgb >> 8) & 0xFF;
+            row[3 * x + 2] = rgb & 0xFF;
+          } else {
+            row[3 * x] = raster.getRed(x, y);
+            row[3 * x + 1] = raster.getGreen(x, y);
+            row[3 * x + 2] = raster.getBlue(x, y);
+          }
+        }
+        int offset = 3 * this.newWidth * y;
+        for (int x = 0; x < this.newWidth; x++) {
+          float red = 0;
+          float green = 0;
+          float blue = 0;
+          for (int k = columns.start[x]; k < columns.start[x + 1]; k++) {
+            int old = 3 * columns.index[k];
+            float weight = columns.weight[k];
+            red += weight * row[old];
+            green += weight * row[old + 1];
+            blue += weight * row[old + 2];
+          }
+          resizedRows[offset + 3 * x] = red;
+          resizedRows[offset + 3 * x + 1] = green;
+          resizedRows[offset + 3 * x + 2] = blue;
+        }
+      }
+    });
+
+    IRaster resized = factory.create(this.newWidth, this.newHeight, maxColorValue);
+    int rowLength = 3 * this.newWidth;
+    executor.forEachBand(this.newHeight, this.newWidth, (top, bottom) -> {
+      float[] sums = new float[rowLength];
+      for (int y = top; y < bottom; y++) {
+        Arrays.fill(sums, 0);
+        for (int k = rows.start[y]; k < rows.start[y + 1]; k++) {
+          int offset = rowLength * rows.index[k];
+          float weight = rows.weight[k];
+          // tap-outer, so that the loop over the row can be vectorized
+          for (int i = 0; i < rowLength; i++) {
+            sums[i] += weight * resizedRows[offset + i];
+          }
+        }
+        for (int x = 0; x < this.newWidth; x++) {
+          resized.setPixel(x, y, clamp(sums[3 * x], maxColorValue, minColorValue),
+              clamp(sums[3 * x + 1], maxColorValue, minColorValue),
+              clamp(sums[3 * x + 2], maxColorValue, minColorValue));
+        }
+      }
+    });
+    return resized;
+  }
+
+  @Override
+  public String getCacheKey() {
+    return this.getClass().getName() + "[" + this.newWidth + "x" + this.newHeight + ", "
+        + this.filter + "]";
+  }
+
+  /**
+   * Rounds a value to the nearest color value allowed in the image.
+   *
+   * @param value         the value.
+   * @param maxColorValue the maximum allowed color value in the image.
+   * @param minColorValue the minimum allowed color value in the image.
+   * @return the color value.
+   */
+  private static int clamp(float value, int maxColorValue, int minColorValue) {
+    return Math.max(minColorValue, Math.min(maxColorValue, Math.round(value)));
+  }
+
+  /**
+   * Gets the weight table for resizing an axis, from the cache if it has been computed before.
+   *
+   * @param size    the old size along the axis.
+   * @param newSize the new size along the axis.
+   * @param filter  the filter to interpolate with.
+   * @return the weight table.
+   */
+  private static Weights weights(int size, int newSize, Filter filter) {
+    String key = size + ":" + newSize + ":" + filter;
+    synchronized (CACHE) {
+      Weights weights = CACHE.get(key);
+      if (weights == null) {
+        weights = new Weights(size, newSize, filter);
+        CACHE.put(key, weights);
+      }
+      return weights;
+    }
+  }
+
+  /**
+   * Which old pixels along one axis every new pixel is made of: new pixel i takes old pixel
+   * index[k] with weight[k], for k from start[i] to start[i + 1] - 1. The weights of every new
+   * pixel add up to 1.
+   */
+  private static final class Weights {
+
+    private final int[] start;
+    private final int[] index;
+    private final float[] weight;
+
+    /**
+     * Computes the weight table for resizing an axis. Old pixels beyond the edges are replaced by
+     * the pixels at the edges.
+     *
+     * @param size    the old size along the axis.
+     * @param newSize the new size along the axis.
+     * @param filter  the filter to interpolate with.
+     */
+    Weights(int size, int newSize, Filter filter) {
+      double ratio = (double) size / newSize;
+      // shrinking widens the filter so that it covers every old pixel
+      double scale = filter == Filter.NEAREST ? 1 : Math.max(1, ratio);
+      double reach = filter.radius * scale;
+      int taps = (int) Math.ceil(2 * reach) + 1;
+      this.start = new int[newSize + 1];
+      int[] index = new int[newSize * taps];
+      float[] weight = new float[newSize * taps];
+      double[] raw = new double[taps];
+      int k = 0;
+      for (int i = 0; i < newSize; i++) {
+        this.start[i] = k;
+        double center = (i + 0.5) * ratio - 0.5;
+        int first = (int) Math.ceil(center - reach);
+        double total = 0;
+        int count = 0;
+        for (int old = first; old < first + taps && old <= center + reach; old++) {
+          raw[count] = filter.weight((old - center) / scale);
+          total += raw[count++];
+        }
+        if (total == 0) {
+          // a nearest sample exactly between two pixels takes the one after
+          raw[0] = 1;
+          count = 1;
+          first = (int) Math.floor(center + 0.5);
+          total = 1;
+        }
+        for (int j = 0; j < count; j++) {
+          if (raw[j] == 0) {
+            continue;
+          }
+          int old = Math.max(0, Math.min(size - 1, first + j));
+          if (k > this.start[i] && index[k - 1] == old) {
+            // edge pixels standing in for pixels beyond the edge add up
+            weight[k - 1] += (float) (raw[j] / total);
+          } else {
+            index[k] = old;
+            weight[k] = (float) (raw[j] / total);
+            k++;
+          }
+        }
+      }
+      this.start[newSize] = k;
+      this.index = Arrays.copyOf(index, k);
+      this.weight = Arrays.copyOf(weight, k);
+    }
+  }
+}
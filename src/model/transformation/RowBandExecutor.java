@@ -0,0 +1,211 @@
+package model.transformation;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Runs the work of a transformation in bands of rows, either one after the other or in parallel
+ * on a {@link ForkJoinPool}. Transformations compute every row of a band exactly as they would
+ * sequentially, so the result never depends on the executor.
+ *
+ * <p>Transformations that support bands take an executor in {@link
+ * ITransformation#apply(model.raster.IViewRaster, int, int, RowBandExecutor)}; otherwise they use
+ * the global default, which is {@link #SEQUENTIAL} unless changed with {@link
+ * #setDefault(RowBandExecutor)}.
+ */
+public final class RowBandExecutor {
+
+  /**
+   * Performs the work of a band of rows.
+   */
+  public interface BandTask {
+
+    /**
+     * Performs the work of the rows from top (inclusive) to bottom (exclusive).
+     *
+     * @param top    the first row of the band.
+     * @param bottom the row after the last row of the band.
+     */
+    void run(int top, int bottom);
+  }
+
+  /**
+   * Runs all bands on the calling thread.
+   */
+  public static final RowBandExecutor SEQUENTIAL = new RowBandExecutor(null, 0);
+
+  // images with fewer pixels are not worth splitting between threads
+  public static final long DEFAULT_THRESHOLD = 1L << 18;
+
+  // the number of bands per thread, so that threads that finish early can take over work
+  private static final int BANDS_PER_THREAD = 4;
+
+  private static volatile RowBandExecutor defaultExecutor = SEQUENTIAL;
+
+  private final ForkJoinPool pool;
+  private final long threshold;
+
+  /**
+   * Creates an executor that runs bands in parallel on the given pool, for images with at least
+   * the given number of pixels.
+   *
+   * @param pool      the pool to run bands on, or null to run them on the calling thread.
+   * @param threshold the number of pixels below which the bands are run on the calling thread.
+   * @throws IllegalArgumentException if the threshold is negative.
+   */
+  public RowBandExecutor(ForkJoinPool pool, long threshold) throws IllegalArgumentException {
+    if (threshold < 0) {
+      throw new IllegalArgumentException("The threshold must not be negative!");
+    }
+    this.pool = pool;
+    this.threshold = threshold;
+  }
+
+  /**
+   * Creates an executor that runs bands in parallel on the given pool, for images with at least
+   * {@link #DEFAULT_THRESHOLD} pixels.
+   *
+   * @param pool the pool to run bands on.
+   * @throws IllegalArgumentException if the pool is null.
+   */
+  public RowBandExecutor(ForkJoinPool pool) throws IllegalArgumentException {
+    this(requirePool(pool), DEFAULT_THRESHOLD);
+  }
+
+  /**
+   * Creates an executor that runs bands in parallel on the common pool, for images with at least
+   * {@link #DEFAULT_THRESHOLD} pixels.
+   *
+   * @return the new executor.
+   */
+  public static RowBandExecutor parallel() {
+    return new RowBandExecutor(ForkJoinPool.commonPool());
+  }
+
+  /**
+   * Gets the executor used by transformations that are not given one.
+   *
+   * @return the default executor.
+   */
+  public static RowBandExecutor getDefault() {
+    return defaultExecutor;
+  }
+
+  /**
+   * Sets the executor used by transformations that are not given one, e.g. {@link #parallel()}
+   * to run all transformations of all images in parallel.
+   *
+   * @param executor the new default executor.
+   * @throws IllegalArgumentException if the executor is null.
+   */
+  public static void setDefault(RowBandExecutor executor) throws IllegalArgumentException {
+    if (executor == null) {
+      throw new IllegalArgumentException("The executor must not be null!");
+    }
+    defaultExecutor = executor;
+  }
+
+  /**
+   * Ensures that a pool is not null.
+   *
+   * @param pool the pool.
+   * @return the pool.
+   * @throws IllegalArgumentException if the pool is null.
+   */
+  private static ForkJoinPool requirePool(ForkJoinPool pool) throws IllegalArgumentException {
+    if (pool == null) {
+      throw new IllegalArgumentException("The pool must not be null!");
+    }
+    return pool;
+  }
+
+  /**
+   * Checks whether this executor runs the bands of an image of the given size in parallel.
+   *
+   * @param pixels the number of pixels of the image.
+   * @return true if the bands are run on the pool.
+   */
+  public boolean isParallel(long pixels) {
+    return this.pool != null && this.pool.getParallelism() > 1 && pixels >= this.threshold;
+  }
+
+  /**
+   * Splits the given rows into bands and performs the given task on every band, returning once
+   * all of them are done. Exceptions thrown by the task are passed on to the caller.
+   *
+   * @param rows  the number of rows.
+   * @param width the number of pixels per row, used to decide whether to run in parallel.
+   * @param task  the work of a band.
+   */
+  public void forEachBand(int rows, int width, BandTask task) {
+    if (rows <= 0) {
+      return;
+    }
+    if (!this.isParallel((long) rows * width)) {
+      task.run(0, rows);
+      return;
+    }
+    this.forEachBand(rows, task);
+  }
+
+  /**
+   * Splits the given rows into bands and performs the given task on every band, returning once
+   * all of them are done, running the bands in parallel whenever this executor has a pool. This
+   * is meant for work whose size the caller has already checked with {@link #isParallel(long)},
+   * such as work items that are not rows of pixels.
+   *
+   * @param rows the number of rows.
+   * @param task the work of a band.
+   */
+  public void forEachBand(int rows, BandTask task) {
+    if (rows <= 0) {
+      return;
+    } else if (this.pool == null || rows == 1) {
+      task.run(0, rows);
+      return;
+    }
+    int bands = Math.min(rows, this.pool.getParallelism() * BANDS_PER_THREAD);
+    int bandHeight = (rows + bands - 1) / bands;
+    this.pool.invoke(new Bands(task, 0, rows, bandHeight));
+  }
+
+  /**
+   * Splits a range of rows in halves until it is at most one band high.
+   */
+  private static class Bands extends RecursiveAction {
+
+    private static final long serialVersionUID = 1L;
+
+    private final BandTask task;
+    private final int top;
+    private final int bottom;
+    private final int bandHeight;
+
+    /**
+     * Creates the work of a range of rows.
+     *
+     * @param task       the work of a band.
+     * @param top        the first row of the range.
+     * @param bottom     the row after the last row of the range.
+     * @param bandHeight the maximum height of a band.
+     */
+    Bands(BandTask task, int top, int bottom, int bandHeight) {
+      this.task = task;
+      this.top = top;
+      this.bottom = bottom;
+      this.bandHeight = bandHeight;
+    }
+
+    @Override
+    protected void compute() {
+      if (this.bottom - this.top <= this.bandHeight) {
+        this.task.run(this.top, this.bottom);
+        return;
+      }
+      int bands = (this.bottom - this.top + this.bandHeight - 1) / this.bandHeight;
+      int middle = this.top + bands / 2 * this.bandHeight;
+      invokeAll(new Bands(this.task, this.top, middle, this.bandHeight),
+          new Bands(this.task, middle, this.bottom, this.bandHeight));
+    }
+  }
+}
@@ -0,0 +1,185 @@
+package model.transformation;
+
+/**
+ * A uniform grid of buckets over a set of seed points, used to find the seed nearest to a point
+ * without measuring the distance to every seed. Distances are compared squared, as exact
+ * integers. Of several seeds at the same distance, the one with the lowest index is nearest.
+ */
+class SeedGrid {
+
+  // the average number of seeds per cell the grid aims for
+  private static final int SEEDS_PER_CELL = 2;
+
+  private final int[] seedX;
+  private final int[] seedY;
+  private final int left;
+  private final int top;
+  private final int cellSize;
+  private final int cellsAcross;
+  private final int cellsDown;
+  // the seeds of cell c are order[cellStart[c]] to order[cellStart[c + 1] - 1], by index
+  private final int[] cellStart;
+  private final int[] order;
+
+  /**
+   * Sorts the given seeds into a grid covering their bounding box.
+   *
+   * @param seedX the x-coordinates of the seeds.
+   * @param seedY the y-coordinates of the seeds.
+   * @throws IllegalArgumentException if there are no seeds.
+   */
+  SeedGrid(int[] seedX, int[] seedY) throws IllegalArgumentException {
+    int n = seedX.length;
+    if (n == 0) {
+      throw new IllegalArgumentException("A grid needs at least one seed!");
+    }
+    this.seedX = seedX;
+    this.seedY = seedY;
+    int minX = Integer.MAX_VALUE;
+    int maxX = Integer.MIN_VALUE;
+    int minY = Integer.MAX_VALUE;
+    int maxY = Integer.MIN_VALUE;
+    for (int i = 0; i < n; i++) {
+      minX = Math.min(minX, seedX[i]);
+      maxX = Math.max(maxX, seedX[i]);
+      minY = Math.min(minY, seedY[i]);
+      maxY = Math.max(maxY, seedY[i]);
+    }
+    this.left = minX;
+    this.top = minY;
+    long width = (long) maxX - minX + 1;
+    long height = (long) maxY - minY + 1;
+    this.cellSize = (int) Math.min(Integer.MAX_VALUE / 2, Math.max(1,
+        Math.ceil(Math.sqrt((double) width * height * SEEDS_PER_CELL / n))));
+    this.cellsAcross = (int) ((width + this.cellSize - 1) / this.cellSize);
+    this.cellsDown = (int) ((height + this.cellSize - 1) / this.cellSize);
+    this.cellStart = new int[this.cellsAcross * this.cellsDown + 1];
+    for (int i = 0; i < n; i++) {
+      this.cellStart[this.cellOf(seedX[i], seedY[i]) + 1]++;
+    }
+    for (int c = 0; c < this.cellsAcross * this.cellsDown; c++) {
+      this.cellStart[c + 1] += this.cellStart[c];
+    }
+    int[] next = new int[this.cellsAcross * this.cellsDown];
+    System.arraycopy(this.cellStart, 0, next, 0, next.length);
+    this.order = new int[n];
+    for (int i = 0; i < n; i++) {
+      this.order[next[this.cellOf(seedX[i], seedY[i])]++] = i;
+    }
+  }
+
+  /**
+   * Finds the cell containing a seed.
+   *
+   * @param x the x-coordinate of the seed.
+   * @param y the y-coordinate of the seed.
+   * @return the index of the cell.
+   */
+  private int cellOf(int x, int y) {
+    return ((y - this.top) / this.cellSize) * this.cellsAcross + (x - this.left) / this.cellSize;
+  }
+
+  /**
+   * Finds the seed nearest to a point, which may lie outside of the grid. Cells are searched in
+   * growing square rings around the cell of the point, skipping rings that miss the grid, until
+   * every seed outside of the searched cells is known to be strictly farther than the nearest
+   * seed found.
+   *
+   * @param x the x-coordinate of the point.
+   * @param y the y-coordinate of the point.
+   * @return the index of the nearest seed, the lowest one of equally near seeds.
+   */
+  int nearest(int x, int y) {
+    int cx = Math.floorDiv(x - this.left, this.cellSize);
+    int cy = Math.floorDiv(y - this.top, this.cellSize);
+    int best = -1;
+    long bestDistance = Long.MAX_VALUE;
+    // the first ring that reaches the grid
+    int ring = Math.max(Math.max(-cx, cx - (this.cellsAcross - 1)),
+        Math.max(Math.max(-cy, cy - (this.cellsDown - 1)), 0));
+    while (true) {
+      int firstRow = Math.max(0, cy - ring);
+      int lastRow = Math.min(this.cellsDown - 1, cy + ring);
+      int firstCol = Math.max(0, cx - ring);
+      int lastCol = Math.min(this.cellsAcross - 1, cx + ring);
+      for (int row = firstRow; row <= lastRow; row++) {
+        if (row == cy - ring || row == cy + ring) {
+          for (int col = firstCol; col <= lastCol; col++) {
+            best = this.searchCell(row * this.cellsAcross + col, x, y, best, bestDistance);
+            bestDistance = this.distance(best, x, y);
+          }
+        } else {
+          // inner rows of the ring only have a cell on either side
+          if (cx - ring >= 0) {
+            best = this.searchCell(row * this.cellsAcross + cx - ring, x, y, best,
+                bestDistance);
+            bestDistance = this.distance(best, x, y);
+          }
+          if (cx + ring < this.cellsAcross) {
+            best = this.searchCell(row * this.cellsAcross + cx + ring, x, y, best,
+                bestDistance);
+            bestDistance = this.distance(best, x, y);
+          }
+        }
+      }
+      // the closest a point of a cell of the grid outside of the searched cells can be
+      long outside = Long.MAX_VALUE;
+      if (cx - ring > 0) {
+        outside = Math.min(outside, x - ((long) (cx - ring) * this.cellSize + this.left - 1));
+      }
+      if (cx + ring < this.cellsAcross - 1) {
+        outside = Math.min(outside, (long) (cx + ring + 1) * this.cellSize + this.left - x);
+      }
+      if (cy - ring > 0) {
+        outside = Math.min(outside, y - ((long) (cy - ring) * this.cellSize + this.top - 1));
+      }
+      if (cy + ring < this.cellsDown - 1) {
+        outside = Math.min(outside, (long) (cy + ring + 1) * this.cellSize + this.top - y);
+      }
+      if (outside == Long.MAX_VALUE
+          || (best >= 0 && bestDistance < outside * outside)) {
+        return best;
+      }
+      ring++;
+    }
+  }
+
+  /**
+   * Compares the seeds of a cell with the nearest seed found so far.
+   *
+   * @param cell         the index of the cell.
+   * @param x            the x-coordinate of the point.
+   * @param y            the y-coordinate of the point.
+   * @param best         the nearest seed found so far, or -1.
+   * @param bestDistance the squared distance to that seed.
+   * @return the nearest seed, the lowest one of equally near seeds.
+   */
+  private int searchCell(int cell, int x, int y, int best, long bestDistance) {
+    for (int k = this.cellStart[cell]; k < this.cellStart[cell + 1]; k++) {
+      int seed = this.order[k];
+      long distance = this.distance(seed, x, y);
+      if (distance < bestDistance || (distance == bestDistance && seed < best)) {
+        bestDistance = distance;
+        best = seed;
+      }
+    }
+    return best;
+  }
+
+  /**
+   * Computes the squared distance between a seed and a point.
+   *
+   * @param seed the index of the seed, or -1.
+   * @param x    the x-coordinate of the point.
+   * @param y    the y-coordinate of the point.
+   * @return the squared distance, or the largest long for no seed.
+   */
+  private long distance(int seed, int x, int y) {
+    if (seed < 0) {
+      return Long.MAX_VALUE;
+    }
+    long dx = this.seedX[seed] - x;
+    long dy = this.seedY[seed] - y;
+    return dx * dx + dy * dy;
+  }
+}
@@ -0,0 +1,155 @@
+package model.transformation;
+
+import model.raster.HeapRasterFactory;
+import model.raster.IRaster;
+import model.raster.IRasterFactory;
+import model.raster.IViewRaster;
+import model.raster.RasterUtil;
+
+/**
+ * Applies transformations with a bounded neighborhood (see {@link
+ * ITransformation#getNeighborhoodRadius()}) to an image one square tile at a time. Every tile is
+ * copied out together with a border (halo) as wide as the neighborhood, transformed, and its
+ * inner part copied into the result, so a transformation that computes every pixel from its
+ * neighborhood alone gives the same result as on the whole image.
+ *
+ * <p>With the default tile size, a tile, its halo and the planes and sums a filter keeps for it
+ * fit in the L2 cache, so every pass of the transformation over the tile reads it from the cache
+ * instead of from memory, however wide the image is. Tiles are also the work items given to a
+ * {@link RowBandExecutor}, so images are split between threads in two dimensions.
+ */
+public final class TileExecutor {
+
+  // the width and height of a tile, without its halo
+  public static final int DEFAULT_TILE_SIZE = 256;
+
+  // the widest halo, relative to the tile size, for which tiling is worth it
+  private static final int MIN_TILE_PER_HALO = 16;
+
+  private final int tileSize;
+
+  /**
+   * Creates an executor that cuts images into tiles of the given size.
+   *
+   * @param tileSize the width and height of a tile, without its halo.
+   * @throws IllegalArgumentException if the tile size is not positive.
+   */
+  public TileExecutor(int tileSize) throws IllegalArgumentException {
+    if (tileSize < 1) {
+      throw new IllegalArgumentException("The tile size must be positive!");
+    }
+    this.tileSize = tileSize;
+  }
+
+  /**
+   * Creates an executor that cuts images into tiles of {@link #DEFAULT_TILE_SIZE}.
+   */
+  public TileExecutor() {
+    this(DEFAULT_TILE_SIZE);
+  }
+
+  /**
+   * Applies a transformation to an image tile by tile, running the tiles with the given
+   * executor. Each tile is transformed on its own, sequentially.
+   *
+   * <p>Only transformations that look at a neighborhood, but one much smaller than a tile, are
+   * tiled. Others are transformed whole: without a bounded neighborhood they cannot be tiled,
+   * per-pixel transformations already stream through the image once, and wide kernels would
+   * spend much of their time on the halos and could no longer be filtered by FFT. Images no
+   * larger than one tile are also transformed whole.
+   *
+   * @param transformation the transformation to apply.
+   * @param raster         the pixels of the image.
+   * @param maxColorValue  the maximum allowed color value in the image.
+   * @param minColorValue  the minimum allowed color value in the image.
+   * @param executor       runs the tiles, sequentially or in parallel.
+   * @return a new raster containing the transformed image.
+   * @throws IllegalArgumentException if the transformation does not keep the size of a tile.
+   */
+  public IRaster apply(ITransformation transformation, IViewRaster raster, int maxColorValue,
+      int minColorValue, RowBandExecutor executor) throws IllegalArgumentException {
+    return this.apply(transformation, raster, maxColorValue, minColorValue, executor,
+        new HeapRasterFactory());
+  }
+
+  /**
+   * Applies a transformation to an image tile by tile like {@link #apply(ITransformation,
+   * IViewRaster, int, int, RowBandExecutor)}, storing the result in a raster created by the given
+   * factory. Results that are not stored on the heap are tiled whenever the transformation has a
+   * bounded neighborhood, in tiles at least large enough for the halo to stay small, so that only
+   * tiles are held on the heap however large the image is.
+   *
+   * @param transformation the transformation to apply.
+   * @param raster         the pixels of the image.
+   * @param maxColorValue  the maximum allowed color value in the image.
+   * @param minColorValue  the minimum allowed color value in the image.
+   * @param executor       runs the tiles, sequentially or in parallel.
+   * @param factory        the factory deciding where the result is stored.
+   * @return a new raster containing the transformed image.
+   * @throws IllegalArgumentException if the transformation does not keep the size of a tile, or
+   *                                  the factory cannot store the result.
+   */
+  public IRaster apply(ITransformation transformation, IViewRaster raster, int maxColorValue,
+      int minColorValue, RowBandExecutor executor, IRasterFactory factory)
+      throws IllegalArgumentException {
+    int radius = transformation.getNeighborhoodRadius();
+    int width = raster.getWidth();
+    int height = raster.getHeight();
+    int size = factory instanceof HeapRasterFactory ? this.tileSize
+        : Math.max(this.tileSize, radius * MIN_TILE_PER_HALO);
+    if (radius < 1 || radius * MIN_TILE_PER_HALO > size || (width <= size && height <= size)) {
+      return transformation.apply(raster, maxColorValue, minColorValue, executor, factory);
+    }
+    int across = (width + size - 1) / size;
+    int down = (height + size - 1) / size;
+    IRaster result = factory.create(width, height, maxColorValue);
+    RowBandExecutor tiles = executor.isParallel((long) width * height)
+        ? executor : RowBandExecutor.SEQUENTIAL;
+    tiles.forEachBand(across * down, (first, last) -> {
+      for (int t = first; t < last; t++) {
+        this.applyToTile(transformation, raster, result, t % across * size, t / across * size,
+            size, radius, maxColorValue, minColorValue);
+      }
+    });
+    return result;
+  }
+
+  /**
+   * Transforms one tile with its halo, which is cut off at the edges of the image, and copies
+   * the transformed tile into the result.
+   *
+   * @param transformation the transformation to apply.
+   * @param raster         the pixels of the image.
+   * @param result         the transformed image.
+   * @param x              the x-coordinate of the top left pixel of the tile.
+   * @param y              the y-coordinate of the top left pixel of the tile.
+   * @param size           the width and height of a tile, without its halo.
+   * @param radius         the width of the halo.
+   * @param maxColorValue  the maximum allowed color value in the image.
+   * @param minColorValue  the minimum allowed color value in the image.
+   * @throws IllegalArgumentException if the transformation does not keep the size of the tile.
+   */
+  private void applyToTile(ITransformation transformation, IViewRaster raster, IRaster result,
+      int x, int y, int size, int radius, int maxColorValue, int minColorValue)
+      throws IllegalArgumentException {
+    int width = raster.getWidth();
+    int height = raster.getHeight();
+    int tileWidth = Math.min(size, width - x);
+    int tileHeight = Math.min(size, height - y);
+    int left = Math.max(0, x - radius);
+    int top = Math.max(0, y - radius);
+    int regionWidth = Math.min(width, x + tileWidth + radius) - left;
+    int regionHeight = Math.min(height, y + tileHeight + radius) - top;
+
+    IRaster region = RasterUtil.create(regionWidth, regionHeight, maxColorValue);
+    RasterUtil.copyRegion(raster, left, top, region, 0, 0, regionWidth, regionHeight);
+
+    IRaster out = transformation.apply(region, maxColorValue, minColorValue,
+        RowBandExecutor.SEQUENTIAL);
+    if (out.getWidth() != regionWidth || out.getHeight() != regionHeight) {
+      throw new IllegalArgumentException(
+          "A transformation with a bounded neighborhood must keep the image size!");
+    }
+    RasterUtil.copyRegion(out, x - left, y - top, result, x, y, tileWidth, tileHeight);
+  }
+}
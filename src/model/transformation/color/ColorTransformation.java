@@ -1,34 +1,238 @@
 package model.transformation.color;
 
-import model.CustomColor;
+import java.util.Arrays;
+
+import model.raster.IRaster;
+import model.raster.IViewRaster;
+import model.raster.PlanarRaster;
 import model.transformation.ClampTransformation;
+import model.transformation.IPixelTransformation;
+import model.transformation.RowBandExecutor;
 
 /**
  * Represents an abstract class for all color transformations (sepia and grey scale) on the image.
  */
-public abstract class ColorTransformation extends ClampTransformation {
+public abstract class ColorTransformation extends ClampTransformation
+    implements IPixelTransformation {
+
+  // fixed-point lookup tables hold weight * value scaled by 2^FRACTION_BITS, rounded
+  private static final int FRACTION_BITS = 16;
+  private static final int ONE = 1 << FRACTION_BITS;
+  // a table sum at least this far from an integer has the same integer part as the exact sum and
+  // as the double sum: the rounding of three table entries is off by at most 1.5 units in total
+  private static final int MARGIN = 4;
+
+  // per output channel and input channel, the products of the weight with every 8-bit value, or
+  // null if the weights are too large for fixed-point sums
+  private int[][][] tables;
+  private boolean tablesCreated;
+  // per output channel, the earlier equal row of the matrix or -1, for single pixels
+  private volatile int[] sameRows;
 
   @Override
-  protected CustomColor[][] applyTransformation(CustomColor[][] pixels) {
+  protected PlanarRaster applyTransformation(PlanarRaster pixels) {
     double[][] transform = getTransform();
-    CustomColor[][] newColor = new CustomColor[pixels.length][pixels[0].length];
-    for (int i = 0; i < pixels.length; i++) {
-      for (int j = 0; j < pixels[0].length; j ++) {
-        double red = transform[0][0] * pixels[i][j].getRed()
-            + transform[0][1] * pixels[i][j].getGreen()
-            + transform[0][2] * pixels[i][j].getBlue();
-        double green = transform[1][0] * pixels[i][j].getRed()
-            + transform[1][1] * pixels[i][j].getGreen()
-            + transform[1][2] * pixels[i][j].getBlue();
-        double blue = transform[2][0] * pixels[i][j].getRed()
-            + transform[2][1] * pixels[i][j].getGreen()
-            + transform[2][2] * pixels[i][j].getBlue();
-        newColor[i][j] = new CustomColor((int)red, (int)green, (int)blue);
+    int[][][] tables = this.getTables(transform);
+    int[] red = pixels.getRedPlane();
+    int[] green = pixels.getGreenPlane();
+    int[] blue = pixels.getBluePlane();
+    PlanarRaster newColor = new PlanarRaster(pixels.getWidth(), pixels.getHeight());
+    int[][] planes = {newColor.getRedPlane(), newColor.getGreenPlane(), newColor.getBluePlane()};
+    for (int channel = 0; channel < 3; channel++) {
+      int same = this.findSameRow(transform, channel);
+      if (same >= 0) {
+        System.arraycopy(planes[same], 0, planes[channel], 0, planes[channel].length);
+      } else {
+        this.applyRow(transform[channel], tables == null ? null : tables[channel], red, green,
+            blue, planes[channel]);
       }
     }
     return newColor;
   }
 
+  /**
+   * Applies this transformation in a single pass that clamps every pixel as it is computed,
+   * instead of computing the whole unclamped result first.
+   *
+   * @param raster        the pixels of the image.
+   * @param maxColorValue represents the maximum allowed color value in the image
+   * @param minColorValue represents the minimum allowed color value in the image
+   * @param executor      runs the bands of rows, sequentially or in parallel.
+   * @return a new raster containing the transformed image.
+   */
+  @Override
+  public IRaster apply(IViewRaster raster, int maxColorValue, int minColorValue,
+      RowBandExecutor executor) {
+    return IPixelTransformation.applyAll(raster, maxColorValue, minColorValue, executor, this);
+  }
+
+  @Override
+  public int getNeighborhoodRadius() {
+    return 0;
+  }
+
+  @Override
+  public String getCacheKey() {
+    return this.getClass().getName() + Arrays.deepToString(this.getTransform());
+  }
+
+  @Override
+  public void applyToPixel(int[] channels, int maxColorValue, int minColorValue) {
+    double[][] transform = getTransform();
+    int[][][] tables = this.getTables(transform);
+    if (this.sameRows == null) {
+      int[] sameRows = new int[3];
+      for (int channel = 0; channel < 3; channel++) {
+        sameRows[channel] = this.findSameRow(transform, channel);
+      }
+      this.sameRows = sameRows;
+    }
+    int r = channels[0];
+    int g = channels[1];
+    int b = channels[2];
+    for (int channel = 0; channel < 3; channel++) {
+      int same = this.sameRows[channel];
+      if (same >= 0) {
+        channels[channel] = channels[same];
+      } else {
+        double[] w = transform[channel];
+        int value = tables == null ? (int) (w[0] * r + w[1] * g + w[2] * b)
+            : weightedSum(tables[channel], w, r, g, b);
+        channels[channel] = Math.min(maxColorValue, Math.max(minColorValue, value));
+      }
+    }
+  }
+
+  @Override
+  public void applyToRow(int[][] in, int[][] out, int maxColorValue, int minColorValue) {
+    double[][] transform = getTransform();
+    int[][][] tables = this.getTables(transform);
+    for (int channel = 0; channel < 3; channel++) {
+      int same = this.findSameRow(transform, channel);
+      if (same >= 0) {
+        System.arraycopy(out[same], 0, out[channel], 0, out[channel].length);
+      } else {
+        int[] plane = out[channel];
+        this.applyRow(transform[channel], tables == null ? null : tables[channel], in[0], in[1],
+            in[2], plane);
+        for (int i = 0; i < plane.length; i++) {
+          plane[i] = Math.min(maxColorValue, Math.max(minColorValue, plane[i]));
+        }
+      }
+    }
+  }
+
+  /**
+   * Finds an earlier row of the transforming matrix that is equal to the given row, such as the
+   * three rows of the greyscale matrix, whose output channel can then simply be copied.
+   *
+   * @param transform the transforming matrix.
+   * @param channel   the row to look for.
+   * @return the index of an earlier equal row, or -1 if there is none.
+   */
+  private int findSameRow(double[][] transform, int channel) {
+    for (int i = 0; i < channel; i++) {
+      if (Arrays.equals(transform[i], transform[channel])) {
+        return i;
+      }
+    }
+    return -1;
+  }
+
+  /**
+   * Computes one output channel as the weighted sum of the three input channels. Pixels whose
+   * channels are 8-bit are summed from the fixed-point tables; if that sum is too close to an
+   * integer to be sure of its integer part, or for other pixels, the weighted sum is computed in
+   * double precision, so the result is always the same as computing all of them in double
+   * precision.
+   *
+   * @param weights the row of the transforming matrix for the output channel.
+   * @param tables  the fixed-point tables of the weights, or null to only use doubles.
+   * @param red     the red plane of the source.
+   * @param green   the green plane of the source.
+   * @param blue    the blue plane of the source.
+   * @param out     the plane to write the output channel to.
+   */
+  private void applyRow(double[] weights, int[][] tables, int[] red, int[] green, int[] blue,
+      int[] out) {
+    double wr = weights[0];
+    double wg = weights[1];
+    double wb = weights[2];
+    if (tables == null) {
+      for (int i = 0; i < out.length; i++) {
+        out[i] = (int) (wr * red[i] + wg * green[i] + wb * blue[i]);
+      }
+      return;
+    }
+    for (int i = 0; i < out.length; i++) {
+      out[i] = weightedSum(tables, weights, red[i], green[i], blue[i]);
+    }
+  }
+
+  /**
+   * Computes the weighted sum of the channels of a pixel, truncated to an integer, using the
+   * fixed-point tables if the pixel is 8-bit and the sum is not too close to an integer.
+   *
+   * @param tables  the fixed-point tables of the weights.
+   * @param weights the weights.
+   * @param r       the red channel.
+   * @param g       the green channel.
+   * @param b       the blue channel.
+   * @return the same value as (int) (weights[0] * r + weights[1] * g + weights[2] * b).
+   */
+  private static int weightedSum(int[][] tables, double[] weights, int r, int g, int b) {
+    if (((r | g | b) & ~0xFF) == 0) {
+      int sum = tables[0][r] + tables[1][g] + tables[2][b];
+      int fraction = sum & (ONE - 1);
+      if (sum >= 0 && fraction >= MARGIN && fraction <= ONE - MARGIN) {
+        return sum >> FRACTION_BITS;
+      }
+    }
+    return (int) (weights[0] * r + weights[1] * g + weights[2] * b);
+  }
+
+  /**
+   * Gets the fixed-point tables of the transforming matrix, creating them on first use.
+   *
+   * @param transform the transforming matrix.
+   * @return the tables, or null if the weights are too large for fixed-point sums.
+   */
+  private synchronized int[][][] getTables(double[][] transform) {
+    if (!this.tablesCreated) {
+      this.tables = createTables(transform);
+      this.tablesCreated = true;
+    }
+    return this.tables;
+  }
+
+  /**
+   * Creates the fixed-point tables of a transforming matrix.
+   *
+   * @param transform the transforming matrix.
+   * @return for every row and weight, the products of the weight with the values 0 to 255, or
+   *         null if a sum of three products could overflow an int.
+   */
+  private static int[][][] createTables(double[][] transform) {
+    int[][][] tables = new int[3][3][256];
+    for (int row = 0; row < 3; row++) {
+      double largest = 0;
+      for (int col = 0; col < 3; col++) {
+        double weight = transform[row][col];
+        if (Double.isNaN(weight) || Math.abs(weight) * 255 * ONE >= 1 << 29) {
+          return null;
+        }
+        largest += Math.abs(weight) * 255 * ONE;
+        for (int v = 0; v < 256; v++) {
+          tables[row][col][v] = (int) Math.round(weight * v * ONE);
+        }
+      }
+      if (largest >= 1 << 30) {
+        return null;
+      }
+    }
+    return tables;
+  }
+
   /**
    * Gets the transforming matrix of this color transformation.
    *
@@ -0,0 +1,733 @@
+package model.transformation.filter;
+
+import java.util.Arrays;
+import model.transformation.RowBandExecutor;
+
+/**
+ * Filters channel planes with a square kernel, the way {@link FilteringTransformation} defines
+ * it: kernel taps that fall outside of the image are skipped and every sum is truncated to an
+ * integer.
+ *
+ * <p>Kernels of rank 1, such as the blur kernel, are split into a column and a row vector and
+ * applied as a horizontal pass followed by a vertical pass, which costs 2k instead of k*k
+ * multiply-adds per pixel for a k*k kernel. The separable passes sum the taps in a different
+ * order, so by default they are only used when every product and partial sum is exact in double
+ * precision (for example, for the power-of-two weights of the blur kernel and 8-bit channels):
+ * both ways of filtering then compute the same exact sum, and the result is identical to the
+ * direct 2D filter. Otherwise, the kernel is applied directly.
+ *
+ * <p>An engine that does not have to be exact (see {@link #ConvolutionEngine(double[][],
+ * boolean)}) picks whichever of the direct filter, the separable passes (for kernels that are of
+ * rank 1 up to rounding) and an FFT convolution is estimated to be cheapest for the kernel and
+ * image size. The FFT convolution splits the image into blocks, transforms two blocks at once as
+ * the real and imaginary part of one complex block, multiplies them with the transformed kernel
+ * and adds the results up (overlap-add). Its results match the direct filter up to rounding, so
+ * a truncated channel can differ by 1.
+ */
+public class ConvolutionEngine {
+
+  /**
+   * The ways in which an engine can apply its kernel.
+   */
+  public enum Method {
+    DIRECT, SEPARABLE, FFT
+  }
+
+  /**
+   * Where the filtered values of a plane are stored: clamped, and either as they are or into one
+   * channel of packed pixels.
+   */
+  private static final class Store {
+
+    private final int[] out;
+    private final int shift;
+    private final int max;
+    private final int min;
+
+    /**
+     * Creates a store into the given array.
+     *
+     * @param out   the array to store the values in.
+     * @param shift the position of the channel in packed pixels, or -1 to store plain values.
+     * @param max   the largest value to store.
+     * @param min   the smallest value to store.
+     */
+    Store(int[] out, int shift, int max, int min) {
+      this.out = out;
+      this.shift = shift;
+      this.max = max;
+      this.min = min;
+    }
+
+    /**
+     * Truncates, clamps and stores the sums of a run of pixels. Unless the sums are snapped,
+     * every step is a simple loop over the run that the JIT compiler can vectorize.
+     *
+     * @param index the index of the first pixel of the run.
+     * @param sums  the sums of the pixels.
+     * @param from  the index of the sum of the first pixel.
+     * @param count the number of pixels.
+     * @param snap  whether sums within rounding error of an integer are rounded to it first.
+     */
+    void putRow(int index, double[] sums, int from, int count, boolean snap) {
+      int[] out = this.out;
+      int max = this.max;
+      int min = this.min;
+      if (snap) {
+        for (int j = 0; j < count; j++) {
+          int value = Math.min(max, Math.max(min, snapToInteger(sums[from + j])));
+          out[index + j] = this.shift < 0 ? value : out[index + j] | value << this.shift;
+        }
+      } else if (this.shift < 0) {
+        for (int j = 0; j < count; j++) {
+          out[index + j] = Math.min(max, Math.max(min, (int) sums[from + j]));
+        }
+      } else {
+        int shift = this.shift;
+        for (int j = 0; j < count; j++) {
+          out[index + j] |= Math.min(max, Math.max(min, (int) sums[from + j])) << shift;
+        }
+      }
+    }
+  }
+
+  // the largest integer up to which all integers, and so all sums computed here, are exact
+  private static final double EXACT_LIMIT = 0x1p53;
+  // the largest numerator allowed for a weight when checking for exactness
+  private static final double MAX_NUMERATOR = 0x1p24;
+  // how far, relative to the largest weight, an approximate factorization may be off
+  private static final double FACTOR_TOLERANCE = 1e-12;
+  // sums of inexact methods this close to an integer are rounded to it before truncating
+  private static final double SNAP_TOLERANCE = 1e-9;
+  // the smallest FFT block, so that small kernels do not need an excessive number of blocks
+  private static final int MIN_FFT_SIZE = 32;
+  // the estimated costs of a butterfly of the FFT and of accumulating a value of a block, in
+  // multiply-adds of the direct filter
+  private static final double BUTTERFLY_COST = 2.5;
+  private static final double ACCUMULATE_COST = 2;
+  // how many samples of convolved blocks are kept at once when convolving blocks in parallel
+  private static final int FFT_CHUNK_SAMPLES = 1 << 20;
+
+  private final double[][] kernel;
+  private final boolean exact;
+  private final double[] column;
+  private final double[] row;
+  private final double separableBound;
+  private final int fftSize;
+  private double[] kernelSpectrumRe;
+  private double[] kernelSpectrumIm;
+
+  /**
+   * Creates an engine for the given kernel whose results are identical to the direct filter,
+   * deciding whether it can be separated.
+   *
+   * @param kernel the filtering kernel, indexed [row][column]. It must be square, with an odd
+   *               size. It is not copied, so it must not be modified afterwards.
+   * @throws IllegalArgumentException if the kernel is null, empty, not square or of even size.
+   */
+  public ConvolutionEngine(double[][] kernel) throws IllegalArgumentException {
+    this(kernel, true);
+  }
+
+  /**
+   * Creates an engine for the given kernel.
+   *
+   * @param kernel the filtering kernel, indexed [row][column]. It must be square, with an odd
+   *               size. It is not copied, so it must not be modified afterwards.
+   * @param exact  whether the results must be identical to the direct filter. Otherwise, methods
+   *               that are only accurate up to rounding are used where they are faster.
+   * @throws IllegalArgumentException if the kernel is null, empty, not square or of even size.
+   */
+  public ConvolutionEngine(double[][] kernel, boolean exact) throws IllegalArgumentException {
+    if (kernel == null || kernel.length % 2 == 0) {
+      throw new IllegalArgumentException("A kernel must have an odd number of rows!");
+    }
+    for (double[] kernelRow : kernel) {
+      if (kernelRow == null || kernelRow.length != kernel.length) {
+        throw new IllegalArgumentException("A kernel must be square!");
+      }
+    }
+    this.kernel = kernel;
+    this.exact = exact;
+    double[][] factors = factor(kernel);
+    if (factors == null) {
+      this.separableBound = 0;
+      if (!exact) {
+        factors = factorApproximately(kernel);
+      }
+    } else {
+      double columnSum = integerSum(factors[0]);
+      double rowSum = integerSum(factors[1]);
+      this.separableBound = columnSum < 0 || rowSum < 0 ? 0 : columnSum * rowSum;
+    }
+    this.column = factors == null ? null : factors[0];
+    this.row = factors == null ? null : factors[1];
+    this.fftSize = Math.max(MIN_FFT_SIZE, Integer.highestOneBit(2 * kernel.length - 1) << 1);
+  }
+
+  /**
+   * Determines whether this engine applies its kernel as two 1D passes (for inputs small enough
+   * for these passes to be exact).
+   *
+   * @return true if the kernel is of rank 1 with exactly representable factors.
+   */
+  public boolean isSeparable() {
+    return this.separableBound > 0;
+  }
+
+  /**
+   * Decides how this engine filters a plane.
+   *
+   * @param width  the width of the plane.
+   * @param height the height of the plane.
+   * @param maxAbs the largest absolute value in the plane.
+   * @return the method that is exact if required, and otherwise estimated to be the fastest.
+   */
+  public Method chooseMethod(int width, int height, double maxAbs) {
+    if (this.exact) {
+      return this.isSeparable() && maxAbs * this.separableBound < EXACT_LIMIT
+          ? Method.SEPARABLE : Method.DIRECT;
+    }
+    double pixels = (double) width * height;
+    int size = this.kernel.length;
+    Method best = Method.DIRECT;
+    double bestCost = pixels * size * size;
+    if (this.column != null && pixels * 2 * size < bestCost) {
+      best = Method.SEPARABLE;
+      bestCost = pixels * 2 * size;
+    }
+    int block = this.fftSize - size + 1;
+    double blocks = Math.ceil((double) width / block) * Math.ceil((double) height / block);
+    double area = (double) this.fftSize * this.fftSize;
+    double fftCost = Math.ceil(blocks / 2) * 2 * area * Integer.numberOfTrailingZeros(this.fftSize)
+        * BUTTERFLY_COST + blocks * area * ACCUMULATE_COST;
+    if (fftCost < bestCost) {
+      best = Method.FFT;
+    }
+    return best;
+  }
+
+  /**
+   * Filters a single channel plane.
+   *
+   * @param in     the source plane, row-major.
+   * @param out    the plane to write the filtered channel to.
+   * @param width  the width of the planes.
+   * @param height the height of the planes.
+   */
+  public void filterPlane(int[] in, int[] out, int width, int height) {
+    this.filterPlane(in, out, width, height, -1, Integer.MAX_VALUE, Integer.MIN_VALUE,
+        RowBandExecutor.SEQUENTIAL);
+  }
+
+  /**
+   * Filters a single channel plane into one channel of packed 0xRRGGBB pixels, clamping every
+   * value as it is stored. Filtering the red, green and blue planes with shifts of 16, 8 and 0
+   * into the same zeroed array yields the clamped result without any further pass. The work is
+   * split into bands of rows run by the given executor, which does not change the result.
+   *
+   * @param in            the source plane, row-major.
+   * @param out           the packed pixels to add the filtered channel to.
+   * @param width         the width of the planes.
+   * @param height        the height of the planes.
+   * @param shift         the position of the channel in the packed pixels, or -1 to store the
+   *                      clamped values themselves.
+   * @param maxColorValue the maximum value of a stored channel, at most 255 if packed.
+   * @param minColorValue the minimum value of a stored channel, at least 0 if packed.
+   * @param executor      runs the bands of rows, sequentially or in parallel.
+   */
+  public void filterPlane(int[] in, int[] out, int width, int height, int shift,
+      int maxColorValue, int minColorValue, RowBandExecutor executor) {
+    Store store = new Store(out, shift, maxColorValue, minColorValue);
+    switch (this.chooseMethod(width, height, maxAbs(in))) {
+      case SEPARABLE:
+        executor.forEachBand(height, width,
+            (top, bottom) -> this.filterSeparable(in, store, width, height, top, bottom));
+        break;
+      case FFT:
+        this.filterFft(in, store, width, height, executor);
+        break;
+      default:
+        executor.forEachBand(height, width,
+            (top, bottom) -> this.filterDirect(in, store, width, height, top, bottom));
+        break;
+    }
+  }
+
+  /**
+   * Filters a band of rows of a plane with the full 2D kernel, summing the taps of every pixel
+   * row by row.
+   *
+   * @param in     the source plane.
+   * @param out    where to store the filtered channel.
+   * @param width  the width of the planes.
+   * @param height the height of the planes.
+   * @param top    the first row to filter.
+   * @param bottom the row after the last row to filter.
+   */
+  private void filterDirect(int[] in, Store out, int width, int height, int top, int bottom) {
+    double[][] transform = this.kernel;
+    int size = transform.length;
+    int offset = size / 2;
+    double[] sums = new double[width];
+    for (int i = top; i < bottom; i++) {
+      int xStart = Math.max(0, offset - i);
+      int xEnd = Math.min(size, height - i + offset);
+      Arrays.fill(sums, 0);
+      for (int x = xStart; x < xEnd; x++) {
+        double[] kernelRow = transform[x];
+        int row = (i + x - offset) * width - offset;
+        for (int y = 0; y < size; y++) {
+          addTap(sums, kernelRow[y], in, row + y, Math.max(0, offset - y),
+              Math.min(width, width + offset - y));
+        }
+      }
+      out.putRow(i * width, sums, 0, width, false);
+    }
+  }
+
+  /**
+   * Filters a band of rows of a plane with the row vector of the kernel and then with its column
+   * vector. The rows around the band that the column vector reaches are filtered horizontally as
+   * well, so bands can be filtered independently.
+   *
+   * @param in     the source plane.
+   * @param out    where to store the filtered channel.
+   * @param width  the width of the planes.
+   * @param height the height of the planes.
+   * @param top    the first row to filter.
+   * @param bottom the row after the last row to filter.
+   */
+  private void filterSeparable(int[] in, Store out, int width, int height, int top,
+      int bottom) {
+    int offset = this.row.length / 2;
+    int first = Math.max(0, top - offset);
+    int last = Math.min(height, bottom + offset);
+    double[] horizontal = new double[(last - first) * width];
+    for (int i = first; i < last; i++) {
+      int target = (i - first) * width;
+      for (int y = 0; y < this.row.length; y++) {
+        int jStart = Math.max(0, offset - y);
+        int jEnd = Math.min(width, width + offset - y);
+        double weight = this.row[y];
+        int base = i * width + y - offset;
+        for (int j = jStart; j < jEnd; j++) {
+          horizontal[target + j] += weight * in[base + j];
+        }
+      }
+    }
+    double[] sums = new double[width];
+    for (int i = top; i < bottom; i++) {
+      int xStart = Math.max(0, offset - i);
+      int xEnd = Math.min(this.column.length, height - i + offset);
+      Arrays.fill(sums, 0);
+      for (int x = xStart; x < xEnd; x++) {
+        double weight = this.column[x];
+        int base = (i + x - offset - first) * width;
+        for (int j = 0; j < width; j++) {
+          sums[j] += weight * horizontal[base + j];
+        }
+      }
+      out.putRow(i * width, sums, 0, width, !this.exact);
+    }
+  }
+
+  /**
+   * Filters a plane by FFT convolution, adding up the convolutions of blocks of the plane. Blocks
+   * are transformed in pairs, as the real and imaginary part of one complex block. In parallel,
+   * a chunk of pairs is convolved at once and the results are then added up in the same order as
+   * sequentially, so that the rounding errors, and so the result, are the same.
+   *
+   * @param in       the source plane.
+   * @param out      where to store the filtered channel.
+   * @param width    the width of the planes.
+   * @param height   the height of the planes.
+   * @param executor runs the pairs of blocks and the bands of rows.
+   */
+  private void filterFft(int[] in, Store out, int width, int height, RowBandExecutor executor) {
+    this.prepareKernelSpectrum(new FastFourierTransform(this.fftSize));
+    int n = this.fftSize;
+    int block = n - this.kernel.length + 1;
+    int blocksAcross = (width + block - 1) / block;
+    int blocks = blocksAcross * ((height + block - 1) / block);
+    int pairs = (blocks + 1) / 2;
+    double[] sums = new double[width * height];
+    if (!executor.isParallel((long) width * height)) {
+      FastFourierTransform fft = new FastFourierTransform(n);
+      double[] re = new double[n * n];
+      double[] im = new double[n * n];
+      for (int p = 0; p < pairs; p++) {
+        this.convolvePair(in, width, height, 2 * p, blocks, fft, re, im);
+        this.addPair(re, im, sums, width, height, 2 * p, blocks);
+      }
+    } else {
+      int chunk = Math.max(1, FFT_CHUNK_SAMPLES / (n * n));
+      double[][] re = new double[Math.min(chunk, pairs)][];
+      double[][] im = new double[re.length][];
+      for (int first = 0; first < pairs; first += chunk) {
+        int start = first;
+        int count = Math.min(chunk, pairs - first);
+        executor.forEachBand(count, (lo, hi) -> {
+          FastFourierTransform fft = new FastFourierTransform(n);
+          for (int p = lo; p < hi; p++) {
+            if (re[p] == null) {
+              re[p] = new double[n * n];
+              im[p] = new double[n * n];
+            }
+            this.convolvePair(in, width, height, 2 * (start + p), blocks, fft, re[p], im[p]);
+          }
+        });
+        for (int p = 0; p < count; p++) {
+          this.addPair(re[p], im[p], sums, width, height, 2 * (start + p), blocks);
+        }
+      }
+    }
+    executor.forEachBand(height, width, (top, bottom) -> {
+      for (int i = top; i < bottom; i++) {
+        out.putRow(i * width, sums, i * width, width, !this.exact);
+      }
+    });
+  }
+
+  /**
+   * Convolves a pair of blocks with the kernel, the first as the real part and the second as the
+   * imaginary part of a complex block.
+   *
+   * @param in     the source plane.
+   * @param width  the width of the plane.
+   * @param height the height of the plane.
+   * @param b      the index of the first block of the pair, in row-major order.
+   * @param blocks the number of blocks of the plane.
+   * @param fft    the transform to use.
+   * @param re     the buffer to hold the convolution of the first block.
+   * @param im     the buffer to hold the convolution of the second block, if there is one.
+   */
+  private void convolvePair(int[] in, int width, int height, int b, int blocks,
+      FastFourierTransform fft, double[] re, double[] im) {
+    int n = this.fftSize;
+    int block = n - this.kernel.length + 1;
+    int blocksAcross = (width + block - 1) / block;
+    Arrays.fill(re, 0);
+    Arrays.fill(im, 0);
+    this.loadBlock(in, width, height, b % blocksAcross * block, b / blocksAcross * block, re);
+    if (b + 1 < blocks) {
+      this.loadBlock(in, width, height, (b + 1) % blocksAcross * block,
+          (b + 1) / blocksAcross * block, im);
+    }
+    fft.transform(re, im, false);
+    for (int i = 0; i < n * n; i++) {
+      double kr = this.kernelSpectrumRe[i];
+      double ki = this.kernelSpectrumIm[i];
+      double r = re[i] * kr - im[i] * ki;
+      im[i] = re[i] * ki + im[i] * kr;
+      re[i] = r;
+    }
+    fft.transform(re, im, true);
+  }
+
+  /**
+   * Adds the convolutions of a pair of blocks to the sums of the pixels they affect. The kernel
+   * is real, so the real and imaginary parts are the convolutions of each block.
+   *
+   * @param re     the convolution of the first block.
+   * @param im     the convolution of the second block, if there is one.
+   * @param sums   the sums of all pixels of the plane.
+   * @param width  the width of the plane.
+   * @param height the height of the plane.
+   * @param b      the index of the first block of the pair, in row-major order.
+   * @param blocks the number of blocks of the plane.
+   */
+  private void addPair(double[] re, double[] im, double[] sums, int width, int height, int b,
+      int blocks) {
+    int block = this.fftSize - this.kernel.length + 1;
+    int blocksAcross = (width + block - 1) / block;
+    this.addBlock(re, sums, width, height, b % blocksAcross * block, b / blocksAcross * block);
+    if (b + 1 < blocks) {
+      this.addBlock(im, sums, width, height, (b + 1) % blocksAcross * block,
+          (b + 1) / blocksAcross * block);
+    }
+  }
+
+  /**
+   * Transforms the kernel, flipped so that the convolution computes the same sums as the
+   * filter, once for all planes.
+   *
+   * @param fft the transform to use.
+   */
+  private synchronized void prepareKernelSpectrum(FastFourierTransform fft) {
+    if (this.kernelSpectrumRe != null) {
+      return;
+    }
+    int n = fft.getSize();
+    int size = this.kernel.length;
+    double[] re = new double[n * n];
+    double[] im = new double[n * n];
+    for (int x = 0; x < size; x++) {
+      for (int y = 0; y < size; y++) {
+        re[x * n + y] = this.kernel[size - 1 - x][size - 1 - y];
+      }
+    }
+    fft.transform(re, im, false);
+    this.kernelSpectrumIm = im;
+    this.kernelSpectrumRe = re;
+  }
+
+  /**
+   * Copies a block of a plane to the top left corner of an FFT buffer.
+   *
+   * @param in     the plane.
+   * @param width  the width of the plane.
+   * @param height the height of the plane.
+   * @param left   the x-coordinate of the block.
+   * @param top    the y-coordinate of the block.
+   * @param buffer the buffer to copy to, which is otherwise filled with zeros.
+   */
+  private void loadBlock(int[] in, int width, int height, int left, int top, double[] buffer) {
+    int n = this.fftSize;
+    int block = n - this.kernel.length + 1;
+    int rows = Math.min(block, height - top);
+    int cols = Math.min(block, width - left);
+    for (int i = 0; i < rows; i++) {
+      for (int j = 0; j < cols; j++) {
+        buffer[i * n + j] = in[(top + i) * width + left + j];
+      }
+    }
+  }
+
+  /**
+   * Adds the convolution of a block to the sums of the pixels it affects. Sample (u, v) of the
+   * convolution of the block at (left, top) belongs to the pixel (left + v - r, top + u - r),
+   * where r is the radius of the kernel.
+   *
+   * @param result the convolution of the block.
+   * @param sums   the sums of all pixels of the plane.
+   * @param width  the width of the plane.
+   * @param height the height of the plane.
+   * @param left   the x-coordinate of the block.
+   * @param top    the y-coordinate of the block.
+   */
+  private void addBlock(double[] result, double[] sums, int width, int height, int left,
+      int top) {
+    int n = this.fftSize;
+    int offset = this.kernel.length / 2;
+    int rowStart = Math.max(0, offset - top);
+    int rowEnd = Math.min(n, height - top + offset);
+    int colStart = Math.max(0, offset - left);
+    int colEnd = Math.min(n, width - left + offset);
+    for (int u = rowStart; u < rowEnd; u++) {
+      int base = (top + u - offset) * width + left - offset;
+      for (int v = colStart; v < colEnd; v++) {
+        sums[base + v] += result[u * n + v];
+      }
+    }
+  }
+
+  /**
+   * Adds one tap of the kernel to the sums of a run of pixels. Every pixel adds its taps in the
+   * same order as when it is summed on its own, so the sums are identical, but the loop over the
+   * pixels is simple enough for the JIT compiler to vectorize.
+   *
+   * @param sums   the sums of the pixels of a row.
+   * @param weight the weight of the tap.
+   * @param in     the source plane.
+   * @param offset the index in the source of the value the tap multiplies for the first pixel.
+   * @param start  the first pixel the tap applies to.
+   * @param end    the pixel after the last pixel the tap applies to.
+   */
+  private static void addTap(double[] sums, double weight, int[] in, int offset, int start,
+      int end) {
+    for (int j = start; j < end; j++) {
+      sums[j] += weight * in[offset + j];
+    }
+  }
+
+  /**
+   * Truncates a sum of an engine that is not exact to an integer. Sums within rounding error of
+   * an integer are first rounded to it, so that they are not truncated to the integer below.
+   *
+   * @param sum the sum of a pixel.
+   * @return the value of the pixel.
+   */
+  private static int snapToInteger(double sum) {
+    double nearest = Math.rint(sum);
+    if (Math.abs(sum - nearest) <= SNAP_TOLERANCE * Math.max(1, Math.abs(sum))) {
+      return (int) nearest;
+    }
+    return (int) sum;
+  }
+
+  /**
+   * Splits a kernel into a column vector c and a row vector r such that kernel[i][j] == c[i] *
+   * r[j] holds exactly. The kernel is scaled by a power of two to integers, which are factored
+   * exactly: the row vector is the row of the largest weight divided by the greatest common
+   * divisor of its entries, which the column vector then has to divide evenly.
+   *
+   * @param kernel the kernel to split.
+   * @return the column and row vectors, or null if the kernel is not of rank 1 or its weights
+   *         are not exactly representable as small multiples of a power of two.
+   */
+  private static double[][] factor(double[][] kernel) {
+    int size = kernel.length;
+    int scale = Integer.MIN_VALUE;
+    for (double[] kernelRow : kernel) {
+      scale = Math.max(scale, integerScale(kernelRow));
+    }
+    if (scale == Integer.MIN_VALUE) {
+      return null;
+    }
+    long[][] integers = new long[size][size];
+    int pivotRow = 0;
+    int pivotColumn = 0;
+    for (int i = 0; i < size; i++) {
+      for (int j = 0; j < size; j++) {
+        double scaled = Math.scalb(kernel[i][j], scale);
+        if (Double.isNaN(scaled) || Math.abs(scaled) > MAX_NUMERATOR) {
+          return null;
+        }
+        integers[i][j] = (long) scaled;
+        if (integers[i][j] != scaled) {
+          return null;
+        }
+        if (Math.abs(integers[i][j]) > Math.abs(integers[pivotRow][pivotColumn])) {
+          pivotRow = i;
+          pivotColumn = j;
+        }
+      }
+    }
+    long divisor = 0;
+    for (int j = 0; j < size; j++) {
+      divisor = gcd(divisor, Math.abs(integers[pivotRow][j]));
+    }
+    long[] row = new long[size];
+    for (int j = 0; j < size; j++) {
+      row[j] = integers[pivotRow][j] / divisor;
+    }
+    long[] column = new long[size];
+    for (int i = 0; i < size; i++) {
+      if (integers[i][pivotColumn] % row[pivotColumn] != 0) {
+        return null;
+      }
+      column[i] = integers[i][pivotColumn] / row[pivotColumn];
+      for (int j = 0; j < size; j++) {
+        if (column[i] * row[j] != integers[i][j]) {
+          return null;
+        }
+      }
+    }
+    double[][] factors = new double[2][size];
+    for (int i = 0; i < size; i++) {
+      factors[0][i] = Math.scalb((double) column[i], -scale);
+      factors[1][i] = row[i];
+    }
+    return factors;
+  }
+
+  /**
+   * Splits a kernel into a column vector c and a row vector r such that kernel[i][j] is c[i] *
+   * r[j] up to rounding, dividing the row of the largest weight by that weight.
+   *
+   * @param kernel the kernel to split.
+   * @return the column and row vectors, or null if the kernel is not of rank 1.
+   */
+  private static double[][] factorApproximately(double[][] kernel) {
+    int size = kernel.length;
+    int pivotRow = 0;
+    int pivotColumn = 0;
+    for (int i = 0; i < size; i++) {
+      for (int j = 0; j < size; j++) {
+        if (Math.abs(kernel[i][j]) > Math.abs(kernel[pivotRow][pivotColumn])) {
+          pivotRow = i;
+          pivotColumn = j;
+        }
+      }
+    }
+    double pivot = kernel[pivotRow][pivotColumn];
+    if (pivot == 0 || Double.isNaN(pivot) || Double.isInfinite(pivot)) {
+      return null;
+    }
+    double[][] factors = new double[2][size];
+    for (int i = 0; i < size; i++) {
+      factors[0][i] = kernel[i][pivotColumn];
+      factors[1][i] = kernel[pivotRow][i] / pivot;
+    }
+    for (int i = 0; i < size; i++) {
+      for (int j = 0; j < size; j++) {
+        if (!(Math.abs(factors[0][i] * factors[1][j] - kernel[i][j])
+            <= FACTOR_TOLERANCE * Math.abs(pivot))) {
+          return null;
+        }
+      }
+    }
+    return factors;
+  }
+
+  /**
+   * Computes the greatest common divisor of two non-negative numbers.
+   *
+   * @param a the first number.
+   * @param b the second number.
+   * @return the greatest common divisor, or the other number if one of them is 0.
+   */
+  private static long gcd(long a, long b) {
+    while (b != 0) {
+      long t = a % b;
+      a = b;
+      b = t;
+    }
+    return a;
+  }
+
+  /**
+   * Finds the smallest power of two that turns all of the given weights into integers.
+   *
+   * @param weights the weights.
+   * @return the exponent of the power of two, or {@link Integer#MIN_VALUE} if all weights are 0.
+   */
+  private static int integerScale(double[] weights) {
+    int scale = Integer.MIN_VALUE;
+    for (double w : weights) {
+      if (w != 0 && !Double.isNaN(w) && !Double.isInfinite(w)) {
+        long mantissa = (Double.doubleToRawLongBits(w) & 0xFFFFFFFFFFFFFL) | (1L << 52);
+        scale = Math.max(scale, 52 - Math.getExponent(w) - Long.numberOfTrailingZeros(mantissa));
+      }
+    }
+    return scale;
+  }
+
+  /**
+   * Scales a vector of weights by the smallest power of two that turns all of them into
+   * integers, and sums the absolute values of these integers. Any sum of products of the weights
+   * with integers is then a multiple of that power of two, so it is exact as long as the sum of
+   * the scaled magnitudes stays below 2^53.
+   *
+   * @param weights the weights.
+   * @return the sum of the absolute scaled weights, or -1 if a weight needs a numerator too
+   *         large for this check.
+   */
+  private static double integerSum(double[] weights) {
+    int scale = integerScale(weights);
+    double sum = 0;
+    for (double w : weights) {
+      double scaled = Math.abs(Math.scalb(w, scale));
+      if (scaled > MAX_NUMERATOR) {
+        return -1;
+      }
+      sum += scaled;
+    }
+    return sum;
+  }
+
+  /**
+   * Finds the largest absolute value of a plane.
+   *
+   * @param plane the plane.
+   * @return the largest absolute value, as a double since it may not fit an int.
+   */
+  private static double maxAbs(int[] plane) {
+    long max = 0;
+    for (int v : plane) {
+      max = Math.max(max, Math.abs((long) v));
+    }
+    return max;
+  }
+}
@@ -0,0 +1,125 @@
+package model.transformation.filter;
+
+/**
+ * An in-place radix-2 fast Fourier transform of square complex matrices whose size is a power of
+ * two, used by {@link ConvolutionEngine} to convolve with large kernels. The matrix is stored as
+ * two row-major arrays holding the real and imaginary parts.
+ */
+class FastFourierTransform {
+
+  private final int size;
+  private final int[] reversed;
+  private final double[] cos;
+  private final double[] sin;
+  private final double[] columnRe;
+  private final double[] columnIm;
+
+  /**
+   * Creates a transform for size x size matrices, precomputing the twiddle factors.
+   *
+   * @param size the width and height of the matrices, a power of two.
+   * @throws IllegalArgumentException if the size is not a power of two.
+   */
+  FastFourierTransform(int size) throws IllegalArgumentException {
+    if (size < 1 || Integer.bitCount(size) != 1) {
+      throw new IllegalArgumentException("The size of an FFT must be a power of two!");
+    }
+    this.size = size;
+    int bits = Integer.numberOfTrailingZeros(size);
+    this.reversed = new int[size];
+    for (int i = 0; i < size; i++) {
+      this.reversed[i] = bits == 0 ? 0 : Integer.reverse(i) >>> (32 - bits);
+    }
+    this.cos = new double[size / 2];
+    this.sin = new double[size / 2];
+    for (int i = 0; i < size / 2; i++) {
+      this.cos[i] = Math.cos(2 * Math.PI * i / size);
+      this.sin[i] = Math.sin(2 * Math.PI * i / size);
+    }
+    this.columnRe = new double[size];
+    this.columnIm = new double[size];
+  }
+
+  /**
+   * Gets the width and height of the matrices this transform works on.
+   *
+   * @return the size of the transform.
+   */
+  int getSize() {
+    return this.size;
+  }
+
+  /**
+   * Transforms a matrix in place, first along its rows and then along its columns.
+   *
+   * @param re      the real parts, row-major.
+   * @param im      the imaginary parts, row-major.
+   * @param inverse whether to compute the inverse transform, including the 1 / size^2 factor.
+   */
+  void transform(double[] re, double[] im, boolean inverse) {
+    int n = this.size;
+    for (int row = 0; row < n; row++) {
+      this.transform1d(re, im, row * n, inverse);
+    }
+    for (int col = 0; col < n; col++) {
+      for (int row = 0; row < n; row++) {
+        this.columnRe[row] = re[row * n + col];
+        this.columnIm[row] = im[row * n + col];
+      }
+      this.transform1d(this.columnRe, this.columnIm, 0, inverse);
+      for (int row = 0; row < n; row++) {
+        re[row * n + col] = this.columnRe[row];
+        im[row * n + col] = this.columnIm[row];
+      }
+    }
+    if (inverse) {
+      double scale = 1.0 / ((double) n * n);
+      for (int i = 0; i < n * n; i++) {
+        re[i] *= scale;
+        im[i] *= scale;
+      }
+    }
+  }
+
+  /**
+   * Transforms a contiguous vector of this size in place.
+   *
+   * @param re      the real parts.
+   * @param im      the imaginary parts.
+   * @param offset  the index of the first element of the vector.
+   * @param inverse whether to compute the (unscaled) inverse transform.
+   */
+  private void transform1d(double[] re, double[] im, int offset, boolean inverse) {
+    int n = this.size;
+    for (int i = 0; i < n; i++) {
+      int j = this.reversed[i];
+      if (i < j) {
+        double t = re[offset + i];
+        re[offset + i] = re[offset + j];
+        re[offset + j] = t;
+        t = im[offset + i];
+        im[offset + i] = im[offset + j];
+        im[offset + j] = t;
+      }
+    }
+    double sign = inverse ? 1 : -1;
+    for (int length = 2; length <= n; length <<= 1) {
+      int half = length >> 1;
+      int step = n / length;
+      for (int start = offset; start < offset + n; start += length) {
+        for (int k = 0; k < half; k++) {
+          double wr = this.cos[k * step];
+          double wi = sign * this.sin[k * step];
+          int a = start + k;
+          int b = a + half;
+          double xr = re[b] * wr - im[b] * wi;
+          double xi = re[b] * wi + im[b] * wr;
+          re[b] = re[a] - xr;
+          im[b] = im[a] - xi;
+          re[a] += xr;
+          im[a] += xi;
+        }
+      }
+    }
+  }
+}
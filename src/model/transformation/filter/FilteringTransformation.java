@@ -1,7 +1,12 @@
 package model.transformation.filter;
 
-import model.CustomColor;
+import java.util.Arrays;
+import model.raster.IRaster;
+import model.raster.IViewRaster;
+import model.raster.PackedRaster;
+import model.raster.PlanarRaster;
 import model.transformation.ClampTransformation;
+import model.transformation.RowBandExecutor;
 
 /**
  * Represents an abstract class for all filtering transformations (blurring and sharpening) on the
@@ -9,32 +14,85 @@ import model.transformation.ClampTransformation;
  */
 public abstract class FilteringTransformation extends ClampTransformation {
 
+  private ConvolutionEngine engine;
+
   @Override
-  protected CustomColor[][] applyTransformation(CustomColor[][] pixels) {
-    double[][] transform = getTransform();
-    int offset = transform.length / 2;
-    CustomColor[][] newColor = new CustomColor[pixels.length][pixels[0].length];
-    for (int i = 0; i < pixels.length; i++) {
-      for (int j = 0; j < pixels[0].length; j++) {
-        double red = 0;
-        double green = 0;
-        double blue = 0;
-        for (int x = 0; x < transform.length; x++) {
-          for (int y = 0; y < transform.length; y++) {
-            if (i + x - offset >= 0 && i + x - offset < pixels.length
-                && j + y - offset >= 0 && j + y - offset < pixels[0].length) {
-              red += transform[x][y] * pixels[i + x - offset][j + y - offset].getRed();
-              green += transform[x][y] * pixels[i + x - offset][j + y - offset].getGreen();
-              blue += transform[x][y] * pixels[i + x - offset][j + y - offset].getBlue();
-            }
-          }
-        }
-        newColor[i][j] = new CustomColor((int) red, (int) green, (int) blue);
-      }
-    }
+  protected PlanarRaster applyTransformation(PlanarRaster pixels) {
+    ConvolutionEngine engine = this.getEngine();
+    int width = pixels.getWidth();
+    int height = pixels.getHeight();
+    PlanarRaster newColor = new PlanarRaster(width, height);
+    engine.filterPlane(pixels.getRedPlane(), newColor.getRedPlane(), width, height);
+    engine.filterPlane(pixels.getGreenPlane(), newColor.getGreenPlane(), width, height);
+    engine.filterPlane(pixels.getBluePlane(), newColor.getBluePlane(), width, height);
     return newColor;
   }
 
+  /**
+   * Applies this transformation to 8-bit images by filtering every channel straight into packed
+   * pixels, clamping each value as it is computed instead of in a separate pass over an
+   * unclamped result. Every channel is filtered in bands of rows run by the given executor.
+   * Other images are filtered as usual.
+   *
+   * @param raster        the pixels of the image.
+   * @param maxColorValue represents the maximum allowed color value in the image
+   * @param minColorValue represents the minimum allowed color value in the image
+   * @param executor      runs the bands of rows, sequentially or in parallel.
+   * @return a new raster containing the transformed image.
+   */
+  @Override
+  public IRaster apply(IViewRaster raster, int maxColorValue, int minColorValue,
+      RowBandExecutor executor) {
+    if (maxColorValue > 255 || minColorValue < 0) {
+      return super.apply(raster, maxColorValue, minColorValue, executor);
+    }
+    ConvolutionEngine engine = this.getEngine();
+    PlanarRaster pixels = PlanarRaster.of(raster);
+    int width = pixels.getWidth();
+    int height = pixels.getHeight();
+    int[] packed = new int[width * height];
+    engine.filterPlane(pixels.getRedPlane(), packed, width, height, 16, maxColorValue,
+        minColorValue, executor);
+    engine.filterPlane(pixels.getGreenPlane(), packed, width, height, 8, maxColorValue,
+        minColorValue, executor);
+    engine.filterPlane(pixels.getBluePlane(), packed, width, height, 0, maxColorValue,
+        minColorValue, executor);
+    return new PackedRaster(width, height, packed);
+  }
+
+  /**
+   * Gets the engine filtering with the kernel of this transformation, which is created on first
+   * use since creating it checks whether the kernel is separable.
+   *
+   * @return the convolution engine of this transformation.
+   */
+  private synchronized ConvolutionEngine getEngine() {
+    if (this.engine == null) {
+      this.engine = this.createEngine();
+    }
+    return this.engine;
+  }
+
+  /**
+   * Creates the engine filtering with the kernel of this transformation. By default, its results
+   * are identical to applying the kernel directly.
+   *
+   * @return a new convolution engine for the kernel of this transformation.
+   */
+  protected ConvolutionEngine createEngine() {
+    return new ConvolutionEngine(getTransform());
+  }
+
+  @Override
+  public int getNeighborhoodRadius() {
+    return getTransform().length / 2;
+  }
+
+  @Override
+  public String getCacheKey() {
+    return this.getClass().getName() + Arrays.deepToString(this.getTransform());
+  }
+
   /**
    * Gets the transforming matrix of this filtering transformation.
    *
@@ -0,0 +1,49 @@
+package model.transformation.filter;
+
+/**
+ * Represents a filtering transformation with an arbitrary kernel, such as a large lens blur. The
+ * kernel is applied like the kernels of {@link BlurTransformation} and {@link
+ * SharpTransformation}, but depending on its size and shape, it may be applied as two 1D passes
+ * or by FFT convolution, whichever is estimated to be fastest (see {@link ConvolutionEngine}).
+ * The results match applying the kernel directly up to rounding, so a channel can differ by 1.
+ */
+public class KernelTransformation extends FilteringTransformation {
+
+  private final double[][] transform;
+
+  /**
+   * Creates a transformation filtering with the given kernel.
+   *
+   * @param kernel the kernel, indexed [row][column], which is applied centered on every pixel.
+   *               It must be square, with an odd size and finite weights. It is copied.
+   * @throws IllegalArgumentException if the kernel is null, not square, of even size or contains
+   *                                  a weight that is not finite.
+   */
+  public KernelTransformation(double[][] kernel) throws IllegalArgumentException {
+    if (kernel == null || kernel.length % 2 == 0) {
+      throw new IllegalArgumentException("A kernel must have an odd number of rows!");
+    }
+    this.transform = new double[kernel.length][];
+    for (int i = 0; i < kernel.length; i++) {
+      if (kernel[i] == null || kernel[i].length != kernel.length) {
+        throw new IllegalArgumentException("A kernel must be square!");
+      }
+      for (double weight : kernel[i]) {
+        if (Double.isNaN(weight) || Double.isInfinite(weight)) {
+          throw new IllegalArgumentException("The weights of a kernel must be finite!");
+        }
+      }
+      this.transform[i] = kernel[i].clone();
+    }
+  }
+
+  @Override
+  protected double[][] getTransform() {
+    return this.transform;
+  }
+
+  @Override
+  protected ConvolutionEngine createEngine() {
+    return new ConvolutionEngine(this.transform, false);
+  }
+}
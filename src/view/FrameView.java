@@ -21,6 +21,7 @@ import javax.swing.JPanel;
 import javax.swing.JRadioButtonMenuItem;
 import javax.swing.JScrollPane;
 import javax.swing.filechooser.FileNameExtensionFilter;
+import model.layered.ILayer;
 import model.layered.IViewLayerImageModel;
 
 /**
@@ -57,6 +58,7 @@ public class FrameView extends JFrame implements IImageEventView, ActionListener
     JMenuBar menuBar = new JMenuBar();
 
     JMenu fileMenu = new JMenu("File");
+    JMenu editMenu = new JMenu("Edit");
     this.layersMenu = new JMenu("Layers");
     JMenu transformationMenu = new JMenu("Transformations");
     JMenu scriptingMenu = new JMenu("Scripting");
@@ -101,6 +103,15 @@ public class FrameView extends JFrame implements IImageEventView, ActionListener
     loadModel.addActionListener(this);
     loadModel.setActionCommand("import model");
 
+    // items in Edit menu
+    JMenuItem undo = new JMenuItem("Undo");
+    undo.addActionListener(this);
+    undo.setActionCommand("history undo");
+
+    JMenuItem redo = new JMenuItem("Redo");
+    redo.addActionListener(this);
+    redo.setActionCommand("history redo");
+
     // items in Layers menu
     JMenuItem addLayer = new JMenuItem("Add Layer");
     addLayer.addActionListener(this);
@@ -168,6 +179,10 @@ public class FrameView extends JFrame implements IImageEventView, ActionListener
     fileMenu.add(loadModel);
     fileMenu.add(importSubMenu);
 
+    // Edit menu
+    editMenu.add(undo);
+    editMenu.add(redo);
+
     // Layers menu
     layersMenu.add(addLayer);
     layersMenu.add(removeLayer);
@@ -190,6 +205,7 @@ public class FrameView extends JFrame implements IImageEventView, ActionListener
 
     // Menu bar
     menuBar.add(fileMenu);
+    menuBar.add(editMenu);
     menuBar.add(layersMenu);
     menuBar.add(transformationMenu);
     menuBar.add(scriptingMenu);
@@ -222,9 +238,10 @@ public class FrameView extends JFrame implements IImageEventView, ActionListener
     }
 
     this.layerButtons = new ArrayList<>();
-    for (int i = 0; i < this.model.getLayers().size(); i++) {
+    List<ILayer> layers = this.model.getLayers();
+    for (int i = 0; i < layers.size(); i++) {
       JRadioButtonMenuItem item = new JRadioButtonMenuItem(
-          "Layer " + (i + 1) + ": " + this.model.getLayers().get(i).toString());
+          "Layer " + (i + 1) + ": " + layers.get(i).toString());
       item.setSelected(this.model.getCurrent() == i);
       item.addActionListener(this);
       item.setActionCommand("layer select " + i);
@@ -325,6 +342,13 @@ public class FrameView extends JFrame implements IImageEventView, ActionListener
     }
   }
 
+  // undo/redo operations
+  private void emitHistoryEvent(boolean undo) {
+    for (IViewListener listener : this.viewListeners) {
+      listener.handleHistoryEvent(undo);
+    }
+  }
+
   // set layer as current
   private void emitSetCurrentEvent(int index) {
     for (IViewListener listener : this.viewListeners) {
@@ -430,6 +454,9 @@ public class FrameView extends JFrame implements IImageEventView, ActionListener
       case "layer":
         this.handleLayerEvent(command);
         break;
+      case "history":
+        this.emitHistoryEvent(command[1].equals("undo"));
+        break;
       default:
         throw new IllegalStateException("Unknown command " + command[0] + " issued.");
     }
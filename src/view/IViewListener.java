@@ -81,4 +81,11 @@ public interface IViewListener {
    * @param seeds the number of seed clusters to create.
    */
   void handleMosaicEvent(int seeds);
+
+  /**
+   * Handle an event to undo the last operation, or redo the last undone one.
+   *
+   * @param undo whether to undo (true) or redo (false).
+   */
+  void handleHistoryEvent(boolean undo);
 }
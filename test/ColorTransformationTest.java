@@ -0,0 +1,84 @@
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import model.raster.PackedRaster;
+import model.raster.PlanarRaster;
+import model.raster.RasterUtil;
+import model.transformation.color.ColorTransformation;
+import model.transformation.color.GreyTransformation;
+import model.transformation.color.SepiaTransformation;
+import org.junit.Test;
+
+/**
+ * Represents the tests for the fixed-point implementation of {@link ColorTransformation}, which
+ * must produce exactly what the weighted sums produce in double precision.
+ */
+public class ColorTransformationTest {
+
+  private static void assertMatchesDoubles(ColorTransformation transformation,
+      double[][] matrix, PlanarRaster pixels) {
+    PlanarRaster out = transformation.applyUnclamped(pixels);
+    int[][] in = {pixels.getRedPlane(), pixels.getGreenPlane(), pixels.getBluePlane()};
+    int[][] planes = {out.getRedPlane(), out.getGreenPlane(), out.getBluePlane()};
+    for (int i = 0; i < in[0].length; i++) {
+      for (int c = 0; c < 3; c++) {
+        assertEquals((int) (matrix[c][0] * in[0][i] + matrix[c][1] * in[1][i]
+            + matrix[c][2] * in[2][i]), planes[c][i]);
+      }
+    }
+  }
+
+  /**
+   * Creates a raster with every color whose channels are multiples of 3, and 255.
+   */
+  private static PlanarRaster colors() {
+    PackedRaster raster = new PackedRaster(86 * 86, 86);
+    int i = 0;
+    for (int r = 0; r < 86; r++) {
+      for (int g = 0; g < 86; g++) {
+        for (int b = 0; b < 86; b++) {
+          raster.getData()[i++] = (Math.min(255, r * 3) << 16) | (Math.min(255, g * 3) << 8)
+              | Math.min(255, b * 3);
+        }
+      }
+    }
+    return PlanarRaster.of(raster);
+  }
+
+  @Test
+  public void testGreyMatchesDoubles() {
+    assertMatchesDoubles(new GreyTransformation(), new double[][]{{0.2126, 0.7152, 0.0722},
+        {0.2126, 0.7152, 0.0722}, {0.2126, 0.7152, 0.0722}}, colors());
+  }
+
+  @Test
+  public void testSepiaMatchesDoubles() {
+    assertMatchesDoubles(new SepiaTransformation(), new double[][]{{0.393, 0.769, 0.189},
+        {0.349, 0.686, 0.168}, {0.272, 0.534, 0.131}}, colors());
+  }
+
+  @Test
+  public void testValuesOutsideOfEightBits() {
+    PlanarRaster pixels = new PlanarRaster(4, 1);
+    int[] values = {-300, -1, 256, 100000};
+    for (int i = 0; i < 4; i++) {
+      pixels.getRedPlane()[i] = values[i];
+      pixels.getGreenPlane()[i] = values[(i + 1) % 4];
+      pixels.getBluePlane()[i] = values[(i + 2) % 4];
+    }
+    assertMatchesDoubles(new SepiaTransformation(), new double[][]{{0.393, 0.769, 0.189},
+        {0.349, 0.686, 0.168}, {0.272, 0.534, 0.131}}, pixels);
+  }
+
+  @Test
+  public void testSinglePassClampMatchesUnclamped() {
+    PlanarRaster pixels = colors();
+    for (ColorTransformation transformation : new ColorTransformation[]{
+        new GreyTransformation(), new SepiaTransformation()}) {
+      assertTrue(RasterUtil.sameContent(transformation.applyUnclamped(pixels).clamp(255, 0),
+          transformation.apply(pixels, 255, 0)));
+      assertTrue(RasterUtil.sameContent(transformation.applyUnclamped(pixels).clamp(200, 30),
+          transformation.apply(pixels, 200, 30)));
+    }
+  }
+}
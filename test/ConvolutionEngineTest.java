@@ -0,0 +1,121 @@
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+import model.transformation.RowBandExecutor;
+import model.transformation.filter.ConvolutionEngine;
+import org.junit.Test;
+
+/**
+ * Represents the tests for {@link ConvolutionEngine}.
+ */
+public class ConvolutionEngineTest {
+
+  private static final double[][] BLUR = {{0.0625, 0.125, 0.0625}, {0.125, 0.25, 0.125},
+      {0.0625, 0.125, 0.0625}};
+
+  /**
+   * Filters a plane the way FilteringTransformation always has, as a reference.
+   */
+  private static int[] reference(double[][] kernel, int[] in, int width, int height) {
+    int[] out = new int[in.length];
+    int offset = kernel.length / 2;
+    for (int i = 0; i < height; i++) {
+      for (int j = 0; j < width; j++) {
+        double sum = 0;
+        for (int x = 0; x < kernel.length; x++) {
+          for (int y = 0; y < kernel.length; y++) {
+            int row = i + x - offset;
+            int col = j + y - offset;
+            if (row >= 0 && row < height && col >= 0 && col < width) {
+              sum += kernel[x][y] * in[row * width + col];
+            }
+          }
+        }
+        out[i * width + j] = (int) sum;
+      }
+    }
+    return out;
+  }
+
+  private static int[] randomPlane(int size, int bound, long seed) {
+    Random random = new Random(seed);
+    int[] plane = new int[size];
+    for (int i = 0; i < size; i++) {
+      plane[i] = random.nextInt(2 * bound) - bound;
+    }
+    return plane;
+  }
+
+  private static int[] filter(ConvolutionEngine engine, int[] in, int width, int height) {
+    int[] out = new int[in.length];
+    engine.filterPlane(in, out, width, height);
+    return out;
+  }
+
+  @Test
+  public void testSeparableBlurMatchesDirect() {
+    ConvolutionEngine engine = new ConvolutionEngine(BLUR);
+    assertTrue(engine.isSeparable());
+    int[] in = randomPlane(37 * 23, 256, 1);
+    assertArrayEquals(reference(BLUR, in, 37, 23), filter(engine, in, 37, 23));
+  }
+
+  @Test
+  public void testLargeSeparableKernel() {
+    double[] binomial = {1, 6, 15, 20, 15, 6, 1};
+    double[][] kernel = new double[7][7];
+    for (int i = 0; i < 7; i++) {
+      for (int j = 0; j < 7; j++) {
+        kernel[i][j] = binomial[i] * binomial[j] / 4096;
+      }
+    }
+    ConvolutionEngine engine = new ConvolutionEngine(kernel);
+    assertTrue(engine.isSeparable());
+    int[] in = randomPlane(20 * 30, 1000, 2);
+    assertArrayEquals(reference(kernel, in, 20, 30), filter(engine, in, 20, 30));
+    // an image narrower than the kernel
+    assertArrayEquals(reference(kernel, in, 3, 200), filter(engine, in, 3, 200));
+  }
+
+  @Test
+  public void testNonSeparableKernels() {
+    double[][] sharp = {{-0.125, -0.125, -0.125, -0.125, -0.125},
+        {-0.125, 0.25, 0.25, 0.25, -0.125}, {-0.125, 0.25, 1, 0.25, -0.125},
+        {-0.125, 0.25, 0.25, 0.25, -0.125}, {-0.125, -0.125, -0.125, -0.125, -0.125}};
+    ConvolutionEngine engine = new ConvolutionEngine(sharp);
+    assertFalse(engine.isSeparable());
+    int[] in = randomPlane(15 * 16, 256, 3);
+    assertArrayEquals(reference(sharp, in, 15, 16), filter(engine, in, 15, 16));
+    // rank 1, but with weights that cannot be multiplied exactly
+    double[][] thirds = {{0.1, 0.2, 0.1}, {0.2, 0.4, 0.2}, {0.1, 0.2, 0.1}};
+    assertArrayEquals(reference(thirds, in, 15, 16),
+        filter(new ConvolutionEngine(thirds), in, 15, 16));
+  }
+
+  @Test
+  public void testHugeValuesFallBackToDirect() {
+    int[] in = randomPlane(10 * 10, Integer.MAX_VALUE / 2, 4);
+    assertArrayEquals(reference(BLUR, in, 10, 10),
+        filter(new ConvolutionEngine(BLUR), in, 10, 10));
+  }
+
+  @Test
+  public void testPackedChannelsAreClamped() {
+    int[] in = randomPlane(19 * 11, 256, 5);
+    int[] expected = reference(BLUR, in, 19, 11);
+    int[] packed = new int[in.length];
+    new ConvolutionEngine(BLUR).filterPlane(in, packed, 19, 11, 8, 200, 10,
+        RowBandExecutor.SEQUENTIAL);
+    for (int i = 0; i < in.length; i++) {
+      assertEquals(Math.min(200, Math.max(10, expected[i])) << 8, packed[i]);
+    }
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testEvenKernel() {
+    new ConvolutionEngine(new double[2][2]);
+  }
+}
@@ -1,5 +1,7 @@
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 
 import java.awt.Color;
@@ -38,4 +40,20 @@ public class CustomColorTest {
 
     assertFalse(c1.equals("Not a color"));
   }
+
+  @Test
+  public void testFactorySharesInstances() {
+    CustomColor grey = CustomColor.of(128, 128, 128);
+    assertSame(grey, CustomColor.of(128, 128, 128));
+    assertEquals(new CustomColor(128, 128, 128), grey);
+    assertEquals(new CustomColor(Color.orange), CustomColor.fromRGB(Color.orange.getRGB()));
+  }
+
+  @Test
+  public void testFactoryOutOfRange() {
+    CustomColor wide = CustomColor.of(300, -1, 0);
+    assertEquals(300, wide.getRed());
+    assertEquals(-1, wide.getGreen());
+    assertNotSame(wide, CustomColor.of(300, -1, 0));
+  }
 }
@@ -0,0 +1,232 @@
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+import java.util.Random;
+import model.CustomColor;
+import model.ImageModelImpl;
+import model.TransformationCache;
+import model.format.PPMFormat;
+import model.layered.ILayer;
+import model.layered.LayerImageModel;
+import model.transformation.ITransformation;
+import model.transformation.MosaicTransformation;
+import model.transformation.color.GreyTransformation;
+import model.transformation.color.SepiaTransformation;
+import model.transformation.filter.BlurTransformation;
+import model.transformation.filter.SharpTransformation;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Represents the tests for images that defer their transformations until their pixels are
+ * needed (see {@link ImageModelImpl#setDeferred(boolean)}).
+ */
+public class DeferredTransformationTest {
+
+  ImageModelImpl teddy;
+  ImageModelImpl deferred;
+
+  /**
+   * A transformation that counts how often it is applied and leaves the pixels as they are.
+   */
+  static class CountingTransformation implements ITransformation {
+
+    int applied;
+    String cacheKey = "counting";
+
+    @Override
+    public CustomColor[][] apply(CustomColor[][] pixels, int maxColorValue, int minColorValue) {
+      this.applied++;
+      return pixels;
+    }
+
+    @Override
+    public String getCacheKey() {
+      return this.cacheKey;
+    }
+  }
+
+  @Before
+  public void initialize() {
+    TransformationCache.getDefault().clear();
+    this.teddy = new ImageModelImpl("res/Teddy.ppm", new PPMFormat());
+    this.deferred = new ImageModelImpl(this.teddy);
+    this.deferred.setDeferred(true);
+  }
+
+  @Test
+  public void testSameResultAsImmediate() {
+    this.teddy.transform(new BlurTransformation()).transform(new SepiaTransformation())
+        .transform(new SharpTransformation()).transform(new GreyTransformation());
+    this.deferred.transform(new BlurTransformation()).transform(new SepiaTransformation())
+        .transform(new SharpTransformation()).transform(new GreyTransformation());
+    assertTrue(this.deferred.hasPendingTransformations());
+    assertEquals(this.teddy, this.deferred);
+    assertFalse(this.deferred.hasPendingTransformations());
+  }
+
+  @Test
+  public void testAppliedOnlyWhenPixelsNeeded() {
+    CountingTransformation counting = new CountingTransformation();
+    long version = this.deferred.getVersion();
+    this.deferred.transform(counting).transform(counting);
+    assertEquals(0, counting.applied);
+    assertEquals(version + 2, this.deferred.getVersion());
+    this.deferred.getColorAt(0, 0);
+    assertEquals(2, counting.applied);
+    this.deferred.getColorAt(1, 1);
+    assertEquals(2, counting.applied);
+  }
+
+  @Test
+  public void testReplacedImageIsNeverTransformed() {
+    CountingTransformation counting = new CountingTransformation();
+    LayerImageModel model = new LayerImageModel();
+    model.addLayer();
+    model.addLayer();
+    // the top layer sets the size, so replacing the one below needs none of its pixels
+    model.loadImage(new ImageModelImpl(this.teddy));
+    model.setCurrent(1);
+    model.loadImage(this.deferred);
+    model.transform(counting);
+    model.transform(new BlurTransformation());
+    model.loadImage(new ImageModelImpl(this.teddy));
+    model.exportToFile("res/TeddyDeferred.ppm", new PPMFormat());
+    assertEquals(0, counting.applied);
+  }
+
+  @Test
+  public void testCopiesInheritPendingTransformations() {
+    this.deferred.transform(new SepiaTransformation());
+    ImageModelImpl copy = new ImageModelImpl(this.deferred);
+    assertTrue(copy.isDeferred());
+    assertTrue(copy.hasPendingTransformations());
+    this.teddy.transform(new SepiaTransformation());
+    assertEquals(this.teddy, copy);
+    assertFalse(this.deferred.hasPendingTransformations());
+    assertEquals(this.teddy, this.deferred);
+  }
+
+  @Test
+  public void testCopiesApplyTransformationsOnce() {
+    CountingTransformation counting = new CountingTransformation();
+    this.deferred.transform(counting).transform(new GreyTransformation());
+    ImageModelImpl first = new ImageModelImpl(this.deferred);
+    this.deferred.transform(counting);
+    ImageModelImpl second = new ImageModelImpl(this.deferred);
+    second.getColorAt(0, 0);
+    assertEquals(2, counting.applied);
+    this.deferred.getColorAt(0, 0);
+    assertEquals(2, counting.applied);
+    // the first copy was made before the last transformation, so it has its own chain
+    first.getColorAt(0, 0);
+    assertEquals(3, counting.applied);
+    assertEquals(this.deferred, second);
+  }
+
+  @Test
+  public void testUncachableAppliedRightAway() {
+    CountingTransformation counting = new CountingTransformation();
+    counting.cacheKey = null;
+    this.deferred.transform(new GreyTransformation()).transform(counting);
+    assertEquals(1, counting.applied);
+    assertFalse(this.deferred.hasPendingTransformations());
+    assertEquals(this.teddy.transform(new GreyTransformation()), this.deferred);
+  }
+
+  @Test
+  public void testCopiesOfRandomMosaicEqual() {
+    this.deferred.transform(new MosaicTransformation(50, new Random(3)));
+    assertEquals(new ImageModelImpl(this.deferred), this.deferred);
+
+    LayerImageModel model = new LayerImageModel();
+    model.addLayer();
+    model.loadImage(this.deferred);
+    model.transform(new MosaicTransformation(50, new Random(3)));
+    List<ILayer> layers = model.getLayers();
+    assertEquals(layers.get(0).getImage(), model.getLayers().get(0).getImage());
+    model.undo();
+    model.redo();
+    ImageModelImpl image = (ImageModelImpl) model.getLayers().get(0).getImage();
+    assertFalse(image.hasPendingTransformations());
+    assertEquals(layers.get(0).getImage(), image);
+  }
+
+  @Test
+  public void testTurningOffApplies() {
+    this.deferred.transform(new GreyTransformation());
+    this.deferred.setDeferred(false);
+    assertFalse(this.deferred.hasPendingTransformations());
+    this.deferred.transform(new SepiaTransformation());
+    assertFalse(this.deferred.hasPendingTransformations());
+    assertEquals(this.teddy.transform(new GreyTransformation())
+        .transform(new SepiaTransformation()), this.deferred);
+  }
+
+  @Test
+  public void testRegionTransformAppliesPendingFirst() {
+    this.deferred.transform(new GreyTransformation());
+    this.deferred.transform(new SepiaTransformation(), 2, 3, 10, 10);
+    this.teddy.transform(new GreyTransformation());
+    this.teddy.transform(new SepiaTransformation(), 2, 3, 10, 10);
+    assertEquals(this.teddy, this.deferred);
+  }
+
+  @Test
+  public void testChainLookedUpInCache() {
+    this.deferred.transform(new BlurTransformation()).transform(new SepiaTransformation());
+    this.deferred.getWidth();
+    ImageModelImpl other = new ImageModelImpl(this.teddy);
+    other.setDeferred(true);
+    other.transform(new BlurTransformation()).transform(new SepiaTransformation());
+    other.getWidth();
+    assertEquals(1, TransformationCache.getDefault().getHits());
+    assertEquals(this.deferred, other);
+  }
+
+  @Test
+  public void testHistoryDoesNotApply() {
+    CountingTransformation counting = new CountingTransformation();
+    LayerImageModel model = new LayerImageModel();
+    model.addLayer();
+    model.loadImage(this.deferred);
+    for (int i = 0; i < 5; i++) {
+      model.transform(counting);
+    }
+    model.undo();
+    model.undo();
+    assertEquals(0, counting.applied);
+    model.getColorAt(0, 0);
+    assertEquals(3, counting.applied);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testErrorsThrownWhenApplied() {
+    this.deferred.transform(new ITransformation() {
+      @Override
+      public CustomColor[][] apply(CustomColor[][] pixels, int maxColorValue,
+          int minColorValue) {
+        return new CustomColor[0][0];
+      }
+
+      @Override
+      public String getCacheKey() {
+        return "empty";
+      }
+    });
+    assertTrue(this.deferred.hasPendingTransformations());
+    this.deferred.getWidth();
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testNullTransformation() {
+    this.deferred.transform(null);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testNullTransformationNotDeferred() {
+    this.teddy.transform(null);
+  }
+}
@@ -1,6 +1,9 @@
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
 
 import java.awt.Color;
+import java.util.Arrays;
+import java.util.Random;
 import model.CustomColor;
 import model.IImageModel;
 import model.ImageModelImpl;
@@ -53,4 +56,128 @@ public class DownscaleTransformationTest {
       }
     }
   }
+
+  /**
+   * Downscales an image the way the original implementation did, recomputing the sampled
+   * positions for every channel of every pixel.
+   */
+  private static CustomColor[][] originalDownscale(CustomColor[][] pixels, int newWidth,
+      int newHeight) {
+    float heightRatio = ((float) pixels.length) / newHeight;
+    float widthRatio = ((float) pixels[0].length) / newWidth;
+    CustomColor[][] downscaled = new CustomColor[newHeight][newWidth];
+    for (int y = 0; y < newHeight; y++) {
+      for (int x = 0; x < newWidth; x++) {
+        float oldX = x * widthRatio;
+        float oldY = y * heightRatio;
+        CustomColor a = pixels[(int) Math.floor(oldY)][(int) Math.floor(oldX)];
+        CustomColor b = pixels[(int) Math.floor(oldY)][(int) Math.ceil(oldX)];
+        CustomColor c = pixels[(int) Math.ceil(oldY)][(int) Math.floor(oldX)];
+        CustomColor d = pixels[(int) Math.ceil(oldY)][(int) Math.ceil(oldX)];
+        downscaled[y][x] = CustomColor.of(
+            sample(oldX, oldY, a.getRed(), b.getRed(), c.getRed(), d.getRed()),
+            sample(oldX, oldY, a.getGreen(), b.getGreen(), c.getGreen(), d.getGreen()),
+            sample(oldX, oldY, a.getBlue(), b.getBlue(), c.getBlue(), d.getBlue()));
+      }
+    }
+    return downscaled;
+  }
+
+  private static int sample(float oldX, float oldY, int a, int b, int c, int d) {
+    float m;
+    float n;
+    if ((int) oldX == oldX) {
+      m = (a + b) / 2;
+      n = (c + d) / 2;
+    } else {
+      m = ((float) b) * (oldX - (float) Math.floor(oldX)) + ((float) a) * ((float) Math.ceil(oldX)
+          - oldX);
+      n = ((float) d) * (oldX - (float) Math.floor(oldX)) + ((float) c) * ((float) Math.ceil(oldX)
+          - oldX);
+    }
+    if ((int) oldY == oldY) {
+      return (int) (Math.round(m + n) / 2.0);
+    }
+    return (int) Math.round(n * (oldY - Math.floor(oldY)) + m * (Math.ceil(oldY) - oldY));
+  }
+
+  private static CustomColor[][] randomImage(int width, int height) {
+    Random random = new Random(width * 31 + height);
+    CustomColor[][] pixels = new CustomColor[height][width];
+    for (int y = 0; y < height; y++) {
+      for (int x = 0; x < width; x++) {
+        pixels[y][x] = CustomColor.of(random.nextInt(256), random.nextInt(256),
+            random.nextInt(256));
+      }
+    }
+    return pixels;
+  }
+
+  @Test
+  public void testMatchesOriginal() {
+    int[][] sizes = {{40, 30, 17, 11}, {100, 60, 99, 59}, {64, 64, 16, 32}, {33, 70, 7, 70},
+        {1000, 9, 3, 2}};
+    for (int[] size : sizes) {
+      CustomColor[][] pixels = randomImage(size[0], size[1]);
+      DownscaleTransformation downscale = new DownscaleTransformation(size[2], size[3]);
+      assertArrayEquals(originalDownscale(pixels, size[2], size[3]),
+          downscale.apply(pixels, 255, 0));
+      // the tables kept from the first image give the same result for another of its size
+      CustomColor[][] flipped = new CustomColor[size[1]][];
+      for (int y = 0; y < size[1]; y++) {
+        flipped[y] = pixels[size[1] - 1 - y];
+      }
+      assertArrayEquals(originalDownscale(flipped, size[2], size[3]),
+          downscale.apply(flipped, 255, 0));
+    }
+  }
+
+  @Test
+  public void testAreaAverages() {
+    CustomColor[][] pixels = new CustomColor[4][6];
+    for (int y = 0; y < 4; y++) {
+      for (int x = 0; x < 6; x++) {
+        pixels[y][x] = CustomColor.of(10 * x, 20 * y, x < 3 ? 0 : 255);
+      }
+    }
+    CustomColor[][] area = new DownscaleTransformation(2, 2,
+        DownscaleTransformation.Sampling.AREA).apply(pixels, 255, 0);
+    // every new pixel averages a 3x2 block
+    assertEquals(CustomColor.of(10, 10, 0), area[0][0]);
+    assertEquals(CustomColor.of(40, 10, 255), area[0][1]);
+    assertEquals(CustomColor.of(10, 50, 0), area[1][0]);
+    assertEquals(CustomColor.of(40, 50, 255), area[1][1]);
+
+    // a new pixel straddling old pixels weighs them by how much of them it covers
+    CustomColor[][] row = {{CustomColor.of(0, 0, 0), CustomColor.of(90, 90, 90),
+        CustomColor.of(30, 30, 30)}};
+    CustomColor[][] halves = new DownscaleTransformation(2, 1,
+        DownscaleTransformation.Sampling.AREA).apply(row, 255, 0);
+    assertEquals(CustomColor.of(30, 30, 30), halves[0][0]);
+    assertEquals(CustomColor.of(50, 50, 50), halves[0][1]);
+  }
+
+  @Test
+  public void testAreaKeepsUniformImages() {
+    CustomColor[][] pixels = new CustomColor[97][131];
+    for (CustomColor[] row : pixels) {
+      Arrays.fill(row, CustomColor.of(200, 17, 99));
+    }
+    for (CustomColor[] row : new DownscaleTransformation(13, 7,
+        DownscaleTransformation.Sampling.AREA).apply(pixels, 255, 0)) {
+      for (CustomColor color : row) {
+        assertEquals(CustomColor.of(200, 17, 99), color);
+      }
+    }
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testNullSampling() {
+    new DownscaleTransformation(10, 10, null);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testEmptySize() {
+    new DownscaleTransformation(0, 10).apply(this.validImage, 255, 0);
+  }
 }
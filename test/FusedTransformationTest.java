@@ -0,0 +1,117 @@
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+import model.raster.IRaster;
+import model.raster.IViewRaster;
+import model.raster.InterleavedRaster;
+import model.raster.PackedRaster;
+import model.raster.RasterUtil;
+import model.transformation.FusedTransformation;
+import model.transformation.IPixelTransformation;
+import model.transformation.ITransformation;
+import model.transformation.MosaicTransformation;
+import model.transformation.color.GreyTransformation;
+import model.transformation.color.SepiaTransformation;
+import model.transformation.filter.BlurTransformation;
+import model.transformation.filter.SharpTransformation;
+import org.junit.Test;
+
+/**
+ * Represents the tests for {@link FusedTransformation}, which must produce exactly what applying
+ * its transformations one after the other produces.
+ */
+public class FusedTransformationTest {
+
+  private static PackedRaster randomRaster(int width, int height) {
+    Random random = new Random(7);
+    PackedRaster raster = new PackedRaster(width, height);
+    for (int i = 0; i < raster.getData().length; i++) {
+      raster.getData()[i] = random.nextInt(4) == 0 ? raster.getData()[Math.max(0, i - 1)]
+          : random.nextInt(1 << 24);
+    }
+    return raster;
+  }
+
+  private static void assertSameAsSequential(IViewRaster source, int max,
+      ITransformation... transformations) {
+    IViewRaster expected = source;
+    for (ITransformation transformation : transformations) {
+      expected = transformation.apply(expected, max, 0);
+    }
+    IRaster fused = new FusedTransformation(transformations).apply(source, max, 0);
+    assertTrue(RasterUtil.sameContent(expected, fused));
+  }
+
+  @Test
+  public void testColorChain() {
+    PackedRaster source = randomRaster(60, 40);
+    assertSameAsSequential(source, 255, new GreyTransformation(), new SepiaTransformation());
+    assertSameAsSequential(source, 255, new SepiaTransformation(), new SepiaTransformation(),
+        new GreyTransformation());
+  }
+
+  @Test
+  public void testMixedChain() {
+    PackedRaster source = randomRaster(33, 21);
+    assertSameAsSequential(source, 255, new SepiaTransformation(), new BlurTransformation(),
+        new GreyTransformation(), new SepiaTransformation(), new SharpTransformation());
+  }
+
+  @Test
+  public void testWideColorValues() {
+    Random random = new Random(3);
+    InterleavedRaster source = new InterleavedRaster(17, 9);
+    for (int y = 0; y < 9; y++) {
+      for (int x = 0; x < 17; x++) {
+        source.setPixel(x, y, random.nextInt(1001), random.nextInt(1001), random.nextInt(1001));
+      }
+    }
+    assertSameAsSequential(source, 1000, new SepiaTransformation(), new GreyTransformation());
+  }
+
+  @Test
+  public void testApplyToPixelMatchesApply() {
+    PackedRaster source = randomRaster(40, 30);
+    IPixelTransformation sepia = new SepiaTransformation();
+    IRaster expected = sepia.apply(source, 255, 0);
+    int[] channels = new int[3];
+    for (int y = 0; y < 30; y++) {
+      for (int x = 0; x < 40; x++) {
+        channels[0] = source.getRed(x, y);
+        channels[1] = source.getGreen(x, y);
+        channels[2] = source.getBlue(x, y);
+        sepia.applyToPixel(channels, 255, 0);
+        assertEquals(expected.getRGB(x, y), channels[0] << 16 | channels[1] << 8 | channels[2]);
+      }
+    }
+  }
+
+  @Test
+  public void testNeighborhoodRadius() {
+    assertEquals(0, new FusedTransformation(new GreyTransformation(),
+        new SepiaTransformation()).getNeighborhoodRadius());
+    assertEquals(3, new FusedTransformation(new BlurTransformation(), new GreyTransformation(),
+        new SharpTransformation()).getNeighborhoodRadius());
+    assertEquals(-1, new FusedTransformation(new GreyTransformation(),
+        new MosaicTransformation(5)).getNeighborhoodRadius());
+  }
+
+  @Test
+  public void testFlattensNestedChains() {
+    FusedTransformation inner = new FusedTransformation(new GreyTransformation(),
+        new SepiaTransformation());
+    assertEquals(3, new FusedTransformation(inner, new BlurTransformation())
+        .getTransformations().size());
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testEmptyChain() {
+    new FusedTransformation();
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testNullTransformation() {
+    new FusedTransformation(new GreyTransformation(), null);
+  }
+}
@@ -0,0 +1,266 @@
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+import model.IImageModel;
+import model.ImageModelImpl;
+import model.TiledImageModel;
+import model.format.PPMFormat;
+import model.layered.LayerImageModel;
+import model.raster.DirectRaster;
+import model.raster.DirectRasterFactory;
+import model.raster.RasterUtil;
+import model.transformation.DownscaleTransformation;
+import model.transformation.MosaicTransformation;
+import model.transformation.color.GreyTransformation;
+import model.transformation.color.SepiaTransformation;
+import model.transformation.filter.BlurTransformation;
+import model.transformation.filter.SharpTransformation;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Represents the tests for undoing and redoing the operations of a {@link LayerImageModel}.
+ */
+public class HistoryTest {
+
+  ImageModelImpl teddy;
+  LayerImageModel model;
+
+  @Before
+  public void initialize() {
+    this.teddy = new ImageModelImpl("res/Teddy.ppm", new PPMFormat());
+    this.model = new LayerImageModel();
+    this.model.addLayer();
+    this.model.loadImage(new ImageModelImpl(this.teddy));
+  }
+
+  @Test
+  public void testUndoRedoTransform() {
+    this.model.transform(new BlurTransformation());
+    ImageModelImpl blurred = new ImageModelImpl(this.model.getLayers().get(0).getImage());
+    this.model.undo();
+    assertEquals(this.teddy, this.model.getLayers().get(0).getImage());
+    assertTrue(this.model.canRedo());
+    this.model.redo();
+    assertEquals(blurred, this.model.getLayers().get(0).getImage());
+    assertFalse(this.model.canRedo());
+  }
+
+  @Test
+  public void testUndoRegionTransform() {
+    this.model.transform(new SepiaTransformation(), 10, 10, 20, 20);
+    assertNotEquals(this.teddy, this.model.getLayers().get(0).getImage());
+    this.model.undo();
+    assertEquals(this.teddy, this.model.getLayers().get(0).getImage());
+  }
+
+  @Test
+  public void testUndoLayerOperations() {
+    this.model.addLayer();
+    this.model.loadImage(new ImageModelImpl("res/Teddy.ppm", new PPMFormat())
+        .transform(new GreyTransformation()));
+    this.model.setLayerTransparency(1, true);
+    this.model.moveLayer(0, 1);
+    this.model.setCurrent(1);
+    this.model.removeLayer(0);
+    assertEquals(1, this.model.getLayers().size());
+
+    // selecting a layer is not an operation of its own, but is restored with the others
+    this.model.undo();
+    assertEquals(2, this.model.getLayers().size());
+    assertEquals(0, this.model.getCurrent());
+    assertTrue(this.model.getLayers().get(0).isTransparent());
+    this.model.undo();
+    assertTrue(this.model.getLayers().get(1).isTransparent());
+    this.model.undo();
+    assertFalse(this.model.getLayers().get(1).isTransparent());
+    this.model.undo();
+    assertFalse(this.model.getLayers().get(0).isLoaded());
+    this.model.undo();
+    assertEquals(1, this.model.getLayers().size());
+    assertEquals(this.teddy, this.model.getLayers().get(0).getImage());
+  }
+
+  @Test
+  public void testUndoDownscaleOfAllLayers() {
+    this.model.addLayer();
+    this.model.addLayer();
+    this.model.loadImage(new ImageModelImpl(this.teddy).transform(new SepiaTransformation()));
+    this.model.transformAll(new DownscaleTransformation(20, 15));
+    for (int i = 0; i < 3; i += 2) {
+      assertEquals(20, this.model.getLayers().get(i).getImage().getWidth());
+      assertEquals(15, this.model.getLayers().get(i).getImage().getHeight());
+    }
+    assertFalse(this.model.getLayers().get(1).isLoaded());
+
+    this.model.undo();
+    for (int i = 0; i < 3; i += 2) {
+      assertEquals(this.teddy.getWidth(), this.model.getLayers().get(i).getImage().getWidth());
+      assertEquals(this.teddy.getHeight(),
+          this.model.getLayers().get(i).getImage().getHeight());
+    }
+    assertEquals(this.teddy, this.model.getLayers().get(2).getImage());
+  }
+
+  @Test
+  public void testNewOperationDiscardsRedo() {
+    this.model.transform(new BlurTransformation());
+    this.model.undo();
+    this.model.transform(new SepiaTransformation());
+    assertFalse(this.model.canRedo());
+    this.model.undo();
+    assertEquals(this.teddy, this.model.getLayers().get(0).getImage());
+  }
+
+  @Test
+  public void testCompressedStatesRestoreExactly() {
+    IImageModel[] states = new IImageModel[6];
+    states[0] = this.teddy;
+    this.model.transform(new BlurTransformation());
+    this.model.transform(new MosaicTransformation(40, 3));
+    this.model.transform(new SepiaTransformation(), 5, 5, 30, 30);
+    this.model.transform(new SharpTransformation());
+    this.model.transform(new GreyTransformation(), 0, 0, 1, 1);
+    for (int i = 5; i > 0; i--) {
+      states[i] = new ImageModelImpl(this.model.getLayers().get(0).getImage());
+      this.model.undo();
+    }
+    assertEquals(states[0], this.model.getLayers().get(0).getImage());
+    for (int i = 1; i <= 5; i++) {
+      this.model.redo();
+      assertEquals(states[i], this.model.getLayers().get(0).getImage());
+    }
+    for (int i = 4; i >= 0; i--) {
+      this.model.undo();
+      assertEquals(states[i], this.model.getLayers().get(0).getImage());
+    }
+  }
+
+  @Test
+  public void testRegionEditsTakeLittleMemory() {
+    int bytes = 4 * this.teddy.getWidth() * this.teddy.getHeight();
+    for (int i = 0; i < 50; i++) {
+      this.model.transform(new GreyTransformation(), i % 20, i % 20, 4, 4);
+    }
+    // two uncompressed copies around the current state, the rest are tiny differences
+    assertTrue(this.model.getHistoryMemoryUsed() < 3 * bytes);
+    for (int i = 0; i < 50; i++) {
+      this.model.undo();
+    }
+    assertEquals(this.teddy, this.model.getLayers().get(0).getImage());
+  }
+
+  @Test
+  public void testMemoryBudgetDropsOldestStates() {
+    for (int i = 0; i < 10; i++) {
+      this.model.transform(new MosaicTransformation(10 + i, i));
+    }
+    long budget = this.model.getHistoryMemoryUsed() - 1;
+    this.model.setHistoryMemoryBudget(budget);
+    assertTrue(this.model.getHistoryMemoryUsed() <= budget);
+    int undone = 0;
+    while (this.model.canUndo()) {
+      this.model.undo();
+      undone++;
+    }
+    assertTrue(undone > 0 && undone < 12);
+    assertNotEquals(this.teddy, this.model.getLayers().get(0).getImage());
+
+    this.model.setHistoryMemoryBudget(0);
+    assertFalse(this.model.canUndo());
+    assertFalse(this.model.canRedo());
+  }
+
+  @Test
+  public void testUndoKeepsOffHeapStorage() {
+    LayerImageModel direct = new LayerImageModel();
+    direct.addLayer();
+    direct.loadImage(new ImageModelImpl("res/Teddy.ppm", new PPMFormat(),
+        new DirectRasterFactory()));
+    direct.transform(new BlurTransformation());
+    direct.transform(new SepiaTransformation(), 5, 5, 30, 30);
+    direct.transform(new GreyTransformation());
+    direct.transform(new SharpTransformation());
+    // the first states are compressed by now
+    for (int i = 0; i < 4; i++) {
+      direct.undo();
+      IImageModel image = direct.getLayers().get(0).getImage();
+      assertTrue(image.getRaster() instanceof DirectRaster);
+    }
+    assertEquals(this.teddy, direct.getLayers().get(0).getImage());
+    direct.redo();
+    direct.redo();
+    assertTrue(direct.getLayers().get(0).getImage().getRaster() instanceof DirectRaster);
+    assertEquals(new ImageModelImpl(this.teddy).transform(new BlurTransformation())
+            .transform(new SepiaTransformation(), 5, 5, 30, 30),
+        direct.getLayers().get(0).getImage());
+  }
+
+  @Test
+  public void testUndoTiledImage() {
+    LayerImageModel tiled = new LayerImageModel();
+    tiled.addLayer();
+    tiled.loadImage(new TiledImageModel("res/Teddy.ppm", new PPMFormat(), 32, 1L << 20));
+    IImageModel[] states = new IImageModel[4];
+    states[0] = this.teddy;
+    states[1] = new ImageModelImpl(states[0]).transform(new BlurTransformation());
+    states[2] = new ImageModelImpl(states[1]).transform(new GreyTransformation(), 3, 4, 50, 20);
+    states[3] = new ImageModelImpl(states[2]).transform(new SharpTransformation());
+    tiled.transform(new BlurTransformation());
+    tiled.transform(new GreyTransformation(), 3, 4, 50, 20);
+    tiled.transform(new SharpTransformation());
+    for (int i = 3; i >= 0; i--) {
+      assertTrue(RasterUtil.sameContent(states[i].getRaster(),
+          tiled.getLayers().get(0).getImage().getRaster()));
+      if (i > 0) {
+        tiled.undo();
+      }
+    }
+    tiled.redo();
+    tiled.redo();
+    assertTrue(RasterUtil.sameContent(states[2].getRaster(),
+        tiled.getLayers().get(0).getImage().getRaster()));
+  }
+
+  @Test
+  public void testDeferredStatesCountTheirRaster() {
+    ImageModelImpl deferred = new ImageModelImpl(this.teddy);
+    deferred.setDeferred(true);
+    LayerImageModel model = new LayerImageModel();
+    model.addLayer();
+    model.addLayer();
+    // the top layer sets the size, so loading over the deferred layer does not apply its steps
+    model.loadImage(new ImageModelImpl(this.teddy).transform(new BlurTransformation()));
+    model.setCurrent(1);
+    model.loadImage(deferred);
+    for (int i = 0; i < 5; i++) {
+      model.transform(new GreyTransformation());
+    }
+    // the model still shows the raster the deferred states start from
+    int bytes = 4 * this.teddy.getWidth() * this.teddy.getHeight();
+    long used = model.getHistoryMemoryUsed();
+    assertTrue(used < bytes);
+    model.loadImage(new ImageModelImpl(this.teddy).transform(new SepiaTransformation()));
+    assertEquals(used + bytes, model.getHistoryMemoryUsed());
+    model.setHistoryMemoryBudget(bytes - 1);
+    assertTrue(model.getHistoryMemoryUsed() < bytes);
+    assertFalse(model.canUndo());
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testNothingToUndo() {
+    new LayerImageModel().undo();
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testNothingToRedo() {
+    this.model.redo();
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testNegativeBudget() {
+    this.model.setHistoryMemoryBudget(-1);
+  }
+}
@@ -1,10 +1,15 @@
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
 
 import java.awt.Color;
+import java.awt.Rectangle;
 import model.CustomColor;
 import model.IImageModel;
 import model.ImageModelImpl;
 import model.format.PPMFormat;
+import model.transformation.DownscaleTransformation;
+import model.transformation.FusedTransformation;
+import model.transformation.MosaicTransformation;
 import model.transformation.color.GreyTransformation;
 import model.transformation.color.SepiaTransformation;
 import model.transformation.filter.BlurTransformation;
@@ -442,6 +447,83 @@ public class ImageModelImplTest {
     }
   }
 
+  @Test
+  public void testTransformRegion() {
+    ImageModelImpl whole = new ImageModelImpl(this.teddyModel);
+    whole.transform(new BlurTransformation()).transform(new SharpTransformation());
+    IImageModel region = new ImageModelImpl(this.teddyModel);
+    region.transform(new FusedTransformation(new BlurTransformation(),
+        new SharpTransformation()), 10, 20, 40, 30);
+    for (int y = 0; y < region.getHeight(); y++) {
+      for (int x = 0; x < region.getWidth(); x++) {
+        boolean inside = x >= 10 && x < 50 && y >= 20 && y < 50;
+        assertEquals((inside ? whole : this.teddyModel).getColorAt(x, y),
+            region.getColorAt(x, y));
+      }
+    }
+  }
+
+  @Test
+  public void testTransformWholeImageAsRegion() {
+    ImageModelImpl whole = new ImageModelImpl(this.teddyModel);
+    whole.transform(new BlurTransformation());
+    this.teddyModel.transform(new BlurTransformation(), 0, 0, this.teddyModel.getWidth(),
+        this.teddyModel.getHeight());
+    assertEquals(whole, this.teddyModel);
+  }
+
+  @Test
+  public void testTransformRegionLeavesCopies() {
+    ImageModelImpl copy = new ImageModelImpl(this.teddyModel);
+    this.teddyModel.transform(new SepiaTransformation(), 0, 0, 5, 5);
+    assertEquals(new ImageModelImpl("res/Teddy.ppm", new PPMFormat()), copy);
+  }
+
+  @Test
+  public void testTransformRegionMosaic() {
+    this.teddyModel.transform(new MosaicTransformation(1), 30, 30, 20, 10);
+    CustomColor color = this.teddyModel.getColorAt(30, 30);
+    for (int y = 30; y < 40; y++) {
+      for (int x = 30; x < 50; x++) {
+        assertEquals(color, this.teddyModel.getColorAt(x, y));
+      }
+    }
+    assertEquals(new ImageModelImpl("res/Teddy.ppm", new PPMFormat()).getColorAt(29, 30),
+        this.teddyModel.getColorAt(29, 30));
+  }
+
+  @Test
+  public void testChangedRegion() {
+    long start = this.teddyModel.getVersion();
+    assertNull(this.teddyModel.getChangedRegion(start));
+    this.teddyModel.transform(new BlurTransformation(), 10, 20, 5, 5);
+    assertEquals(new Rectangle(10, 20, 5, 5), this.teddyModel.getChangedRegion(start));
+    long afterBlur = this.teddyModel.getVersion();
+    this.teddyModel.transform(new GreyTransformation(), 30, 5, 10, 10);
+    assertEquals(new Rectangle(10, 5, 30, 20), this.teddyModel.getChangedRegion(start));
+    assertEquals(new Rectangle(30, 5, 10, 10), this.teddyModel.getChangedRegion(afterBlur));
+    long afterGrey = this.teddyModel.getVersion();
+    this.teddyModel.transform(new SepiaTransformation());
+    assertEquals(new Rectangle(0, 0, this.teddyModel.getWidth(), this.teddyModel.getHeight()),
+        this.teddyModel.getChangedRegion(afterGrey));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testRegionOutsideImage() {
+    this.teddyModel.transform(new BlurTransformation(), this.teddyModel.getWidth() - 5, 0, 10,
+        10);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testEmptyRegion() {
+    this.teddyModel.transform(new BlurTransformation(), 0, 0, 0, 10);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testRegionResized() {
+    this.teddyModel.transform(new DownscaleTransformation(5, 5), 0, 0, 10, 10);
+  }
+
 
   @Test(expected = IllegalArgumentException.class)
   public void testLoadNonExistantFile() {
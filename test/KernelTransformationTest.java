@@ -0,0 +1,133 @@
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+import model.CustomColor;
+import model.ImageModelImpl;
+import model.format.PPMFormat;
+import model.raster.IViewRaster;
+import model.transformation.filter.ConvolutionEngine;
+import model.transformation.filter.ConvolutionEngine.Method;
+import model.transformation.filter.FilteringTransformation;
+import model.transformation.filter.KernelTransformation;
+import org.junit.Test;
+
+/**
+ * Represents the tests for {@link KernelTransformation}.
+ */
+public class KernelTransformationTest {
+
+  /**
+   * A filtering transformation that always applies its kernel exactly, as a reference.
+   */
+  private static class DirectTransformation extends FilteringTransformation {
+
+    private final double[][] kernel;
+
+    DirectTransformation(double[][] kernel) {
+      this.kernel = kernel;
+    }
+
+    @Override
+    protected double[][] getTransform() {
+      return this.kernel;
+    }
+  }
+
+  private static double[][] randomKernel(int size, long seed) {
+    Random random = new Random(seed);
+    double[][] kernel = new double[size][size];
+    for (int i = 0; i < size; i++) {
+      for (int j = 0; j < size; j++) {
+        kernel[i][j] = (random.nextDouble() - 0.3) / (size * size / 2.0);
+      }
+    }
+    return kernel;
+  }
+
+  private static double[][] gaussian(int size, double sigma) {
+    double[][] kernel = new double[size][size];
+    for (int i = 0; i < size; i++) {
+      for (int j = 0; j < size; j++) {
+        double x = i - size / 2;
+        double y = j - size / 2;
+        kernel[i][j] = Math.exp(-(x * x + y * y) / (2 * sigma * sigma)) / (2 * Math.PI * sigma
+            * sigma);
+      }
+    }
+    return kernel;
+  }
+
+  private static void assertWithinRounding(IViewRaster expected, IViewRaster actual) {
+    assertEquals(expected.getWidth(), actual.getWidth());
+    assertEquals(expected.getHeight(), actual.getHeight());
+    for (int y = 0; y < expected.getHeight(); y++) {
+      for (int x = 0; x < expected.getWidth(); x++) {
+        assertTrue(Math.abs(expected.getRed(x, y) - actual.getRed(x, y)) <= 1);
+        assertTrue(Math.abs(expected.getGreen(x, y) - actual.getGreen(x, y)) <= 1);
+        assertTrue(Math.abs(expected.getBlue(x, y) - actual.getBlue(x, y)) <= 1);
+      }
+    }
+  }
+
+  private static void assertMatchesDirect(double[][] kernel) {
+    ImageModelImpl expected = new ImageModelImpl("res/Teddy.ppm", new PPMFormat());
+    ImageModelImpl actual = new ImageModelImpl(expected);
+    expected.transform(new DirectTransformation(kernel));
+    actual.transform(new KernelTransformation(kernel));
+    assertWithinRounding(expected.getRaster(), actual.getRaster());
+  }
+
+  @Test
+  public void testLargeKernelUsesFft() {
+    double[][] kernel = randomKernel(31, 1);
+    assertEquals(Method.FFT, new ConvolutionEngine(kernel, false).chooseMethod(500, 400, 255));
+    assertEquals(Method.DIRECT, new ConvolutionEngine(kernel).chooseMethod(500, 400, 255));
+    assertMatchesDirect(kernel);
+  }
+
+  @Test
+  public void testGaussianIsSeparable() {
+    double[][] kernel = gaussian(31, 5);
+    assertEquals(Method.SEPARABLE,
+        new ConvolutionEngine(kernel, false).chooseMethod(500, 400, 255));
+    assertMatchesDirect(kernel);
+  }
+
+  @Test
+  public void testSmallKernels() {
+    assertMatchesDirect(randomKernel(3, 2));
+    assertMatchesDirect(new double[][]{{-0.125, -0.125, -0.125, -0.125, -0.125},
+        {-0.125, 0.25, 0.25, 0.25, -0.125}, {-0.125, 0.25, 1, 0.25, -0.125},
+        {-0.125, 0.25, 0.25, 0.25, -0.125}, {-0.125, -0.125, -0.125, -0.125, -0.125}});
+    assertMatchesDirect(new double[][]{{1}});
+  }
+
+  @Test
+  public void testKernelLargerThanImage() {
+    double[][] kernel = randomKernel(9, 3);
+    ImageModelImpl image = new ImageModelImpl("res/Teddy.ppm", new PPMFormat());
+    ImageModelImpl tiny = new ImageModelImpl(
+        new CustomColor[][]{{image.getColorAt(0, 0), image.getColorAt(1, 0)},
+            {image.getColorAt(0, 1), image.getColorAt(1, 1)}}, 255);
+    ImageModelImpl expected = new ImageModelImpl(tiny);
+    expected.transform(new DirectTransformation(kernel));
+    tiny.transform(new KernelTransformation(kernel));
+    assertWithinRounding(expected.getRaster(), tiny.getRaster());
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testEvenKernel() {
+    new KernelTransformation(new double[4][4]);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testNonSquareKernel() {
+    new KernelTransformation(new double[][]{{1, 2, 3}, {1, 2, 3}, {1, 2}});
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testNonFiniteKernel() {
+    new KernelTransformation(new double[][]{{Double.NaN}});
+  }
+}
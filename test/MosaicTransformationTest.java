@@ -1,7 +1,11 @@
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
 
 import java.awt.Color;
+import java.util.Arrays;
 import java.util.HashSet;
+import java.util.Random;
 import java.util.Set;
 import model.CustomColor;
 import model.IImageModel;
@@ -72,4 +76,130 @@ public class MosaicTransformationTest {
     assertTrue(blueSum / blueSumMosaic < 1.1 && blueSum / blueSumMosaic > 0.9);
     assertTrue(greenSum / greenSumMosaic < 1.1 && greenSum / greenSumMosaic > 0.9);
   }
+
+  /**
+   * Mosaics an image by measuring the distance from every pixel to every seed, drawing the row of
+   * every seed first, as the original implementation did for square images.
+   */
+  private static CustomColor[][] bruteForceMosaic(CustomColor[][] pixels, int n, Random r) {
+    int height = pixels.length;
+    int width = pixels[0].length;
+    int[] seedRow = new int[n];
+    int[] seedCol = new int[n];
+    for (int i = 0; i < n; i++) {
+      seedRow[i] = r.nextInt(height);
+      seedCol[i] = r.nextInt(width);
+    }
+    int[][] nearest = new int[height][width];
+    long[][] sums = new long[n][4];
+    for (int row = 0; row < height; row++) {
+      for (int col = 0; col < width; col++) {
+        int best = 0;
+        for (int i = 0; i < n; i++) {
+          if (Math.hypot(seedRow[best] - row, seedCol[best] - col)
+              > Math.hypot(seedRow[i] - row, seedCol[i] - col)) {
+            best = i;
+          }
+        }
+        nearest[row][col] = best;
+        sums[best][0] += pixels[row][col].getRed();
+        sums[best][1] += pixels[row][col].getGreen();
+        sums[best][2] += pixels[row][col].getBlue();
+        sums[best][3]++;
+      }
+    }
+    CustomColor[][] result = new CustomColor[height][width];
+    for (int row = 0; row < height; row++) {
+      for (int col = 0; col < width; col++) {
+        long[] sum = sums[nearest[row][col]];
+        result[row][col] = CustomColor.of((int) (sum[0] / sum[3]), (int) (sum[1] / sum[3]),
+            (int) (sum[2] / sum[3]));
+      }
+    }
+    return result;
+  }
+
+  private static CustomColor[][] randomImage(int width, int height) {
+    Random random = new Random(5);
+    CustomColor[][] pixels = new CustomColor[height][width];
+    for (int y = 0; y < height; y++) {
+      for (int x = 0; x < width; x++) {
+        pixels[y][x] = CustomColor.of(random.nextInt(256), random.nextInt(256),
+            random.nextInt(256));
+      }
+    }
+    return pixels;
+  }
+
+  @Test
+  public void testMatchesBruteForce() {
+    // many pixels are equally far from several seeds, which must go to the lowest seed
+    for (int n : new int[]{1, 7, 100, 2000}) {
+      CustomColor[][] pixels = randomImage(60, 60);
+      assertArrayEquals(bruteForceMosaic(pixels, n, new Random(n)),
+          new MosaicTransformation(n, new Random(n)).apply(pixels, 255, 0));
+    }
+  }
+
+  @Test
+  public void testNonSquareImages() {
+    CustomColor[][] wide = randomImage(70, 25);
+    assertArrayEquals(bruteForceMosaic(wide, 40, new Random(1)),
+        new MosaicTransformation(40, new Random(1)).apply(wide, 255, 0));
+    CustomColor[][] tall = randomImage(20, 55);
+    assertArrayEquals(bruteForceMosaic(tall, 40, new Random(2)),
+        new MosaicTransformation(40, new Random(2)).apply(tall, 255, 0));
+  }
+
+  @Test
+  public void testSeedsSpreadOverNonSquareImages() {
+    // 400 seeds on a 400x100 image leave about 100 cells in the right quarter
+    CustomColor[][] pixels = randomImage(400, 100);
+    for (MosaicTransformation.Labeling labeling : MosaicTransformation.Labeling.values()) {
+      CustomColor[][] mosaic = new MosaicTransformation(400, new Random(6), labeling)
+          .apply(pixels, 255, 0);
+      Set<CustomColor> left = new HashSet<>();
+      Set<CustomColor> right = new HashSet<>();
+      for (CustomColor[] row : mosaic) {
+        left.addAll(Arrays.asList(row).subList(0, 100));
+        right.addAll(Arrays.asList(row).subList(300, 400));
+      }
+      assertTrue(left.size() > 50 && left.size() < 150);
+      assertTrue(right.size() > 50 && right.size() < 150);
+    }
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testNoSeeds() {
+    new MosaicTransformation(0).apply(randomImage(5, 5), 255, 0);
+  }
+
+  @Test
+  public void testFeatureTransformWithOneSeed() {
+    // a single seed leaves no ties, so both labelings agree with the original
+    CustomColor[][] pixels = randomImage(45, 30);
+    assertArrayEquals(bruteForceMosaic(pixels, 1, new Random(4)),
+        new MosaicTransformation(1, new Random(4), MosaicTransformation.Labeling.FEATURE_TRANSFORM)
+            .apply(pixels, 255, 0));
+  }
+
+  @Test
+  public void testFeatureTransformColors() {
+    for (int n : new int[]{3, 50, 5000}) {
+      CustomColor[][] mosaic = new MosaicTransformation(n, new Random(n),
+          MosaicTransformation.Labeling.FEATURE_TRANSFORM).apply(randomImage(80, 35), 255, 0);
+      Set<CustomColor> colors = new HashSet<>();
+      for (CustomColor[] row : mosaic) {
+        colors.addAll(Arrays.asList(row));
+      }
+      assertEquals(35, mosaic.length);
+      assertEquals(80, mosaic[0].length);
+      assertTrue(colors.size() <= n);
+    }
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testNullLabeling() {
+    new MosaicTransformation(10, new Random(), null);
+  }
 }
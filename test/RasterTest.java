@@ -0,0 +1,299 @@
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.awt.Color;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import model.CustomColor;
+import model.ImageModelImpl;
+import model.format.IImageFormatUtil;
+import model.format.PNGFormat;
+import model.format.PPMFormat;
+import model.raster.DirectRaster;
+import model.raster.DirectRasterFactory;
+import model.raster.HeapRasterFactory;
+import model.raster.IRaster;
+import model.raster.InterleavedRaster;
+import model.raster.PackedRaster;
+import model.raster.PlanarRaster;
+import model.raster.RasterTileSource;
+import model.raster.RasterUtil;
+import model.raster.SharedRaster;
+import model.transformation.DownscaleTransformation;
+import model.transformation.FusedTransformation;
+import model.transformation.ITransformation;
+import model.transformation.MosaicTransformation;
+import model.transformation.ResizeTransformation;
+import model.transformation.color.GreyTransformation;
+import model.transformation.color.SepiaTransformation;
+import model.transformation.filter.BlurTransformation;
+import model.transformation.filter.SharpTransformation;
+import org.junit.Test;
+
+/**
+ * Represents a class that contains the tests for the pixel buffers in {@link model.raster}.
+ */
+public class RasterTest {
+
+  @Test
+  public void testPackedRasterChannels() {
+    PackedRaster raster = new PackedRaster(4, 3);
+    raster.setPixel(3, 2, 255, 200, 7);
+    assertEquals(255, raster.getRed(3, 2));
+    assertEquals(200, raster.getGreen(3, 2));
+    assertEquals(7, raster.getBlue(3, 2));
+    assertEquals(new Color(255, 200, 7).getRGB() & 0xFFFFFF, raster.getRGB(3, 2));
+    assertEquals(0, raster.getRGB(0, 0));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testPackedRasterOutOfRange() {
+    new PackedRaster(2, 2).setPixel(0, 0, 256, 0, 0);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testEmptyRaster() {
+    new PackedRaster(0, 5);
+  }
+
+  @Test
+  public void testInterleavedRasterUnbounded() {
+    IRaster raster = new InterleavedRaster(2, 2);
+    raster.setPixel(1, 1, -5, 1000, 42);
+    assertEquals(-5, raster.getRed(1, 1));
+    assertEquals(1000, raster.getGreen(1, 1));
+    assertEquals(42, raster.getBlue(1, 1));
+  }
+
+  @Test
+  public void testCopyIsIndependent() {
+    IRaster raster = new PackedRaster(2, 2);
+    IRaster copy = raster.copy();
+    copy.setPixel(0, 0, 1, 2, 3);
+    assertEquals(0, raster.getRed(0, 0));
+    assertEquals(1, copy.getRed(0, 0));
+  }
+
+  @Test
+  public void testArrayRoundTrip() {
+    CustomColor[][] pixels = new ImageModelImpl("res/Teddy.ppm", new PPMFormat()).asArray();
+    IRaster raster = RasterUtil.fromArray(pixels, 255);
+    assertTrue(raster instanceof PackedRaster);
+    CustomColor[][] back = RasterUtil.toArray(raster);
+    for (int y = 0; y < pixels.length; y++) {
+      for (int x = 0; x < pixels[y].length; x++) {
+        assertEquals(pixels[y][x], back[y][x]);
+      }
+    }
+  }
+
+  @Test
+  public void testSameContentAcrossLayouts() {
+    IRaster packed = new PackedRaster(3, 2);
+    IRaster interleaved = new InterleavedRaster(3, 2);
+    packed.setPixel(2, 1, 10, 20, 30);
+    interleaved.setPixel(2, 1, 10, 20, 30);
+    assertTrue(RasterUtil.sameContent(packed, interleaved));
+    assertEquals(RasterUtil.contentHash(packed), RasterUtil.contentHash(interleaved));
+    interleaved.setPixel(0, 0, 0, 0, 1);
+    assertFalse(RasterUtil.sameContent(packed, interleaved));
+  }
+
+  @Test
+  public void testPlanarRasterClamp() {
+    PlanarRaster raster = new PlanarRaster(2, 1);
+    raster.setPixel(0, 0, -20, 128, 300);
+    raster.setPixel(1, 0, 1, 2, 3);
+    IRaster clamped = raster.clamp(255, 0);
+    assertTrue(clamped instanceof PackedRaster);
+    assertEquals(0, clamped.getRed(0, 0));
+    assertEquals(128, clamped.getGreen(0, 0));
+    assertEquals(255, clamped.getBlue(0, 0));
+    assertEquals(3, clamped.getBlue(1, 0));
+  }
+
+  @Test
+  public void testUnclampedIntermediate() {
+    ImageModelImpl teddy = new ImageModelImpl("res/Teddy.ppm", new PPMFormat());
+    PlanarRaster sharp = new SharpTransformation().applyUnclamped(teddy.getRaster());
+    boolean outOfRange = false;
+    for (int y = 0; y < sharp.getHeight(); y++) {
+      for (int x = 0; x < sharp.getWidth(); x++) {
+        outOfRange |= sharp.getRed(x, y) > 255 || sharp.getRed(x, y) < 0;
+      }
+    }
+    assertTrue(outOfRange);
+    assertTrue(RasterUtil.sameContent(sharp.clamp(255, 0),
+        teddy.transform(new SharpTransformation()).getRaster()));
+  }
+
+  @Test
+  public void testDirectRaster() {
+    DirectRaster raster = new DirectRaster(3, 2);
+    raster.setPixel(2, 1, 1, 2, 3);
+    assertEquals(6, raster.getPixelCount());
+    assertEquals(2, raster.getGreen(2, 1));
+    IRaster copy = raster.copy();
+    assertTrue(RasterUtil.sameContent(raster, copy));
+    raster.close();
+    assertTrue(raster.isClosed());
+    assertEquals(3, copy.getBlue(2, 1));
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void testClosedDirectRaster() {
+    DirectRaster raster = new DirectRaster(1, 1);
+    raster.close();
+    raster.getRed(0, 0);
+  }
+
+  @Test
+  public void testOffHeapImage() {
+    ImageModelImpl heap = new ImageModelImpl("res/Teddy.ppm", new PPMFormat());
+    ImageModelImpl direct = new ImageModelImpl("res/Teddy.ppm", new PPMFormat(),
+        new DirectRasterFactory());
+    assertTrue(direct.getRaster() instanceof DirectRaster);
+    assertEquals(heap, direct);
+    direct.transform(new SepiaTransformation());
+    assertTrue(direct.getRaster() instanceof DirectRaster);
+    assertEquals(heap.transform(new SepiaTransformation()), direct);
+    direct.close();
+  }
+
+  @Test
+  public void testOffHeapImageReadFromTileSource() {
+    // the whole file is never imported into an array on the heap
+    IImageFormatUtil format = new PPMFormat() {
+      @Override
+      public CustomColor[][] importImage(String filename) {
+        throw new IllegalStateException("The file must be read in strips!");
+      }
+    };
+    ImageModelImpl direct = new ImageModelImpl("res/Teddy.ppm", format,
+        new DirectRasterFactory());
+    assertTrue(direct.getRaster() instanceof DirectRaster);
+    assertEquals(new ImageModelImpl("res/Teddy.ppm", new PPMFormat()), direct);
+    direct.close();
+    direct = new ImageModelImpl("res/Teddy.png", new PNGFormat(), new DirectRasterFactory());
+    assertEquals(new ImageModelImpl("res/Teddy.png", new PNGFormat()), direct);
+    direct.close();
+  }
+
+  @Test
+  public void testFromTileSourceInStrips() {
+    IRaster source = new PackedRaster(5, 11);
+    for (int y = 0; y < 11; y++) {
+      for (int x = 0; x < 5; x++) {
+        source.setPixel(x, y, x * 40, y * 20, x + y);
+      }
+    }
+    IRaster direct = RasterUtil.fromTileSource(new RasterTileSource(source),
+        new DirectRasterFactory(), 4);
+    assertTrue(direct instanceof DirectRaster);
+    assertTrue(RasterUtil.sameContent(source, direct));
+    assertTrue(RasterUtil.sameContent(source, RasterUtil.fromTileSource(
+        new RasterTileSource(source), new HeapRasterFactory(), 3)));
+  }
+
+  @Test
+  public void testOffHeapTransformsStayOffHeap() {
+    ITransformation[] transformations = {new BlurTransformation(), new SepiaTransformation(),
+        new FusedTransformation(new GreyTransformation(), new SharpTransformation()),
+        new MosaicTransformation(30, 4), new DownscaleTransformation(50, 40),
+        new ResizeTransformation(70, 90, ResizeTransformation.Filter.LANCZOS3)};
+    for (ITransformation transformation : transformations) {
+      ImageModelImpl heap = new ImageModelImpl("res/Teddy.ppm", new PPMFormat());
+      ImageModelImpl direct = new ImageModelImpl("res/Teddy.ppm", new PPMFormat(),
+          new DirectRasterFactory());
+      direct.transform(transformation);
+      assertTrue(direct.getRaster() instanceof DirectRaster);
+      assertEquals(heap.transform(transformation), direct);
+      direct.transform(new BlurTransformation(), 2, 3, 20, 10);
+      assertTrue(direct.getRaster() instanceof DirectRaster);
+      assertEquals(heap.transform(new BlurTransformation(), 2, 3, 20, 10), direct);
+      direct.close();
+    }
+  }
+
+  @Test
+  public void testCopiesShareRaster() {
+    ImageModelImpl teddy = new ImageModelImpl("res/Teddy.ppm", new PPMFormat());
+    ImageModelImpl copy = new ImageModelImpl(teddy);
+    assertSame(teddy.getRaster(), copy.getRaster());
+    copy.transform(new SepiaTransformation());
+    assertNotSame(teddy.getRaster(), copy.getRaster());
+    assertEquals(new ImageModelImpl("res/Teddy.ppm", new PPMFormat()), teddy);
+    assertFalse(teddy.equals(copy));
+  }
+
+  @Test
+  public void testSharedDirectRasterOutlivesCopy() {
+    ImageModelImpl direct = new ImageModelImpl("res/Teddy.ppm", new PPMFormat(),
+        new DirectRasterFactory());
+    DirectRaster raster = (DirectRaster) direct.getRaster();
+    ImageModelImpl copy = new ImageModelImpl(direct);
+    copy.close();
+    assertFalse(raster.isClosed());
+    direct.transform(new SepiaTransformation());
+    assertTrue(raster.isClosed());
+    direct.close();
+  }
+
+  @Test
+  public void testSharedRasterCopyOnWrite() {
+    SharedRaster first = new SharedRaster(new PackedRaster(2, 2));
+    SharedRaster second = first.share();
+    assertTrue(first.isShared());
+    second.getWritable().setPixel(0, 0, 1, 2, 3);
+    assertFalse(first.isShared());
+    assertEquals(0, first.get().getRGB(0, 0));
+    assertEquals(0x010203, second.get().getRGB(0, 0));
+    assertSame(second.get(), second.getWritable());
+  }
+
+  @Test
+  public void testToImageWrapsRaster() {
+    ImageModelImpl teddy = new ImageModelImpl("res/Teddy.ppm", new PPMFormat());
+    BufferedImage image = (BufferedImage) teddy.toImage();
+    assertEquals(BufferedImage.TYPE_INT_RGB, image.getType());
+    assertSame(((PackedRaster) teddy.getRaster()).getData(),
+        ((DataBufferInt) image.getRaster().getDataBuffer()).getData());
+    assertSame(image, teddy.toImage());
+    teddy.transform(new SepiaTransformation());
+    BufferedImage sepia = (BufferedImage) teddy.toImage();
+    assertNotSame(image, sepia);
+    assertEquals(teddy.getRaster().getRGB(10, 20), sepia.getRGB(10, 20) & 0xFFFFFF);
+  }
+
+  @Test
+  public void testToImageOffHeap() {
+    ImageModelImpl direct = new ImageModelImpl("res/Teddy.ppm", new PPMFormat(),
+        new DirectRasterFactory());
+    BufferedImage image = (BufferedImage) direct.toImage();
+    for (int y = 0; y < direct.getHeight(); y++) {
+      for (int x = 0; x < direct.getWidth(); x++) {
+        assertEquals(direct.getRaster().getRGB(x, y), image.getRGB(x, y) & 0xFFFFFF);
+      }
+    }
+    assertSame(image, direct.toImage());
+    direct.close();
+  }
+
+  @Test
+  public void testToImageOffHeapAfterRegionTransform() {
+    ImageModelImpl direct = new ImageModelImpl("res/Teddy.ppm", new PPMFormat(),
+        new DirectRasterFactory());
+    BufferedImage image = (BufferedImage) direct.toImage();
+    direct.transform(new SepiaTransformation(), 10, 20, 30, 40);
+    assertSame(image, direct.toImage());
+    for (int y = 0; y < direct.getHeight(); y++) {
+      for (int x = 0; x < direct.getWidth(); x++) {
+        assertEquals(direct.getRaster().getRGB(x, y), image.getRGB(x, y) & 0xFFFFFF);
+      }
+    }
+    direct.close();
+  }
+}
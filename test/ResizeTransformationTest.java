@@ -0,0 +1,127 @@
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Random;
+import model.CustomColor;
+import model.transformation.ResizeTransformation;
+import model.transformation.ResizeTransformation.Filter;
+import org.junit.Test;
+
+/**
+ * This class tests the implementation of the resize transformation.
+ */
+public class ResizeTransformationTest {
+
+  private static CustomColor[][] randomImage(int width, int height) {
+    Random random = new Random(width * 31 + height);
+    CustomColor[][] pixels = new CustomColor[height][width];
+    for (int y = 0; y < height; y++) {
+      for (int x = 0; x < width; x++) {
+        pixels[y][x] = CustomColor.of(random.nextInt(256), random.nextInt(256),
+            random.nextInt(256));
+      }
+    }
+    return pixels;
+  }
+
+  @Test
+  public void testSameSizeKeepsImage() {
+    CustomColor[][] pixels = randomImage(23, 17);
+    for (Filter filter : Filter.values()) {
+      assertArrayEquals(pixels, new ResizeTransformation(23, 17, filter).apply(pixels, 255, 0));
+    }
+  }
+
+  @Test
+  public void testUniformImagesStayUniform() {
+    CustomColor[][] pixels = new CustomColor[40][30];
+    for (CustomColor[] row : pixels) {
+      Arrays.fill(row, CustomColor.of(12, 200, 255));
+    }
+    int[][] sizes = {{7, 9}, {30, 40}, {61, 97}, {3, 120}};
+    for (Filter filter : Filter.values()) {
+      for (int[] size : sizes) {
+        CustomColor[][] resized = new ResizeTransformation(size[0], size[1], filter)
+            .apply(pixels, 255, 0);
+        assertEquals(size[1], resized.length);
+        assertEquals(size[0], resized[0].length);
+        for (CustomColor[] row : resized) {
+          for (CustomColor color : row) {
+            assertEquals(CustomColor.of(12, 200, 255), color);
+          }
+        }
+      }
+    }
+  }
+
+  @Test
+  public void testNearestRepeatsPixels() {
+    CustomColor[][] pixels = randomImage(5, 4);
+    CustomColor[][] doubled = new ResizeTransformation(10, 8, Filter.NEAREST)
+        .apply(pixels, 255, 0);
+    for (int y = 0; y < 8; y++) {
+      for (int x = 0; x < 10; x++) {
+        assertEquals(pixels[y / 2][x / 2], doubled[y][x]);
+      }
+    }
+    CustomColor[][] halved = new ResizeTransformation(5, 4, Filter.NEAREST)
+        .apply(doubled, 255, 0);
+    assertArrayEquals(pixels, halved);
+  }
+
+  @Test
+  public void testBilinearInterpolates() {
+    CustomColor[][] row = {{CustomColor.of(0, 0, 0), CustomColor.of(100, 200, 40)}};
+    CustomColor[][] resized = new ResizeTransformation(4, 1, Filter.BILINEAR)
+        .apply(row, 255, 0);
+    // the new pixel centers lie at -0.25, 0.25, 0.75 and 1.25 old pixels
+    assertEquals(CustomColor.of(0, 0, 0), resized[0][0]);
+    assertEquals(CustomColor.of(25, 50, 10), resized[0][1]);
+    assertEquals(CustomColor.of(75, 150, 30), resized[0][2]);
+    assertEquals(CustomColor.of(100, 200, 40), resized[0][3]);
+  }
+
+  @Test
+  public void testShrinkingAveragesAllPixels() {
+    // a checkerboard shrunk by an even ratio is grey, not one of its colors
+    CustomColor[][] pixels = new CustomColor[16][16];
+    for (int y = 0; y < 16; y++) {
+      for (int x = 0; x < 16; x++) {
+        pixels[y][x] = (x + y) % 2 == 0 ? CustomColor.of(0, 0, 0) : CustomColor.of(200, 200, 200);
+      }
+    }
+    for (Filter filter : new Filter[]{Filter.BILINEAR, Filter.BICUBIC, Filter.LANCZOS3}) {
+      CustomColor[][] shrunk = new ResizeTransformation(4, 4, filter).apply(pixels, 255, 0);
+      // pixels at the edges repeat the edge of the checkerboard, so only check the middle
+      for (int y = 1; y < 3; y++) {
+        for (int x = 1; x < 3; x++) {
+          assertTrue(Math.abs(shrunk[y][x].getRed() - 100) <= 1);
+        }
+      }
+    }
+  }
+
+  @Test
+  public void testOvershootIsClamped() {
+    CustomColor[][] pixels = new CustomColor[1][8];
+    for (int x = 0; x < 8; x++) {
+      pixels[0][x] = x < 4 ? CustomColor.of(0, 0, 0) : CustomColor.of(255, 255, 255);
+    }
+    for (CustomColor color : new ResizeTransformation(29, 1, Filter.LANCZOS3)
+        .apply(pixels, 255, 0)[0]) {
+      assertTrue(color.getRed() >= 0 && color.getRed() <= 255);
+    }
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testEmptySize() {
+    new ResizeTransformation(0, 5, Filter.BILINEAR);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testNullFilter() {
+    new ResizeTransformation(5, 5, null);
+  }
+}
@@ -0,0 +1,130 @@
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicInteger;
+import model.CustomColor;
+import model.raster.IRaster;
+import model.raster.PackedRaster;
+import model.raster.RasterUtil;
+import model.transformation.DownscaleTransformation;
+import model.transformation.FusedTransformation;
+import model.transformation.ITransformation;
+import model.transformation.MosaicTransformation;
+import model.transformation.ResizeTransformation;
+import model.transformation.RowBandExecutor;
+import model.transformation.color.GreyTransformation;
+import model.transformation.color.SepiaTransformation;
+import model.transformation.filter.BlurTransformation;
+import model.transformation.filter.KernelTransformation;
+import model.transformation.filter.SharpTransformation;
+import org.junit.AfterClass;
+import org.junit.Test;
+
+/**
+ * Represents the tests for {@link RowBandExecutor}, and for the transformations that run in bands
+ * of rows, which must produce the same results whether they run sequentially or in parallel.
+ */
+public class RowBandExecutorTest {
+
+  private static final ForkJoinPool POOL = new ForkJoinPool(4);
+  // splits even tiny images between threads
+  private static final RowBandExecutor PARALLEL = new RowBandExecutor(POOL, 0);
+
+  @AfterClass
+  public static void shutDown() {
+    POOL.shutdown();
+  }
+
+  private static PackedRaster randomRaster(int width, int height) {
+    Random random = new Random(11);
+    PackedRaster raster = new PackedRaster(width, height);
+    for (int i = 0; i < raster.getData().length; i++) {
+      raster.getData()[i] = random.nextInt(1 << 24);
+    }
+    return raster;
+  }
+
+  private static void assertSameInParallel(ITransformation transformation, PackedRaster source) {
+    IRaster sequential = transformation.apply(source, 255, 0, RowBandExecutor.SEQUENTIAL);
+    IRaster parallel = transformation.apply(source, 255, 0, PARALLEL);
+    assertTrue(RasterUtil.sameContent(sequential, parallel));
+  }
+
+  @Test
+  public void testBandsCoverAllRows() {
+    AtomicInteger rows = new AtomicInteger();
+    PARALLEL.forEachBand(1001, 7, (top, bottom) -> rows.addAndGet(bottom - top));
+    assertEquals(1001, rows.get());
+  }
+
+  @Test
+  public void testThreshold() {
+    RowBandExecutor executor = new RowBandExecutor(POOL, 1000);
+    assertFalse(executor.isParallel(999));
+    assertTrue(executor.isParallel(1000));
+    assertFalse(RowBandExecutor.SEQUENTIAL.isParallel(Long.MAX_VALUE));
+  }
+
+  @Test
+  public void testColorTransformations() {
+    PackedRaster source = randomRaster(97, 61);
+    assertSameInParallel(new GreyTransformation(), source);
+    assertSameInParallel(new SepiaTransformation(), source);
+    assertSameInParallel(new FusedTransformation(new SepiaTransformation(),
+        new BlurTransformation(), new GreyTransformation()), source);
+  }
+
+  @Test
+  public void testFilteringTransformations() {
+    PackedRaster source = randomRaster(83, 77);
+    assertSameInParallel(new BlurTransformation(), source);
+    assertSameInParallel(new SharpTransformation(), source);
+    double[][] box = new double[21][21];
+    for (double[] row : box) {
+      Arrays.fill(row, 1.0 / 441);
+    }
+    // large enough to be convolved by FFT
+    assertSameInParallel(new KernelTransformation(box), randomRaster(300, 200));
+  }
+
+  @Test
+  public void testDownscale() {
+    PackedRaster source = randomRaster(90, 70);
+    ITransformation downscale = new DownscaleTransformation(41, 33);
+    assertSameInParallel(downscale, source);
+    CustomColor[][] expected = downscale.apply(RasterUtil.toArray(source), 255, 0);
+    IRaster actual = downscale.apply(source, 255, 0, PARALLEL);
+    assertTrue(RasterUtil.sameContent(RasterUtil.fromArray(expected, 255), actual));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testNullDefault() {
+    RowBandExecutor.setDefault(null);
+  }
+
+  @Test
+  public void testMosaic() {
+    PackedRaster source = randomRaster(83, 59);
+    for (MosaicTransformation.Labeling labeling : MosaicTransformation.Labeling.values()) {
+      for (int n : new int[]{1, 40, 3000}) {
+        IRaster sequential = new MosaicTransformation(n, new Random(n), labeling)
+            .apply(source, 255, 0, RowBandExecutor.SEQUENTIAL);
+        IRaster parallel = new MosaicTransformation(n, new Random(n), labeling)
+            .apply(source, 255, 0, PARALLEL);
+        assertTrue(RasterUtil.sameContent(sequential, parallel));
+      }
+    }
+  }
+
+  @Test
+  public void testResize() {
+    PackedRaster source = randomRaster(59, 47);
+    for (ResizeTransformation.Filter filter : ResizeTransformation.Filter.values()) {
+      assertSameInParallel(new ResizeTransformation(131, 20, filter), source);
+    }
+  }
+}
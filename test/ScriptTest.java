@@ -5,13 +5,17 @@ import static org.junit.Assert.assertTrue;
 import controller.MultiLayerImageController;
 import controller.command.ICommand;
 import controller.command.LayerImageCommands;
+import java.awt.Rectangle;
 import java.io.FileNotFoundException;
 import java.io.FileReader;
 import java.util.Map;
 import model.ImageModelImpl;
 import model.format.PNGFormat;
+import model.format.PPMFormat;
 import model.layered.ILayerImageModel;
 import model.layered.LayerImageModel;
+import model.transformation.color.SepiaTransformation;
+import model.transformation.filter.BlurTransformation;
 import org.junit.Before;
 import org.junit.Test;
 import view.IImageView;
@@ -78,4 +82,57 @@ public class ScriptTest {
     assertTrue(model.getLayers().get(1).isLoaded());
     assertFalse(model.getLayers().get(1).isTransparent());
   }
+
+  @Test
+  public void testProcess() {
+    layerImageCommands.get("process").apply(
+        new String[]{"process", "res/Teddy.ppm", "res/TeddyProcessed.png", "blur", "sepia"});
+    ImageModelImpl expected = new ImageModelImpl("res/Teddy.ppm", new PPMFormat());
+    expected.transform(new BlurTransformation()).transform(new SepiaTransformation());
+    assertTrue(expected.almostEquals(new ImageModelImpl("res/TeddyProcessed.png",
+        new PNGFormat())));
+    assertEquals(0, model.getLayers().size());
+    assertEquals("Processed res/Teddy.ppm into res/TeddyProcessed.png with blur, sepia "
+        + "transformations.\n", ap.toString());
+  }
+
+  @Test
+  public void testTransformRegion() {
+    model.addLayer();
+    model.loadImage(new ImageModelImpl("res/Teddy.ppm", new PPMFormat()));
+    layerImageCommands.get("transformregion").apply(
+        new String[]{"transformregion", "3", "4", "10", "12", "blur", "sepia"});
+    assertEquals(new Rectangle(3, 4, 10, 12), model.getChangedRegion(0));
+    assertEquals("Applied blur, sepia transformations to a 10x12 region of layer 1.\n",
+        ap.toString());
+  }
+
+  @Test
+  public void testUndoRedo() {
+    model.addLayer();
+    model.loadImage(new ImageModelImpl("res/Teddy.ppm", new PPMFormat()));
+    layerImageCommands.get("transform").apply(new String[]{"transform", "sepia"});
+    layerImageCommands.get("undo").apply(new String[]{"undo"});
+    assertEquals(new ImageModelImpl("res/Teddy.ppm", new PPMFormat()),
+        model.getLayers().get(0).getImage());
+    layerImageCommands.get("redo").apply(new String[]{"redo"});
+    assertTrue(model.canUndo());
+    assertEquals(false, model.canRedo());
+    assertTrue(ap.toString().endsWith(
+        "Undid the last operation.\nRedid the last undone operation.\n"));
+  }
+
+  @Test
+  public void testDefer() {
+    layerImageCommands.get("defer").apply(new String[]{"defer", "on"});
+    model.addLayer();
+    layerImageCommands.get("load").apply(new String[]{"load", "res/Teddy.ppm"});
+    layerImageCommands.get("transform").apply(new String[]{"transform", "blur"});
+    layerImageCommands.get("transform").apply(new String[]{"transform", "sepia"});
+    ImageModelImpl expected = new ImageModelImpl("res/Teddy.ppm", new PPMFormat());
+    expected.transform(new BlurTransformation()).transform(new SepiaTransformation());
+    assertEquals(expected, model.getLayers().get(0).getImage());
+    assertTrue(ap.toString().startsWith("Transformations of images loaded from now on are "
+        + "deferred until their pixels are needed.\n"));
+  }
 }
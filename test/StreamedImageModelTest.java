@@ -0,0 +1,94 @@
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import model.ImageModelImpl;
+import model.StreamedImageModel;
+import model.format.PNGFormat;
+import model.format.PPMFormat;
+import model.raster.RasterUtil;
+import model.transformation.FusedTransformation;
+import model.transformation.MosaicTransformation;
+import model.transformation.color.SepiaTransformation;
+import model.transformation.filter.BlurTransformation;
+import model.transformation.filter.SharpTransformation;
+import org.junit.Test;
+
+/**
+ * Represents the tests for {@link StreamedImageModel}.
+ */
+public class StreamedImageModelTest {
+
+  @Test
+  public void testWithoutTransformations() {
+    StreamedImageModel streamed = new StreamedImageModel("res/Teddy.ppm", new PPMFormat(), 5);
+    ImageModelImpl teddy = new ImageModelImpl("res/Teddy.ppm", new PPMFormat());
+    assertEquals(teddy.getWidth(), streamed.getWidth());
+    assertEquals(teddy.getHeight(), streamed.getHeight());
+    assertTrue(RasterUtil.sameContent(teddy.getRaster(), streamed.getRaster()));
+    streamed.close();
+  }
+
+  @Test
+  public void testMatchesInMemoryModel() {
+    ImageModelImpl expected = new ImageModelImpl("res/Teddy.ppm", new PPMFormat());
+    expected.transform(new FusedTransformation(new BlurTransformation(),
+        new SharpTransformation(), new SepiaTransformation()));
+    // strips much thinner than the borders the chain needs
+    for (int stripHeight : new int[]{1, 3, 64}) {
+      StreamedImageModel streamed = new StreamedImageModel("res/Teddy.ppm", new PPMFormat(),
+          stripHeight, new BlurTransformation(), new SharpTransformation(),
+          new SepiaTransformation());
+      assertTrue(RasterUtil.sameContent(expected.getRaster(), streamed.getRaster()));
+      streamed.close();
+    }
+  }
+
+  @Test
+  public void testRowsInAnyOrder() {
+    ImageModelImpl expected = new ImageModelImpl("res/Teddy.ppm", new PPMFormat());
+    expected.transform(new BlurTransformation());
+    StreamedImageModel streamed = new StreamedImageModel("res/Teddy.ppm", new PPMFormat(), 4,
+        new BlurTransformation());
+    for (int y = streamed.getHeight() - 1; y >= 0; y -= 3) {
+      for (int x = 0; x < streamed.getWidth(); x++) {
+        assertEquals(expected.getRaster().getRGB(x, y), streamed.getRaster().getRGB(x, y));
+      }
+    }
+    streamed.close();
+  }
+
+  @Test
+  public void testExportMatchesInMemoryModel() throws IOException {
+    ImageModelImpl expected = new ImageModelImpl("res/Teddy.ppm", new PPMFormat());
+    expected.transform(new BlurTransformation()).transform(new SepiaTransformation());
+    expected.exportToFile("res/TeddyBlurSepiaCopy.ppm", new PPMFormat());
+    StreamedImageModel streamed = new StreamedImageModel("res/Teddy.ppm", new PPMFormat(), 8,
+        new BlurTransformation(), new SepiaTransformation());
+    streamed.exportToFile("res/TeddyBlurSepiaStreamed.ppm", new PPMFormat());
+    streamed.exportToFile("res/TeddyBlurSepiaStreamed.png", new PNGFormat());
+    streamed.close();
+    assertArrayEquals(Files.readAllBytes(Paths.get("res/TeddyBlurSepiaCopy.ppm")),
+        Files.readAllBytes(Paths.get("res/TeddyBlurSepiaStreamed.ppm")));
+    assertTrue(RasterUtil.sameContent(expected.getRaster(),
+        new ImageModelImpl("res/TeddyBlurSepiaStreamed.png", new PNGFormat()).getRaster()));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testUnboundedNeighborhood() {
+    new StreamedImageModel("res/Teddy.ppm", new PPMFormat(), new MosaicTransformation(10));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testInvalidStripHeight() {
+    new StreamedImageModel("res/Teddy.ppm", new PPMFormat(), 0);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testMissingFile() {
+    new StreamedImageModel("res/Missing.ppm", new PPMFormat());
+  }
+}
@@ -0,0 +1,102 @@
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import model.raster.DirectRaster;
+import model.raster.DirectRasterFactory;
+import model.raster.IRaster;
+import model.raster.PackedRaster;
+import model.raster.RasterUtil;
+import model.transformation.FusedTransformation;
+import model.transformation.ITransformation;
+import model.transformation.MosaicTransformation;
+import model.transformation.RowBandExecutor;
+import model.transformation.TileExecutor;
+import model.transformation.color.GreyTransformation;
+import model.transformation.color.SepiaTransformation;
+import model.transformation.filter.BlurTransformation;
+import model.transformation.filter.SharpTransformation;
+import org.junit.Test;
+
+/**
+ * Represents the tests for {@link TileExecutor}, which must produce the same results as
+ * transforming the whole image at once.
+ */
+public class TileExecutorTest {
+
+  private static PackedRaster randomRaster(int width, int height) {
+    Random random = new Random(7);
+    PackedRaster raster = new PackedRaster(width, height);
+    for (int i = 0; i < raster.getData().length; i++) {
+      raster.getData()[i] = random.nextInt(1 << 24);
+    }
+    return raster;
+  }
+
+  private static void assertSameTiled(TileExecutor tiles, ITransformation transformation,
+      PackedRaster source, RowBandExecutor executor) {
+    IRaster whole = transformation.apply(source, 255, 0, RowBandExecutor.SEQUENTIAL);
+    IRaster tiled = tiles.apply(transformation, source, 255, 0, executor);
+    assertTrue(RasterUtil.sameContent(whole, tiled));
+  }
+
+  @Test
+  public void testFiltersMatchWholeImage() {
+    // tiles that do not divide the image, and images smaller than two halos in one direction
+    TileExecutor tiles = new TileExecutor(32);
+    for (int[] size : new int[][]{{150, 97}, {33, 200}, {300, 3}}) {
+      PackedRaster source = randomRaster(size[0], size[1]);
+      assertSameTiled(tiles, new BlurTransformation(), source, RowBandExecutor.SEQUENTIAL);
+      assertSameTiled(tiles, new SharpTransformation(), source, RowBandExecutor.SEQUENTIAL);
+      assertSameTiled(tiles, new FusedTransformation(new SepiaTransformation(),
+          new BlurTransformation(), new SharpTransformation()), source,
+          RowBandExecutor.SEQUENTIAL);
+    }
+  }
+
+  @Test
+  public void testOtherTransformationsAreAppliedWhole() {
+    PackedRaster source = randomRaster(100, 80);
+    TileExecutor tiles = new TileExecutor(16);
+    assertSameTiled(tiles, new GreyTransformation(), source, RowBandExecutor.SEQUENTIAL);
+    IRaster mosaic = tiles.apply(new MosaicTransformation(30, new Random(3)), source, 255, 0,
+        RowBandExecutor.SEQUENTIAL);
+    assertTrue(RasterUtil.sameContent(
+        new MosaicTransformation(30, new Random(3)).apply(source, 255, 0), mosaic));
+  }
+
+  @Test
+  public void testOffHeapResultsAreTiled() {
+    PackedRaster source = randomRaster(150, 97);
+    TileExecutor tiles = new TileExecutor(32);
+    for (ITransformation transformation : new ITransformation[]{new BlurTransformation(),
+        new FusedTransformation(new SepiaTransformation(), new SharpTransformation())}) {
+      IRaster tiled = tiles.apply(transformation, source, 255, 0, RowBandExecutor.SEQUENTIAL,
+          new DirectRasterFactory());
+      assertTrue(tiled instanceof DirectRaster);
+      assertTrue(RasterUtil.sameContent(transformation.apply(source, 255, 0), tiled));
+    }
+    // per-pixel transformations write their rows into the off-heap raster directly
+    IRaster grey = tiles.apply(new GreyTransformation(), source, 255, 0,
+        RowBandExecutor.SEQUENTIAL, new DirectRasterFactory());
+    assertTrue(grey instanceof DirectRaster);
+    assertTrue(RasterUtil.sameContent(new GreyTransformation().apply(source, 255, 0), grey));
+  }
+
+  @Test
+  public void testParallelTiles() {
+    ForkJoinPool pool = new ForkJoinPool(4);
+    try {
+      PackedRaster source = randomRaster(211, 157);
+      assertSameTiled(new TileExecutor(40), new SharpTransformation(), source,
+          new RowBandExecutor(pool, 0));
+    } finally {
+      pool.shutdown();
+    }
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testEmptyTiles() {
+    new TileExecutor(0);
+  }
+}
@@ -0,0 +1,123 @@
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.awt.Rectangle;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import model.IImageModel;
+import model.ImageModelImpl;
+import model.TiledImageModel;
+import model.format.PNGFormat;
+import model.format.PPMFormat;
+import model.raster.RasterUtil;
+import model.raster.TiledRaster;
+import model.transformation.DownscaleTransformation;
+import model.transformation.color.SepiaTransformation;
+import model.transformation.filter.BlurTransformation;
+import model.transformation.filter.SharpTransformation;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Represents the tests for {@link TiledImageModel} and {@link TiledRaster}.
+ */
+public class TiledImageModelTest {
+
+  ImageModelImpl teddy;
+  TiledImageModel tiledTeddy;
+
+  @Before
+  public void initialize() {
+    this.teddy = new ImageModelImpl("res/Teddy.ppm", new PPMFormat());
+    // tiny tiles and no memory to speak of, so tiles are evicted and spilled all the time
+    this.tiledTeddy = new TiledImageModel("res/Teddy.ppm", new PPMFormat(), 7, 0);
+  }
+
+  @After
+  public void close() {
+    this.tiledTeddy.close();
+  }
+
+  @Test
+  public void testLoad() {
+    assertEquals(this.teddy.getWidth(), this.tiledTeddy.getWidth());
+    assertEquals(this.teddy.getHeight(), this.tiledTeddy.getHeight());
+    assertTrue(RasterUtil.sameContent(this.teddy.getRaster(), this.tiledTeddy.getRaster()));
+    assertTrue(this.tiledTeddy.almostEquals(this.teddy));
+  }
+
+  @Test
+  public void testLoadPng() {
+    TiledImageModel png = new TiledImageModel("res/Teddy.png", new PNGFormat(), 16, 0);
+    assertTrue(RasterUtil.sameContent(new ImageModelImpl("res/Teddy.png", new PNGFormat())
+        .getRaster(), png.getRaster()));
+    png.close();
+  }
+
+  @Test
+  public void testTransformsMatchInMemoryModel() {
+    IImageModel expected = new ImageModelImpl(this.teddy);
+    expected.transform(new BlurTransformation()).transform(new SharpTransformation())
+        .transform(new SepiaTransformation());
+    this.tiledTeddy.transform(new BlurTransformation()).transform(new SharpTransformation())
+        .transform(new SepiaTransformation());
+    assertTrue(RasterUtil.sameContent(expected.getRaster(), this.tiledTeddy.getRaster()));
+  }
+
+  @Test
+  public void testGlobalTransform() {
+    this.teddy.transform(new DownscaleTransformation(20, 30));
+    this.tiledTeddy.transform(new DownscaleTransformation(20, 30));
+    assertEquals(20, this.tiledTeddy.getWidth());
+    assertEquals(30, this.tiledTeddy.getHeight());
+    assertTrue(RasterUtil.sameContent(this.teddy.getRaster(), this.tiledTeddy.getRaster()));
+  }
+
+  @Test
+  public void testExportMatchesInMemoryModel() throws IOException {
+    this.teddy.transform(new BlurTransformation());
+    this.tiledTeddy.transform(new BlurTransformation());
+    this.teddy.exportToFile("res/TeddyBlurCopy.ppm", new PPMFormat());
+    this.tiledTeddy.exportToFile("res/TeddyBlurTiled.ppm", new PPMFormat());
+    assertArrayEquals(Files.readAllBytes(Paths.get("res/TeddyBlurCopy.ppm")),
+        Files.readAllBytes(Paths.get("res/TeddyBlurTiled.ppm")));
+    this.tiledTeddy.exportToFile("res/TeddyBlurTiled.png", new PNGFormat());
+    assertTrue(RasterUtil.sameContent(this.teddy.getRaster(),
+        new ImageModelImpl("res/TeddyBlurTiled.png", new PNGFormat()).getRaster()));
+  }
+
+  @Test
+  public void testTransformRegionMatchesInMemoryModel() {
+    this.teddy.transform(new BlurTransformation(), 5, 6, 30, 20)
+        .transform(new SepiaTransformation(), 20, 0, 10, 10);
+    this.tiledTeddy.transform(new BlurTransformation(), 5, 6, 30, 20)
+        .transform(new SepiaTransformation(), 20, 0, 10, 10);
+    assertTrue(RasterUtil.sameContent(this.teddy.getRaster(), this.tiledTeddy.getRaster()));
+    assertEquals(new Rectangle(5, 0, 30, 26), this.tiledTeddy.getChangedRegion(0));
+  }
+
+  @Test
+  public void testSpilledTilesKeepChanges() {
+    TiledRaster raster = new TiledRaster(40, 40, 4, 0, null);
+    for (int y = 0; y < 40; y++) {
+      for (int x = 0; x < 40; x++) {
+        raster.setPixel(x, y, x, y, x + y);
+      }
+    }
+    assertTrue(raster.getLoadedTileCount() < 100);
+    for (int y = 0; y < 40; y++) {
+      for (int x = 0; x < 40; x++) {
+        assertEquals((x << 16) | (y << 8) | (x + y), raster.getRGB(x, y));
+      }
+    }
+    raster.close();
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testMissingFile() {
+    new TiledImageModel("res/Missing.ppm", new PPMFormat());
+  }
+}
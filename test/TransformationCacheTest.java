@@ -0,0 +1,138 @@
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+import model.ImageModelImpl;
+import model.TransformationCache;
+import model.format.PPMFormat;
+import model.raster.IRaster;
+import model.raster.InterleavedRaster;
+import model.raster.PackedRaster;
+import model.raster.RasterUtil;
+import model.raster.SharedRaster;
+import model.transformation.FusedTransformation;
+import model.transformation.MosaicTransformation;
+import model.transformation.color.SepiaTransformation;
+import model.transformation.filter.BlurTransformation;
+import model.transformation.filter.KernelTransformation;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Represents the tests for {@link TransformationCache} and the caching of transformation results
+ * by {@link ImageModelImpl}.
+ */
+public class TransformationCacheTest {
+
+  ImageModelImpl teddy;
+
+  @Before
+  public void initialize() {
+    TransformationCache.getDefault().clear();
+    this.teddy = new ImageModelImpl("res/Teddy.ppm", new PPMFormat());
+  }
+
+  @Test
+  public void testHitSwapsInResult() {
+    ImageModelImpl first = new ImageModelImpl(this.teddy);
+    first.transform(new BlurTransformation()).transform(new SepiaTransformation());
+    assertEquals(0, TransformationCache.getDefault().getHits());
+    assertEquals(2, TransformationCache.getDefault().getMisses());
+
+    ImageModelImpl second = new ImageModelImpl(this.teddy);
+    second.transform(new BlurTransformation()).transform(new SepiaTransformation());
+    assertEquals(2, TransformationCache.getDefault().getHits());
+    assertEquals(2, TransformationCache.getDefault().getMisses());
+    assertSame(first.getRaster(), second.getRaster());
+  }
+
+  @Test
+  public void testCachedResultIsNotModified() {
+    ImageModelImpl first = new ImageModelImpl(this.teddy);
+    first.transform(new BlurTransformation());
+    ImageModelImpl blurred = new ImageModelImpl(first);
+    first.transform(new SepiaTransformation(), 0, 0, 20, 20);
+    ImageModelImpl second = new ImageModelImpl(this.teddy);
+    second.transform(new BlurTransformation());
+    assertEquals(1, TransformationCache.getDefault().getHits());
+    assertEquals(blurred, second);
+  }
+
+  @Test
+  public void testRandomMosaicNotCached() {
+    this.teddy.transform(new MosaicTransformation(10));
+    this.teddy.transform(new MosaicTransformation(10, new Random(3)));
+    assertEquals(0, TransformationCache.getDefault().getHits());
+    assertEquals(0, TransformationCache.getDefault().getMisses());
+    assertNull(new MosaicTransformation(10, new Random(3)).getCacheKey());
+  }
+
+  @Test
+  public void testSeededMosaic() {
+    ImageModelImpl expected = new ImageModelImpl(this.teddy);
+    expected.transform(new MosaicTransformation(50, new Random(7)));
+    ImageModelImpl first = new ImageModelImpl(this.teddy);
+    first.transform(new MosaicTransformation(50, 7));
+    ImageModelImpl second = new ImageModelImpl(this.teddy);
+    second.transform(new MosaicTransformation(50, 7));
+    assertEquals(1, TransformationCache.getDefault().getHits());
+    assertEquals(expected, first);
+    assertEquals(expected, second);
+    assertNotEquals(new MosaicTransformation(50, 7).getCacheKey(),
+        new MosaicTransformation(50, 8).getCacheKey());
+  }
+
+  @Test
+  public void testCacheKeys() {
+    assertEquals(new BlurTransformation().getCacheKey(), new BlurTransformation().getCacheKey());
+    assertNotEquals(new FusedTransformation(new BlurTransformation(), new SepiaTransformation())
+            .getCacheKey(),
+        new FusedTransformation(new SepiaTransformation(), new BlurTransformation())
+            .getCacheKey());
+    assertNotEquals(new KernelTransformation(new double[][]{{1}}).getCacheKey(),
+        new KernelTransformation(new double[][]{{0.5}}).getCacheKey());
+    assertNull(new FusedTransformation(new BlurTransformation(), new MosaicTransformation(5))
+        .getCacheKey());
+  }
+
+  @Test
+  public void testLeastRecentlyUsedEvicted() {
+    // room for two 10x10 packed rasters
+    TransformationCache cache = new TransformationCache(800);
+    SharedRaster[] results = new SharedRaster[3];
+    for (int i = 0; i < results.length; i++) {
+      results[i] = new SharedRaster(new PackedRaster(10, 10));
+    }
+    cache.store("a", results[0]);
+    cache.store("b", results[1]);
+    SharedRaster restored = new SharedRaster(new PackedRaster(1, 1));
+    assertTrue(cache.restore("a", restored));
+    cache.store("c", results[2]);
+    assertEquals(2, cache.getSize());
+    assertTrue(cache.restore("a", restored));
+    assertTrue(cache.restore("c", restored));
+    assertEquals(false, cache.restore("b", restored));
+    assertEquals(3, cache.getHits());
+    assertEquals(1, cache.getMisses());
+    cache.setMemoryBudget(0);
+    assertEquals(0, cache.getSize());
+  }
+
+  @Test
+  public void testFingerprint() {
+    IRaster packed = RasterUtil.fromArray(this.teddy.asArray(), 255);
+    IRaster interleaved = RasterUtil.copy(packed, new InterleavedRaster(packed.getWidth(),
+        packed.getHeight()));
+    assertEquals(RasterUtil.fingerprint(packed), RasterUtil.fingerprint(interleaved));
+    packed.setPixel(5, 5, 0, 0, packed.getBlue(5, 5) ^ 1);
+    assertNotEquals(RasterUtil.fingerprint(packed), RasterUtil.fingerprint(interleaved));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testNegativeBudget() {
+    new TransformationCache(-1);
+  }
+}